@@ -0,0 +1,67 @@
+package com.linkedkeeper.redis.client.benchmark;
+
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.sample.SimpleRedisClient;
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 每个fork启动一个进程内的StandInRedisServer和一个SimpleRedisClient，所有线程共享。
+ * 预置KEYS个string类型的key，以及一个以这些key为field的hash（HASH_KEY）。
+ * 子类决定engine，按需要声明为@Param
+ *
+ * @Author: zhangsr
+ */
+public abstract class AbstractRedisClientState {
+
+    public final static int KEYS = 1024;
+    public final static String HASH_KEY = "bench:hash";
+
+    public StandInRedisServer server;
+    public RedisDriver driver;
+    public SimpleRedisClient redisClient;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = new StandInRedisServer().start();
+        driver = new RedisDriver();
+        driver.setRedisConf(server.getAddress());
+        driver.setEngine(engine());
+        configure(driver);
+        driver.init();
+        redisClient = new SimpleRedisClient();
+        redisClient.setDriver(driver);
+        redisClient.setMetricsEnabled(false);
+        redisClient.init();
+        Map<String, String> hash = new HashMap<String, String>();
+        for (int i = 0; i < KEYS; i++) {
+            redisClient.set(key(i), "value-" + i);
+            hash.put(key(i), "value-" + i);
+        }
+        redisClient.hmset(HASH_KEY, hash);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        redisClient.destroy();
+        driver.destroy();
+        server.stop();
+    }
+
+    protected abstract String engine();
+
+    /**
+     * 子类在driver.init()之前调整配置
+     */
+    protected void configure(RedisDriver driver) {
+    }
+
+    public static String key(int i) {
+        return "bench:" + i;
+    }
+}
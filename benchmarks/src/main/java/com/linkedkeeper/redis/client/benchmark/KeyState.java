@@ -0,0 +1,20 @@
+package com.linkedkeeper.redis.client.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 每个线程按固定步长轮流访问预置的key，不使用随机数，多次运行访问序列相同
+ *
+ * @Author: zhangsr
+ */
+@State(Scope.Thread)
+public class KeyState {
+
+    private int next = 0;
+
+    public String nextKey() {
+        next = (next + 7) % RedisClientState.KEYS;
+        return RedisClientState.key(next);
+    }
+}
@@ -0,0 +1,64 @@
+package com.linkedkeeper.redis.client.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1KB到1MB的value的get和set
+ *
+ * @Author: zhangsr
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+UseParallelGC"})
+@Threads(1)
+public class LargeValueBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ValueState {
+
+        @Param({"1024", "102400", "1048576"})
+        public int size;
+
+        public String value;
+
+        @Setup(Level.Trial)
+        public void setUp(RedisClientState state) {
+            StringBuilder builder = new StringBuilder(size);
+            for (int i = 0; i < size; i++) {
+                builder.append((char) ('a' + i % 26));
+            }
+            value = builder.toString();
+            state.redisClient.set(key(), value);
+        }
+
+        public String key() {
+            return "bench:large:" + size;
+        }
+    }
+
+    @Benchmark
+    public String set(RedisClientState state, ValueState value) {
+        return state.redisClient.set("bench:large:set", value.value);
+    }
+
+    @Benchmark
+    public String get(RedisClientState state, ValueState value) {
+        return state.redisClient.get(value.key());
+    }
+}
@@ -0,0 +1,53 @@
+package com.linkedkeeper.redis.client.benchmark;
+
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 64个线程争用大小为maxTotal的JedisPool，只比较连接池路径，因此不带engine参数
+ *
+ * @Author: zhangsr
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+UseParallelGC"})
+@Threads(64)
+public class PoolContentionBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SmallPoolState extends AbstractRedisClientState {
+
+        @Param({"4", "16", "64"})
+        public int maxTotal;
+
+        @Override
+        protected String engine() {
+            return RedisDriver.ENGINE_JEDIS;
+        }
+
+        @Override
+        protected void configure(RedisDriver driver) {
+            driver.setMaxTotal(maxTotal);
+            driver.setMaxIdle(maxTotal);
+        }
+    }
+
+    @Benchmark
+    public String get(SmallPoolState state, KeyState keys) {
+        return state.redisClient.get(keys.nextKey());
+    }
+}
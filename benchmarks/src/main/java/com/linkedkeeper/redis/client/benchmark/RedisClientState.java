@@ -0,0 +1,23 @@
+package com.linkedkeeper.redis.client.benchmark;
+
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * engine参数对比JedisPool和NIO引擎，新的驱动或pipeline模式加到这里即可与现有路径对比
+ *
+ * @Author: zhangsr
+ */
+@State(Scope.Benchmark)
+public class RedisClientState extends AbstractRedisClientState {
+
+    @Param({RedisDriver.ENGINE_JEDIS, RedisDriver.ENGINE_NIO})
+    public String engine;
+
+    @Override
+    protected String engine() {
+        return engine;
+    }
+}
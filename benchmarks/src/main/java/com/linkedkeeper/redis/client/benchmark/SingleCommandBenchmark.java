@@ -0,0 +1,46 @@
+package com.linkedkeeper.redis.client.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单线程下单条命令的延迟分布，SampleTime模式输出p50/p99/p999
+ *
+ * @Author: zhangsr
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+UseParallelGC"})
+@Threads(1)
+public class SingleCommandBenchmark {
+
+    @Benchmark
+    public String get(RedisClientState state, KeyState keys) {
+        return state.redisClient.get(keys.nextKey());
+    }
+
+    @Benchmark
+    public String set(RedisClientState state, KeyState keys) {
+        return state.redisClient.set(keys.nextKey(), "value");
+    }
+
+    @Benchmark
+    public Long incr(RedisClientState state) {
+        return state.redisClient.incr("bench:counter");
+    }
+
+    @Benchmark
+    public String hget(RedisClientState state, KeyState keys) {
+        return state.redisClient.hget(RedisClientState.HASH_KEY, keys.nextKey());
+    }
+}
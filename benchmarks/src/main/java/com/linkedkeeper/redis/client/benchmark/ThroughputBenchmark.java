@@ -0,0 +1,49 @@
+package com.linkedkeeper.redis.client.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1/8/64/256个线程共享一个客户端时get的吞吐量
+ *
+ * @Author: zhangsr
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-XX:+UseParallelGC"})
+public class ThroughputBenchmark {
+
+    @Benchmark
+    @Threads(1)
+    public String get1(RedisClientState state, KeyState keys) {
+        return state.redisClient.get(keys.nextKey());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public String get8(RedisClientState state, KeyState keys) {
+        return state.redisClient.get(keys.nextKey());
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String get64(RedisClientState state, KeyState keys) {
+        return state.redisClient.get(keys.nextKey());
+    }
+
+    @Benchmark
+    @Threads(256)
+    public String get256(RedisClientState state, KeyState keys) {
+        return state.redisClient.get(keys.nextKey());
+    }
+}
@@ -0,0 +1,110 @@
+package com.linkedkeeper.redis.client;
+
+import com.linkedkeeper.redis.client.pipeline.PipelineBlock;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.TransactionBlock;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * RedisClient的异步版本，命令与RedisClient一一对应，返回的CompletableFuture在收到回复后完成，
+ * 失败时以RedisException结束。
+ * AutoPipeliningAsyncRedisClient仍由持有连接池连接的写线程阻塞地收发，只是不为每个等待的命令占用线程；
+ * 不占用线程的非阻塞实现是基于NioRedisEngine的NioAsyncRedisClient
+ *
+ * @Author: zhangsr
+ */
+public interface AsyncRedisClient {
+
+    CompletableFuture<Set<String>> keys(String pattern);
+
+    CompletableFuture<ScanResult<String>> scan(String cursor, ScanParams params);
+
+    CompletableFuture<String> setex(String key, int expire, String value);
+
+    CompletableFuture<String> set(String key, String value);
+
+    CompletableFuture<String> set(String key, String value, String nxxx, String expx, long time);
+
+    CompletableFuture<Long> decrBy(String key, long integer);
+
+    CompletableFuture<Long> incr(String key);
+
+    CompletableFuture<Long> incrBy(String key, long integer);
+
+    CompletableFuture<String> get(String key);
+
+    CompletableFuture<Long> sadd(String key, String... members);
+
+    CompletableFuture<Long> srem(String key, String... members);
+
+    CompletableFuture<Set<String>> smembers(String key);
+
+    CompletableFuture<ScanResult<String>> sscan(String key, String cursor, ScanParams params);
+
+    CompletableFuture<Long> expire(String key, int expiredTime);
+
+    CompletableFuture<Boolean> exists(String key);
+
+    CompletableFuture<Long> pttl(String key);
+
+    CompletableFuture<Long> del(String key);
+
+    CompletableFuture<Long> del(String... key);
+
+    CompletableFuture<Long> hset(String key, String field, String value);
+
+    CompletableFuture<Long> hsetnx(String key, String field, String value);
+
+    CompletableFuture<Long> hdel(String key, String... fields);
+
+    CompletableFuture<String> hget(String key, String field);
+
+    CompletableFuture<String> hmset(String key, Map<String, String> hash);
+
+    CompletableFuture<List<String>> hmget(String key, String... fields);
+
+    CompletableFuture<Map<String, String>> hgetAll(String key);
+
+    CompletableFuture<ScanResult<Map.Entry<String, String>>> hscan(String key, String cursor, ScanParams params);
+
+    CompletableFuture<List<String>> mget(String... keys);
+
+    CompletableFuture<String> mset(String... keysvalues);
+
+    CompletableFuture<String> msetex(int expire, String... keysvalues);
+
+    CompletableFuture<List<Map<String, String>>> hgetAllMulti(String... keys);
+
+    CompletableFuture<List<List<String>>> hmgetMulti(List<String> keys, String... fields);
+
+    CompletableFuture<List<Set<String>>> smembersMulti(String... keys);
+
+    CompletableFuture<List<Object>> multi(TransactionBlock transactionBlock);
+
+    CompletableFuture<Void> pipelined(PipelineBlock pipelineBlock);
+
+    CompletableFuture<Void> pipelined(int batchSize, PipelineBlock pipelineBlock);
+
+    CompletableFuture<Long> lpush(String key, String... strings);
+
+    CompletableFuture<Long> rpush(String key, String... strings);
+
+    CompletableFuture<String> lpop(String key);
+
+    CompletableFuture<String> rpop(String key);
+
+    CompletableFuture<List<String>> lrange(String key, long start, long end);
+
+    CompletableFuture<String> ltrim(String key, long start, long end);
+
+    CompletableFuture<Long> llen(String key);
+
+    CompletableFuture<String> rpoplpush(String srckey, String dstkey);
+
+    CompletableFuture<Long> hincrby(String key, String field, int increment);
+}
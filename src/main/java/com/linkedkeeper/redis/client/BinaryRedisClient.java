@@ -0,0 +1,88 @@
+package com.linkedkeeper.redis.client;
+
+import com.linkedkeeper.redis.client.exception.RedisException;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * RedisClient的二进制版本，key和value均为byte[]，不经过字符集编解码，适合protobuf等二进制数据。
+ * get和hget另有ValueReader版本，value以只读ByteBuffer交给回调，避免再复制一份value
+ *
+ * @Author: zhangsr
+ */
+public interface BinaryRedisClient {
+
+    Set<byte[]> keys(byte[] pattern) throws RedisException;
+
+    String setex(byte[] key, int expire, byte[] value) throws RedisException;
+
+    String set(byte[] key, byte[] value) throws RedisException;
+
+    Long decrBy(byte[] key, long integer) throws RedisException;
+
+    Long incr(byte[] key) throws RedisException;
+
+    byte[] get(byte[] key) throws RedisException;
+
+    /**
+     * 读取key对应的value并交给reader处理，ByteBuffer只在回调期间有效，回调返回后不能再访问
+     *
+     * @param key
+     * @param reader key不存在时收到null
+     * @return reader的返回值
+     */
+    <T> T get(byte[] key, ValueReader<T> reader) throws RedisException;
+
+    Long sadd(byte[] key, byte[]... members) throws RedisException;
+
+    Long srem(byte[] key, byte[]... members) throws RedisException;
+
+    Set<byte[]> smembers(byte[] key) throws RedisException;
+
+    Long expire(byte[] key, int expiredTime) throws RedisException;
+
+    Boolean exists(byte[] key) throws RedisException;
+
+    Long del(byte[] key) throws RedisException;
+
+    Long del(byte[]... key) throws RedisException;
+
+    Long hset(byte[] key, byte[] field, byte[] value) throws RedisException;
+
+    Long hsetnx(byte[] key, byte[] field, byte[] value) throws RedisException;
+
+    Long hdel(byte[] key, byte[]... fields) throws RedisException;
+
+    byte[] hget(byte[] key, byte[] field) throws RedisException;
+
+    /**
+     * 同get(key, reader)，读取hash中field对应的value
+     */
+    <T> T hget(byte[] key, byte[] field, ValueReader<T> reader) throws RedisException;
+
+    String hmset(byte[] key, Map<byte[], byte[]> hash) throws RedisException;
+
+    List<byte[]> hmget(byte[] key, byte[]... fields) throws RedisException;
+
+    Map<byte[], byte[]> hgetAll(byte[] key) throws RedisException;
+
+    Long lpush(byte[] key, byte[]... values) throws RedisException;
+
+    Long rpush(byte[] key, byte[]... values) throws RedisException;
+
+    byte[] lpop(byte[] key) throws RedisException;
+
+    byte[] rpop(byte[] key) throws RedisException;
+
+    List<byte[]> lrange(byte[] key, long start, long end) throws RedisException;
+
+    String ltrim(byte[] key, long start, long end) throws RedisException;
+
+    Long llen(byte[] key) throws RedisException;
+
+    byte[] rpoplpush(byte[] srckey, byte[] dstkey) throws RedisException;
+
+    Long hincrby(byte[] key, byte[] field, int increment) throws RedisException;
+}
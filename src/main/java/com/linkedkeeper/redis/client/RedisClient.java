@@ -1,6 +1,11 @@
 package com.linkedkeeper.redis.client;
 
 import com.linkedkeeper.redis.client.exception.RedisException;
+import com.linkedkeeper.redis.client.pipeline.PipelineBlock;
+import com.linkedkeeper.redis.client.scan.ScanCallback;
+import com.linkedkeeper.redis.client.scan.ScanIterator;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
 import redis.clients.jedis.TransactionBlock;
 
 import java.util.List;
@@ -14,6 +19,36 @@ public interface RedisClient {
 
     Set<String> keys(final String pattern) throws RedisException;
 
+    /**
+     * 对应Redis中的"scan cursor match pattern count count"命令
+     *
+     * @param cursor 从"0"开始，返回的cursor为"0"时遍历结束
+     * @param params
+     * @return ScanResult<String> 本页的key和下一个cursor
+     * @throws RedisException
+     */
+    ScanResult<String> scan(String cursor, ScanParams params) throws RedisException;
+
+    /**
+     * 以SCAN游标惰性遍历匹配pattern的key，代替会阻塞Redis的keys，消费当前页时预取下一页
+     *
+     * @param pattern
+     * @param count   每页的COUNT提示
+     * @return ScanIterator<String> 不再使用时应close
+     * @throws RedisException
+     */
+    ScanIterator<String> scan(String pattern, int count) throws RedisException;
+
+    /**
+     * scan(pattern, count)的回调形式，遍历结束或callback返回false后返回
+     *
+     * @param pattern
+     * @param count
+     * @param callback
+     * @throws RedisException
+     */
+    void scan(String pattern, int count, ScanCallback<String> callback) throws RedisException;
+
     /**
      * 设置key对应的值为string类型的value，并指定此键值对应的有效期。
      *
@@ -25,6 +60,15 @@ public interface RedisClient {
 
     String set(String key, String value) throws RedisException;
 
+    /**
+     * SET key value [NX|XX] [EX|PX time]
+     *
+     * @param nxxx NX：key不存在时才设置，XX：key存在时才设置
+     * @param expx EX：time单位为秒，PX：time单位为毫秒
+     * @return 设置成功返回OK，因NX或XX没有设置时返回null
+     */
+    String set(String key, String value, String nxxx, String expx, long time) throws RedisException;
+
     Long decrBy(String key, long integer) throws RedisException;
 
     /**
@@ -36,6 +80,11 @@ public interface RedisClient {
      */
     Long incr(String key) throws RedisException;
 
+    /**
+     * key对应的value值加上integer并返回相加后的值，integer可以为负数
+     */
+    Long incrBy(String key, long integer) throws RedisException;
+
     String get(String key) throws RedisException;
 
     Long sadd(String key, String... members) throws RedisException;
@@ -50,6 +99,23 @@ public interface RedisClient {
      */
     Set<String> smembers(String key) throws RedisException;
 
+    /**
+     * 对应Redis中的"sscan key cursor match pattern count count"命令
+     */
+    ScanResult<String> sscan(String key, String cursor, ScanParams params) throws RedisException;
+
+    /**
+     * smembers的分页版本，以SSCAN逐页遍历set，当前页消费完后才读取下一页
+     *
+     * @param key   set的key值
+     * @param count 每页的COUNT提示
+     * @return ScanIterator<String>
+     * @throws RedisException
+     */
+    ScanIterator<String> sscanAll(String key, int count) throws RedisException;
+
+    void sscanAll(String key, int count, ScanCallback<String> callback) throws RedisException;
+
     /**
      * 设置Redis中元素的过期时间，可以为Redis任意类型的元素设置过期时间
      *
@@ -61,6 +127,12 @@ public interface RedisClient {
 
     Boolean exists(String key) throws RedisException;
 
+    /**
+     * @param key
+     * @return Long  剩余有效期，单位：毫秒，-1为永不过期，-2为key不存在
+     */
+    Long pttl(String key) throws RedisException;
+
     /**
      * 删除参数key指定的元素
      *
@@ -128,8 +200,98 @@ public interface RedisClient {
 
     Map<String, String> hgetAll(String key) throws RedisException;
 
+    /**
+     * 对应Redis中的"hscan key cursor match pattern count count"命令
+     */
+    ScanResult<Map.Entry<String, String>> hscan(String key, String cursor, ScanParams params) throws RedisException;
+
+    /**
+     * hgetAll的分页版本，以HSCAN逐页遍历hash，当前页消费完后才读取下一页
+     *
+     * @param key   Redis中hash的key值
+     * @param count 每页的COUNT提示
+     * @return ScanIterator<Map.Entry<String, String>>
+     * @throws RedisException
+     */
+    ScanIterator<Map.Entry<String, String>> hscanAll(String key, int count) throws RedisException;
+
+    void hscanAll(String key, int count, ScanCallback<Map.Entry<String, String>> callback) throws RedisException;
+
+    /**
+     * 对应Redis中的"mget key1 key2 key3"命令，多个shard或cluster模式下按节点拆分后并行执行
+     *
+     * @param keys
+     * @return List<String> 与keys顺序一致，不存在的key为null
+     * @throws RedisException
+     */
+    List<String> mget(String... keys) throws RedisException;
+
+    /**
+     * 对应Redis中的"mset key1 value1 key2 value2"命令，按节点拆分后各节点分别执行，整体不是原子的
+     *
+     * @param keysvalues key和value交替排列
+     * @return String 返回成功标识
+     * @throws RedisException
+     */
+    String mset(String... keysvalues) throws RedisException;
+
+    /**
+     * mset并为每个key设置有效期，在每个节点上以一次pipeline执行多条SETEX
+     *
+     * @param expire     有效期，单位：秒
+     * @param keysvalues key和value交替排列
+     * @return String 返回成功标识
+     * @throws RedisException
+     */
+    String msetex(int expire, String... keysvalues) throws RedisException;
+
+    /**
+     * 一次读取多个hash，每个节点一次pipeline
+     *
+     * @param keys
+     * @return List<Map<String, String>> 与keys顺序一致，不存在的hash为空Map
+     * @throws RedisException
+     */
+    List<Map<String, String>> hgetAllMulti(String... keys) throws RedisException;
+
+    /**
+     * 一次读取多个hash的相同field，每个节点一次pipeline
+     *
+     * @param keys
+     * @param fields
+     * @return List<List<String>> 与keys顺序一致，每个元素与hmget(key, fields)的结果相同
+     * @throws RedisException
+     */
+    List<List<String>> hmgetMulti(List<String> keys, String... fields) throws RedisException;
+
+    /**
+     * 一次读取多个set，每个节点一次pipeline
+     *
+     * @param keys
+     * @return List<Set<String>> 与keys顺序一致，不存在的set为空Set
+     * @throws RedisException
+     */
+    List<Set<String>> smembersMulti(String... keys) throws RedisException;
+
     List<Object> multi(TransactionBlock transactionBlock);
 
+    /**
+     * 在同一个连接上以pipeline方式批量执行命令，超过默认批次大小时分批发送
+     *
+     * @param pipelineBlock 通过RedisPipeline排队命令，返回的Response在本方法返回后可取值
+     * @throws RedisException
+     */
+    void pipelined(PipelineBlock pipelineBlock) throws RedisException;
+
+    /**
+     * 在同一个连接上以pipeline方式批量执行命令
+     *
+     * @param batchSize     每批发送的命令数，达到后读取该批结果再继续
+     * @param pipelineBlock 通过RedisPipeline排队命令
+     * @throws RedisException
+     */
+    void pipelined(int batchSize, PipelineBlock pipelineBlock) throws RedisException;
+
     Long lpush(String key, String... strings);
 
     Long rpush(String key, String... strings);
@@ -140,6 +302,18 @@ public interface RedisClient {
 
     List<String> lrange(String key, long start, long end);
 
+    /**
+     * lrange(key, 0, -1)的分页版本，每页一次LRANGE，当前页消费完后才读取下一页。
+     * 遍历期间list被修改时元素可能重复或遗漏
+     *
+     * @param key
+     * @param pageSize 每页的元素个数
+     * @return ScanIterator<String>
+     */
+    ScanIterator<String> lrangeChunked(String key, int pageSize);
+
+    void lrangeChunked(String key, int pageSize, ScanCallback<String> callback);
+
     String ltrim(String key, long start, long end);
 
     Long llen(String key);
@@ -0,0 +1,18 @@
+package com.linkedkeeper.redis.client;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 读取二进制value的回调。value为只读的ByteBuffer，使用NIO引擎时直接是接收缓冲区的切片，
+ * 只在read期间有效，需要保留的数据应在回调中解析或复制出来
+ *
+ * @Author: zhangsr
+ */
+@FunctionalInterface
+public interface ValueReader<T> {
+
+    /**
+     * @param value key不存在时为null
+     */
+    T read(ByteBuffer value) throws Exception;
+}
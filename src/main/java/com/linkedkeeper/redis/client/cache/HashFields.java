@@ -0,0 +1,24 @@
+package com.linkedkeeper.redis.client.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 通过hget逐个缓存的hash字段，与hgetAll缓存的完整hash区分开，值为null表示该字段不存在
+ *
+ * @Author: zhangsr
+ */
+class HashFields {
+
+    final Map<String, String> fields;
+
+    HashFields(Map<String, String> fields) {
+        this.fields = fields;
+    }
+
+    HashFields with(String field, String value) {
+        Map<String, String> copy = new HashMap<String, String>(fields);
+        copy.put(field, value);
+        return new HashFields(copy);
+    }
+}
@@ -0,0 +1,72 @@
+package com.linkedkeeper.redis.client.cache;
+
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Protocol;
+import redis.clients.util.SafeEncoder;
+
+import java.util.List;
+
+/**
+ * 失效通知使用的独占连接，Jedis的JedisPubSub无法解析CLIENT TRACKING推送的key数组，
+ * 这里直接发送命令并读取原始回复
+ *
+ * @Author: zhangsr
+ */
+class InvalidationConnection extends Client {
+
+    InvalidationConnection(String host, int port, int timeout) {
+        super(host, port);
+        setConnectionTimeout(timeout);
+        setSoTimeout(timeout);
+    }
+
+    void open(String password) {
+        connect();
+        if (password != null && password.length() > 0) {
+            auth(password);
+            getStatusCodeReply();
+        }
+    }
+
+    Long clientId() {
+        sendCommand(Protocol.Command.CLIENT, "ID");
+        return getIntegerReply();
+    }
+
+    String clientTracking(String... args) {
+        sendCommand(Protocol.Command.CLIENT, args);
+        return getStatusCodeReply();
+    }
+
+    /**
+     * @return CONFIG GET parameter的值，服务端没有这一配置时为null
+     */
+    String readConfig(String parameter) {
+        configGet(parameter);
+        List<String> reply = getMultiBulkReply();
+        return reply == null || reply.size() < 2 ? null : reply.get(1);
+    }
+
+    /**
+     * 发送订阅命令并在读超时内等到channels个订阅确认，之后不设读超时，依靠TCP keepalive发现断开的连接。
+     * 确认之前到达的通知被丢弃，调用方在订阅生效后会清空全部本地缓存
+     *
+     * @param channels 订阅的channel或pattern个数
+     */
+    void startSubscribe(int channels) {
+        flush();
+        int confirmed = 0;
+        while (confirmed < channels) {
+            String type = SafeEncoder.encode((byte[]) readMessage().get(0));
+            if ("subscribe".equals(type) || "psubscribe".equals(type)) {
+                confirmed++;
+            }
+        }
+        setTimeoutInfinite();
+    }
+
+    @SuppressWarnings("unchecked")
+    List<Object> readMessage() {
+        return (List<Object>) readProtocolWithCheckingBroken();
+    }
+}
@@ -0,0 +1,272 @@
+package com.linkedkeeper.redis.client.cache;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * 进程内近端缓存，按key分段加锁，每段使用分段LRU（SLRU）淘汰：
+ * 新条目进入试用区，再次命中后晋升到保护区，保护区溢出的条目降回试用区，淘汰总是从试用区最久未用的条目开始。
+ * 条目数和估算字节数的上限分摊到各段，各段之和等于总上限；maxEntries小于16时相应减少分段数。每个条目有独立的过期时间
+ *
+ * @Author: zhangsr
+ */
+public class NearCache {
+
+    private final static int SEGMENTS = 16;
+
+    private final Segment[] segments;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    /**
+     * @param maxEntries 最大条目数
+     * @param maxBytes   最大估算字节数
+     */
+    public NearCache(int maxEntries, long maxBytes) {
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("maxEntries and maxBytes must be positive");
+        }
+        segments = new Segment[Math.min(SEGMENTS, Integer.highestOneBit(maxEntries))];
+        int n = segments.length;
+        for (int i = 0; i < n; i++) {
+            segments[i] = new Segment(maxEntries / n + (i < maxEntries % n ? 1 : 0),
+                    maxBytes / n + (i < maxBytes % n ? 1 : 0));
+        }
+    }
+
+    /**
+     * @param key
+     * @return 缓存的值，未命中或已过期返回null
+     */
+    public Object get(String key) {
+        return get(key, value -> true);
+    }
+
+    /**
+     * @param key
+     * @param usable 缓存的值能否直接作为本次读的结果，如类型不符或hash中没有要读的field时算作未命中
+     * @return 缓存的值，未命中或已过期返回null；值不可用时仍然返回，只是按未命中计数
+     */
+    public Object get(String key, Predicate<Object> usable) {
+        Object value = segmentFor(key).get(key, System.nanoTime());
+        if (value != null && usable.test(value)) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * 加载前取得key所在段的版本号，写回时版本号变化说明期间发生过失效，放弃写回以免缓存旧值
+     *
+     * @param key
+     * @return 版本号
+     */
+    public long stamp(String key) {
+        return segmentFor(key).version;
+    }
+
+    /**
+     * @param key
+     * @param value     不能为null
+     * @param ttlMillis 有效期，毫秒
+     * @param stamp     加载前通过stamp取得的版本号
+     * @return 是否写入
+     */
+    public boolean put(String key, Object value, long ttlMillis, long stamp) {
+        if (value == null || ttlMillis <= 0) {
+            return false;
+        }
+        long expireAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        return segmentFor(key).put(key, new Entry(value, weigh(key, value), expireAt), stamp);
+    }
+
+    public void invalidate(String key) {
+        segmentFor(key).invalidate(key);
+        invalidations.incrementAndGet();
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+        invalidations.incrementAndGet();
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public NearCacheStats stats() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += segment.weight();
+        }
+        return new NearCacheStats(hits.get(), misses.get(), evictions.get(), expirations.get(),
+                invalidations.get(), size(), bytes);
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (segments.length - 1)];
+    }
+
+    static long weigh(String key, Object value) {
+        return 64 + weighString(key) + weighValue(value);
+    }
+
+    private static long weighValue(Object value) {
+        long weight = 0;
+        if (value instanceof String) {
+            weight += weighString(value);
+        } else if (value instanceof HashFields) {
+            weight += weighValue(((HashFields) value).fields);
+        } else if (value instanceof Map) {
+            for (Object o : ((Map<?, ?>) value).entrySet()) {
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                weight += 32 + weighString(e.getKey()) + weighString(e.getValue());
+            }
+        } else if (value instanceof Collection) {
+            for (Object o : (Collection<?>) value) {
+                weight += 32 + weighString(o);
+            }
+        }
+        return weight;
+    }
+
+    private static long weighString(Object s) {
+        return s instanceof String ? 40 + 2L * ((String) s).length() : 16;
+    }
+
+    private static class Entry {
+        final Object value;
+        final long weight;
+        final long expireAt;
+
+        Entry(Object value, long weight, long expireAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private class Segment {
+
+        private final LinkedHashMap<String, Entry> probation = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+        private final LinkedHashMap<String, Entry> protect = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+        private final int maxEntries;
+        private final long maxBytes;
+        private final int maxProtectEntries;
+
+        private long weight = 0;
+        private volatile long version = 0;
+
+        Segment(int maxEntries, long maxBytes) {
+            this.maxEntries = maxEntries;
+            this.maxBytes = maxBytes;
+            this.maxProtectEntries = Math.max(1, maxEntries * 4 / 5);
+        }
+
+        synchronized Object get(String key, long now) {
+            Entry entry = protect.get(key);
+            if (entry == null) {
+                entry = probation.get(key);
+                if (entry == null) {
+                    return null;
+                }
+                if (entry.expireAt - now <= 0) {
+                    remove(key);
+                    expirations.incrementAndGet();
+                    return null;
+                }
+                probation.remove(key);
+                protect.put(key, entry);
+                demote();
+                return entry.value;
+            }
+            if (entry.expireAt - now <= 0) {
+                remove(key);
+                expirations.incrementAndGet();
+                return null;
+            }
+            return entry.value;
+        }
+
+        synchronized boolean put(String key, Entry entry, long stamp) {
+            if (version != stamp || entry.weight > maxBytes) {
+                return false;
+            }
+            remove(key);
+            probation.put(key, entry);
+            weight += entry.weight;
+            evict();
+            return true;
+        }
+
+        synchronized void invalidate(String key) {
+            remove(key);
+            version++;
+        }
+
+        synchronized void clear() {
+            probation.clear();
+            protect.clear();
+            weight = 0;
+            version++;
+        }
+
+        synchronized int size() {
+            return probation.size() + protect.size();
+        }
+
+        synchronized long weight() {
+            return weight;
+        }
+
+        private void remove(String key) {
+            Entry old = probation.remove(key);
+            if (old == null) {
+                old = protect.remove(key);
+            }
+            if (old != null) {
+                weight -= old.weight;
+            }
+        }
+
+        private void demote() {
+            while (protect.size() > maxProtectEntries) {
+                Iterator<Map.Entry<String, Entry>> it = protect.entrySet().iterator();
+                Map.Entry<String, Entry> eldest = it.next();
+                it.remove();
+                probation.put(eldest.getKey(), eldest.getValue());
+            }
+        }
+
+        private void evict() {
+            while (probation.size() + protect.size() > maxEntries || weight > maxBytes) {
+                LinkedHashMap<String, Entry> victims = probation.isEmpty() ? protect : probation;
+                Iterator<Map.Entry<String, Entry>> it = victims.entrySet().iterator();
+                Map.Entry<String, Entry> eldest = it.next();
+                it.remove();
+                weight -= eldest.getValue().weight;
+                evictions.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.linkedkeeper.redis.client.cache;
+
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.driver.RedisNode;
+import com.linkedkeeper.redis.client.driver.RedisTopology;
+import org.apache.log4j.Logger;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 用独占的订阅连接接收服务端的key变更通知，使其它客户端的写入也能及时失效近端缓存。支持两种模式：
+ * keyspace：订阅__keyspace@db__通知，需要服务端开启notify-keyspace-events（可由configureNotifications在现有配置上补充）；
+ * tracking：Redis 6的CLIENT TRACKING广播模式，通知重定向到订阅连接。
+ * sharded和cluster模式下每个master一个订阅连接和线程；master列表在start和reconnect时读取，
+ * cluster增删master后需要调用reconnect。
+ * 服务端确认订阅（包括断线重连）后会清空全部本地缓存，因为确认之前的变更已经无法得知
+ *
+ * @Author: zhangsr
+ */
+public class NearCacheInvalidator {
+
+    private final static Logger log = Logger.getLogger(NearCacheInvalidator.class);
+
+    public final static String MODE_KEYSPACE = "keyspace";
+    public final static String MODE_TRACKING = "tracking";
+
+    private final static String KEYSPACE_EVENTS = "Kg$hsxe";
+    /**
+     * notify-keyspace-events中A代表的事件类型
+     */
+    private final static String ALL_EVENTS = "g$lshzxe";
+    private final static String TRACKING_CHANNEL = "__redis__:invalidate";
+
+    private final static long MIN_BACKOFF_MILLIS = 100;
+    private final static long MAX_BACKOFF_MILLIS = 30 * 1000;
+
+    private final RedisDriver driver;
+    private final NearCache nearCache;
+    private final String mode;
+    private final String[] prefixes;
+
+    private boolean configureNotifications = false;
+
+    private volatile boolean running = false;
+    private final List<Subscription> subscriptions = new ArrayList<Subscription>();
+    private final AtomicInteger subscribed = new AtomicInteger();
+
+    /**
+     * @param driver    提供master地址和密码
+     * @param nearCache 需要失效的本地缓存
+     * @param mode      keyspace或tracking
+     * @param prefixes  只关心这些前缀的key，为空表示全部key
+     */
+    public NearCacheInvalidator(RedisDriver driver, NearCache nearCache, String mode, String... prefixes) {
+        if (!MODE_KEYSPACE.equals(mode) && !MODE_TRACKING.equals(mode)) {
+            throw new IllegalArgumentException("unknown invalidation mode: " + mode);
+        }
+        this.driver = driver;
+        this.nearCache = nearCache;
+        this.mode = mode;
+        this.prefixes = prefixes == null ? new String[0] : prefixes;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        startSubscriptions();
+        log.info("near cache invalidator started, mode = " + mode);
+    }
+
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        stopSubscriptions();
+        log.info("near cache invalidator stopped");
+    }
+
+    /**
+     * 断开当前订阅连接，按driver当前的master列表重新订阅，用于master地址变更
+     */
+    public synchronized void reconnect() {
+        if (!running) {
+            return;
+        }
+        stopSubscriptions();
+        startSubscriptions();
+    }
+
+    /**
+     * @return 已经订阅成功的master个数
+     */
+    public int getSubscribedMasters() {
+        return subscribed.get();
+    }
+
+    private void startSubscriptions() {
+        for (HostAndPort address : masters()) {
+            Subscription subscription = new Subscription(address);
+            subscriptions.add(subscription);
+            subscription.thread.start();
+        }
+    }
+
+    private void stopSubscriptions() {
+        for (Subscription subscription : subscriptions) {
+            subscription.active = false;
+            subscription.closeConnections();
+            subscription.thread.interrupt();
+        }
+        for (Subscription subscription : subscriptions) {
+            try {
+                subscription.thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        subscriptions.clear();
+    }
+
+    private List<HostAndPort> masters() {
+        RedisTopology topology = driver.acquire();
+        try {
+            Collection<RedisNode> nodes;
+            if (topology.getShardRouter() != null) {
+                nodes = topology.getShardRouter().getNodes();
+            } else if (topology.getClusterRouter() != null) {
+                nodes = topology.getClusterRouter().getMasters();
+            } else {
+                nodes = Collections.singletonList(topology.getMasterNode());
+            }
+            List<HostAndPort> addresses = new ArrayList<HostAndPort>(nodes.size());
+            for (RedisNode node : nodes) {
+                addresses.add(node.getAddress());
+            }
+            return addresses;
+        } finally {
+            topology.release();
+        }
+    }
+
+    /**
+     * 在服务端现有的notify-keyspace-events上补充required中缺少的标志，A覆盖所有事件类型
+     */
+    static String mergeEvents(String current, String required) {
+        StringBuilder merged = new StringBuilder(current == null ? "" : current);
+        for (char flag : required.toCharArray()) {
+            boolean covered = merged.indexOf(String.valueOf(flag)) >= 0
+                    || merged.indexOf("A") >= 0 && ALL_EVENTS.indexOf(flag) >= 0;
+            if (!covered) {
+                merged.append(flag);
+            }
+        }
+        return merged.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void onMessage(List<Object> message) {
+        String type = SafeEncoder.encode((byte[]) message.get(0));
+        if ("pmessage".equals(type)) {
+            // [pmessage, pattern, __keyspace@0__:key, event]
+            String channel = SafeEncoder.encode((byte[]) message.get(2));
+            nearCache.invalidate(channel.substring(channel.indexOf("__:") + 3));
+        } else if ("message".equals(type)) {
+            // [message, __redis__:invalidate, [key...]]，null表示flushdb/flushall
+            Object keys = message.get(2);
+            if (keys instanceof List) {
+                for (Object key : (List<Object>) keys) {
+                    nearCache.invalidate(SafeEncoder.encode((byte[]) key));
+                }
+            } else {
+                nearCache.invalidateAll();
+            }
+        }
+    }
+
+    /**
+     * 一个master上的订阅连接和读取通知的线程，断线后按指数退避重连
+     */
+    private class Subscription {
+
+        final HostAndPort address;
+        final Thread thread;
+
+        volatile boolean active = true;
+        volatile InvalidationConnection subscriber = null;
+        volatile InvalidationConnection tracker = null;
+
+        Subscription(HostAndPort address) {
+            this.address = address;
+            this.thread = new Thread(this::loop, "redis-near-cache-invalidator-" + address);
+            this.thread.setDaemon(true);
+        }
+
+        void loop() {
+            long backoff = MIN_BACKOFF_MILLIS;
+            while (active) {
+                boolean connected = false;
+                try {
+                    subscribe();
+                    connected = true;
+                    subscribed.incrementAndGet();
+                    backoff = MIN_BACKOFF_MILLIS;
+                    while (active) {
+                        onMessage(subscriber.readMessage());
+                    }
+                } catch (Exception e) {
+                    if (!active) {
+                        break;
+                    }
+                    log.error("near cache invalidation connection to " + address + " lost, retry in " + backoff + "ms", e);
+                } finally {
+                    if (connected) {
+                        subscribed.decrementAndGet();
+                    }
+                    nearCache.invalidateAll();
+                    closeConnections();
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+
+        void subscribe() {
+            subscriber = new InvalidationConnection(address.getHost(), address.getPort(), driver.getTimeout());
+            subscriber.open(driver.getRedisPassword());
+
+            int channels = 1;
+            if (MODE_TRACKING.equals(mode)) {
+                Long clientId = subscriber.clientId();
+                subscriber.subscribe(TRACKING_CHANNEL);
+
+                tracker = new InvalidationConnection(address.getHost(), address.getPort(), driver.getTimeout());
+                tracker.open(driver.getRedisPassword());
+                List<String> args = new ArrayList<String>();
+                args.add("TRACKING");
+                args.add("on");
+                args.add("REDIRECT");
+                args.add(String.valueOf(clientId));
+                args.add("BCAST");
+                for (String prefix : prefixes) {
+                    args.add("PREFIX");
+                    args.add(prefix);
+                }
+                tracker.clientTracking(args.toArray(new String[args.size()]));
+            } else {
+                if (configureNotifications) {
+                    String current = subscriber.readConfig("notify-keyspace-events");
+                    String merged = mergeEvents(current, KEYSPACE_EVENTS);
+                    if (!merged.equals(current)) {
+                        subscriber.configSet("notify-keyspace-events", merged);
+                        subscriber.getStatusCodeReply();
+                        log.info("notify-keyspace-events of " + address + " changed from '" + current + "' to '" + merged + "'");
+                    }
+                }
+                String channelPrefix = "__keyspace@" + driver.getDatabase() + "__:";
+                if (prefixes.length == 0) {
+                    subscriber.psubscribe(channelPrefix + "*");
+                } else {
+                    String[] patterns = new String[prefixes.length];
+                    for (int i = 0; i < prefixes.length; i++) {
+                        patterns[i] = channelPrefix + prefixes[i] + "*";
+                    }
+                    subscriber.psubscribe(patterns);
+                    channels = patterns.length;
+                }
+            }
+            subscriber.startSubscribe(channels);
+            // 订阅确认之前的变更无法得知
+            nearCache.invalidateAll();
+            log.info("near cache invalidator subscribed to " + address);
+        }
+
+        void closeConnections() {
+            InvalidationConnection s = subscriber;
+            InvalidationConnection t = tracker;
+            subscriber = null;
+            tracker = null;
+            if (s != null) {
+                s.disconnect();
+            }
+            if (t != null) {
+                t.disconnect();
+            }
+        }
+    }
+
+    //------------------------- setter ----------------------
+
+    public void setConfigureNotifications(boolean configureNotifications) {
+        this.configureNotifications = configureNotifications;
+    }
+}
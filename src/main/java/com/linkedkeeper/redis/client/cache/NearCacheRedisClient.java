@@ -0,0 +1,631 @@
+package com.linkedkeeper.redis.client.cache;
+
+import com.linkedkeeper.redis.client.RedisClient;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import com.linkedkeeper.redis.client.metrics.HotKey;
+import com.linkedkeeper.redis.client.metrics.HotKeyListener;
+import com.linkedkeeper.redis.client.pipeline.PipelineBlock;
+import com.linkedkeeper.redis.client.pipeline.RedisPipeline;
+import com.linkedkeeper.redis.client.scan.ScanCallback;
+import com.linkedkeeper.redis.client.scan.ScanIterator;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.TransactionBlock;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 在RedisClient前增加近端缓存：get、hget、hgetAll、smembers以及对应的批量读优先读本地缓存，
+ * 未命中时在delegate的一次pipeline中读取值和PTTL，本地有效期不超过Redis中的剩余有效期；
+ * driver配置了副本或有多个master时pipeline只能发往单个master，改为经由delegate的读命令先读值再读PTTL（路由和副本读与直接读delegate一致）。
+ * 经由本客户端的写命令会使对应key的本地缓存失效，multi和pipelined无法得知涉及的key，会清空全部本地缓存。
+ * 配置invalidationMode后由NearCacheInvalidator订阅服务端通知，其它客户端的写入也会使本地缓存失效。
+ * 开启hotKeysOnly后只缓存HotKeyDetector报告的热点key，提升在promotionMillis后到期，其余key直接读delegate
+ *
+ * @Author: zhangsr
+ */
+public class NearCacheRedisClient implements RedisClient, HotKeyListener {
+
+    private RedisClient delegate;
+    private RedisDriver driver;
+
+    private NearCache nearCache = null;
+    private NearCacheInvalidator invalidator = null;
+
+    private String invalidationMode = null;
+    private String invalidationPrefixes = null;
+    private boolean configureNotifications = false;
+
+    private int maxEntries = 10000;
+    private long maxBytes = 64L * 1024 * 1024;
+    private long ttlMillis = 60 * 1000;
+
+    private boolean hotKeysOnly = false;
+    private long promotionMillis = 60 * 1000;
+    private ConcurrentMap<String, Long> promotedKeys = new ConcurrentHashMap<String, Long>();
+
+    public void init() {
+        nearCache = new NearCache(maxEntries, maxBytes);
+        if (invalidationMode != null && invalidationMode.length() > 0) {
+            String[] prefixes = invalidationPrefixes == null || invalidationPrefixes.trim().length() == 0
+                    ? new String[0] : invalidationPrefixes.trim().split("\\s*,\\s*");
+            invalidator = new NearCacheInvalidator(driver, nearCache, invalidationMode, prefixes);
+            invalidator.setConfigureNotifications(configureNotifications);
+            invalidator.start();
+        }
+    }
+
+    public void destroy() {
+        if (invalidator != null) {
+            invalidator.stop();
+        }
+    }
+
+    public Set<String> keys(String pattern) throws RedisException {
+        return delegate.keys(pattern);
+    }
+
+    public ScanResult<String> scan(String cursor, ScanParams params) throws RedisException {
+        return delegate.scan(cursor, params);
+    }
+
+    public ScanIterator<String> scan(String pattern, int count) throws RedisException {
+        return delegate.scan(pattern, count);
+    }
+
+    public void scan(String pattern, int count, ScanCallback<String> callback) throws RedisException {
+        delegate.scan(pattern, count, callback);
+    }
+
+    public String setex(String key, int expire, String value) throws RedisException {
+        try {
+            return delegate.setex(key, expire, value);
+        } finally {
+            nearCache.invalidate(key);
+        }
+    }
+
+    public String set(String key, String value) throws RedisException {
+        try {
+            return delegate.set(key, value);
+        } finally {
+            nearCache.invalidate(key);
+        }
+    }
+
+    public String set(String key, String value, String nxxx, String expx, long time) throws RedisException {
+        try {
+            return delegate.set(key, value, nxxx, expx, time);
+        } finally {
+            nearCache.invalidate(key);
+        }
+    }
+
+    public Long decrBy(String key, long integer) throws RedisException {
+        try {
+            return delegate.decrBy(key, integer);
+        } finally {
+            nearCache.invalidate(key);
+        }
+    }
+
+    public Long incr(String key) throws RedisException {
+        try {
+            return delegate.incr(key);
+        } finally {
+            nearCache.invalidate(key);
+        }
+    }
+
+    public Long incrBy(String key, long integer) throws RedisException {
+        try {
+            return delegate.incrBy(key, integer);
+        } finally {
+            nearCache.invalidate(key);
+        }
+    }
+
+    public String get(final String key) throws RedisException {
+        if (!cacheable(key)) {
+            return delegate.get(key);
+        }
+        Object cached = nearCache.get(key, value -> value instanceof String);
+        if (cached instanceof String) {
+            return (String) cached;
+        }
+        return load("get", key, () -> delegate.get(key), pipeline -> pipeline.get(key));
+    }
+
+    public Long sadd(String key, String... members) throws RedisException {
+        try {
+            return delegate.sadd(key, members);
+        } finally {
+            nearCache.invalidate(key);
+        }
+    }
+
+    public Long srem(String key, String... members) throws RedisException {
+        try {
+            return delegate.srem(key, members);
+        } finally {
+            nearCache.invalidate(key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public Set<String> smembers(final String key) throws RedisException {
+        if (!cacheable(key)) {
+            return delegate.smembers(key);
+        }
+        Object cached = nearCache.get(key, value -> value instanceof Set);
+        if (cached instanceof Set) {
+            return new HashSet<String>((Set<String>) cached);
+        }
+        Set<String> members = load("smembers", key, () -> delegate.smembers(key), pipeline -> pipeline.smembers(key));
+        return members == null ? null : new HashSet<String>(members);
+    }
+
+    public ScanResult<String> sscan(String key, String cursor, ScanParams params) throws RedisException {
+        return delegate.sscan(key, cursor, params);
+    }
+
+    public ScanIterator<String> sscanAll(String key, int count) throws RedisException {
+        return delegate.sscanAll(key, count);
+    }
+
+    public void sscanAll(String key, int count, ScanCallback<String> callback) throws RedisException {
+        delegate.sscanAll(key, count, callback);
+    }
+
+    public Long expire(String key, int expiredTime) throws RedisException {
+        try {
+            return delegate.expire(key, expiredTime);
+        } finally {
+            nearCache.invalidate(key);
+        }
+    }
+
+    public Boolean exists(String key) throws RedisException {
+        return delegate.exists(key);
+    }
+
+    public Long pttl(String key) throws RedisException {
+        return delegate.pttl(key);
+    }
+
+    public Long del(String key) throws RedisException {
+        try {
+            return delegate.del(key);
+        } finally {
+            nearCache.invalidate(key);
+        }
+    }
+
+    public Long del(String... keys) throws RedisException {
+        try {
+            return delegate.del(keys);
+        } finally {
+            for (String key : keys) {
+                nearCache.invalidate(key);
+            }
+        }
+    }
+
+    public Long hset(String key, String field, String value) throws RedisException {
+        try {
+            return delegate.hset(key, field, value);
+        } finally {
+            nearCache.invalidate(key);
+        }
+    }
+
+    public Long hsetnx(String key, String field, String value) throws RedisException {
+        try {
+            return delegate.hsetnx(key, field, value);
+        } finally {
+            nearCache.invalidate(key);
+        }
+    }
+
+    public Long hdel(String key, String... fields) throws RedisException {
+        try {
+            return delegate.hdel(key, fields);
+        } finally {
+            nearCache.invalidate(key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public String hget(final String key, final String field) throws RedisException {
+        if (!cacheable(key)) {
+            return delegate.hget(key, field);
+        }
+        Object cached = nearCache.get(key, value -> value instanceof Map
+                || value instanceof HashFields && ((HashFields) value).fields.containsKey(field));
+        if (cached instanceof Map) {
+            return ((Map<String, String>) cached).get(field);
+        }
+        if (cached instanceof HashFields && ((HashFields) cached).fields.containsKey(field)) {
+            return ((HashFields) cached).fields.get(field);
+        }
+
+        final HashFields known = cached instanceof HashFields ? (HashFields) cached : null;
+        long stamp = nearCache.stamp(key);
+        Loaded<String> loaded = read("hget", key, () -> delegate.hget(key, field), pipeline -> pipeline.hget(key, field), true);
+        // field不存在时也缓存，由PTTL判断key本身是否存在
+        HashFields fields = known == null
+                ? new HashFields(Collections.singletonMap(field, loaded.value))
+                : known.with(field, loaded.value);
+        nearCache.put(key, fields, ttlFor(loaded.pttl), stamp);
+        return loaded.value;
+    }
+
+    public String hmset(String key, Map<String, String> hash) throws RedisException {
+        try {
+            return delegate.hmset(key, hash);
+        } finally {
+            nearCache.invalidate(key);
+        }
+    }
+
+    public List<String> hmget(String key, String... fields) throws RedisException {
+        return delegate.hmget(key, fields);
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<String, String> hgetAll(final String key) throws RedisException {
+        if (!cacheable(key)) {
+            return delegate.hgetAll(key);
+        }
+        Object cached = nearCache.get(key, value -> value instanceof Map);
+        if (cached instanceof Map) {
+            return new HashMap<String, String>((Map<String, String>) cached);
+        }
+        Map<String, String> hash = load("hgetAll", key, () -> delegate.hgetAll(key), pipeline -> pipeline.hgetAll(key));
+        return hash == null ? null : new HashMap<String, String>(hash);
+    }
+
+    public ScanResult<Map.Entry<String, String>> hscan(String key, String cursor, ScanParams params) throws RedisException {
+        return delegate.hscan(key, cursor, params);
+    }
+
+    public ScanIterator<Map.Entry<String, String>> hscanAll(String key, int count) throws RedisException {
+        return delegate.hscanAll(key, count);
+    }
+
+    public void hscanAll(String key, int count, ScanCallback<Map.Entry<String, String>> callback) throws RedisException {
+        delegate.hscanAll(key, count, callback);
+    }
+
+    /**
+     * 本地缓存命中的key不再读取，其余key一次mget，读到的值不放入本地缓存
+     */
+    public List<String> mget(String... keys) throws RedisException {
+        return multiGet(keys, String.class, misses -> delegate.mget(misses), value -> (String) value);
+    }
+
+    public String mset(String... keysvalues) throws RedisException {
+        try {
+            return delegate.mset(keysvalues);
+        } finally {
+            invalidateKeys(keysvalues);
+        }
+    }
+
+    public String msetex(int expire, String... keysvalues) throws RedisException {
+        try {
+            return delegate.msetex(expire, keysvalues);
+        } finally {
+            invalidateKeys(keysvalues);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Map<String, String>> hgetAllMulti(String... keys) throws RedisException {
+        return multiGet(keys, Map.class, misses -> delegate.hgetAllMulti(misses),
+                value -> new HashMap<String, String>((Map<String, String>) value));
+    }
+
+    public List<List<String>> hmgetMulti(List<String> keys, String... fields) throws RedisException {
+        return delegate.hmgetMulti(keys, fields);
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<Set<String>> smembersMulti(String... keys) throws RedisException {
+        return multiGet(keys, Set.class, misses -> delegate.smembersMulti(misses),
+                value -> new HashSet<String>((Set<String>) value));
+    }
+
+    public List<Object> multi(TransactionBlock transactionBlock) {
+        try {
+            return delegate.multi(transactionBlock);
+        } finally {
+            nearCache.invalidateAll();
+        }
+    }
+
+    public void pipelined(PipelineBlock pipelineBlock) throws RedisException {
+        try {
+            delegate.pipelined(pipelineBlock);
+        } finally {
+            nearCache.invalidateAll();
+        }
+    }
+
+    public void pipelined(int batchSize, PipelineBlock pipelineBlock) throws RedisException {
+        try {
+            delegate.pipelined(batchSize, pipelineBlock);
+        } finally {
+            nearCache.invalidateAll();
+        }
+    }
+
+    public Long lpush(String key, String... strings) {
+        return delegate.lpush(key, strings);
+    }
+
+    public Long rpush(String key, String... strings) {
+        return delegate.rpush(key, strings);
+    }
+
+    public String lpop(String key) {
+        return delegate.lpop(key);
+    }
+
+    public String rpop(String key) {
+        return delegate.rpop(key);
+    }
+
+    public List<String> lrange(String key, long start, long end) {
+        return delegate.lrange(key, start, end);
+    }
+
+    public ScanIterator<String> lrangeChunked(String key, int pageSize) {
+        return delegate.lrangeChunked(key, pageSize);
+    }
+
+    public void lrangeChunked(String key, int pageSize, ScanCallback<String> callback) {
+        delegate.lrangeChunked(key, pageSize, callback);
+    }
+
+    public String ltrim(String key, long start, long end) {
+        return delegate.ltrim(key, start, end);
+    }
+
+    public Long llen(String key) {
+        return delegate.llen(key);
+    }
+
+    public String rpoplpush(String srckey, String dstkey) {
+        return delegate.rpoplpush(srckey, dstkey);
+    }
+
+    public Long hincrby(String key, String field, int increment) {
+        try {
+            return delegate.hincrby(key, field, increment);
+        } finally {
+            nearCache.invalidate(key);
+        }
+    }
+
+    @Override
+    public void handleDataChange(String path, String data) {
+        delegate.handleDataChange(path, data);
+        nearCache.invalidateAll();
+        if (invalidator != null) {
+            invalidator.reconnect();
+        }
+    }
+
+    public NearCacheStats getStats() {
+        return nearCache.stats();
+    }
+
+    public NearCache getNearCache() {
+        return nearCache;
+    }
+
+    /**
+     * 把HotKeyDetector报告的热点key提升promotionMillis，期间读这个key使用本地缓存，顺带清理已到期的提升
+     */
+    public void onHotKey(HotKey hotKey) {
+        long now = System.currentTimeMillis();
+        promotedKeys.values().removeIf(until -> until < now);
+        promotedKeys.put(hotKey.getKey(), now + promotionMillis);
+    }
+
+    /**
+     * @return 当前提升到本地缓存的热点key
+     */
+    public Set<String> getPromotedKeys() {
+        return new HashSet<String>(promotedKeys.keySet());
+    }
+
+    private boolean cacheable(String key) {
+        if (!hotKeysOnly) {
+            return true;
+        }
+        Long until = promotedKeys.get(key);
+        if (until == null) {
+            return false;
+        }
+        if (until < System.currentTimeMillis()) {
+            promotedKeys.remove(key, until);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param type   本地缓存中该命令对应的值的类型
+     * @param loader 读取未命中的key，结果与参数顺序一致
+     * @param copy   复制本地缓存中的值再返回
+     */
+    @SuppressWarnings("unchecked")
+    private <T> List<T> multiGet(String[] keys, Class<?> type, Function<String[], List<T>> loader, Function<Object, T> copy) {
+        List<T> values = new ArrayList<T>(keys.length);
+        List<Integer> misses = new ArrayList<Integer>();
+        for (int i = 0; i < keys.length; i++) {
+            Object cached = cacheable(keys[i]) ? nearCache.get(keys[i], type::isInstance) : null;
+            if (type.isInstance(cached)) {
+                values.add(copy.apply(cached));
+            } else {
+                values.add(null);
+                misses.add(i);
+            }
+        }
+        if (!misses.isEmpty()) {
+            String[] missKeys = new String[misses.size()];
+            for (int i = 0; i < missKeys.length; i++) {
+                missKeys[i] = keys[misses.get(i)];
+            }
+            List<T> loaded = loader.apply(missKeys);
+            for (int i = 0; i < missKeys.length; i++) {
+                values.set(misses.get(i), loaded.get(i));
+            }
+        }
+        return values;
+    }
+
+    private void invalidateKeys(String... keysvalues) {
+        for (int i = 0; i < keysvalues.length; i += 2) {
+            nearCache.invalidate(keysvalues[i]);
+        }
+    }
+
+    private <T> T load(String command, String key, Supplier<T> reader, Function<RedisPipeline, Response<T>> queued) {
+        long stamp = nearCache.stamp(key);
+        Loaded<T> loaded = read(command, key, reader, queued, false);
+        if (loaded.value != null) {
+            nearCache.put(key, loaded.value, ttlFor(loaded.pttl), stamp);
+        }
+        return loaded.value;
+    }
+
+    /**
+     * 先读值再读PTTL，两次读之间key过期时PTTL为-2，不会缓存已过期的值
+     *
+     * @param reader     不能使用pipeline时经由delegate读取值
+     * @param queued     在pipeline中排队读取值的命令
+     * @param pttlOfNull 不能使用pipeline时值为null是否仍然读取PTTL
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Loaded<T> read(String command, String key, Supplier<T> reader, Function<RedisPipeline, Response<T>> queued, boolean pttlOfNull) {
+        if (!pipelineLoads()) {
+            T value = reader.get();
+            return new Loaded<T>(value, value != null || pttlOfNull ? delegate.pttl(key) : null);
+        }
+        final List<Response<?>> responses = new ArrayList<Response<?>>(2);
+        delegate.pipelined(pipeline -> {
+            responses.add(queued.apply(pipeline));
+            responses.add(pipeline.pttl(key));
+        });
+        try {
+            return new Loaded<T>((T) responses.get(0).get(), (Long) responses.get(1).get());
+        } catch (JedisException e) {
+            throw new RedisException("execute '" + command + " " + key + "' fail!", e);
+        }
+    }
+
+    /**
+     * pipeline总是发往单个master，配置了副本或有多个master时不使用
+     */
+    private boolean pipelineLoads() {
+        return driver != null && driver.getMasterJedisPool() != null && driver.getReadRouter() == null;
+    }
+
+    /**
+     * @param pttl Redis中key的剩余有效期，-1表示永不过期，-2表示key不存在
+     * @return 本地缓存有效期，key不存在时为0即不缓存
+     */
+    private long ttlFor(Long pttl) {
+        if (pttl == null || pttl == -2) {
+            return 0;
+        }
+        if (pttl == -1) {
+            return ttlMillis;
+        }
+        return Math.min(ttlMillis, pttl);
+    }
+
+    /**
+     * 未命中时读到的值和PTTL
+     */
+    private static final class Loaded<T> {
+
+        final T value;
+        final Long pttl;
+
+        Loaded(T value, Long pttl) {
+            this.value = value;
+            this.pttl = pttl;
+        }
+    }
+
+    //------------------------- setter ----------------------
+
+    public void setDelegate(RedisClient delegate) {
+        this.delegate = delegate;
+    }
+
+    public void setDriver(RedisDriver driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * @param invalidationMode keyspace或tracking，不配置则只依赖本地有效期
+     */
+    public void setInvalidationMode(String invalidationMode) {
+        this.invalidationMode = invalidationMode;
+    }
+
+    /**
+     * @param invalidationPrefixes 逗号分隔的key前缀，只订阅这些前缀的变更
+     */
+    public void setInvalidationPrefixes(String invalidationPrefixes) {
+        this.invalidationPrefixes = invalidationPrefixes;
+    }
+
+    public void setConfigureNotifications(boolean configureNotifications) {
+        this.configureNotifications = configureNotifications;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @param hotKeysOnly 是否只缓存热点key，默认为false，需要把本客户端注册为HotKeyDetector的listener
+     */
+    public void setHotKeysOnly(boolean hotKeysOnly) {
+        this.hotKeysOnly = hotKeysOnly;
+    }
+
+    /**
+     * @param promotionMillis 热点key提升到本地缓存的时长，默认为60秒，再次报告为热点时延长
+     */
+    public void setPromotionMillis(long promotionMillis) {
+        this.promotionMillis = promotionMillis;
+    }
+}
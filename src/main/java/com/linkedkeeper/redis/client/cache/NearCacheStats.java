@@ -0,0 +1,70 @@
+package com.linkedkeeper.redis.client.cache;
+
+/**
+ * 近端缓存统计快照
+ *
+ * @Author: zhangsr
+ */
+public class NearCacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long expirationCount;
+    private final long invalidationCount;
+    private final long size;
+    private final long weight;
+
+    public NearCacheStats(long hitCount, long missCount, long evictionCount, long expirationCount,
+                          long invalidationCount, long size, long weight) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+        this.invalidationCount = invalidationCount;
+        this.size = size;
+        this.weight = weight;
+    }
+
+    public double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 0 : (double) hitCount / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "NearCacheStats{hit=" + hitCount + ", miss=" + missCount + ", eviction=" + evictionCount
+                + ", expiration=" + expirationCount + ", invalidation=" + invalidationCount
+                + ", size=" + size + ", weight=" + weight + "}";
+    }
+
+    //------------------------------ getter --------------------------
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getExpirationCount() {
+        return expirationCount;
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getWeight() {
+        return weight;
+    }
+}
@@ -0,0 +1,317 @@
+package com.linkedkeeper.redis.client.cache;
+
+import com.linkedkeeper.redis.client.RedisClient;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import org.apache.log4j.Logger;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 缓存旁路加载：getOrLoad先读Redis，未命中时调用loader并用setex写回。
+ * value前保存软过期时间和上次加载的耗时，按XFetch（概率性提前重算）在软过期之前就可能触发刷新，
+ * 越接近软过期、加载越慢，触发的概率越大；刷新在后台执行，调用方立即拿到旧值。
+ * 软过期时间按ttlJitter随机提前，避免同时写入的key同时过期；Redis中的key在软过期后再保留staleSeconds，刷新期间仍可读到旧值。
+ * 加载前用SET NX PX取得一个短的锁，多个实例中只有一个调用loader，其余等待它写回的值，锁提前释放或过期时由等待者之一接手加载。
+ * 等待者从10ms开始按指数退避轮询，间隔不超过maxPollMillis，并随机缩短一部分，避免同时等待的实例一起访问Redis。
+ * loader返回null时写入一个短期的空值标记，避免不存在的key每次都穿透到loader
+ *
+ * @Author: zhangsr
+ */
+public class RedisCacheLoader {
+
+    private final static Logger log = Logger.getLogger(RedisCacheLoader.class);
+
+    /**
+     * 本类写入的value以此开头，之后是软过期时间和加载耗时（毫秒），再之后才是原始value
+     */
+    private final static char MARKER = '\u0001';
+    /**
+     * loader返回null时写入的value
+     */
+    private final static String NEGATIVE = "\u0002";
+
+    private RedisClient redisClient;
+    private ExecutorService refreshExecutor = null;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private double beta = 1.0;
+    private double ttlJitter = 0.1;
+    private int staleSeconds = 60;
+    private int negativeSeconds = 5;
+    private long lockMillis = 3000;
+    private long lockWaitMillis = -1;
+    private long maxPollMillis = 200;
+    private String lockSuffix = ":load-lock";
+
+    public void init() {
+        executor();
+    }
+
+    /**
+     * 没有调用init时在第一次刷新时创建线程池
+     */
+    private synchronized ExecutorService executor() {
+        if (refreshExecutor == null) {
+            final AtomicInteger seq = new AtomicInteger();
+            refreshExecutor = Executors.newCachedThreadPool(r -> {
+                Thread thread = new Thread(r, "redis-cache-refresh-" + seq.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return refreshExecutor;
+    }
+
+    public synchronized void destroy() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdown();
+        }
+    }
+
+    /**
+     * @param key
+     * @param ttl    value的有效期（秒），实际按ttlJitter随机缩短
+     * @param loader 未命中或需要刷新时加载value，返回null时在Redis中保留negativeSeconds的空值标记
+     * @return Redis中的value，未命中时为loader的返回值；空值标记未过期时为null
+     * @throws RedisException 读写Redis或loader失败
+     */
+    public String getOrLoad(String key, int ttl, Callable<String> loader) throws RedisException {
+        Entry entry = Entry.parse(redisClient.get(key));
+        if (entry == null) {
+            return loadWithLock(key, ttl, loader);
+        }
+        if (entry.softExpiryMillis > 0 && shouldRefresh(entry, System.currentTimeMillis())) {
+            refreshAsync(key, ttl, loader);
+        }
+        return entry.value;
+    }
+
+    /**
+     * XFetch：now - delta * beta * ln(rand) 超过软过期时间时刷新
+     */
+    boolean shouldRefresh(Entry entry, long now) {
+        double rand = ThreadLocalRandom.current().nextDouble();
+        return now - entry.deltaMillis * beta * Math.log(rand) >= entry.softExpiryMillis;
+    }
+
+    private String loadWithLock(String key, int ttl, Callable<String> loader) throws RedisException {
+        String token = tryLock(key);
+        if (token != null) {
+            try {
+                return load(key, ttl, loader);
+            } finally {
+                unlock(key, token);
+            }
+        }
+        // 其它实例正在加载，等待它写回；它没有写回就释放了锁或锁已过期时，由取得锁的等待者加载
+        long deadline = System.currentTimeMillis() + (lockWaitMillis < 0 ? lockMillis : lockWaitMillis);
+        long poll = 10;
+        long remaining;
+        while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+            try {
+                Thread.sleep(Math.min(poll / 2 + ThreadLocalRandom.current().nextLong(poll / 2 + 1), remaining));
+                poll = Math.min(poll * 2, Math.max(maxPollMillis, 10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            Entry entry = Entry.parse(redisClient.get(key));
+            if (entry != null) {
+                return entry.value;
+            }
+            token = tryLock(key);
+            if (token != null) {
+                try {
+                    return load(key, ttl, loader);
+                } finally {
+                    unlock(key, token);
+                }
+            }
+        }
+        log.warn("wait for loading '" + key + "' timeout, load it directly");
+        return load(key, ttl, loader);
+    }
+
+    private void refreshAsync(String key, int ttl, Callable<String> loader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            String token = tryLock(key);
+            if (token == null) {
+                refreshing.remove(key);
+                return;
+            }
+            try {
+                executor().execute(() -> {
+                    try {
+                        load(key, ttl, loader);
+                    } catch (Exception e) {
+                        log.warn("refresh '" + key + "' fail!", e);
+                    } finally {
+                        unlock(key, token);
+                        refreshing.remove(key);
+                    }
+                });
+            } catch (RuntimeException e) {
+                // 已destroy时线程池拒绝任务，释放锁让其它实例刷新
+                unlock(key, token);
+                throw e;
+            }
+        } catch (RuntimeException e) {
+            refreshing.remove(key);
+            log.warn("refresh '" + key + "' fail!", e);
+        }
+    }
+
+    private String load(String key, int ttl, Callable<String> loader) throws RedisException {
+        long start = System.currentTimeMillis();
+        String value;
+        try {
+            value = loader.call();
+        } catch (Exception e) {
+            throw new RedisException("load '" + key + "' fail!", e);
+        }
+        if (value == null) {
+            if (negativeSeconds > 0) {
+                redisClient.setex(key, negativeSeconds, NEGATIVE);
+            }
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        long ttlMillis = (long) (ttl * 1000L * (1 - ttlJitter * ThreadLocalRandom.current().nextDouble()));
+        int expire = (int) ((ttlMillis + 999) / 1000) + staleSeconds;
+        redisClient.setex(key, expire, new Entry(value, now + ttlMillis, now - start).toString());
+        return value;
+    }
+
+    /**
+     * @return 取得锁时返回锁的token，否则为null
+     */
+    private String tryLock(String key) {
+        String token = UUID.randomUUID().toString();
+        return "OK".equals(redisClient.set(key + lockSuffix, token, "NX", "PX", lockMillis)) ? token : null;
+    }
+
+    /**
+     * 锁仍是自己的才删除。GET和DEL之间锁恰好过期并被其它实例取得的情况忽略不计
+     */
+    private void unlock(String key, String token) {
+        try {
+            if (token.equals(redisClient.get(key + lockSuffix))) {
+                redisClient.del(key + lockSuffix);
+            }
+        } catch (RuntimeException e) {
+            log.warn("unlock '" + key + "' fail, it will expire in " + lockMillis + "ms", e);
+        }
+    }
+
+    static class Entry {
+
+        final String value;
+        final long softExpiryMillis;
+        final long deltaMillis;
+
+        Entry(String value, long softExpiryMillis, long deltaMillis) {
+            this.value = value;
+            this.softExpiryMillis = softExpiryMillis;
+            this.deltaMillis = deltaMillis;
+        }
+
+        /**
+         * @return raw为null时为null，空值标记的value为null；不是本类写入的value按没有软过期时间处理
+         */
+        static Entry parse(String raw) {
+            if (raw == null) {
+                return null;
+            }
+            if (NEGATIVE.equals(raw)) {
+                return new Entry(null, 0, 0);
+            }
+            if (raw.length() > 0 && raw.charAt(0) == MARKER) {
+                int first = raw.indexOf(':');
+                int second = first < 0 ? -1 : raw.indexOf(':', first + 1);
+                if (second > 0) {
+                    try {
+                        return new Entry(raw.substring(second + 1), Long.parseLong(raw.substring(1, first)),
+                                Long.parseLong(raw.substring(first + 1, second)));
+                    } catch (NumberFormatException e) {
+                        // 按普通value处理
+                    }
+                }
+            }
+            return new Entry(raw, 0, 0);
+        }
+
+        @Override
+        public String toString() {
+            return MARKER + String.valueOf(softExpiryMillis) + ':' + deltaMillis + ':' + value;
+        }
+    }
+
+    //------------------------- setter ----------------------
+
+    public void setRedisClient(RedisClient redisClient) {
+        this.redisClient = redisClient;
+    }
+
+    /**
+     * @param beta 大于1时更早刷新，默认为1
+     */
+    public void setBeta(double beta) {
+        this.beta = beta;
+    }
+
+    /**
+     * @param ttlJitter 有效期随机缩短的最大比例，默认为0.1
+     */
+    public void setTtlJitter(double ttlJitter) {
+        this.ttlJitter = ttlJitter;
+    }
+
+    /**
+     * @param staleSeconds 软过期后key在Redis中继续保留的时间，默认为60秒
+     */
+    public void setStaleSeconds(int staleSeconds) {
+        this.staleSeconds = staleSeconds;
+    }
+
+    /**
+     * @param negativeSeconds loader返回null时空值标记的有效期，默认为5秒，为0时不写入
+     */
+    public void setNegativeSeconds(int negativeSeconds) {
+        this.negativeSeconds = negativeSeconds;
+    }
+
+    /**
+     * @param lockMillis 加载锁的有效期，应大于loader的耗时，默认为3秒
+     */
+    public void setLockMillis(long lockMillis) {
+        this.lockMillis = lockMillis;
+    }
+
+    /**
+     * @param lockWaitMillis 未取得锁时等待其它实例写回的最长时间，超时后自己加载，默认为-1，与lockMillis相同
+     */
+    public void setLockWaitMillis(long lockWaitMillis) {
+        this.lockWaitMillis = lockWaitMillis;
+    }
+
+    /**
+     * @param maxPollMillis 等待其它实例写回时轮询间隔的上限，默认为200毫秒
+     */
+    public void setMaxPollMillis(long maxPollMillis) {
+        this.maxPollMillis = maxPollMillis;
+    }
+
+    public void setLockSuffix(String lockSuffix) {
+        this.lockSuffix = lockSuffix;
+    }
+}
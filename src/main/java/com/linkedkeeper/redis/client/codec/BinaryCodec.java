@@ -0,0 +1,26 @@
+package com.linkedkeeper.redis.client.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 紧凑的二进制编码：按固定顺序写入字段，不带字段名，整数为变长编码。
+ * 子类实现write和read，新增字段时只追加在末尾，read中用in.remaining()判断旧的value是否带有该字段
+ *
+ * @Author: zhangsr
+ */
+public abstract class BinaryCodec<T> implements Codec<T> {
+
+    public byte[] encode(T value) throws Exception {
+        BinaryOutput out = new BinaryOutput();
+        write(value, out);
+        return out.toByteArray();
+    }
+
+    public T decode(ByteBuffer bytes) throws Exception {
+        return read(new BinaryInput(bytes));
+    }
+
+    protected abstract void write(T value, BinaryOutput out) throws Exception;
+
+    protected abstract T read(BinaryInput in) throws Exception;
+}
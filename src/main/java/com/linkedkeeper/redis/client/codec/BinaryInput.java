@@ -0,0 +1,100 @@
+package com.linkedkeeper.redis.client.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * BinaryCodec的读取端，与BinaryOutput的写入顺序一致
+ *
+ * @Author: zhangsr
+ */
+public class BinaryInput {
+
+    private final ByteBuffer buffer;
+
+    public BinaryInput(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public byte readByte() {
+        return buffer.get();
+    }
+
+    public boolean readBoolean() {
+        return buffer.get() != 0;
+    }
+
+    public int readInt() {
+        long value = readVarLong();
+        return (int) ((value >>> 1) ^ -(value & 1));
+    }
+
+    public long readLong() {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public float readFloat() {
+        return Float.intBitsToFloat((int) readFixed(4));
+    }
+
+    public double readDouble() {
+        return Double.longBitsToDouble(readFixed(8));
+    }
+
+    public String readString() {
+        int length = readLength();
+        if (length < 0) {
+            return null;
+        }
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return StandardCharsets.UTF_8.decode(slice).toString();
+    }
+
+    public byte[] readBytes() {
+        int length = readLength();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return value;
+    }
+
+    public long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("malformed varint");
+    }
+
+    /**
+     * @return 未读的字节数
+     */
+    public int remaining() {
+        return buffer.remaining();
+    }
+
+    private int readLength() {
+        long length = readVarLong() - 1;
+        if (length > buffer.remaining()) {
+            throw new IllegalStateException("length " + length + " exceeds remaining " + buffer.remaining());
+        }
+        return (int) length;
+    }
+
+    private long readFixed(int bytes) {
+        long value = 0;
+        for (int i = 0; i < bytes; i++) {
+            value |= (long) (buffer.get() & 0xff) << (i * 8);
+        }
+        return value;
+    }
+}
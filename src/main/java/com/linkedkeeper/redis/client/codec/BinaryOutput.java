@@ -0,0 +1,96 @@
+package com.linkedkeeper.redis.client.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * BinaryCodec的写入端：整数为zigzag变长编码，字符串和字节数组以变长的长度开头，null的长度为0
+ *
+ * @Author: zhangsr
+ */
+public class BinaryOutput {
+
+    private byte[] buffer;
+    private int size = 0;
+
+    public BinaryOutput() {
+        this(64);
+    }
+
+    public BinaryOutput(int capacity) {
+        this.buffer = new byte[Math.max(16, capacity)];
+    }
+
+    public void writeByte(int value) {
+        ensure(1);
+        buffer[size++] = (byte) value;
+    }
+
+    public void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    public void writeInt(int value) {
+        writeVarLong(((long) value << 1) ^ (value >> 31));
+    }
+
+    public void writeLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    public void writeFloat(float value) {
+        writeFixed(Float.floatToIntBits(value) & 0xffffffffL, 4);
+    }
+
+    public void writeDouble(double value) {
+        writeFixed(Double.doubleToLongBits(value), 8);
+    }
+
+    public void writeString(String value) {
+        writeBytes(value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void writeBytes(byte[] value) {
+        if (value == null) {
+            writeVarLong(0);
+            return;
+        }
+        writeVarLong(value.length + 1L);
+        ensure(value.length);
+        System.arraycopy(value, 0, buffer, size, value.length);
+        size += value.length;
+    }
+
+    /**
+     * 无符号变长编码，每字节7位
+     */
+    public void writeVarLong(long value) {
+        ensure(10);
+        while ((value & ~0x7fL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+    }
+
+    private void writeFixed(long value, int bytes) {
+        ensure(bytes);
+        for (int i = 0; i < bytes; i++) {
+            buffer[size++] = (byte) (value >>> (i * 8));
+        }
+    }
+
+    private void ensure(int bytes) {
+        if (size + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + bytes));
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+}
@@ -0,0 +1,21 @@
+package com.linkedkeeper.redis.client.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 对象与Redis中二进制value之间的转换
+ *
+ * @Author: zhangsr
+ */
+public interface Codec<T> {
+
+    /**
+     * @param value 不为null
+     */
+    byte[] encode(T value) throws Exception;
+
+    /**
+     * @param bytes 只读，只在decode期间有效，需要保留的数据应复制出来
+     */
+    T decode(ByteBuffer bytes) throws Exception;
+}
@@ -0,0 +1,112 @@
+package com.linkedkeeper.redis.client.codec;
+
+import com.linkedkeeper.redis.client.BinaryRedisClient;
+import com.linkedkeeper.redis.client.exception.RedisException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 在BinaryRedisClient上按Codec读写对象，key和field为UTF-8字符串。
+ * 解码（包括解压）都在调用线程中进行：NIO引擎上ValueReader在事件循环线程中执行，在其中解码会阻塞同一引擎上的所有连接
+ *
+ * @Author: zhangsr
+ */
+public class CodecRedisClient {
+
+    private BinaryRedisClient delegate;
+
+    public <T> T get(String key, Codec<T> codec) throws RedisException {
+        return decode("get", key, delegate.get(bytes(key)), codec);
+    }
+
+    public <T> String set(String key, T value, Codec<T> codec) throws RedisException {
+        return delegate.set(bytes(key), encode("set", key, value, codec));
+    }
+
+    public <T> String setex(String key, int expire, T value, Codec<T> codec) throws RedisException {
+        return delegate.setex(bytes(key), expire, encode("setex", key, value, codec));
+    }
+
+    public <T> T hget(String key, String field, Codec<T> codec) throws RedisException {
+        return decode("hget", key, delegate.hget(bytes(key), bytes(field)), codec);
+    }
+
+    public <T> Long hset(String key, String field, T value, Codec<T> codec) throws RedisException {
+        return delegate.hset(bytes(key), bytes(field), encode("hset", key, value, codec));
+    }
+
+    public <T> Long hsetnx(String key, String field, T value, Codec<T> codec) throws RedisException {
+        return delegate.hsetnx(bytes(key), bytes(field), encode("hsetnx", key, value, codec));
+    }
+
+    public <T> String hmset(String key, Map<String, T> hash, Codec<T> codec) throws RedisException {
+        Map<byte[], byte[]> encoded = new HashMap<byte[], byte[]>();
+        for (Map.Entry<String, T> entry : hash.entrySet()) {
+            encoded.put(bytes(entry.getKey()), encode("hmset", key, entry.getValue(), codec));
+        }
+        return delegate.hmset(bytes(key), encoded);
+    }
+
+    /**
+     * @return 与fields顺序一致，不存在的field为null
+     */
+    public <T> List<T> hmget(String key, Codec<T> codec, String... fields) throws RedisException {
+        byte[][] encoded = new byte[fields.length][];
+        for (int i = 0; i < fields.length; i++) {
+            encoded[i] = bytes(fields[i]);
+        }
+        List<byte[]> values = delegate.hmget(bytes(key), encoded);
+        List<T> decoded = new ArrayList<T>(values.size());
+        for (byte[] value : values) {
+            decoded.add(decode("hmget", key, value, codec));
+        }
+        return decoded;
+    }
+
+    public <T> Map<String, T> hgetAll(String key, Codec<T> codec) throws RedisException {
+        Map<byte[], byte[]> hash = delegate.hgetAll(bytes(key));
+        Map<String, T> decoded = new LinkedHashMap<String, T>(hash.size() * 4 / 3 + 1);
+        for (Map.Entry<byte[], byte[]> entry : hash.entrySet()) {
+            decoded.put(new String(entry.getKey(), StandardCharsets.UTF_8), decode("hgetAll", key, entry.getValue(), codec));
+        }
+        return decoded;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static <T> byte[] encode(String command, String key, T value, Codec<T> codec) throws RedisException {
+        if (value == null) {
+            throw new RedisException("encode '" + command + " " + key + "' fail! value is null");
+        }
+        try {
+            return codec.encode(value);
+        } catch (Exception e) {
+            throw new RedisException("encode '" + command + " " + key + "' fail!", e);
+        }
+    }
+
+    private static <T> T decode(String command, String key, byte[] value, Codec<T> codec) throws RedisException {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return codec.decode(ByteBuffer.wrap(value));
+        } catch (Exception e) {
+            throw new RedisException("decode '" + command + " " + key + "' fail!", e);
+        }
+    }
+
+    //------------------------- setter ----------------------
+
+    public void setDelegate(BinaryRedisClient delegate) {
+        this.delegate = delegate;
+    }
+}
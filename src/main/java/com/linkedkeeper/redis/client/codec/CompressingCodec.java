@@ -0,0 +1,191 @@
+package com.linkedkeeper.redis.client.codec;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 在codec的结果前加一个头字节：编码后不小于threshold字节且压缩后更小时用Deflater压缩（头字节DEFLATE，
+ * 之后是变长编码的原始长度），否则原样保存（头字节RAW）。
+ * 头字节不是RAW或DEFLATE的value是引入本codec之前写入的（如JSON字符串），交给legacyCodec解码，新旧value可以共存。
+ * 解压前检查value中记录的原始长度不超过maxLength，损坏或恶意的value不会触发超大的分配。
+ * Deflater和Inflater最多缓存POOL_SIZE个复用，多出的用完即end()，destroy时释放缓存的zlib内存
+ *
+ * @Author: zhangsr
+ */
+public class CompressingCodec<T> implements Codec<T> {
+
+    public final static byte RAW = 0;
+    public final static byte DEFLATE = 1;
+
+    public final static int DEFAULT_THRESHOLD = 512;
+    public final static int DEFAULT_MAX_LENGTH = 64 * 1024 * 1024;
+
+    private final static int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final Codec<T> codec;
+    private final Codec<T> legacyCodec;
+    private final int threshold;
+    private final int level;
+    private final int maxLength;
+
+    private final Queue<Deflater> deflaters = new ArrayBlockingQueue<Deflater>(POOL_SIZE);
+    private final Queue<Inflater> inflaters = new ArrayBlockingQueue<Inflater>(POOL_SIZE);
+
+    public CompressingCodec(Codec<T> codec) {
+        this(codec, DEFAULT_THRESHOLD, codec);
+    }
+
+    /**
+     * @param codec
+     * @param threshold   编码后达到这一长度才尝试压缩
+     * @param legacyCodec 解码没有头字节的旧value
+     */
+    public CompressingCodec(Codec<T> codec, int threshold, Codec<T> legacyCodec) {
+        this(codec, threshold, legacyCodec, Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param level Deflater的压缩级别，默认为BEST_SPEED
+     */
+    public CompressingCodec(Codec<T> codec, int threshold, Codec<T> legacyCodec, int level) {
+        this(codec, threshold, legacyCodec, level, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * @param maxLength 解压后允许的最大长度，默认为64MB
+     */
+    public CompressingCodec(Codec<T> codec, int threshold, Codec<T> legacyCodec, int level, int maxLength) {
+        this.codec = codec;
+        this.legacyCodec = legacyCodec;
+        this.threshold = threshold;
+        this.level = level;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * 释放缓存的Deflater和Inflater，之后仍可使用，只是不再复用
+     */
+    public void destroy() {
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            deflater.end();
+        }
+        Inflater inflater;
+        while ((inflater = inflaters.poll()) != null) {
+            inflater.end();
+        }
+    }
+
+    public byte[] encode(T value) throws Exception {
+        byte[] raw = codec.encode(value);
+        if (raw.length >= threshold) {
+            byte[] compressed = deflate(raw);
+            if (compressed != null) {
+                return compressed;
+            }
+        }
+        byte[] bytes = new byte[raw.length + 1];
+        bytes[0] = RAW;
+        System.arraycopy(raw, 0, bytes, 1, raw.length);
+        return bytes;
+    }
+
+    public T decode(ByteBuffer bytes) throws Exception {
+        if (!bytes.hasRemaining()) {
+            return legacyCodec.decode(bytes);
+        }
+        byte header = bytes.get(bytes.position());
+        if (header == RAW) {
+            ByteBuffer raw = bytes.slice();
+            raw.position(1);
+            return codec.decode(raw.slice());
+        }
+        if (header == DEFLATE) {
+            bytes.get();
+            long length = new BinaryInput(bytes).readVarLong();
+            if (length < 0 || length > maxLength) {
+                throw new DataFormatException("inflated length " + length + " exceeds " + maxLength);
+            }
+            return codec.decode(ByteBuffer.wrap(inflate(bytes, (int) length)));
+        }
+        return legacyCodec.decode(bytes);
+    }
+
+    /**
+     * @return 压缩后不比原来小时为null
+     */
+    private byte[] deflate(byte[] raw) {
+        BinaryOutput header = new BinaryOutput(16);
+        header.writeByte(DEFLATE);
+        header.writeVarLong(raw.length);
+        int offset = header.size();
+        // 输出缓冲区放不下说明压缩后不会更小
+        byte[] out = new byte[raw.length];
+        System.arraycopy(header.toByteArray(), 0, out, 0, offset);
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level);
+        }
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            int length = offset;
+            while (!deflater.finished() && length < out.length) {
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            if (!deflater.finished()) {
+                return null;
+            }
+            byte[] compressed = new byte[length];
+            System.arraycopy(out, 0, compressed, 0, length);
+            return compressed;
+        } finally {
+            deflater.reset();
+            if (!deflaters.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    private byte[] inflate(ByteBuffer bytes, int length) throws DataFormatException {
+        byte[] input;
+        int offset;
+        if (bytes.hasArray()) {
+            input = bytes.array();
+            offset = bytes.arrayOffset() + bytes.position();
+        } else {
+            input = new byte[bytes.remaining()];
+            bytes.duplicate().get(input);
+            offset = 0;
+        }
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+        try {
+            inflater.setInput(input, offset, bytes.remaining());
+            byte[] raw = new byte[length];
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                int n = inflater.inflate(raw, read, length - read);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += n;
+            }
+            if (read != length) {
+                throw new DataFormatException("inflated " + read + " bytes, expected " + length);
+            }
+            return raw;
+        } finally {
+            inflater.reset();
+            if (!inflaters.offer(inflater)) {
+                inflater.end();
+            }
+        }
+    }
+}
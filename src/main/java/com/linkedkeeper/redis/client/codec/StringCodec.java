@@ -0,0 +1,20 @@
+package com.linkedkeeper.redis.client.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UTF-8字符串，与RedisClient写入的value相同
+ *
+ * @Author: zhangsr
+ */
+public class StringCodec implements Codec<String> {
+
+    public byte[] encode(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public String decode(ByteBuffer bytes) {
+        return StandardCharsets.UTF_8.decode(bytes).toString();
+    }
+}
@@ -0,0 +1,97 @@
+package com.linkedkeeper.redis.client.config;
+
+/**
+ * 每个节点的熔断配置
+ *
+ * @Author: zhangsr
+ */
+public class CircuitBreakerConfig {
+
+    /**
+     * 默认关闭，开启后节点熔断期间的调用直接抛出RedisCircuitOpenException
+     */
+    private boolean enabled = false;
+
+    /**
+     * 按最近windowSize次调用计算失败率和慢调用率，不足minimumCalls次时不熔断
+     */
+    private int windowSize = 100;
+    private int minimumCalls = 20;
+
+    private double failureRateThreshold = 0.5;
+    private long slowCallMillis = 1000;
+    private double slowCallRateThreshold = 0.8;
+
+    /**
+     * 熔断openMillis后放行halfOpenProbes个探测请求，全部成功才恢复
+     */
+    private long openMillis = 2000;
+    private int halfOpenProbes = 3;
+
+    //--------------------------- setter && getter ----------------------
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+    }
+
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public void setFailureRateThreshold(double failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    public long getSlowCallMillis() {
+        return slowCallMillis;
+    }
+
+    public void setSlowCallMillis(long slowCallMillis) {
+        this.slowCallMillis = slowCallMillis;
+    }
+
+    public double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public void setSlowCallRateThreshold(double slowCallRateThreshold) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    public long getOpenMillis() {
+        return openMillis;
+    }
+
+    public void setOpenMillis(long openMillis) {
+        this.openMillis = openMillis;
+    }
+
+    public int getHalfOpenProbes() {
+        return halfOpenProbes;
+    }
+
+    public void setHalfOpenProbes(int halfOpenProbes) {
+        this.halfOpenProbes = halfOpenProbes;
+    }
+
+}
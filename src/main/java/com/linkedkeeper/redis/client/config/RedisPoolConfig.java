@@ -9,9 +9,35 @@ public class RedisPoolConfig extends GenericObjectPoolConfig {
 
     private String masterConfString = null;
 
+    /**
+     * 只读副本，多个host:port以逗号分隔
+     */
+    private String replicaConfString = null;
+
     private int database = 0;
 
+    /**
+     * init时并行建立每个节点的minIdle个连接
+     */
+    private boolean warmUp = true;
+    private long warmUpTimeoutMillis = 5000;
+
+    /**
+     * 按借出等待时间和使用率定期调整每个节点的maxTotal
+     */
+    private boolean adaptive = false;
+    private long adaptiveIntervalMillis = 5000;
+    private int adaptiveMinTotal = 8;
+    private int adaptiveMaxTotal = 1000;
+    private long targetBorrowWaitMillis = 5;
+    private double lowUtilization = 0.3;
+    private double highUtilization = 0.8;
+
     public RedisPoolConfig() {
+        setMaxTotal(300);
+        setMaxIdle(200);
+        setTestOnBorrow(false);
+        setTestOnReturn(false);
         setTestWhileIdle(true);
         setMinEvictableIdleTimeMillis(60000);
         setTimeBetweenEvictionRunsMillis(30000);
@@ -28,6 +54,14 @@ public class RedisPoolConfig extends GenericObjectPoolConfig {
         this.masterConfString = masterConfString;
     }
 
+    public String getReplicaConfString() {
+        return replicaConfString;
+    }
+
+    public void setReplicaConfString(String replicaConfString) {
+        this.replicaConfString = replicaConfString;
+    }
+
     public int getDatabase() {
         return database;
     }
@@ -36,4 +70,76 @@ public class RedisPoolConfig extends GenericObjectPoolConfig {
         this.database = database;
     }
 
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
+    public void setWarmUp(boolean warmUp) {
+        this.warmUp = warmUp;
+    }
+
+    public long getWarmUpTimeoutMillis() {
+        return warmUpTimeoutMillis;
+    }
+
+    public void setWarmUpTimeoutMillis(long warmUpTimeoutMillis) {
+        this.warmUpTimeoutMillis = warmUpTimeoutMillis;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public long getAdaptiveIntervalMillis() {
+        return adaptiveIntervalMillis;
+    }
+
+    public void setAdaptiveIntervalMillis(long adaptiveIntervalMillis) {
+        this.adaptiveIntervalMillis = adaptiveIntervalMillis;
+    }
+
+    public int getAdaptiveMinTotal() {
+        return adaptiveMinTotal;
+    }
+
+    public void setAdaptiveMinTotal(int adaptiveMinTotal) {
+        this.adaptiveMinTotal = adaptiveMinTotal;
+    }
+
+    public int getAdaptiveMaxTotal() {
+        return adaptiveMaxTotal;
+    }
+
+    public void setAdaptiveMaxTotal(int adaptiveMaxTotal) {
+        this.adaptiveMaxTotal = adaptiveMaxTotal;
+    }
+
+    public long getTargetBorrowWaitMillis() {
+        return targetBorrowWaitMillis;
+    }
+
+    public void setTargetBorrowWaitMillis(long targetBorrowWaitMillis) {
+        this.targetBorrowWaitMillis = targetBorrowWaitMillis;
+    }
+
+    public double getLowUtilization() {
+        return lowUtilization;
+    }
+
+    public void setLowUtilization(double lowUtilization) {
+        this.lowUtilization = lowUtilization;
+    }
+
+    public double getHighUtilization() {
+        return highUtilization;
+    }
+
+    public void setHighUtilization(double highUtilization) {
+        this.highUtilization = highUtilization;
+    }
+
 }
@@ -0,0 +1,317 @@
+package com.linkedkeeper.redis.client.counter;
+
+import com.linkedkeeper.redis.client.RedisClient;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import com.linkedkeeper.redis.client.pipeline.RedisPipeline;
+import org.apache.log4j.Logger;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 计数器的本地聚合：incr、decrBy和hincrby先累加在本地每个key（或key和field）的StripedCounter里，
+ * 每隔flushIntervalMillis，或者待写出的key达到maxPendingKeys时，以一次pipeline的INCRBY和HINCRBY写入Redis。
+ * 本地累加最多延迟flushIntervalMillis（加上一次写出的时间）到达Redis；写出失败时增量加回本地下次重试。
+ * pipeline在执行到一半时断开的话，已经读到回复的批次不再加回，只有最后一批已经发出、没有读到回复的命令可能已经生效又被加回，
+ * 这部分增量会被重复计入，即至少一次。命令本身的错误（如WRONGTYPE）重试也不会成功，记录日志后丢弃。
+ * 设置了driver时在driver.destroy()关闭连接之前写出剩余的增量；driver有多个master时不能使用pipeline，逐条写出
+ *
+ * @Author: zhangsr
+ */
+public class CounterAccumulator {
+
+    private final static Logger log = Logger.getLogger(CounterAccumulator.class);
+
+    private RedisClient redisClient;
+    private RedisDriver driver;
+
+    private final ConcurrentMap<CounterKey, StripedCounter> counters = new ConcurrentHashMap<CounterKey, StripedCounter>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final Object flushLock = new Object();
+    private final Runnable destroyHook = this::flush;
+    private ScheduledExecutorService flusher = null;
+
+    private long flushIntervalMillis = 1000;
+    private int maxPendingKeys = 10000;
+    private int stripes = Math.min(8, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    public void init() {
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-counter-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        if (driver != null) {
+            driver.addDestroyHook(destroyHook);
+        }
+    }
+
+    /**
+     * 停止定时写出并写出剩余的增量
+     */
+    public void destroy() {
+        if (driver != null) {
+            driver.removeDestroyHook(destroyHook);
+        }
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+        if (!counters.isEmpty()) {
+            log.error("destroy with " + counters.size() + " counters not written to redis");
+        }
+    }
+
+    public void incr(String key) {
+        add(new CounterKey(key, null), 1);
+    }
+
+    public void incrBy(String key, long delta) {
+        add(new CounterKey(key, null), delta);
+    }
+
+    public void decrBy(String key, long delta) {
+        add(new CounterKey(key, null), -delta);
+    }
+
+    public void hincrby(String key, String field, long delta) {
+        add(new CounterKey(key, field), delta);
+    }
+
+    private void add(CounterKey key, long delta) {
+        for (; ; ) {
+            StripedCounter counter = counters.get(key);
+            if (counter == null) {
+                StripedCounter created = new StripedCounter(stripes);
+                counter = counters.putIfAbsent(key, created);
+                if (counter == null) {
+                    counter = created;
+                    // flush失败后加回时不再触发flush
+                    if (counters.size() >= maxPendingKeys && !Thread.holdsLock(flushLock)) {
+                        requestFlush();
+                    }
+                }
+            }
+            if (counter.add(delta)) {
+                return;
+            }
+            // flush正在回收这个计数器
+            counters.remove(key, counter);
+        }
+    }
+
+    private void requestFlush() {
+        if (flusher != null && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flush);
+            } catch (Exception e) {
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * 立即写出所有本地累加的增量。上次写出之后没有再变化的计数器被回收
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            flushRequested.set(false);
+            List<Delta> deltas = new ArrayList<Delta>();
+            for (Map.Entry<CounterKey, StripedCounter> entry : counters.entrySet()) {
+                long delta = entry.getValue().drain();
+                if (delta == 0) {
+                    delta = entry.getValue().close();
+                    counters.remove(entry.getKey(), entry.getValue());
+                }
+                if (delta != 0) {
+                    deltas.add(new Delta(entry.getKey(), delta));
+                }
+            }
+            if (deltas.isEmpty()) {
+                return;
+            }
+            try {
+                if (driver == null || driver.getMasterJedisPool() != null) {
+                    writePipelined(deltas);
+                } else {
+                    writeEach(deltas);
+                }
+            } catch (Exception e) {
+                log.error("flush " + deltas.size() + " counters fail, retry in next flush", e);
+                for (Delta delta : deltas) {
+                    add(delta.key, delta.value);
+                }
+            }
+        }
+    }
+
+    /**
+     * 失败时只把还没有读到回复的命令加回本地
+     */
+    private void writePipelined(List<Delta> deltas) {
+        List<Response<Long>> responses = new ArrayList<Response<Long>>(deltas.size());
+        RedisPipeline[] used = new RedisPipeline[1];
+        int synced = deltas.size();
+        try {
+            redisClient.pipelined(pipeline -> {
+                used[0] = pipeline;
+                for (Delta delta : deltas) {
+                    responses.add(delta.key.field == null ? pipeline.incrBy(delta.key.key, delta.value)
+                            : pipeline.hincrby(delta.key.key, delta.key.field, delta.value));
+                }
+            });
+        } catch (RuntimeException e) {
+            synced = used[0] == null ? 0 : used[0].getSynced();
+            log.error("flush " + (deltas.size() - synced) + " counters fail, retry in next flush", e);
+            for (int i = synced; i < deltas.size(); i++) {
+                add(deltas.get(i).key, deltas.get(i).value);
+            }
+        }
+        for (int i = 0; i < synced; i++) {
+            try {
+                responses.get(i).get();
+            } catch (JedisDataException e) {
+                log.error("flush " + deltas.get(i) + " fail, dropped", e);
+            }
+        }
+    }
+
+    /**
+     * 逐条写出，只把失败的那一条加回本地
+     */
+    private void writeEach(List<Delta> deltas) {
+        RedisException failure = null;
+        for (Delta delta : deltas) {
+            long remaining = delta.value;
+            try {
+                if (delta.key.field == null) {
+                    redisClient.incrBy(delta.key.key, remaining);
+                    remaining = 0;
+                }
+                // RedisClient.hincrby的增量为int
+                while (remaining != 0) {
+                    int step = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, remaining));
+                    redisClient.hincrby(delta.key.key, delta.key.field, step);
+                    remaining -= step;
+                }
+            } catch (RedisException e) {
+                if (isDataError(e)) {
+                    log.error("flush " + delta + " fail, dropped", e);
+                } else {
+                    add(delta.key, remaining);
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            log.error("flush counters fail, retry in next flush", failure);
+        }
+    }
+
+    private static boolean isDataError(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof JedisDataException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return 本地还没有写出的计数器个数
+     */
+    public int getPendingKeys() {
+        return counters.size();
+    }
+
+    private static final class CounterKey {
+
+        final String key;
+        final String field;
+
+        CounterKey(String key, String field) {
+            this.key = key;
+            this.field = field;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CounterKey)) {
+                return false;
+            }
+            CounterKey other = (CounterKey) o;
+            return key.equals(other.key) && (field == null ? other.field == null : field.equals(other.field));
+        }
+
+        @Override
+        public int hashCode() {
+            return key.hashCode() * 31 + (field == null ? 0 : field.hashCode());
+        }
+    }
+
+    private static final class Delta {
+
+        final CounterKey key;
+        final long value;
+
+        Delta(CounterKey key, long value) {
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return "'" + key.key + (key.field == null ? "" : " " + key.field) + "' += " + value;
+        }
+    }
+
+    //------------------------- setter ----------------------
+
+    public void setRedisClient(RedisClient redisClient) {
+        this.redisClient = redisClient;
+    }
+
+    /**
+     * @param driver 设置后在driver.destroy()时写出剩余的增量，并据此判断能否使用pipeline
+     */
+    public void setDriver(RedisDriver driver) {
+        this.driver = driver;
+    }
+
+    /**
+     * @param flushIntervalMillis 定时写出的间隔，即本地累加的最大延迟，默认为1秒
+     */
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    /**
+     * @param maxPendingKeys 待写出的计数器达到这一个数时提前写出，默认为10000
+     */
+    public void setMaxPendingKeys(int maxPendingKeys) {
+        this.maxPendingKeys = maxPendingKeys;
+    }
+
+    /**
+     * @param stripes 每个计数器的槽数，向上取2的幂，默认为不小于CPU数的2的幂，最多8
+     */
+    public void setStripes(int stripes) {
+        this.stripes = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+    }
+}
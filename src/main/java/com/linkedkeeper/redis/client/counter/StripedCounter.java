@@ -0,0 +1,71 @@
+package com.linkedkeeper.redis.client.counter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按线程分散到多个槽上累加，每个槽独占一个缓存行。与LongAdder不同，drain逐槽getAndSet(0)，
+ * 与之并发的累加要么被本次取走，要么留给下一次，不会丢失。
+ * close后add返回false，调用方应改用新的计数器
+ *
+ * @Author: zhangsr
+ */
+final class StripedCounter {
+
+    /**
+     * 每个槽占8个long即64字节
+     */
+    private final static int PADDING = 8;
+    private final static long CLOSED = Long.MIN_VALUE;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    /**
+     * @param stripes 槽的个数，为2的幂
+     */
+    StripedCounter(int stripes) {
+        this.cells = new AtomicLongArray(stripes * PADDING);
+        this.mask = stripes - 1;
+    }
+
+    /**
+     * @return 计数器已关闭时为false
+     */
+    boolean add(long delta) {
+        long id = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+        int index = ((int) (id >>> 32) & mask) * PADDING;
+        for (; ; ) {
+            long value = cells.get(index);
+            if (value == CLOSED) {
+                return false;
+            }
+            if (cells.compareAndSet(index, value, value + delta)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 取走累加的值，只由flush线程调用
+     */
+    long drain() {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += PADDING) {
+            sum += cells.getAndSet(i, 0);
+        }
+        return sum;
+    }
+
+    /**
+     * 关闭计数器，只由flush线程调用。之后的add返回false
+     *
+     * @return 关闭前还没有取走的值
+     */
+    long close() {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += PADDING) {
+            sum += cells.getAndSet(i, CLOSED);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,179 @@
+package com.linkedkeeper.redis.client.driver;
+
+import com.linkedkeeper.redis.client.config.CircuitBreakerConfig;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个节点的熔断器：按最近windowSize次调用的失败率和慢调用率熔断，熔断期间直接拒绝，
+ * openMillis后放行少量探测请求，全部成功后恢复，任一失败或变慢则重新熔断。
+ * CLOSED状态下记录调用不加锁：每次调用按序号占用窗口中的一格，只有失败、慢调用或挤出这类结果时才更新计数，
+ * 只有状态切换和HALF_OPEN期间的探测持有锁。调用结果按放行时的许可计入：CLOSED时放行的调用在熔断后结束时丢弃，
+ * 只有HALF_OPEN放行的探测请求决定是否恢复
+ *
+ * @Author: zhangsr
+ */
+public class CircuitBreaker {
+
+    private final static Logger log = Logger.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * tryAcquire的结果：REJECTED拒绝，CALL为CLOSED时放行的普通调用，PROBE为HALF_OPEN时放行的探测请求
+     */
+    public enum Permit {
+        REJECTED, CALL, PROBE
+    }
+
+    private final static int FAILURE = 1;
+    private final static int SLOW = 2;
+
+    private final String name;
+    private final CircuitBreakerConfig config;
+
+    private volatile Window window;
+
+    private volatile State state = State.CLOSED;
+    private long openedNanos = 0;
+    private int probes = 0;
+    private int probeSuccesses = 0;
+
+    public CircuitBreaker(String name, CircuitBreakerConfig config) {
+        this.name = name;
+        this.config = config;
+        this.window = new Window(Math.max(1, config.getWindowSize()));
+    }
+
+    /**
+     * @return 是否允许发出这次调用，允许时调用结束后必须带着这个许可调用onSuccess或onFailure
+     */
+    public Permit tryAcquire() {
+        if (state == State.CLOSED) {
+            return Permit.CALL;
+        }
+        synchronized (this) {
+            if (state == State.OPEN) {
+                if (System.nanoTime() - openedNanos < config.getOpenMillis() * 1000000L) {
+                    return Permit.REJECTED;
+                }
+                state = State.HALF_OPEN;
+                probes = 0;
+                probeSuccesses = 0;
+                log.info(name + " circuit half-open");
+            }
+            if (state == State.HALF_OPEN) {
+                if (probes >= config.getHalfOpenProbes()) {
+                    return Permit.REJECTED;
+                }
+                probes++;
+                return Permit.PROBE;
+            }
+            return Permit.CALL;
+        }
+    }
+
+    public void onSuccess(Permit permit, long elapsedNanos) {
+        record(permit, false, elapsedNanos);
+    }
+
+    /**
+     * 连接失败、借连接或读回复超时，命令本身的错误（如WRONGTYPE）算作成功
+     */
+    public void onFailure(Permit permit, long elapsedNanos) {
+        record(permit, true, elapsedNanos);
+    }
+
+    private void record(Permit permit, boolean failure, long elapsedNanos) {
+        boolean slow = elapsedNanos >= config.getSlowCallMillis() * 1000000L;
+        if (permit == Permit.PROBE) {
+            probe(failure, slow);
+            return;
+        }
+        if (permit != Permit.CALL || state != State.CLOSED) {
+            return;
+        }
+        Window closed = window;
+        int outcome = (failure ? FAILURE : 0) | (slow ? SLOW : 0);
+        int calls = closed.record(outcome);
+        if (outcome == 0 || calls < config.getMinimumCalls()) {
+            return;
+        }
+        int failures = closed.failures.get();
+        int slowCalls = closed.slowCalls.get();
+        if (failures >= config.getFailureRateThreshold() * calls) {
+            open(closed, "failure rate " + failures + "/" + calls);
+        } else if (slowCalls >= config.getSlowCallRateThreshold() * calls) {
+            open(closed, "slow call rate " + slowCalls + "/" + calls);
+        }
+    }
+
+    private synchronized void probe(boolean failure, boolean slow) {
+        if (state != State.HALF_OPEN) {
+            return;
+        }
+        if (failure || slow) {
+            open(null, "probe " + (failure ? "failed" : "slow"));
+        } else if (++probeSuccesses >= config.getHalfOpenProbes()) {
+            window = new Window(window.outcomes.length());
+            state = State.CLOSED;
+            log.info(name + " circuit closed");
+        }
+    }
+
+    /**
+     * @param closed 触发熔断的窗口，已被其它线程熔断并换成新窗口时忽略；为null时用于HALF_OPEN
+     */
+    private synchronized void open(Window closed, String reason) {
+        if (closed != null && (state != State.CLOSED || window != closed)) {
+            return;
+        }
+        window = new Window(window.outcomes.length());
+        state = State.OPEN;
+        openedNanos = System.nanoTime();
+        log.warn(name + " circuit open for " + config.getOpenMillis() + "ms, " + reason);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * 最近size次调用的结果，熔断或恢复时整体换新，不在原地清空
+     */
+    private static final class Window {
+
+        final AtomicLong sequence = new AtomicLong();
+        final AtomicIntegerArray outcomes;
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger slowCalls = new AtomicInteger();
+
+        Window(int size) {
+            this.outcomes = new AtomicIntegerArray(size);
+        }
+
+        /**
+         * @return 窗口内的调用次数
+         */
+        int record(int outcome) {
+            long seq = sequence.getAndIncrement();
+            int size = outcomes.length();
+            int index = (int) (seq % size);
+            int evicted = outcome == 0 && outcomes.get(index) == 0 ? 0 : outcomes.getAndSet(index, outcome);
+            int failureDelta = (outcome & FAILURE) - (evicted & FAILURE);
+            if (failureDelta != 0) {
+                failures.addAndGet(failureDelta);
+            }
+            int slowDelta = ((outcome & SLOW) - (evicted & SLOW)) >> 1;
+            if (slowDelta != 0) {
+                slowCalls.addAndGet(slowDelta);
+            }
+            return (int) Math.min(seq + 1, size);
+        }
+    }
+}
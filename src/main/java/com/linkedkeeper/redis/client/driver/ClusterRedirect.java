@@ -0,0 +1,60 @@
+package com.linkedkeeper.redis.client.driver;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.exceptions.JedisAskDataException;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+
+/**
+ * 集群返回的MOVED或ASK重定向。连接池路径上Jedis已解析为JedisRedirectionException，
+ * NIO路径上是普通的JedisDataException，这里统一从异常链中解析
+ *
+ * @Author: zhangsr
+ */
+public class ClusterRedirect {
+
+    private final boolean ask;
+    private final int slot;
+    private final HostAndPort target;
+
+    private ClusterRedirect(boolean ask, int slot, HostAndPort target) {
+        this.ask = ask;
+        this.slot = slot;
+        this.target = target;
+    }
+
+    /**
+     * @return 异常链中的重定向，没有时返回null
+     */
+    public static ClusterRedirect of(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof JedisRedirectionException) {
+                JedisRedirectionException redirection = (JedisRedirectionException) cause;
+                return new ClusterRedirect(cause instanceof JedisAskDataException, redirection.getSlot(), redirection.getTargetNode());
+            }
+            if (cause instanceof JedisDataException && cause.getMessage() != null) {
+                String message = cause.getMessage();
+                if (message.startsWith("MOVED ") || message.startsWith("ASK ")) {
+                    // MOVED 3999 127.0.0.1:6381
+                    String[] parts = message.split(" ");
+                    int colon = parts[2].lastIndexOf(':');
+                    HostAndPort target = new HostAndPort(parts[2].substring(0, colon), Integer.parseInt(parts[2].substring(colon + 1)));
+                    return new ClusterRedirect(message.startsWith("ASK"), Integer.parseInt(parts[1]), target);
+                }
+            }
+        }
+        return null;
+    }
+
+    public boolean isAsk() {
+        return ask;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public HostAndPort getTarget() {
+        return target;
+    }
+}
@@ -0,0 +1,241 @@
+package com.linkedkeeper.redis.client.driver;
+
+import com.linkedkeeper.redis.client.exception.RedisException;
+import org.apache.log4j.Logger;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.JedisClusterCRC16;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * cluster模式下的slot路由：slot = CRC16(key或{tag}) mod 16384，slot表由CLUSTER SLOTS得到，每个节点一个连接池。
+ * 收到MOVED时先修正该slot，再做一次限频的全表刷新，并发的MOVED只有一个线程刷新
+ *
+ * @Author: zhangsr
+ */
+public class ClusterRouter {
+
+    private final static Logger log = Logger.getLogger(ClusterRouter.class);
+
+    public final static int SLOTS = 16384;
+
+    private final List<HostAndPort> seeds;
+    private final Function<HostAndPort, RedisNode> nodeFactory;
+    private final long refreshIntervalMillis;
+    private final int maxRedirects;
+
+    private final ConcurrentMap<String, RedisNode> nodes = new ConcurrentHashMap<String, RedisNode>();
+    private final AtomicReferenceArray<RedisNode> slots = new AtomicReferenceArray<RedisNode>(SLOTS);
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private volatile long lastRefreshNanos = 0;
+
+    /**
+     * @param seeds                 初始节点，用于获取slot表
+     * @param nodeFactory           为新发现的节点创建连接
+     * @param refreshIntervalMillis MOVED触发的刷新之间的最小间隔
+     * @param maxRedirects          一条命令最多跟随的重定向次数
+     */
+    ClusterRouter(List<HostAndPort> seeds, Function<HostAndPort, RedisNode> nodeFactory, long refreshIntervalMillis, int maxRedirects) {
+        this.seeds = new ArrayList<HostAndPort>(seeds);
+        this.nodeFactory = nodeFactory;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.maxRedirects = maxRedirects;
+    }
+
+    public static int slot(String key) {
+        return JedisClusterCRC16.getSlot(key);
+    }
+
+    public static int slot(byte[] key) {
+        return JedisClusterCRC16.getCRC16(ShardRing.tag(key)) & (SLOTS - 1);
+    }
+
+    public RedisNode route(String key) {
+        return route(slot(key));
+    }
+
+    public RedisNode route(byte[] key) {
+        return route(slot(key));
+    }
+
+    /**
+     * slot未被覆盖时（集群正在变更）任选一个节点，由重定向纠正
+     */
+    private RedisNode route(int slot) {
+        RedisNode node = slots.get(slot);
+        if (node == null) {
+            node = node(seeds.get(slot % seeds.size()));
+        }
+        return node;
+    }
+
+    public RedisNode node(HostAndPort address) {
+        String name = address.getHost() + ":" + address.getPort();
+        RedisNode node = nodes.get(name);
+        if (node == null) {
+            synchronized (nodes) {
+                node = nodes.get(name);
+                if (node == null) {
+                    node = nodeFactory.apply(address);
+                    nodes.put(name, node);
+                }
+            }
+        }
+        return node;
+    }
+
+    /**
+     * 处理MOVED：修正slot并按需刷新slot表
+     */
+    public void moved(int slot, HostAndPort target) {
+        slots.set(slot, node(target));
+        if (System.nanoTime() - lastRefreshNanos < refreshIntervalMillis * 1000000L || !refreshLock.tryLock()) {
+            return;
+        }
+        try {
+            if (System.nanoTime() - lastRefreshNanos >= refreshIntervalMillis * 1000000L) {
+                refresh0();
+            }
+        } catch (Exception e) {
+            log.warn("refresh cluster slots fail.", e);
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * 从已知节点或初始节点获取CLUSTER SLOTS，重建slot表
+     *
+     * @throws RedisException 所有节点都失败
+     */
+    public void refresh() throws RedisException {
+        refreshLock.lock();
+        try {
+            refresh0();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /**
+     * 按slot分组，组内保持keys中的顺序
+     */
+    public Map<Integer, List<String>> groupBySlot(String... keys) {
+        Map<Integer, List<String>> groups = new LinkedHashMap<Integer, List<String>>();
+        for (String key : keys) {
+            int slot = slot(key);
+            List<String> group = groups.get(slot);
+            if (group == null) {
+                group = new ArrayList<String>();
+                groups.put(slot, group);
+            }
+            group.add(key);
+        }
+        return groups;
+    }
+
+    /**
+     * 按slot分组，组内保持keys中的顺序
+     */
+    public Map<Integer, List<byte[]>> groupBySlot(byte[]... keys) {
+        Map<Integer, List<byte[]>> groups = new LinkedHashMap<Integer, List<byte[]>>();
+        for (byte[] key : keys) {
+            int slot = slot(key);
+            List<byte[]> group = groups.get(slot);
+            if (group == null) {
+                group = new ArrayList<byte[]>();
+                groups.put(slot, group);
+            }
+            group.add(key);
+        }
+        return groups;
+    }
+
+    /**
+     * @return slot表中的所有master节点
+     */
+    public Collection<RedisNode> getMasters() {
+        Set<RedisNode> masters = new LinkedHashSet<RedisNode>();
+        for (int slot = 0; slot < SLOTS; slot++) {
+            RedisNode node = slots.get(slot);
+            if (node != null) {
+                masters.add(node);
+            }
+        }
+        return masters;
+    }
+
+    public int getMaxRedirects() {
+        return maxRedirects;
+    }
+
+    void destroy() {
+        for (RedisNode node : nodes.values()) {
+            node.destroy();
+        }
+        nodes.clear();
+    }
+
+    private void refresh0() throws RedisException {
+        Set<HostAndPort> candidates = new LinkedHashSet<HostAndPort>();
+        for (RedisNode node : getMasters()) {
+            candidates.add(node.getAddress());
+        }
+        candidates.addAll(seeds);
+        Exception last = null;
+        for (HostAndPort candidate : candidates) {
+            JedisPool pool = node(candidate).getJedisPool();
+            Jedis jedis = null;
+            boolean borrowOrOprSuccess = true;
+            try {
+                jedis = pool.getResource();
+                apply(candidate, jedis.clusterSlots());
+                lastRefreshNanos = System.nanoTime();
+                return;
+            } catch (Exception e) {
+                borrowOrOprSuccess = false;
+                if (jedis != null)
+                    pool.returnBrokenResource(jedis);
+                last = e;
+                log.warn("get cluster slots from " + candidate + " fail.", e);
+            } finally {
+                if (borrowOrOprSuccess)
+                    pool.returnResource(jedis);
+            }
+        }
+        throw new RedisException("execute 'cluster slots' fail!", last);
+    }
+
+    /**
+     * 每段为 [start, end, [host, port, ...], 副本...]，只使用master
+     */
+    private void apply(HostAndPort source, List<Object> ranges) {
+        for (Object range : ranges) {
+            List<?> fields = (List<?>) range;
+            int start = ((Long) fields.get(0)).intValue();
+            int end = ((Long) fields.get(1)).intValue();
+            List<?> master = (List<?>) fields.get(2);
+            String host = SafeEncoder.encode((byte[]) master.get(0));
+            int port = ((Long) master.get(1)).intValue();
+            // 空的host表示返回CLUSTER SLOTS的节点自身
+            RedisNode node = node(new HostAndPort(host.length() == 0 ? source.getHost() : host, port));
+            for (int slot = start; slot <= end; slot++) {
+                slots.set(slot, node);
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.linkedkeeper.redis.client.driver;
+
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ProtocolCommand;
+
+import java.util.List;
+
+/**
+ * 累计连接上收发字节数的Jedis，由TunableJedisPool创建。
+ * 发出的命令按RESP编码计算长度；回复按解码结果还原RESP编码的长度，状态回复按bulk计算，相差几个字节。
+ * 与Jedis一样同一时间只由一个线程使用，计数不加锁
+ *
+ * @Author: zhangsr
+ */
+public class CountingJedis extends Jedis {
+
+    private final CountingClient countingClient;
+
+    public CountingJedis(String host, int port, int timeout) {
+        super(host, port, timeout);
+        countingClient = new CountingClient(host, port);
+        countingClient.setConnectionTimeout(timeout);
+        countingClient.setSoTimeout(timeout);
+        client = countingClient;
+    }
+
+    /**
+     * @return 建立连接以来收到的回复字节数
+     */
+    public long getBytesIn() {
+        return countingClient.bytesIn;
+    }
+
+    /**
+     * @return 建立连接以来发出的命令字节数
+     */
+    public long getBytesOut() {
+        return countingClient.bytesOut;
+    }
+
+    private static final class CountingClient extends Client {
+
+        long bytesIn = 0;
+        long bytesOut = 0;
+
+        CountingClient(String host, int port) {
+            super(host, port);
+        }
+
+        @Override
+        protected Connection sendCommand(ProtocolCommand cmd, byte[]... args) {
+            long len = 1 + digits(args.length + 1) + 2 + bulkLength(cmd.getRaw().length);
+            for (byte[] arg : args) {
+                len += bulkLength(arg.length);
+            }
+            bytesOut += len;
+            return super.sendCommand(cmd, args);
+        }
+
+        @Override
+        protected Connection sendCommand(ProtocolCommand cmd) {
+            bytesOut += 1 + 1 + 2 + bulkLength(cmd.getRaw().length);
+            return super.sendCommand(cmd);
+        }
+
+        @Override
+        protected Object readProtocolWithCheckingBroken() {
+            Object reply = super.readProtocolWithCheckingBroken();
+            bytesIn += replyLength(reply);
+            return reply;
+        }
+
+        private static long replyLength(Object reply) {
+            if (reply == null) {
+                // $-1\r\n
+                return 5;
+            } else if (reply instanceof byte[]) {
+                return bulkLength(((byte[]) reply).length);
+            } else if (reply instanceof Long) {
+                return 1 + digits((Long) reply) + 2;
+            } else if (reply instanceof List) {
+                List<?> elements = (List<?>) reply;
+                long len = 1 + digits(elements.size()) + 2;
+                for (Object element : elements) {
+                    len += replyLength(element);
+                }
+                return len;
+            }
+            return 0;
+        }
+
+        private static long bulkLength(int length) {
+            return 1 + digits(length) + 2 + length + 2;
+        }
+
+        private static int digits(long n) {
+            int digits = n < 0 ? 2 : 1;
+            // 在负数范围内计算，Long.MIN_VALUE也不会溢出
+            for (long v = n < 0 ? n : -n; v <= -10; v /= 10) {
+                digits++;
+            }
+            return digits;
+        }
+    }
+}
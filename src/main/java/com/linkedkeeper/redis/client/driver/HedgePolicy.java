@@ -0,0 +1,169 @@
+package com.linkedkeeper.redis.client.driver;
+
+import com.linkedkeeper.redis.client.metrics.LatencyHistogram;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对冲读：读命令超过最近延迟的percentile分位仍未返回时，再发出一次同样的读，先返回的结果生效。
+ * 延迟按命令名统计，每windowMillis用上一窗口的分布更新一次等待时间，
+ * 每个窗口内对冲的次数不超过budget乘以本窗口和上一窗口中较大的读次数。
+ * 每个命令的两个直方图轮流记录，换窗口时不重新分配
+ *
+ * @Author: zhangsr
+ */
+public class HedgePolicy {
+
+    public final static int DEFAULT_MAX_THREADS = 32;
+
+    private double percentile = 95;
+    private double budget = 0.05;
+    private long minDelayMillis = 1;
+    private long windowMillis = 1000;
+    private int minSamples = 20;
+    private int maxThreads = DEFAULT_MAX_THREADS;
+
+    private final ConcurrentMap<String, Tracker> trackers = new ConcurrentHashMap<String, Tracker>();
+    private final LongAdder hedges = new LongAdder();
+
+    /**
+     * 开始一次读
+     *
+     * @param command
+     * @return 等待多久后对冲（纳秒），样本不足时为0，不对冲
+     */
+    public long begin(String command) {
+        Tracker tracker = tracker(command);
+        long now = System.nanoTime();
+        if (now - tracker.windowStartNanos >= windowMillis * 1000000L && tracker.rolling.compareAndSet(false, true)) {
+            try {
+                tracker.roll(now);
+            } finally {
+                tracker.rolling.set(false);
+            }
+        }
+        tracker.reads.increment();
+        return tracker.delayNanos;
+    }
+
+    /**
+     * 记录一次发出的读（包括对冲的读）的延迟
+     */
+    public void end(String command, long elapsedNanos) {
+        tracker(command).window.record(elapsedNanos);
+    }
+
+    /**
+     * @return 预算内是否可以对冲，可以时计入一次对冲
+     */
+    public boolean tryHedge(String command) {
+        Tracker tracker = tracker(command);
+        long allowed = (long) (budget * Math.max(tracker.reads.sum(), tracker.previousReads));
+        // 并发的对冲不能一起越过预算
+        for (; ; ) {
+            long current = tracker.hedges.get();
+            if (current >= allowed) {
+                return false;
+            }
+            if (tracker.hedges.compareAndSet(current, current + 1)) {
+                hedges.increment();
+                return true;
+            }
+        }
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * @return 已发出的对冲读次数
+     */
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    private Tracker tracker(String command) {
+        Tracker tracker = trackers.get(command);
+        if (tracker == null) {
+            tracker = new Tracker();
+            Tracker existing = trackers.putIfAbsent(command, tracker);
+            tracker = existing == null ? tracker : existing;
+        }
+        return tracker;
+    }
+
+    private class Tracker {
+
+        private final AtomicBoolean rolling = new AtomicBoolean();
+        private volatile LatencyHistogram window = new LatencyHistogram();
+        private LatencyHistogram spare = new LatencyHistogram();
+        private volatile long windowStartNanos = System.nanoTime();
+        private volatile long delayNanos = 0;
+
+        private final LongAdder reads = new LongAdder();
+        private final AtomicLong hedges = new AtomicLong();
+        private volatile long previousReads = 0;
+
+        private void roll(long now) {
+            LatencyHistogram previous = window;
+            window = spare;
+            LatencyHistogram.Snapshot snapshot = previous.snapshot();
+            // 换窗口之后才到的记录可能计入再下一个窗口，影响可以忽略
+            previous.reset();
+            spare = previous;
+            // 样本不足时沿用之前的等待时间
+            if (snapshot.getCount() >= minSamples) {
+                delayNanos = Math.max(minDelayMillis * 1000000L, snapshot.percentile(percentile));
+            }
+            windowStartNanos = now;
+            previousReads = reads.sumThenReset();
+            hedges.set(0);
+        }
+    }
+
+    //------------------------- setter ----------------------
+
+    /**
+     * @param percentile 超过最近延迟的这一分位后对冲，默认为95
+     */
+    public void setPercentile(double percentile) {
+        this.percentile = percentile;
+    }
+
+    /**
+     * @param budget 对冲次数占读次数的上限，默认为0.05
+     */
+    public void setBudget(double budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * @param minDelayMillis 对冲前至少等待的时间，默认为1毫秒
+     */
+    public void setMinDelayMillis(long minDelayMillis) {
+        this.minDelayMillis = minDelayMillis;
+    }
+
+    public void setWindowMillis(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * @param minSamples 一个窗口内至少有这么多次读才更新等待时间，默认为20
+     */
+    public void setMinSamples(int minSamples) {
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * @param maxThreads 每个客户端执行等待对冲的读的线程数上限，用尽时读在调用线程中执行、不对冲，默认为32
+     */
+    public void setMaxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+    }
+}
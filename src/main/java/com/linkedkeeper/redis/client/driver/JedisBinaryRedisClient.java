@@ -0,0 +1,160 @@
+package com.linkedkeeper.redis.client.driver;
+
+import com.linkedkeeper.redis.client.BinaryRedisClient;
+import com.linkedkeeper.redis.client.ValueReader;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import redis.clients.jedis.BinaryJedis;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 在一个已借出的Jedis连接上执行BinaryRedisClient的命令，连接的借还由调用方负责。
+ * Jedis已把value读成byte[]，ValueReader收到的是它的只读包装，不再额外复制
+ *
+ * @Author: zhangsr
+ */
+public class JedisBinaryRedisClient implements BinaryRedisClient {
+
+    private final BinaryJedis jedis;
+
+    public JedisBinaryRedisClient(BinaryJedis jedis) {
+        this.jedis = jedis;
+    }
+
+    public Set<byte[]> keys(byte[] pattern) throws RedisException {
+        return jedis.keys(pattern);
+    }
+
+    public String setex(byte[] key, int expire, byte[] value) throws RedisException {
+        return jedis.setex(key, expire, value);
+    }
+
+    public String set(byte[] key, byte[] value) throws RedisException {
+        return jedis.set(key, value);
+    }
+
+    public Long decrBy(byte[] key, long integer) throws RedisException {
+        return jedis.decrBy(key, integer);
+    }
+
+    public Long incr(byte[] key) throws RedisException {
+        return jedis.incr(key);
+    }
+
+    public byte[] get(byte[] key) throws RedisException {
+        return jedis.get(key);
+    }
+
+    public <T> T get(byte[] key, ValueReader<T> reader) throws RedisException {
+        return read(jedis.get(key), reader);
+    }
+
+    public Long sadd(byte[] key, byte[]... members) throws RedisException {
+        return jedis.sadd(key, members);
+    }
+
+    public Long srem(byte[] key, byte[]... members) throws RedisException {
+        return jedis.srem(key, members);
+    }
+
+    public Set<byte[]> smembers(byte[] key) throws RedisException {
+        return jedis.smembers(key);
+    }
+
+    public Long expire(byte[] key, int expiredTime) throws RedisException {
+        return jedis.expire(key, expiredTime);
+    }
+
+    public Boolean exists(byte[] key) throws RedisException {
+        return jedis.exists(key);
+    }
+
+    public Long del(byte[] key) throws RedisException {
+        return jedis.del(key);
+    }
+
+    public Long del(byte[]... key) throws RedisException {
+        return jedis.del(key);
+    }
+
+    public Long hset(byte[] key, byte[] field, byte[] value) throws RedisException {
+        return jedis.hset(key, field, value);
+    }
+
+    public Long hsetnx(byte[] key, byte[] field, byte[] value) throws RedisException {
+        return jedis.hsetnx(key, field, value);
+    }
+
+    public Long hdel(byte[] key, byte[]... fields) throws RedisException {
+        return jedis.hdel(key, fields);
+    }
+
+    public byte[] hget(byte[] key, byte[] field) throws RedisException {
+        return jedis.hget(key, field);
+    }
+
+    public <T> T hget(byte[] key, byte[] field, ValueReader<T> reader) throws RedisException {
+        return read(jedis.hget(key, field), reader);
+    }
+
+    public String hmset(byte[] key, Map<byte[], byte[]> hash) throws RedisException {
+        return jedis.hmset(key, hash);
+    }
+
+    public List<byte[]> hmget(byte[] key, byte[]... fields) throws RedisException {
+        return jedis.hmget(key, fields);
+    }
+
+    public Map<byte[], byte[]> hgetAll(byte[] key) throws RedisException {
+        return jedis.hgetAll(key);
+    }
+
+    public Long lpush(byte[] key, byte[]... values) throws RedisException {
+        return jedis.lpush(key, values);
+    }
+
+    public Long rpush(byte[] key, byte[]... values) throws RedisException {
+        return jedis.rpush(key, values);
+    }
+
+    public byte[] lpop(byte[] key) throws RedisException {
+        return jedis.lpop(key);
+    }
+
+    public byte[] rpop(byte[] key) throws RedisException {
+        return jedis.rpop(key);
+    }
+
+    public List<byte[]> lrange(byte[] key, long start, long end) throws RedisException {
+        return jedis.lrange(key, start, end);
+    }
+
+    public String ltrim(byte[] key, long start, long end) throws RedisException {
+        return jedis.ltrim(key, start, end);
+    }
+
+    public Long llen(byte[] key) throws RedisException {
+        return jedis.llen(key);
+    }
+
+    public byte[] rpoplpush(byte[] srckey, byte[] dstkey) throws RedisException {
+        return jedis.rpoplpush(srckey, dstkey);
+    }
+
+    public Long hincrby(byte[] key, byte[] field, int increment) throws RedisException {
+        return jedis.hincrBy(key, field, increment);
+    }
+
+    private static <T> T read(byte[] value, ValueReader<T> reader) throws RedisException {
+        try {
+            return reader.read(value == null ? null : ByteBuffer.wrap(value).asReadOnlyBuffer());
+        } catch (RedisException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RedisException(e);
+        }
+    }
+}
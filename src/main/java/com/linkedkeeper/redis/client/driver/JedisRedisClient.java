@@ -0,0 +1,278 @@
+package com.linkedkeeper.redis.client.driver;
+
+import com.linkedkeeper.redis.client.RedisClient;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import com.linkedkeeper.redis.client.pipeline.PipelineBlock;
+import com.linkedkeeper.redis.client.pipeline.RedisPipeline;
+import com.linkedkeeper.redis.client.scan.ScanCallback;
+import com.linkedkeeper.redis.client.scan.ScanIterator;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.TransactionBlock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiFunction;
+
+/**
+ * 在一个已借出的Jedis连接上执行RedisClient的命令，连接的借还由调用方负责
+ *
+ * @Author: zhangsr
+ */
+public class JedisRedisClient implements RedisClient {
+
+    private final Jedis jedis;
+
+    public JedisRedisClient(Jedis jedis) {
+        this.jedis = jedis;
+    }
+
+    public Set<String> keys(String pattern) throws RedisException {
+        return jedis.keys(pattern);
+    }
+
+    public ScanResult<String> scan(String cursor, ScanParams params) throws RedisException {
+        return jedis.scan(cursor, params);
+    }
+
+    public ScanIterator<String> scan(String pattern, int count) throws RedisException {
+        ScanParams params = new ScanParams().match(pattern).count(count);
+        return new ScanIterator<String>(cursor -> CompletableFuture.completedFuture(scan(cursor, params)), true);
+    }
+
+    public void scan(String pattern, int count, ScanCallback<String> callback) throws RedisException {
+        scan(pattern, count).forEach(callback);
+    }
+
+    public String setex(String key, int expire, String value) throws RedisException {
+        return jedis.setex(key, expire, value);
+    }
+
+    public String set(String key, String value) throws RedisException {
+        return jedis.set(key, value);
+    }
+
+    public String set(String key, String value, String nxxx, String expx, long time) throws RedisException {
+        return jedis.set(key, value, nxxx, expx, time);
+    }
+
+    public Long decrBy(String key, long integer) throws RedisException {
+        return jedis.decrBy(key, integer);
+    }
+
+    public Long incr(String key) throws RedisException {
+        return jedis.incr(key);
+    }
+
+    public Long incrBy(String key, long integer) throws RedisException {
+        return jedis.incrBy(key, integer);
+    }
+
+    public String get(String key) throws RedisException {
+        return jedis.get(key);
+    }
+
+    public Long sadd(String key, String... members) throws RedisException {
+        return jedis.sadd(key, members);
+    }
+
+    public Long srem(String key, String... members) throws RedisException {
+        return jedis.srem(key, members);
+    }
+
+    public Set<String> smembers(String key) throws RedisException {
+        return jedis.smembers(key);
+    }
+
+    public ScanResult<String> sscan(String key, String cursor, ScanParams params) throws RedisException {
+        return jedis.sscan(key, cursor, params);
+    }
+
+    public ScanIterator<String> sscanAll(String key, int count) throws RedisException {
+        ScanParams params = new ScanParams().count(count);
+        return new ScanIterator<String>(cursor -> CompletableFuture.completedFuture(sscan(key, cursor, params)), false);
+    }
+
+    public void sscanAll(String key, int count, ScanCallback<String> callback) throws RedisException {
+        sscanAll(key, count).forEach(callback);
+    }
+
+    public Long expire(String key, int expiredTime) throws RedisException {
+        return jedis.expire(key, expiredTime);
+    }
+
+    public Boolean exists(String key) throws RedisException {
+        return jedis.exists(key);
+    }
+
+    public Long pttl(String key) throws RedisException {
+        return jedis.pttl(key);
+    }
+
+    public Long del(String key) throws RedisException {
+        return jedis.del(key);
+    }
+
+    public Long del(String... key) throws RedisException {
+        return jedis.del(key);
+    }
+
+    public Long hset(String key, String field, String value) throws RedisException {
+        return jedis.hset(key, field, value);
+    }
+
+    public Long hsetnx(String key, String field, String value) throws RedisException {
+        return jedis.hsetnx(key, field, value);
+    }
+
+    public Long hdel(String key, String... fields) throws RedisException {
+        return jedis.hdel(key, fields);
+    }
+
+    public String hget(String key, String field) throws RedisException {
+        return jedis.hget(key, field);
+    }
+
+    public String hmset(String key, Map<String, String> hash) throws RedisException {
+        return jedis.hmset(key, hash);
+    }
+
+    public List<String> hmget(String key, String... fields) throws RedisException {
+        return jedis.hmget(key, fields);
+    }
+
+    public Map<String, String> hgetAll(String key) throws RedisException {
+        return jedis.hgetAll(key);
+    }
+
+    public ScanResult<Map.Entry<String, String>> hscan(String key, String cursor, ScanParams params) throws RedisException {
+        return jedis.hscan(key, cursor, params);
+    }
+
+    public ScanIterator<Map.Entry<String, String>> hscanAll(String key, int count) throws RedisException {
+        ScanParams params = new ScanParams().count(count);
+        return new ScanIterator<Map.Entry<String, String>>(cursor -> CompletableFuture.completedFuture(hscan(key, cursor, params)), false);
+    }
+
+    public void hscanAll(String key, int count, ScanCallback<Map.Entry<String, String>> callback) throws RedisException {
+        hscanAll(key, count).forEach(callback);
+    }
+
+    public List<String> mget(String... keys) throws RedisException {
+        return jedis.mget(keys);
+    }
+
+    public String mset(String... keysvalues) throws RedisException {
+        return jedis.mset(keysvalues);
+    }
+
+    public String msetex(int expire, String... keysvalues) throws RedisException {
+        Pipeline pipeline = jedis.pipelined();
+        List<Response<String>> responses = new ArrayList<Response<String>>(keysvalues.length / 2);
+        for (int i = 0; i + 1 < keysvalues.length; i += 2) {
+            responses.add(pipeline.setex(keysvalues[i], expire, keysvalues[i + 1]));
+        }
+        pipeline.sync();
+        for (Response<String> response : responses) {
+            response.get();
+        }
+        return "OK";
+    }
+
+    public List<Map<String, String>> hgetAllMulti(String... keys) throws RedisException {
+        return pipelined(Arrays.asList(keys), Pipeline::hgetAll);
+    }
+
+    public List<List<String>> hmgetMulti(List<String> keys, String... fields) throws RedisException {
+        return pipelined(keys, (pipeline, key) -> pipeline.hmget(key, fields));
+    }
+
+    public List<Set<String>> smembersMulti(String... keys) throws RedisException {
+        return pipelined(Arrays.asList(keys), Pipeline::smembers);
+    }
+
+    /**
+     * 每个key一条命令，在一次pipeline中发出，结果与keys顺序一致
+     */
+    private <T> List<T> pipelined(List<String> keys, BiFunction<Pipeline, String, Response<T>> command) {
+        Pipeline pipeline = jedis.pipelined();
+        List<Response<T>> responses = new ArrayList<Response<T>>(keys.size());
+        for (String key : keys) {
+            responses.add(command.apply(pipeline, key));
+        }
+        pipeline.sync();
+        List<T> results = new ArrayList<T>(responses.size());
+        for (Response<T> response : responses) {
+            results.add(response.get());
+        }
+        return results;
+    }
+
+    public List<Object> multi(TransactionBlock transactionBlock) {
+        return jedis.multi(transactionBlock);
+    }
+
+    public void pipelined(PipelineBlock pipelineBlock) throws RedisException {
+        pipelined(RedisPipeline.DEFAULT_BATCH_SIZE, pipelineBlock);
+    }
+
+    public void pipelined(int batchSize, PipelineBlock pipelineBlock) throws RedisException {
+        RedisPipeline pipeline = new RedisPipeline(jedis.pipelined(), batchSize);
+        pipelineBlock.execute(pipeline);
+        pipeline.sync();
+    }
+
+    public Long lpush(String key, String... strings) {
+        return jedis.lpush(key, strings);
+    }
+
+    public Long rpush(String key, String... strings) {
+        return jedis.rpush(key, strings);
+    }
+
+    public String lpop(String key) {
+        return jedis.lpop(key);
+    }
+
+    public String rpop(String key) {
+        return jedis.rpop(key);
+    }
+
+    public List<String> lrange(String key, long start, long end) {
+        return jedis.lrange(key, start, end);
+    }
+
+    public ScanIterator<String> lrangeChunked(String key, int pageSize) {
+        return new ScanIterator<String>(ScanIterator.ranges(pageSize, (start, end) -> CompletableFuture.completedFuture(lrange(key, start, end))), false);
+    }
+
+    public void lrangeChunked(String key, int pageSize, ScanCallback<String> callback) {
+        lrangeChunked(key, pageSize).forEach(callback);
+    }
+
+    public String ltrim(String key, long start, long end) {
+        return jedis.ltrim(key, start, end);
+    }
+
+    public Long llen(String key) {
+        return jedis.llen(key);
+    }
+
+    public String rpoplpush(String srckey, String dstkey) {
+        return jedis.rpoplpush(srckey, dstkey);
+    }
+
+    public Long hincrby(String key, String field, int increment) {
+        return jedis.hincrBy(key, field, increment);
+    }
+
+    public void handleDataChange(String path, String data) {
+    }
+}
@@ -0,0 +1,69 @@
+package com.linkedkeeper.redis.client.driver;
+
+import com.linkedkeeper.redis.client.config.RedisPoolConfig;
+import org.apache.log4j.Logger;
+
+import java.util.Collection;
+import java.util.function.Supplier;
+
+/**
+ * 定期根据借出等待时间和使用率调整每个节点连接池的maxTotal：
+ * 有线程在等待或平均等待超过目标且使用率高时扩大一半，使用率低且没有等待时缩小四分之一，
+ * 始终在[adaptiveMinTotal, adaptiveMaxTotal]之内
+ *
+ * @Author: zhangsr
+ */
+class PoolSizer implements Runnable {
+
+    private final static Logger log = Logger.getLogger(PoolSizer.class);
+
+    private final RedisPoolConfig config;
+    private final Supplier<Collection<RedisNode>> nodes;
+
+    PoolSizer(RedisPoolConfig config, Supplier<Collection<RedisNode>> nodes) {
+        this.config = config;
+        this.nodes = nodes;
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (RedisNode node : nodes.get()) {
+                TunableJedisPool pool = node.getJedisPool();
+                int maxTotal = pool.getMaxTotal();
+                int waiters = pool.getNumWaiters();
+                int resized = resize(config, maxTotal, pool.getNumActive(), waiters, pool.getMeanBorrowWaitTimeMillis());
+                if (resized != maxTotal) {
+                    pool.setMaxTotal(resized);
+                    pool.setMaxIdle(Math.min(resized, config.getMaxIdle()));
+                    log.info("resize pool of " + node.getAddress() + " from " + maxTotal + " to " + resized);
+                }
+                // 已经在等待的线程不会因为maxTotal变大而创建连接，为它们补充空闲连接
+                for (int i = 0; i < Math.min(waiters, resized - maxTotal); i++) {
+                    pool.addIdle();
+                }
+            }
+        } catch (Exception e) {
+            log.warn("resize pools fail!", e);
+        }
+    }
+
+    /**
+     * @param config
+     * @param maxTotal             当前的最大连接数
+     * @param active               已借出的连接数
+     * @param waiters              等待借出的线程数
+     * @param meanBorrowWaitMillis 平均借出等待时间
+     * @return 新的最大连接数
+     */
+    static int resize(RedisPoolConfig config, int maxTotal, int active, int waiters, long meanBorrowWaitMillis) {
+        double utilization = maxTotal <= 0 ? 1 : (double) active / maxTotal;
+        int resized = maxTotal;
+        if (waiters > 0 || (meanBorrowWaitMillis > config.getTargetBorrowWaitMillis() && utilization >= config.getHighUtilization())) {
+            resized = maxTotal + Math.max(1, maxTotal / 2);
+        } else if (utilization < config.getLowUtilization()) {
+            resized = Math.max(maxTotal - Math.max(1, maxTotal / 4), active * 2);
+        }
+        return Math.max(config.getAdaptiveMinTotal(), Math.min(config.getAdaptiveMaxTotal(), resized));
+    }
+}
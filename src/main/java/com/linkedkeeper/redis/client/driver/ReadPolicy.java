@@ -0,0 +1,92 @@
+package com.linkedkeeper.redis.client.driver;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 从可用的副本中选出执行读命令的节点
+ *
+ * @Author: zhangsr
+ */
+public interface ReadPolicy {
+
+    String ROUND_ROBIN = "round-robin";
+    String LEAST_OUTSTANDING = "least-outstanding";
+    String LATENCY_WEIGHTED = "latency-weighted";
+
+    /**
+     * @param replicas 可用的副本，不为空
+     */
+    RedisNode select(List<RedisNode> replicas);
+
+    static ReadPolicy of(String name) {
+        if (name == null || ROUND_ROBIN.equals(name)) {
+            return new RoundRobin();
+        }
+        if (LEAST_OUTSTANDING.equals(name)) {
+            return new LeastOutstanding();
+        }
+        if (LATENCY_WEIGHTED.equals(name)) {
+            return new LatencyWeighted();
+        }
+        throw new IllegalArgumentException("unknown read policy: " + name);
+    }
+
+    /**
+     * 轮询
+     */
+    final class RoundRobin implements ReadPolicy {
+
+        private final AtomicInteger next = new AtomicInteger();
+
+        public RedisNode select(List<RedisNode> replicas) {
+            return replicas.get((next.getAndIncrement() & Integer.MAX_VALUE) % replicas.size());
+        }
+    }
+
+    /**
+     * 未完成请求最少的节点，相同时随机起点避免总是选中第一个
+     */
+    final class LeastOutstanding implements ReadPolicy {
+
+        public RedisNode select(List<RedisNode> replicas) {
+            int start = ThreadLocalRandom.current().nextInt(replicas.size());
+            RedisNode best = null;
+            for (int i = 0; i < replicas.size(); i++) {
+                RedisNode node = replicas.get((start + i) % replicas.size());
+                if (best == null || node.getOutstanding() < best.getOutstanding()) {
+                    best = node;
+                }
+            }
+            return best;
+        }
+    }
+
+    /**
+     * 按 1 / (平均延迟 * (未完成请求数 + 1)) 加权随机，慢节点仍会分到少量请求以便更新延迟
+     */
+    final class LatencyWeighted implements ReadPolicy {
+
+        private final static double MIN_LATENCY_NANOS = 10000;
+
+        public RedisNode select(List<RedisNode> replicas) {
+            double[] weights = new double[replicas.size()];
+            double total = 0;
+            for (int i = 0; i < replicas.size(); i++) {
+                RedisNode node = replicas.get(i);
+                double latency = Math.max(node.getLatencyNanos(), MIN_LATENCY_NANOS);
+                weights[i] = 1.0 / (latency * (node.getOutstanding() + 1));
+                total += weights[i];
+            }
+            double r = ThreadLocalRandom.current().nextDouble(total);
+            for (int i = 0; i < weights.length; i++) {
+                r -= weights[i];
+                if (r < 0) {
+                    return replicas.get(i);
+                }
+            }
+            return replicas.get(replicas.size() - 1);
+        }
+    }
+}
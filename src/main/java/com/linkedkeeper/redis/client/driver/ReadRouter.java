@@ -0,0 +1,86 @@
+package com.linkedkeeper.redis.client.driver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 读写分离路由：只读命令按ReadPolicy分配到可用的副本，没有可用副本时回到master。
+ * 开启readYourWrites后，线程写入后的一段时间内（应大于主从复制延迟）该线程的读仍走master
+ *
+ * @Author: zhangsr
+ */
+public class ReadRouter {
+
+    private final List<RedisNode> replicas;
+    private final ReadPolicy policy;
+    private final boolean readYourWrites;
+    private final long readYourWritesNanos;
+    private final long downMillis;
+
+    private final ThreadLocal<long[]> lastWriteNanos = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    ReadRouter(List<RedisNode> replicas, ReadPolicy policy, boolean readYourWrites, long readYourWritesMillis, long downMillis) {
+        this.replicas = Collections.unmodifiableList(new ArrayList<RedisNode>(replicas));
+        this.policy = policy;
+        this.readYourWrites = readYourWrites;
+        this.readYourWritesNanos = readYourWritesMillis * 1000000L;
+        this.downMillis = downMillis;
+    }
+
+    /**
+     * @return 执行读命令的副本，为null时应在master上执行
+     */
+    public RedisNode select() {
+        if (readYourWrites) {
+            long last = lastWriteNanos.get()[0];
+            if (last != 0 && System.nanoTime() - last < readYourWritesNanos) {
+                return null;
+            }
+        }
+        List<RedisNode> available = replicas;
+        for (RedisNode node : replicas) {
+            if (!node.isAvailable()) {
+                available = new ArrayList<RedisNode>(replicas.size());
+                for (RedisNode n : replicas) {
+                    if (n.isAvailable()) {
+                        available.add(n);
+                    }
+                }
+                break;
+            }
+        }
+        return available.isEmpty() ? null : policy.select(available);
+    }
+
+    /**
+     * 记录当前线程的一次写入
+     */
+    public void markWrite() {
+        if (readYourWrites) {
+            lastWriteNanos.get()[0] = System.nanoTime();
+        }
+    }
+
+    /**
+     * 副本连接失败，暂时不再选择
+     */
+    public void markDown(RedisNode node) {
+        node.markDown(downMillis);
+    }
+
+    public List<RedisNode> getReplicas() {
+        return replicas;
+    }
+
+    void destroy() {
+        for (RedisNode node : replicas) {
+            node.destroy();
+        }
+    }
+}
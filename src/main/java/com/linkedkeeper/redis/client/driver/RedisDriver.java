@@ -1,10 +1,27 @@
 package com.linkedkeeper.redis.client.driver;
 
+import com.linkedkeeper.redis.client.config.CircuitBreakerConfig;
 import com.linkedkeeper.redis.client.config.RedisPoolConfig;
 import com.linkedkeeper.redis.client.exception.RedisException;
+import com.linkedkeeper.redis.client.nio.NioRedisEngine;
 import org.apache.log4j.Logger;
+import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.JedisPool;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * @Author: zhangsr
  */
@@ -12,13 +29,46 @@ public class RedisDriver {
 
     private final static Logger log = Logger.getLogger(RedisDriver.class);
 
-    private JedisPool masterJedisPool = null;
-    private RedisPoolConfig redisPoolConfig = null;
+    public final static String ENGINE_JEDIS = "jedis";
+    public final static String ENGINE_NIO = "nio";
+
+    public final static String MODE_SINGLE = "single";
+    public final static String MODE_SHARDED = "sharded";
+    public final static String MODE_CLUSTER = "cluster";
+
+    private volatile RedisTopology topology = null;
+    private ScheduledExecutorService poolSizer = null;
+    private RedisPoolConfig redisPoolConfig = new RedisPoolConfig();
+    private CircuitBreakerConfig circuitBreakerConfig = new CircuitBreakerConfig();
 
     private String redisConf = null;
+    private String replicaConf = null;
     private String redisPassword = null;
 
-    final int timeout = 60 * 60;
+    private String readPolicy = ReadPolicy.ROUND_ROBIN;
+    private boolean readYourWrites = false;
+    private long readYourWritesMillis = 1000;
+    private long replicaDownMillis = 1000;
+
+    private String engine = ENGINE_JEDIS;
+    private int nioConnections = 2;
+    private long nioMaxQueuedBytes = 64 * 1024 * 1024;
+
+    private String mode = MODE_SINGLE;
+    private int virtualNodes = ShardRing.DEFAULT_VIRTUAL_NODES;
+    private boolean hashTags = true;
+    private long clusterRefreshIntervalMillis = 1000;
+    private int maxRedirects = 5;
+    private long drainTimeoutMillis = 10000;
+
+    private int timeout = 60 * 60;
+
+    private final List<Runnable> destroyHooks = new CopyOnWriteArrayList<Runnable>();
+
+    /**
+     * reload换下、仍在等待执行中的命令结束的拓扑，从中移除的一方负责关闭
+     */
+    private final Set<RedisTopology> retired = ConcurrentHashMap.newKeySet();
 
     /**
      * 初始化redis
@@ -32,16 +82,114 @@ public class RedisDriver {
             } catch (Exception e) {
                 throw new RedisException(e);
             }
-            initRedisClient();
+            topology = createTopology(redisPoolConfig.getMasterConfString());
+            if (redisPoolConfig.isWarmUp()) {
+                warmUp(topology.getNodes(), redisPoolConfig.getMinIdle());
+            }
+            if (redisPoolConfig.isAdaptive()) {
+                poolSizer = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "redis-pool-sizer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                long interval = redisPoolConfig.getAdaptiveIntervalMillis();
+                poolSizer.scheduleWithFixedDelay(new PoolSizer(redisPoolConfig, this::getNodes), interval, interval, TimeUnit.MILLISECONDS);
+            }
         }
     }
 
     /**
-     * 注销redis
+     * 用新的redisConf建立并预热连接后切换，之后的命令使用新的连接；
+     * 旧的连接由后台线程等执行中的命令结束后关闭，最多等待drainTimeoutMillis，reload本身不等待
+     *
+     * @param redisConf 与setRedisConf的格式相同
+     * @throws com.linkedkeeper.redis.client.exception.RedisException 新的配置无法建立连接，此时仍使用旧的连接
+     */
+    public void reload(String redisConf) throws RedisException {
+        synchronized (this) {
+            if (redisConf == null || redisConf.trim().length() == 0) {
+                throw new RedisException("reload fail! redisConf is empty");
+            }
+            RedisTopology old = topology;
+            if (old != null && redisConf.equals(old.getRedisConf())) {
+                log.info("redisConf is not changed, " + redisConf);
+                return;
+            }
+            RedisTopology created = createTopology(redisConf);
+            // 切换前每个节点至少建立一个连接，新地址不可用时保留旧的连接
+            int perNode = redisPoolConfig.isWarmUp() ? Math.max(1, redisPoolConfig.getMinIdle()) : 1;
+            if (!warmUp(created.getNodes(), perNode)) {
+                created.destroy();
+                throw new RedisException("reload fail! can not connect to " + redisConf);
+            }
+            this.redisConf = redisConf;
+            redisPoolConfig.setMasterConfString(redisConf);
+            topology = created;
+            log.info("switch to " + redisConf);
+            if (old != null) {
+                retire(old);
+            }
+        }
+    }
+
+    private void retire(RedisTopology old) {
+        retired.add(old);
+        long timeoutMillis = drainTimeoutMillis;
+        Thread drainer = new Thread(() -> {
+            if (!old.drain(timeoutMillis)) {
+                log.warn("close " + old.getRedisConf() + " with commands in flight after " + timeoutMillis + "ms");
+            }
+            if (retired.remove(old)) {
+                old.destroy();
+            }
+        }, "redis-drain");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * 取得当前的拓扑，命令执行完后调用release()；重新配置时旧的拓扑等到全部release()后才关闭
+     *
+     * @return
+     */
+    public RedisTopology acquire() {
+        for (; ; ) {
+            RedisTopology current = topology;
+            if (current == null) {
+                throw new RedisException("driver is not initialized");
+            }
+            current.retain();
+            // 与reload并发时，已经被替换的拓扑可能正在关闭，需要重新获取
+            if (current == topology) {
+                return current;
+            }
+            current.release();
+        }
+    }
+
+    /**
+     * 注销redis，先执行destroyHooks，此时连接仍然可用
      */
     public void destroy() {
+        for (Runnable hook : destroyHooks) {
+            try {
+                hook.run();
+            } catch (Exception e) {
+                log.error("run destroy hook fail!", e);
+            }
+        }
         destroyRedisClient();
-        redisPoolConfig = null;
+    }
+
+    /**
+     * @param hook destroy关闭连接之前执行，如写出本地缓冲的数据
+     */
+    public void addDestroyHook(Runnable hook) {
+        destroyHooks.add(hook);
+    }
+
+    public void removeDestroyHook(Runnable hook) {
+        destroyHooks.remove(hook);
     }
 
     /**
@@ -52,50 +200,422 @@ public class RedisDriver {
      */
     private void initRedisPoolConf(String redisConfData) {
 
-        redisPoolConfig = new RedisPoolConfig();
-
         redisPoolConfig.setMasterConfString(redisConfData);
-        redisPoolConfig.setMaxIdle(200);
-        redisPoolConfig.setMaxTotal(300);
-        redisPoolConfig.setTestOnBorrow(false);
-        redisPoolConfig.setTestOnReturn(false);
+        redisPoolConfig.setReplicaConfString(replicaConf);
     }
 
     /**
-     * 根据配置信息初始化redis客户端
+     * 根据配置信息建立连接
      */
-    private void initRedisClient() {
-        String masterConfString = redisPoolConfig.getMasterConfString();
+    private RedisTopology createTopology(String masterConfString) {
         log.info("master info = " + masterConfString);
 
+        if (MODE_SHARDED.equals(mode)) {
+            return new RedisTopology(masterConfString, null, null, null, null, initShards(masterConfString), null);
+        }
+        if (MODE_CLUSTER.equals(mode)) {
+            return new RedisTopology(masterConfString, null, null, null, null, null, initCluster(masterConfString));
+        }
+
         String[] masterConf = masterConfString.split(":");
         if (masterConf.length == 1) {
             throw new ExceptionInInitializerError(masterConfString + " is not host:port");
         }
 //        this.masterJedisPool = new JedisPool(redisPoolConfig, masterConf[0], Integer.parseInt(masterConf[1]));
-        this.masterJedisPool = new JedisPool(redisPoolConfig, masterConf[0], Integer.parseInt(masterConf[1]), timeout, redisPassword);
+        TunableJedisPool masterJedisPool = new TunableJedisPool(redisPoolConfig, masterConf[0], Integer.parseInt(masterConf[1]), timeout, redisPassword);
         log.info("init master successful");
+
+        NioRedisEngine nioEngine = null;
+        if (ENGINE_NIO.equals(engine)) {
+            // 连接池仍然保留，供multi、pipelined等需要独占连接的操作使用
+            nioEngine = new NioRedisEngine(masterConf[0], Integer.parseInt(masterConf[1]), redisPassword,
+                    redisPoolConfig.getDatabase(), nioConnections, timeout);
+            nioEngine.setMaxQueuedBytes(nioMaxQueuedBytes);
+            nioEngine.start();
+            log.info("init master nio engine successful");
+        }
+        HostAndPort masterAddress = new HostAndPort(masterConf[0], Integer.parseInt(masterConf[1]));
+        RedisNode masterNode = new RedisNode(masterAddress, masterJedisPool, nioEngine, createCircuitBreaker(masterAddress));
+
+        ReadRouter readRouter = null;
+        String replicaConfString = redisPoolConfig.getReplicaConfString();
+        if (replicaConfString != null && replicaConfString.trim().length() > 0) {
+            log.info("replica info = " + replicaConfString);
+            List<RedisNode> replicas = new ArrayList<RedisNode>();
+            for (String conf : replicaConfString.split(",")) {
+                replicas.add(createNode(conf.trim()));
+            }
+            readRouter = new ReadRouter(replicas, ReadPolicy.of(readPolicy), readYourWrites, readYourWritesMillis, replicaDownMillis);
+            log.info("init replicas successful, size = " + replicas.size() + ", policy = " + readPolicy);
+        }
+        return new RedisTopology(masterConfString, masterJedisPool, nioEngine, masterNode, readRouter, null, null);
+    }
+
+    /**
+     * sharded模式：masterConfString中以逗号分隔的每个host:port是一个shard，shard名称即host:port
+     */
+    private ShardRouter initShards(String masterConfString) {
+        Map<String, RedisNode> nodes = new LinkedHashMap<String, RedisNode>();
+        for (String conf : masterConfString.split(",")) {
+            String shard = conf.trim();
+            if (shard.length() > 0) {
+                nodes.put(shard, createNode(shard));
+            }
+        }
+        ShardRing ring = new ShardRing(new ArrayList<String>(nodes.keySet()), virtualNodes, hashTags);
+        ShardRouter shardRouter = new ShardRouter(ring, nodes);
+        log.info("init shards successful, size = " + nodes.size() + ", virtualNodes = " + virtualNodes);
+        return shardRouter;
+    }
+
+    /**
+     * cluster模式：masterConfString中以逗号分隔的host:port为初始节点，其余节点从CLUSTER SLOTS中发现
+     */
+    private ClusterRouter initCluster(String masterConfString) {
+        List<HostAndPort> seeds = new ArrayList<HostAndPort>();
+        for (String conf : masterConfString.split(",")) {
+            if (conf.trim().length() > 0) {
+                seeds.add(parseAddress(conf.trim()));
+            }
+        }
+        ClusterRouter clusterRouter = new ClusterRouter(seeds, this::createNode, clusterRefreshIntervalMillis, maxRedirects);
+        try {
+            clusterRouter.refresh();
+        } catch (RedisException e) {
+            clusterRouter.destroy();
+            throw e;
+        }
+        log.info("init cluster successful, masters = " + clusterRouter.getMasters());
+        return clusterRouter;
+    }
+
+    private RedisNode createNode(String conf) {
+        return createNode(parseAddress(conf));
+    }
+
+    private RedisNode createNode(HostAndPort address) {
+        TunableJedisPool pool = new TunableJedisPool(redisPoolConfig, address.getHost(), address.getPort(), timeout, redisPassword);
+        NioRedisEngine nodeEngine = null;
+        if (ENGINE_NIO.equals(engine)) {
+            nodeEngine = new NioRedisEngine(address.getHost(), address.getPort(), redisPassword,
+                    redisPoolConfig.getDatabase(), nioConnections, timeout);
+            nodeEngine.setMaxQueuedBytes(nioMaxQueuedBytes);
+            nodeEngine.start();
+        }
+        return new RedisNode(address, pool, nodeEngine, createCircuitBreaker(address));
+    }
+
+    private CircuitBreaker createCircuitBreaker(HostAndPort address) {
+        return circuitBreakerConfig.isEnabled() ? new CircuitBreaker(address.toString(), circuitBreakerConfig) : null;
+    }
+
+    /**
+     * 并行为每个节点建立perNode个连接，失败或超时只记录日志，之后按需建立连接
+     *
+     * @return 是否每个节点都至少建立了一个连接
+     */
+    private boolean warmUp(List<RedisNode> nodes, int perNode) {
+        if (perNode <= 0 || nodes.isEmpty()) {
+            return true;
+        }
+        long start = System.currentTimeMillis();
+        int connections = perNode * nodes.size();
+        AtomicInteger seq = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(connections, 32), r -> {
+            Thread thread = new Thread(r, "redis-warm-up-" + seq.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<RedisNode, List<Future<?>>> futures = new LinkedHashMap<RedisNode, List<Future<?>>>();
+        for (RedisNode node : nodes) {
+            List<Future<?>> nodeFutures = new ArrayList<Future<?>>();
+            for (int i = 0; i < perNode; i++) {
+                nodeFutures.add(executor.submit(() -> {
+                    node.getJedisPool().addIdle();
+                    return null;
+                }));
+            }
+            futures.put(node, nodeFutures);
+        }
+        int opened = 0;
+        boolean everyNode = true;
+        long deadline = start + redisPoolConfig.getWarmUpTimeoutMillis();
+        try {
+            for (Map.Entry<RedisNode, List<Future<?>>> entry : futures.entrySet()) {
+                int nodeOpened = 0;
+                for (Future<?> future : entry.getValue()) {
+                    try {
+                        future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                        nodeOpened++;
+                    } catch (Exception e) {
+                        log.warn("warm up connection to " + entry.getKey().getAddress() + " fail!", e);
+                    }
+                }
+                opened += nodeOpened;
+                everyNode &= nodeOpened > 0;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("warm up " + opened + "/" + connections + " connections, take time : " + (System.currentTimeMillis() - start));
+        return everyNode;
+    }
+
+    private static HostAndPort parseAddress(String conf) {
+        String[] nodeConf = conf.split(":");
+        if (nodeConf.length == 1) {
+            throw new ExceptionInInitializerError(conf + " is not host:port");
+        }
+        return new HostAndPort(nodeConf[0], Integer.parseInt(nodeConf[1]));
     }
 
     private void destroyRedisClient() {
-        if (masterJedisPool != null) {
-            masterJedisPool.destroy();
-            log.info("destroy master successful!");
+        if (poolSizer != null) {
+            poolSizer.shutdownNow();
+            poolSizer = null;
+        }
+        RedisTopology current = topology;
+        if (current != null) {
+            topology = null;
+            current.destroy();
+        }
+        // 还在等待的旧拓扑不再等待，直接关闭
+        for (RedisTopology old : retired) {
+            if (retired.remove(old)) {
+                old.destroy();
+            }
         }
     }
 
     //------------------------------ getter --------------------------
 
+    /**
+     * @return 当前的拓扑，未初始化或已注销时为null。执行命令时使用acquire()
+     */
+    public RedisTopology getTopology() {
+        return topology;
+    }
+
     public JedisPool getMasterJedisPool() {
-        return masterJedisPool;
+        RedisTopology current = topology;
+        return current == null ? null : current.getMasterJedisPool();
+    }
+
+    /**
+     * @return engine为nio时的NIO连接引擎，否则为null
+     */
+    public NioRedisEngine getNioEngine() {
+        RedisTopology current = topology;
+        return current == null ? null : current.getNioEngine();
+    }
+
+    /**
+     * @return single模式下master对应的节点，sharded和cluster模式下为null
+     */
+    public RedisNode getMasterNode() {
+        RedisTopology current = topology;
+        return current == null ? null : current.getMasterNode();
+    }
+
+    /**
+     * @return sharded模式下的shard路由，否则为null
+     */
+    public ShardRouter getShardRouter() {
+        RedisTopology current = topology;
+        return current == null ? null : current.getShardRouter();
+    }
+
+    /**
+     * @return cluster模式下的slot路由，否则为null
+     */
+    public ClusterRouter getClusterRouter() {
+        RedisTopology current = topology;
+        return current == null ? null : current.getClusterRouter();
+    }
+
+    /**
+     * @return 当前所有节点：master、副本、shard或cluster的master
+     */
+    public List<RedisNode> getNodes() {
+        RedisTopology current = topology;
+        return current == null ? new ArrayList<RedisNode>() : current.getNodes();
+    }
+
+    /**
+     * sharded模式下，评估把shard列表改为newShardConf后需要迁移的key比例
+     *
+     * @param newShardConf 以逗号分隔的host:port
+     * @return 各迁移方向（源shard->目标shard）的比例，总和为需要迁移的比例
+     */
+    public Map<String, Double> estimateShardMovement(String newShardConf) {
+        ShardRouter shardRouter = getShardRouter();
+        if (shardRouter == null) {
+            throw new RedisException("driver is not in sharded mode");
+        }
+        List<String> shards = new ArrayList<String>();
+        for (String conf : newShardConf.split(",")) {
+            if (conf.trim().length() > 0) {
+                shards.add(conf.trim());
+            }
+        }
+        ShardRing ring = shardRouter.getRing();
+        return ring.movement(ring.withShards(shards));
+    }
+
+    /**
+     * @return 配置了副本时的读路由，否则为null
+     */
+    public ReadRouter getReadRouter() {
+        RedisTopology current = topology;
+        return current == null ? null : current.getReadRouter();
+    }
+
+    /**
+     * 需要独占连接（如订阅）的组件据此自行建立连接
+     */
+    public HostAndPort getMasterAddress() {
+        RedisNode masterNode = getMasterNode();
+        return masterNode == null ? null : masterNode.getAddress();
+    }
+
+    public String getRedisPassword() {
+        return redisPassword;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    public int getDatabase() {
+        return redisPoolConfig.getDatabase();
+    }
+
+    /**
+     * @param timeout 连接和读回复的超时时间（毫秒），默认为3600
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
     }
 
     public void setRedisConf(String redisConf) {
         this.redisConf = redisConf;
     }
 
+    /**
+     * @param replicaConf 只读副本，多个host:port以逗号分隔，为空时读写都走master
+     */
+    public void setReplicaConf(String replicaConf) {
+        this.replicaConf = replicaConf;
+    }
+
     public void setRedisPassword(String redisPassword) {
         this.redisPassword = redisPassword;
     }
 
+    /**
+     * @param redisPoolConfig 每个节点连接池的配置，包括预热和自适应大小
+     */
+    public void setRedisPoolConfig(RedisPoolConfig redisPoolConfig) {
+        this.redisPoolConfig = redisPoolConfig;
+    }
+
+    /**
+     * @param circuitBreakerConfig 每个节点的熔断配置，默认开启
+     */
+    public void setCircuitBreakerConfig(CircuitBreakerConfig circuitBreakerConfig) {
+        this.circuitBreakerConfig = circuitBreakerConfig;
+    }
+
+    /**
+     * @param maxTotal 每个节点连接池的最大连接数，默认为300
+     */
+    public void setMaxTotal(int maxTotal) {
+        redisPoolConfig.setMaxTotal(maxTotal);
+    }
+
+    /**
+     * @param maxIdle 每个节点连接池的最大空闲连接数，默认为200
+     */
+    public void setMaxIdle(int maxIdle) {
+        redisPoolConfig.setMaxIdle(maxIdle);
+    }
+
+    /**
+     * @param engine jedis（默认，连接池）或nio（少量共享的NIO连接）
+     */
+    public void setEngine(String engine) {
+        this.engine = engine;
+    }
+
+    public void setNioConnections(int nioConnections) {
+        this.nioConnections = nioConnections;
+    }
+
+    /**
+     * @param nioMaxQueuedBytes nio模式下每个连接等待写出的命令的字节数上限，服务端读得慢时超过的命令直接失败，默认为64MB
+     */
+    public void setNioMaxQueuedBytes(long nioMaxQueuedBytes) {
+        this.nioMaxQueuedBytes = nioMaxQueuedBytes;
+    }
+
+    /**
+     * @param readPolicy round-robin（默认）、least-outstanding或latency-weighted
+     */
+    public void setReadPolicy(String readPolicy) {
+        this.readPolicy = readPolicy;
+    }
+
+    /**
+     * @param readYourWrites 写入后的readYourWritesMillis内，同一线程的读走master
+     */
+    public void setReadYourWrites(boolean readYourWrites) {
+        this.readYourWrites = readYourWrites;
+    }
+
+    public void setReadYourWritesMillis(long readYourWritesMillis) {
+        this.readYourWritesMillis = readYourWritesMillis;
+    }
+
+    /**
+     * @param replicaDownMillis 副本连接失败后暂停使用的时间
+     */
+    public void setReplicaDownMillis(long replicaDownMillis) {
+        this.replicaDownMillis = replicaDownMillis;
+    }
+
+    /**
+     * @param mode single（默认）、sharded或cluster。sharded模式下redisConf为以逗号分隔的多个master，
+     *             key按一致性hash分布；cluster模式下redisConf为以逗号分隔的初始节点。
+     *             这两种模式不支持副本、multi和pipelined
+     */
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    public void setVirtualNodes(int virtualNodes) {
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * @param hashTags 为true（默认）时key中的{tag}决定所在shard
+     */
+    public void setHashTags(boolean hashTags) {
+        this.hashTags = hashTags;
+    }
+
+    public void setClusterRefreshIntervalMillis(long clusterRefreshIntervalMillis) {
+        this.clusterRefreshIntervalMillis = clusterRefreshIntervalMillis;
+    }
+
+    public void setMaxRedirects(int maxRedirects) {
+        this.maxRedirects = maxRedirects;
+    }
+
+    /**
+     * @param drainTimeoutMillis reload时等待旧连接上执行中的命令结束的最长时间，默认为10秒
+     */
+    public void setDrainTimeoutMillis(long drainTimeoutMillis) {
+        this.drainTimeoutMillis = drainTimeoutMillis;
+    }
+
 }
@@ -0,0 +1,105 @@
+package com.linkedkeeper.redis.client.driver;
+
+import com.linkedkeeper.redis.client.nio.NioRedisEngine;
+import redis.clients.jedis.HostAndPort;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一个redis节点（master、shard或只读副本）：连接池（nio模式下另有NIO引擎）、熔断器，以及路由用到的未完成请求数和平均延迟
+ *
+ * @Author: zhangsr
+ */
+public class RedisNode {
+
+    private final HostAndPort address;
+    private final TunableJedisPool jedisPool;
+    private final NioRedisEngine nioEngine;
+    private final CircuitBreaker circuitBreaker;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private volatile long latencyNanos = 0;
+    private volatile long downUntilNanos = 0;
+
+    RedisNode(HostAndPort address, TunableJedisPool jedisPool, NioRedisEngine nioEngine, CircuitBreaker circuitBreaker) {
+        this.address = address;
+        this.jedisPool = jedisPool;
+        this.nioEngine = nioEngine;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * 开始一次请求
+     */
+    public void begin() {
+        outstanding.incrementAndGet();
+    }
+
+    /**
+     * 结束一次请求，延迟按1/8的权重计入指数移动平均
+     *
+     * @param elapsedNanos
+     */
+    public void end(long elapsedNanos) {
+        outstanding.decrementAndGet();
+        long current = latencyNanos;
+        latencyNanos = current == 0 ? elapsedNanos : current + (elapsedNanos - current) / 8;
+    }
+
+    /**
+     * 连接失败后的一段时间内不再选择该节点
+     *
+     * @param downMillis
+     */
+    public void markDown(long downMillis) {
+        downUntilNanos = System.nanoTime() + downMillis * 1000000L;
+    }
+
+    public boolean isAvailable() {
+        return downUntilNanos == 0 || System.nanoTime() - downUntilNanos >= 0;
+    }
+
+    void destroy() {
+        if (nioEngine != null) {
+            nioEngine.shutdown();
+        }
+        jedisPool.destroy();
+    }
+
+    //------------------------------ getter --------------------------
+
+    public HostAndPort getAddress() {
+        return address;
+    }
+
+    public TunableJedisPool getJedisPool() {
+        return jedisPool;
+    }
+
+    /**
+     * @return engine为nio时的NIO连接引擎，否则为null
+     */
+    public NioRedisEngine getNioEngine() {
+        return nioEngine;
+    }
+
+    /**
+     * @return 关闭熔断时为null
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "RedisNode{" + address + "}";
+    }
+}
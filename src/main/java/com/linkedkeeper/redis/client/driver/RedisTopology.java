@@ -0,0 +1,168 @@
+package com.linkedkeeper.redis.client.driver;
+
+import com.linkedkeeper.redis.client.nio.NioRedisEngine;
+import org.apache.log4j.Logger;
+import redis.clients.jedis.JedisPool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 由一份配置建立的全部连接：master（或shard、cluster节点）及副本的连接池和路由。
+ * 命令执行期间通过RedisDriver.acquire()持有，重新配置时旧的拓扑等到没有执行中的命令后再关闭
+ *
+ * @Author: zhangsr
+ */
+public class RedisTopology {
+
+    private final static Logger log = Logger.getLogger(RedisTopology.class);
+
+    private final String redisConf;
+    private final TunableJedisPool masterJedisPool;
+    private final NioRedisEngine nioEngine;
+    private final RedisNode masterNode;
+    private final ReadRouter readRouter;
+    private final ShardRouter shardRouter;
+    private final ClusterRouter clusterRouter;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    RedisTopology(String redisConf, TunableJedisPool masterJedisPool, NioRedisEngine nioEngine, RedisNode masterNode,
+                  ReadRouter readRouter, ShardRouter shardRouter, ClusterRouter clusterRouter) {
+        this.redisConf = redisConf;
+        this.masterJedisPool = masterJedisPool;
+        this.nioEngine = nioEngine;
+        this.masterNode = masterNode;
+        this.readRouter = readRouter;
+        this.shardRouter = shardRouter;
+        this.clusterRouter = clusterRouter;
+    }
+
+    /**
+     * 结束一次RedisDriver.acquire()
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * 已经持有拓扑的调用再增加一次引用，用于把拓扑交给另一个线程，该线程结束时调用release
+     */
+    public void retain() {
+        inFlight.incrementAndGet();
+    }
+
+    /**
+     * 等待执行中的命令结束，超时后不再等待
+     *
+     * @param timeoutMillis
+     * @return 是否在超时前结束
+     */
+    boolean drain(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (inFlight.get() > 0) {
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void destroy() {
+        if (clusterRouter != null) {
+            clusterRouter.destroy();
+            log.info("destroy cluster successful!");
+        }
+        if (shardRouter != null) {
+            shardRouter.destroy();
+            log.info("destroy shards successful!");
+        }
+        if (readRouter != null) {
+            readRouter.destroy();
+            log.info("destroy replicas successful!");
+        }
+        if (nioEngine != null) {
+            nioEngine.shutdown();
+            log.info("destroy master nio engine successful!");
+        }
+        if (masterJedisPool != null) {
+            masterJedisPool.destroy();
+            log.info("destroy master successful!");
+        }
+    }
+
+    //------------------------------ getter --------------------------
+
+    public String getRedisConf() {
+        return redisConf;
+    }
+
+    /**
+     * @return single模式下master的连接池，sharded和cluster模式下为null
+     */
+    public JedisPool getMasterJedisPool() {
+        return masterJedisPool;
+    }
+
+    /**
+     * @return single模式下engine为nio时的NIO连接引擎，否则为null
+     */
+    public NioRedisEngine getNioEngine() {
+        return nioEngine;
+    }
+
+    /**
+     * @return single模式下master对应的节点，sharded和cluster模式下为null
+     */
+    public RedisNode getMasterNode() {
+        return masterNode;
+    }
+
+    /**
+     * @return 配置了副本时的读路由，否则为null
+     */
+    public ReadRouter getReadRouter() {
+        return readRouter;
+    }
+
+    /**
+     * @return sharded模式下的shard路由，否则为null
+     */
+    public ShardRouter getShardRouter() {
+        return shardRouter;
+    }
+
+    /**
+     * @return cluster模式下的slot路由，否则为null
+     */
+    public ClusterRouter getClusterRouter() {
+        return clusterRouter;
+    }
+
+    /**
+     * @return 所有节点：master、副本、shard或cluster的master
+     */
+    public List<RedisNode> getNodes() {
+        List<RedisNode> nodes = new ArrayList<RedisNode>();
+        if (masterNode != null) {
+            nodes.add(masterNode);
+        }
+        if (readRouter != null) {
+            nodes.addAll(readRouter.getReplicas());
+        }
+        if (shardRouter != null) {
+            nodes.addAll(shardRouter.getNodes());
+        }
+        if (clusterRouter != null) {
+            nodes.addAll(clusterRouter.getMasters());
+        }
+        return nodes;
+    }
+}
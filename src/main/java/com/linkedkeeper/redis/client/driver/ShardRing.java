@@ -0,0 +1,175 @@
+package com.linkedkeeper.redis.client.driver;
+
+import redis.clients.util.MurmurHash;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * 一致性hash环，每个shard在环上有virtualNodes个虚拟节点，key归属顺时针方向第一个虚拟节点的shard。
+ * key中包含非空的{tag}时只对tag做hash，相同tag的key落在同一个shard上
+ *
+ * @Author: zhangsr
+ */
+public class ShardRing {
+
+    public final static int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final static int SEED = 0x1234ABCD;
+
+    private final List<String> shards;
+    private final int virtualNodes;
+    private final boolean hashTags;
+    private final TreeMap<Long, String> ring = new TreeMap<Long, String>();
+
+    /**
+     * @param shards       shard名称，虚拟节点由名称计算，名称不变时shard的位置就不变
+     * @param virtualNodes 每个shard的虚拟节点数
+     * @param hashTags     是否识别{tag}
+     */
+    public ShardRing(List<String> shards, int virtualNodes, boolean hashTags) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("shards is empty");
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<String>(shards));
+        this.virtualNodes = virtualNodes;
+        this.hashTags = hashTags;
+        for (String shard : shards) {
+            for (int i = 0; i < virtualNodes; i++) {
+                ring.put(hash(SafeEncoder.encode(shard + "-NODE-" + i)), shard);
+            }
+        }
+    }
+
+    public String locate(String key) {
+        return locate(SafeEncoder.encode(key));
+    }
+
+    public String locate(byte[] key) {
+        return locate(hash(hashTags ? tag(key) : key));
+    }
+
+    /**
+     * 按shard分组，组内保持keys中的顺序
+     */
+    public Map<String, List<String>> group(String... keys) {
+        Map<String, List<String>> groups = new LinkedHashMap<String, List<String>>();
+        for (String key : keys) {
+            String shard = locate(key);
+            List<String> group = groups.get(shard);
+            if (group == null) {
+                group = new ArrayList<String>();
+                groups.put(shard, group);
+            }
+            group.add(key);
+        }
+        return groups;
+    }
+
+    /**
+     * 以相同的虚拟节点设置构建新的shard列表对应的环
+     */
+    public ShardRing withShards(List<String> shards) {
+        return new ShardRing(shards, virtualNodes, hashTags);
+    }
+
+    /**
+     * 从当前环切换到target后，hash空间中改变归属的比例，按"源shard->目标shard"分组。
+     * key均匀分布时即为需要迁移的key的比例
+     *
+     * @param target
+     * @return 各迁移方向的比例，总和为需要迁移的比例
+     */
+    public Map<String, Double> movement(ShardRing target) {
+        TreeMap<Long, Boolean> points = new TreeMap<Long, Boolean>();
+        for (Long point : ring.keySet()) {
+            points.put(point, Boolean.TRUE);
+        }
+        for (Long point : target.ring.keySet()) {
+            points.put(point, Boolean.TRUE);
+        }
+        // 相邻两点之间的hash值归属相同，以区间右端点（含）判断，第一个区间从最后一点绕回
+        Map<String, Double> moved = new LinkedHashMap<String, Double>();
+        double total = Math.pow(2, 64);
+        Long previous = points.lastKey();
+        for (Long point : points.keySet()) {
+            String from = locate(point);
+            String to = target.locate(point);
+            if (!from.equals(to)) {
+                double length = unsigned(point - previous);
+                String direction = from + "->" + to;
+                Double sum = moved.get(direction);
+                moved.put(direction, (sum == null ? 0 : sum) + length / total);
+            }
+            previous = point;
+        }
+        return moved;
+    }
+
+    /**
+     * 从当前环切换到target后改变归属的key，按目标shard分组
+     *
+     * @param keys 例如通过scan得到的key
+     */
+    public Map<String, List<String>> movedKeys(Iterable<String> keys, ShardRing target) {
+        Map<String, List<String>> moved = new HashMap<String, List<String>>();
+        for (String key : keys) {
+            String to = target.locate(key);
+            if (!to.equals(locate(key))) {
+                List<String> group = moved.get(to);
+                if (group == null) {
+                    group = new ArrayList<String>();
+                    moved.put(to, group);
+                }
+                group.add(key);
+            }
+        }
+        return moved;
+    }
+
+    public List<String> getShards() {
+        return shards;
+    }
+
+    private String locate(long hash) {
+        SortedMap<Long, String> tail = ring.tailMap(hash);
+        return tail.isEmpty() ? ring.firstEntry().getValue() : ring.get(tail.firstKey());
+    }
+
+    private static long hash(byte[] key) {
+        return MurmurHash.hash64A(key, SEED);
+    }
+
+    private static double unsigned(long value) {
+        return value >= 0 ? value : value + Math.pow(2, 64);
+    }
+
+    /**
+     * @return 第一个{和其后第一个}之间的非空内容，没有时返回整个key
+     */
+    static byte[] tag(byte[] key) {
+        for (int start = 0; start < key.length; start++) {
+            if (key[start] == '{') {
+                for (int end = start + 1; end < key.length; end++) {
+                    if (key[end] == '}') {
+                        if (end == start + 1) {
+                            return key;
+                        }
+                        byte[] tag = new byte[end - start - 1];
+                        System.arraycopy(key, start + 1, tag, 0, tag.length);
+                        return tag;
+                    }
+                }
+                return key;
+            }
+        }
+        return key;
+    }
+}
@@ -0,0 +1,74 @@
+package com.linkedkeeper.redis.client.driver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * sharded模式下按ShardRing把key路由到shard的master节点
+ *
+ * @Author: zhangsr
+ */
+public class ShardRouter {
+
+    private final ShardRing ring;
+    private final Map<String, RedisNode> nodes;
+
+    ShardRouter(ShardRing ring, Map<String, RedisNode> nodes) {
+        this.ring = ring;
+        this.nodes = Collections.unmodifiableMap(new LinkedHashMap<String, RedisNode>(nodes));
+    }
+
+    public RedisNode route(String key) {
+        return nodes.get(ring.locate(key));
+    }
+
+    public RedisNode route(byte[] key) {
+        return nodes.get(ring.locate(key));
+    }
+
+    /**
+     * 按节点分组，组内保持keys中的顺序
+     */
+    public Map<RedisNode, List<String>> group(String... keys) {
+        Map<RedisNode, List<String>> groups = new LinkedHashMap<RedisNode, List<String>>();
+        for (Map.Entry<String, List<String>> entry : ring.group(keys).entrySet()) {
+            groups.put(nodes.get(entry.getKey()), entry.getValue());
+        }
+        return groups;
+    }
+
+    /**
+     * 按节点分组，组内保持keys中的顺序
+     */
+    public Map<RedisNode, List<byte[]>> group(byte[]... keys) {
+        Map<RedisNode, List<byte[]>> groups = new LinkedHashMap<RedisNode, List<byte[]>>();
+        for (byte[] key : keys) {
+            RedisNode node = route(key);
+            List<byte[]> group = groups.get(node);
+            if (group == null) {
+                group = new ArrayList<byte[]>();
+                groups.put(node, group);
+            }
+            group.add(key);
+        }
+        return groups;
+    }
+
+    public Collection<RedisNode> getNodes() {
+        return nodes.values();
+    }
+
+    public ShardRing getRing() {
+        return ring;
+    }
+
+    void destroy() {
+        for (RedisNode node : nodes.values()) {
+            node.destroy();
+        }
+    }
+}
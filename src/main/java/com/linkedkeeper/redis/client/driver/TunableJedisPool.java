@@ -0,0 +1,118 @@
+package com.linkedkeeper.redis.client.driver;
+
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+
+/**
+ * 可以预热、在运行时调整大小并读取借出等待时间的JedisPool，连接为累计收发字节数的CountingJedis
+ *
+ * @Author: zhangsr
+ */
+public class TunableJedisPool extends JedisPool {
+
+    public TunableJedisPool(GenericObjectPoolConfig poolConfig, String host, int port, int timeout, String password) {
+        super(poolConfig, host, port, timeout, password);
+        // 只替换建立连接，检查、激活和关闭连接仍由JedisFactory完成
+        initPool(poolConfig, new CountingFactory(internalPool.getFactory(), host, port, timeout, password));
+    }
+
+    /**
+     * 借出连接，最多等待borrowTimeoutMillis，不使用连接池配置的maxWaitMillis
+     *
+     * @param borrowTimeoutMillis
+     * @return
+     */
+    public Jedis getResource(long borrowTimeoutMillis) {
+        try {
+            Jedis jedis = internalPool.borrowObject(borrowTimeoutMillis);
+            jedis.setDataSource(this);
+            return jedis;
+        } catch (Exception e) {
+            throw new JedisConnectionException("Could not get a resource from the pool", e);
+        }
+    }
+
+    /**
+     * 建立一个连接（包括AUTH和SELECT）并放入空闲队列，可以并发调用
+     *
+     * @throws Exception 连接失败
+     */
+    public void addIdle() throws Exception {
+        internalPool.addObject();
+    }
+
+    public int getMaxTotal() {
+        return internalPool.getMaxTotal();
+    }
+
+    public void setMaxTotal(int maxTotal) {
+        internalPool.setMaxTotal(maxTotal);
+    }
+
+    public int getMaxIdle() {
+        return internalPool.getMaxIdle();
+    }
+
+    public void setMaxIdle(int maxIdle) {
+        internalPool.setMaxIdle(maxIdle);
+    }
+
+    /**
+     * @return 最近100次借出连接的平均等待时间
+     */
+    public long getMeanBorrowWaitTimeMillis() {
+        return internalPool.getMeanBorrowWaitTimeMillis();
+    }
+
+    private static final class CountingFactory implements PooledObjectFactory<Jedis> {
+
+        private final PooledObjectFactory<Jedis> delegate;
+        private final String host;
+        private final int port;
+        private final int timeout;
+        private final String password;
+
+        CountingFactory(PooledObjectFactory<Jedis> delegate, String host, int port, int timeout, String password) {
+            this.delegate = delegate;
+            this.host = host;
+            this.port = port;
+            this.timeout = timeout;
+            this.password = password;
+        }
+
+        public PooledObject<Jedis> makeObject() throws Exception {
+            Jedis jedis = new CountingJedis(host, port, timeout);
+            try {
+                jedis.connect();
+                if (password != null) {
+                    jedis.auth(password);
+                }
+            } catch (Exception e) {
+                jedis.close();
+                throw e;
+            }
+            return new DefaultPooledObject<Jedis>(jedis);
+        }
+
+        public void destroyObject(PooledObject<Jedis> p) throws Exception {
+            delegate.destroyObject(p);
+        }
+
+        public boolean validateObject(PooledObject<Jedis> p) {
+            return delegate.validateObject(p);
+        }
+
+        public void activateObject(PooledObject<Jedis> p) throws Exception {
+            delegate.activateObject(p);
+        }
+
+        public void passivateObject(PooledObject<Jedis> p) throws Exception {
+            delegate.passivateObject(p);
+        }
+    }
+}
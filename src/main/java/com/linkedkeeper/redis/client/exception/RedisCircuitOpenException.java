@@ -0,0 +1,13 @@
+package com.linkedkeeper.redis.client.exception;
+
+/**
+ * 节点已熔断，命令没有发出
+ *
+ * @Author: zhangsr
+ */
+public class RedisCircuitOpenException extends RedisException {
+
+    public RedisCircuitOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,98 @@
+package com.linkedkeeper.redis.client.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 单个命令的累计指标，计数使用LongAdder分段累加，多线程记录时没有竞争热点
+ *
+ * @Author: zhangsr
+ */
+public class CommandMetrics implements CommandMetricsMXBean {
+
+    private final String command;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram borrow = new LatencyHistogram();
+
+    CommandMetrics(String command) {
+        this.command = command;
+    }
+
+    void record(long nanos, long in, long out, boolean success) {
+        calls.increment();
+        if (!success) {
+            errors.increment();
+        }
+        if (in > 0) {
+            bytesIn.add(in);
+        }
+        if (out > 0) {
+            bytesOut.add(out);
+        }
+        latency.record(nanos);
+    }
+
+    void recordBorrow(long nanos) {
+        borrow.record(nanos);
+    }
+
+    public CommandStats snapshot() {
+        return new CommandStats(command, calls.sum(), errors.sum(), bytesIn.sum(), bytesOut.sum(),
+                latency.snapshot(), borrow.snapshot());
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    public double getMeanMicros() {
+        return latency.snapshot().getMean() / 1000.0;
+    }
+
+    public double getP50Micros() {
+        return latency.snapshot().percentile(50) / 1000.0;
+    }
+
+    public double getP99Micros() {
+        return latency.snapshot().percentile(99) / 1000.0;
+    }
+
+    public double getP999Micros() {
+        return latency.snapshot().percentile(99.9) / 1000.0;
+    }
+
+    public double getMaxMicros() {
+        return latency.snapshot().getMax() / 1000.0;
+    }
+
+    public long getBorrows() {
+        return borrow.snapshot().getCount();
+    }
+
+    public double getBorrowP50Micros() {
+        return borrow.snapshot().percentile(50) / 1000.0;
+    }
+
+    public double getBorrowP99Micros() {
+        return borrow.snapshot().percentile(99) / 1000.0;
+    }
+
+    public double getBorrowP999Micros() {
+        return borrow.snapshot().percentile(99.9) / 1000.0;
+    }
+}
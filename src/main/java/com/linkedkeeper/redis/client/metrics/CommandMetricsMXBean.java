@@ -0,0 +1,35 @@
+package com.linkedkeeper.redis.client.metrics;
+
+/**
+ * 单个命令的JMX视图，延迟单位为微秒，command为执行时间，borrow为从连接池借连接的等待时间
+ *
+ * @Author: zhangsr
+ */
+public interface CommandMetricsMXBean {
+
+    long getCalls();
+
+    long getErrors();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    double getMeanMicros();
+
+    double getP50Micros();
+
+    double getP99Micros();
+
+    double getP999Micros();
+
+    double getMaxMicros();
+
+    long getBorrows();
+
+    double getBorrowP50Micros();
+
+    double getBorrowP99Micros();
+
+    double getBorrowP999Micros();
+}
@@ -0,0 +1,83 @@
+package com.linkedkeeper.redis.client.metrics;
+
+/**
+ * 单个命令在某一时刻的统计快照
+ *
+ * @Author: zhangsr
+ */
+public class CommandStats {
+
+    private final String command;
+    private final long calls;
+    private final long errors;
+    private final long bytesIn;
+    private final long bytesOut;
+    private final LatencyHistogram.Snapshot latency;
+    private final LatencyHistogram.Snapshot borrow;
+
+    CommandStats(String command, long calls, long errors, long bytesIn, long bytesOut,
+                 LatencyHistogram.Snapshot latency, LatencyHistogram.Snapshot borrow) {
+        this.command = command;
+        this.calls = calls;
+        this.errors = errors;
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+        this.latency = latency;
+        this.borrow = borrow;
+    }
+
+    /**
+     * @param percentile 0到100，如99.9
+     * @return 命令执行时间，不含借连接的等待
+     */
+    public double getLatencyMicros(double percentile) {
+        return latency.percentile(percentile) / 1000.0;
+    }
+
+    /**
+     * @param percentile 0到100
+     * @return 从连接池借连接的等待时间，NIO引擎上执行的命令不借连接
+     */
+    public double getBorrowMicros(double percentile) {
+        return borrow.percentile(percentile) / 1000.0;
+    }
+
+    public double getMeanMicros() {
+        return latency.getMean() / 1000.0;
+    }
+
+    public double getMaxMicros() {
+        return latency.getMax() / 1000.0;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public long getBorrows() {
+        return borrow.getCount();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s calls=%d errors=%d in=%dB out=%dB p50=%.1fus p99=%.1fus p999=%.1fus max=%.1fus borrowP99=%.1fus",
+                command, calls, errors, bytesIn, bytesOut, getLatencyMicros(50), getLatencyMicros(99),
+                getLatencyMicros(99.9), getMaxMicros(), getBorrowMicros(99));
+    }
+}
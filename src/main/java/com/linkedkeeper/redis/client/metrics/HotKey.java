@@ -0,0 +1,36 @@
+package com.linkedkeeper.redis.client.metrics;
+
+/**
+ * 一个统计周期内访问最多的key之一，count是按抽样率放大后的估计访问次数
+ *
+ * @Author: zhangsr
+ */
+public class HotKey {
+
+    private final String command;
+    private final String key;
+    private final long count;
+
+    public HotKey(String command, String key, long count) {
+        this.command = command;
+        this.key = key;
+        this.count = count;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return command + " " + key + " ~" + count;
+    }
+}
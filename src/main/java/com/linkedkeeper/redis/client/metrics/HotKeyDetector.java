@@ -0,0 +1,342 @@
+package com.linkedkeeper.redis.client.metrics;
+
+import org.apache.log4j.Logger;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按命令和key统计访问频率，找出热点key。每sampleRate次访问随机抽样一次，抽中的访问计入count-min sketch
+ * （depth行、每行width个计数器），已在top-K中的key不加锁直接更新计数，其它key估计次数超过top-K中最小者时才加锁替换最小者，
+ * 堆只在替换和报告时按最新计数重排，内存与key的个数无关。
+ * 每隔reportIntervalMillis换一个新的统计周期，上一个周期的top-K作为报告，可以经由getHotKeys或JMX读取，
+ * ObjectName为com.linkedkeeper.redis.client:type=HotKeys,name=客户端名；
+ * 估计访问次数达到hotThreshold的key交给HotKeyListener，如NearCacheRedisClient将其提升到本地缓存
+ *
+ * @Author: zhangsr
+ */
+public class HotKeyDetector implements HotKeyDetectorMXBean {
+
+    private final static Logger log = Logger.getLogger(HotKeyDetector.class);
+
+    private String name = "default";
+    private boolean jmx = true;
+    private int sampleRate = 10;
+    private int depth = 4;
+    private int width = 4096;
+    private int topK = 50;
+    private long reportIntervalMillis = 10000;
+    private long hotThreshold = 0;
+    private List<HotKeyListener> listeners = new CopyOnWriteArrayList<HotKeyListener>();
+
+    private volatile Window window = null;
+    private volatile List<HotKey> lastReport = Collections.emptyList();
+    private volatile long lastSampled = 0;
+    private ScheduledExecutorService reporter = null;
+    private ObjectName objectName = null;
+
+    public void init() {
+        window = new Window();
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "redis-hot-key-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleWithFixedDelay(this::report, reportIntervalMillis, reportIntervalMillis, TimeUnit.MILLISECONDS);
+        if (jmx) {
+            try {
+                objectName = new ObjectName(RedisMetrics.JMX_DOMAIN + ":type=HotKeys,name=" + ObjectName.quote(name));
+                ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            } catch (Exception e) {
+                objectName = null;
+                log.warn("register hot keys of " + name + " failure.", e);
+            }
+        }
+    }
+
+    public void destroy() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                log.warn("unregister " + objectName + " failure.", e);
+            }
+        }
+    }
+
+    /**
+     * 记录一次访问，没有抽中时只多一次随机数
+     *
+     * @param key 为null时忽略
+     */
+    public void record(String command, String key) {
+        Window current = window;
+        if (key == null || current == null) {
+            return;
+        }
+        if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return;
+        }
+        current.add(command, key);
+    }
+
+    /**
+     * 结束当前统计周期，生成报告并通知HotKeyListener，由定时任务调用
+     *
+     * @return 按估计访问次数从高到低的top-K
+     */
+    public List<HotKey> report() {
+        Window old = window;
+        window = new Window();
+        List<HotKey> hotKeys = old.top();
+        lastReport = hotKeys;
+        lastSampled = old.sampled.sum();
+        if (hotThreshold > 0) {
+            for (HotKey hotKey : hotKeys) {
+                if (hotKey.getCount() < hotThreshold) {
+                    break;
+                }
+                log.warn("hot key of " + name + ": " + hotKey + " in " + reportIntervalMillis + "ms");
+                for (HotKeyListener listener : listeners) {
+                    try {
+                        listener.onHotKey(hotKey);
+                    } catch (Exception e) {
+                        log.warn("notify hot key " + hotKey + " fail!", e);
+                    }
+                }
+            }
+        }
+        return hotKeys;
+    }
+
+    /**
+     * @return 上一个统计周期的top-K
+     */
+    public List<HotKey> getHotKeys() {
+        return lastReport;
+    }
+
+    /**
+     * @return 当前统计周期到目前为止的top-n
+     */
+    public List<HotKey> getCurrentHotKeys(int n) {
+        List<HotKey> hotKeys = window.top();
+        return hotKeys.size() <= n ? hotKeys : new ArrayList<HotKey>(hotKeys.subList(0, n));
+    }
+
+    /**
+     * @return 上一个统计周期抽中的访问次数
+     */
+    public long getSampledAccesses() {
+        return lastSampled;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public long getReportIntervalMillis() {
+        return reportIntervalMillis;
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 一个统计周期的sketch和top-K
+     */
+    private final class Window {
+
+        final AtomicLongArray sketch = new AtomicLongArray(depth * width);
+        final LongAdder sampled = new LongAdder();
+        /**
+         * top-K中的key，加锁增删，不加锁读取
+         */
+        final Map<String, Entry> index = new ConcurrentHashMap<String, Entry>();
+        /**
+         * 按计数的小顶堆，计数在锁外增长，取最小者之前先重排
+         */
+        PriorityQueue<Entry> heap = new PriorityQueue<Entry>();
+        volatile long minCount = 0;
+
+        void add(String command, String key) {
+            int h1 = spread(command.hashCode() * 31 + key.hashCode());
+            int h2 = spread(h1) | 1;
+            long estimate = Long.MAX_VALUE;
+            for (int i = 0; i < depth; i++) {
+                int cell = i * width + ((h1 + i * h2) & (width - 1));
+                estimate = Math.min(estimate, sketch.incrementAndGet(cell));
+            }
+            sampled.increment();
+            if (estimate <= minCount) {
+                return;
+            }
+            String id = command + '\0' + key;
+            Entry entry = index.get(id);
+            if (entry != null) {
+                entry.raise(estimate);
+            } else {
+                offer(id, command, key, estimate);
+            }
+        }
+
+        synchronized void offer(String id, String command, String key, long estimate) {
+            Entry entry = index.get(id);
+            if (entry != null) {
+                entry.raise(estimate);
+                return;
+            }
+            if (index.size() < topK) {
+                entry = new Entry(id, command, key, estimate);
+                index.put(id, entry);
+                heap.add(entry);
+                if (index.size() == topK) {
+                    reorder();
+                    minCount = heap.peek().count.get();
+                }
+                return;
+            }
+            reorder();
+            if (estimate > heap.peek().count.get()) {
+                index.remove(heap.poll().id);
+                entry = new Entry(id, command, key, estimate);
+                index.put(id, entry);
+                heap.add(entry);
+            }
+            minCount = heap.peek().count.get();
+        }
+
+        /**
+         * 计数在锁外增长后堆序可能已失效，按当前计数重建
+         */
+        private void reorder() {
+            heap = new PriorityQueue<Entry>(index.values());
+        }
+
+        synchronized List<HotKey> top() {
+            // 先取出计数再排序，排序期间计数仍可能增长
+            List<HotKey> hotKeys = new ArrayList<HotKey>(index.size());
+            for (Entry entry : index.values()) {
+                hotKeys.add(new HotKey(entry.command, entry.key, entry.count.get() * Math.max(1, sampleRate)));
+            }
+            hotKeys.sort(Comparator.comparingLong(HotKey::getCount).reversed());
+            return hotKeys;
+        }
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+
+        final String id;
+        final String command;
+        final String key;
+        final AtomicLong count;
+
+        Entry(String id, String command, String key, long count) {
+            this.id = id;
+            this.command = command;
+            this.key = key;
+            this.count = new AtomicLong(count);
+        }
+
+        /**
+         * sketch的估计值只增不减，并发更新时保留较大者
+         */
+        void raise(long estimate) {
+            long current = count.get();
+            while (estimate > current && !count.compareAndSet(current, estimate)) {
+                current = count.get();
+            }
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return Long.compare(count.get(), other.count.get());
+        }
+    }
+
+    //------------------------- setter ----------------------
+
+    /**
+     * @param name JMX中区分同一JVM里多个客户端的名字
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public void setJmx(boolean jmx) {
+        this.jmx = jmx;
+    }
+
+    /**
+     * @param sampleRate 每多少次访问抽样一次，默认为10，为1时记录每次访问
+     */
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * @param depth count-min sketch的行数，默认为4
+     */
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+
+    /**
+     * @param width count-min sketch每行的计数器个数，向上取2的幂，默认为4096
+     */
+    public void setWidth(int width) {
+        this.width = width <= 1 ? 1 : Integer.highestOneBit(width - 1) << 1;
+    }
+
+    /**
+     * @param topK 每个统计周期保留的热点key个数，默认为50
+     */
+    public void setTopK(int topK) {
+        this.topK = topK;
+    }
+
+    /**
+     * @param reportIntervalMillis 统计周期，默认为10秒
+     */
+    public void setReportIntervalMillis(long reportIntervalMillis) {
+        this.reportIntervalMillis = reportIntervalMillis;
+    }
+
+    /**
+     * @param hotThreshold 一个统计周期内估计访问次数达到这一值时通知HotKeyListener，默认为0，不通知
+     */
+    public void setHotThreshold(long hotThreshold) {
+        this.hotThreshold = hotThreshold;
+    }
+
+    public void setListeners(List<HotKeyListener> listeners) {
+        this.listeners = new CopyOnWriteArrayList<HotKeyListener>(listeners);
+    }
+
+    public void addListener(HotKeyListener listener) {
+        listeners.add(listener);
+    }
+}
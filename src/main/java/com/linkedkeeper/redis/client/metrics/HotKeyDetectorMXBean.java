@@ -0,0 +1,19 @@
+package com.linkedkeeper.redis.client.metrics;
+
+import java.util.List;
+
+/**
+ * 热点key的JMX视图，hotKeys为上一个统计周期按估计访问次数从高到低的top-N
+ *
+ * @Author: zhangsr
+ */
+public interface HotKeyDetectorMXBean {
+
+    List<HotKey> getHotKeys();
+
+    long getSampledAccesses();
+
+    int getSampleRate();
+
+    long getReportIntervalMillis();
+}
@@ -0,0 +1,11 @@
+package com.linkedkeeper.redis.client.metrics;
+
+/**
+ * 每个统计周期结束时，对估计访问次数达到hotThreshold的key调用
+ *
+ * @Author: zhangsr
+ */
+public interface HotKeyListener {
+
+    void onHotKey(HotKey hotKey);
+}
@@ -0,0 +1,193 @@
+package com.linkedkeeper.redis.client.metrics;
+
+import org.apache.log4j.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 按命令名汇总的客户端指标：调用次数、失败次数、执行时间和借连接等待时间的直方图，
+ * 开启payload时还统计收发的RESP编码字节数。每个命令第一次出现时注册一个JMX MBean，ObjectName为
+ * com.linkedkeeper.redis.client:type=CommandMetrics,name=客户端名,command=命令名，
+ * 同一JVM中客户端名重复时依次加上后缀-2、-3等
+ *
+ * @Author: zhangsr
+ */
+public class RedisMetrics {
+
+    private final static Logger log = Logger.getLogger(RedisMetrics.class);
+
+    public final static String JMX_DOMAIN = "com.linkedkeeper.redis.client";
+
+    private final static ConcurrentMap<String, Boolean> names = new ConcurrentHashMap<String, Boolean>();
+
+    private final String name;
+    private final boolean jmx;
+    private final boolean payload;
+    private final ConcurrentMap<String, CommandMetrics> commands = new ConcurrentHashMap<String, CommandMetrics>();
+    private final ConcurrentMap<String, ObjectName> registered = new ConcurrentHashMap<String, ObjectName>();
+
+    public RedisMetrics(String name, boolean jmx) {
+        this(name, jmx, false);
+    }
+
+    /**
+     * @param name    区分同一JVM中的多个客户端，已被使用时加上后缀
+     * @param jmx     是否注册MBean
+     * @param payload 是否统计收发字节数，默认不统计
+     */
+    public RedisMetrics(String name, boolean jmx, boolean payload) {
+        this.name = reserve(name);
+        this.jmx = jmx;
+        this.payload = payload;
+    }
+
+    /**
+     * 开始一次命令调用，计时从此刻开始
+     */
+    public Meter meter(String command) {
+        return new Meter(metrics(command), payload);
+    }
+
+    /**
+     * @return 实际使用的客户端名
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return 按命令名排序的快照
+     */
+    public Map<String, CommandStats> snapshot() {
+        Map<String, CommandStats> snapshot = new TreeMap<String, CommandStats>();
+        for (Map.Entry<String, CommandMetrics> entry : commands.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        return snapshot;
+    }
+
+    public CommandStats snapshot(String command) {
+        CommandMetrics metrics = commands.get(command);
+        return metrics == null ? null : metrics.snapshot();
+    }
+
+    public void destroy() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName objectName : registered.values()) {
+            try {
+                server.unregisterMBean(objectName);
+            } catch (Exception e) {
+                log.warn("unregister " + objectName + " failure.", e);
+            }
+        }
+        registered.clear();
+        names.remove(name);
+    }
+
+    private static String reserve(String name) {
+        String unique = name;
+        for (int i = 2; names.putIfAbsent(unique, Boolean.TRUE) != null; i++) {
+            unique = name + "-" + i;
+        }
+        if (!unique.equals(name)) {
+            log.info("metrics name " + name + " is in use, use " + unique);
+        }
+        return unique;
+    }
+
+    private CommandMetrics metrics(String command) {
+        CommandMetrics metrics = commands.get(command);
+        if (metrics == null) {
+            CommandMetrics created = new CommandMetrics(command);
+            metrics = commands.putIfAbsent(command, created);
+            if (metrics == null) {
+                metrics = created;
+                register(command, created);
+            }
+        }
+        return metrics;
+    }
+
+    private void register(String command, CommandMetrics metrics) {
+        if (!jmx) {
+            return;
+        }
+        try {
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=CommandMetrics,name="
+                    + ObjectName.quote(name) + ",command=" + ObjectName.quote(command));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+            registered.put(command, objectName);
+        } catch (Exception e) {
+            log.warn("register metrics of '" + command + "' for " + name + " failure.", e);
+        }
+    }
+
+    /**
+     * 一次命令调用的计量，计时由调用线程完成。开启payload时由连接层累计这次调用收发的RESP编码字节数：
+     * 连接池上由执行器读取CountingJedis的计数差，NIO引擎上由attach期间创建的命令在收到回复时累加
+     */
+    public static class Meter {
+
+        private final static ThreadLocal<Meter> attached = new ThreadLocal<Meter>();
+
+        private final CommandMetrics metrics;
+        private final boolean payload;
+        private long start = System.nanoTime();
+        private long bytesIn = 0;
+        private long bytesOut = 0;
+
+        Meter(CommandMetrics metrics, boolean payload) {
+            this.metrics = metrics;
+            this.payload = payload;
+        }
+
+        /**
+         * @return 当前线程attach的计量，没有时为null
+         */
+        public static Meter attached() {
+            return attached.get();
+        }
+
+        /**
+         * 已从连接池借到连接，之前的时间计入借连接等待，执行时间从此刻开始
+         */
+        public void borrowed() {
+            long now = System.nanoTime();
+            metrics.recordBorrow(now - start);
+            start = now;
+        }
+
+        public boolean isPayload() {
+            return payload;
+        }
+
+        /**
+         * 在detach之前，当前线程发出的NIO命令收到回复时把收发字节数计入这次调用
+         */
+        public void attach() {
+            attached.set(this);
+        }
+
+        public void detach() {
+            attached.remove();
+        }
+
+        /**
+         * 累加收发的字节数，NIO引擎在事件循环线程中调用
+         */
+        public synchronized void payload(long bytesIn, long bytesOut) {
+            this.bytesIn += bytesIn;
+            this.bytesOut += bytesOut;
+        }
+
+        public synchronized void done(boolean success) {
+            metrics.record(System.nanoTime() - start, bytesIn, bytesOut, success);
+        }
+    }
+}
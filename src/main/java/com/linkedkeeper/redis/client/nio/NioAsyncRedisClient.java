@@ -0,0 +1,311 @@
+package com.linkedkeeper.redis.client.nio;
+
+import com.linkedkeeper.redis.client.AsyncRedisClient;
+import com.linkedkeeper.redis.client.RedisClient;
+import com.linkedkeeper.redis.client.pipeline.PipelineBlock;
+import redis.clients.jedis.Builder;
+import redis.clients.jedis.BuilderFactory;
+import redis.clients.jedis.Protocol.Command;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.TransactionBlock;
+import redis.clients.util.SafeEncoder;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * 基于NioRedisEngine的AsyncRedisClient，命令直接编码为RESP写出，回复由Jedis的BuilderFactory转换。
+ * multi和pipelined依赖Jedis的事务和pipeline对象，交给exclusiveClient在exclusiveExecutor中执行
+ *
+ * @Author: zhangsr
+ */
+public class NioAsyncRedisClient implements AsyncRedisClient {
+
+    /**
+     * SCAN和SSCAN的回复为[cursor, [member...]]
+     */
+    private final static Builder<ScanResult<String>> SCAN_RESULT = new Builder<ScanResult<String>>() {
+        @SuppressWarnings("unchecked")
+        public ScanResult<String> build(Object data) {
+            List<Object> reply = (List<Object>) data;
+            return new ScanResult<String>((byte[]) reply.get(0), BuilderFactory.STRING_LIST.build(reply.get(1)));
+        }
+    };
+
+    /**
+     * HSCAN的回复为[cursor, [field, value...]]
+     */
+    private final static Builder<ScanResult<Map.Entry<String, String>>> HSCAN_RESULT = new Builder<ScanResult<Map.Entry<String, String>>>() {
+        @SuppressWarnings("unchecked")
+        public ScanResult<Map.Entry<String, String>> build(Object data) {
+            List<Object> reply = (List<Object>) data;
+            List<String> fields = BuilderFactory.STRING_LIST.build(reply.get(1));
+            List<Map.Entry<String, String>> entries = new ArrayList<Map.Entry<String, String>>(fields.size() / 2);
+            for (int i = 0; i + 1 < fields.size(); i += 2) {
+                entries.add(new AbstractMap.SimpleEntry<String, String>(fields.get(i), fields.get(i + 1)));
+            }
+            return new ScanResult<Map.Entry<String, String>>((byte[]) reply.get(0), entries);
+        }
+    };
+
+    private final NioRedisEngine engine;
+    private final RedisClient exclusiveClient;
+    private final Executor exclusiveExecutor;
+
+    /**
+     * @param engine
+     * @param exclusiveClient   执行multi和pipelined的阻塞客户端
+     * @param exclusiveExecutor 执行exclusiveClient调用的线程池
+     */
+    public NioAsyncRedisClient(NioRedisEngine engine, RedisClient exclusiveClient, Executor exclusiveExecutor) {
+        this.engine = engine;
+        this.exclusiveClient = exclusiveClient;
+        this.exclusiveExecutor = exclusiveExecutor;
+    }
+
+    public CompletableFuture<Set<String>> keys(String pattern) {
+        return engine.execute(BuilderFactory.STRING_SET, Command.KEYS, pattern);
+    }
+
+    public CompletableFuture<ScanResult<String>> scan(String cursor, ScanParams params) {
+        return engine.execute(SCAN_RESULT, scanArgs(Command.SCAN, null, cursor, params));
+    }
+
+    public CompletableFuture<String> setex(String key, int expire, String value) {
+        return engine.execute(BuilderFactory.STRING, Command.SETEX, key, String.valueOf(expire), value);
+    }
+
+    public CompletableFuture<String> set(String key, String value) {
+        return engine.execute(BuilderFactory.STRING, Command.SET, key, value);
+    }
+
+    public CompletableFuture<String> set(String key, String value, String nxxx, String expx, long time) {
+        return engine.execute(BuilderFactory.STRING, Command.SET, key, value, nxxx, expx, String.valueOf(time));
+    }
+
+    public CompletableFuture<Long> decrBy(String key, long integer) {
+        return engine.execute(BuilderFactory.LONG, Command.DECRBY, key, String.valueOf(integer));
+    }
+
+    public CompletableFuture<Long> incr(String key) {
+        return engine.execute(BuilderFactory.LONG, Command.INCR, key);
+    }
+
+    public CompletableFuture<Long> incrBy(String key, long integer) {
+        return engine.execute(BuilderFactory.LONG, Command.INCRBY, key, String.valueOf(integer));
+    }
+
+    public CompletableFuture<String> get(String key) {
+        return engine.execute(BuilderFactory.STRING, Command.GET, key);
+    }
+
+    public CompletableFuture<Long> sadd(String key, String... members) {
+        return engine.execute(BuilderFactory.LONG, Command.SADD, join(key, members));
+    }
+
+    public CompletableFuture<Long> srem(String key, String... members) {
+        return engine.execute(BuilderFactory.LONG, Command.SREM, join(key, members));
+    }
+
+    public CompletableFuture<Set<String>> smembers(String key) {
+        return engine.execute(BuilderFactory.STRING_SET, Command.SMEMBERS, key);
+    }
+
+    public CompletableFuture<ScanResult<String>> sscan(String key, String cursor, ScanParams params) {
+        return engine.execute(SCAN_RESULT, scanArgs(Command.SSCAN, key, cursor, params));
+    }
+
+    public CompletableFuture<Long> expire(String key, int expiredTime) {
+        return engine.execute(BuilderFactory.LONG, Command.EXPIRE, key, String.valueOf(expiredTime));
+    }
+
+    public CompletableFuture<Boolean> exists(String key) {
+        return engine.execute(BuilderFactory.BOOLEAN, Command.EXISTS, key);
+    }
+
+    public CompletableFuture<Long> pttl(String key) {
+        return engine.execute(BuilderFactory.LONG, Command.PTTL, key);
+    }
+
+    public CompletableFuture<Long> del(String key) {
+        return engine.execute(BuilderFactory.LONG, Command.DEL, key);
+    }
+
+    public CompletableFuture<Long> del(String... key) {
+        return engine.execute(BuilderFactory.LONG, Command.DEL, key);
+    }
+
+    public CompletableFuture<Long> hset(String key, String field, String value) {
+        return engine.execute(BuilderFactory.LONG, Command.HSET, key, field, value);
+    }
+
+    public CompletableFuture<Long> hsetnx(String key, String field, String value) {
+        return engine.execute(BuilderFactory.LONG, Command.HSETNX, key, field, value);
+    }
+
+    public CompletableFuture<Long> hdel(String key, String... fields) {
+        return engine.execute(BuilderFactory.LONG, Command.HDEL, join(key, fields));
+    }
+
+    public CompletableFuture<String> hget(String key, String field) {
+        return engine.execute(BuilderFactory.STRING, Command.HGET, key, field);
+    }
+
+    public CompletableFuture<String> hmset(String key, Map<String, String> hash) {
+        return engine.execute(BuilderFactory.STRING, Command.HMSET, join(key, hash));
+    }
+
+    public CompletableFuture<List<String>> hmget(String key, String... fields) {
+        return engine.execute(BuilderFactory.STRING_LIST, Command.HMGET, join(key, fields));
+    }
+
+    public CompletableFuture<Map<String, String>> hgetAll(String key) {
+        return engine.execute(BuilderFactory.STRING_MAP, Command.HGETALL, key);
+    }
+
+    public CompletableFuture<ScanResult<Map.Entry<String, String>>> hscan(String key, String cursor, ScanParams params) {
+        return engine.execute(HSCAN_RESULT, scanArgs(Command.HSCAN, key, cursor, params));
+    }
+
+    public CompletableFuture<List<String>> mget(String... keys) {
+        return engine.execute(BuilderFactory.STRING_LIST, Command.MGET, keys);
+    }
+
+    public CompletableFuture<String> mset(String... keysvalues) {
+        return engine.execute(BuilderFactory.STRING, Command.MSET, keysvalues);
+    }
+
+    /**
+     * 多条SETEX连续写出，与其它命令一样在连接上自然形成pipeline
+     */
+    public CompletableFuture<String> msetex(int expire, String... keysvalues) {
+        List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>(keysvalues.length / 2);
+        for (int i = 0; i + 1 < keysvalues.length; i += 2) {
+            futures.add(setex(keysvalues[i], expire, keysvalues[i + 1]));
+        }
+        return all(futures).thenApply(results -> "OK");
+    }
+
+    public CompletableFuture<List<Map<String, String>>> hgetAllMulti(String... keys) {
+        List<CompletableFuture<Map<String, String>>> futures = new ArrayList<CompletableFuture<Map<String, String>>>(keys.length);
+        for (String key : keys) {
+            futures.add(hgetAll(key));
+        }
+        return all(futures);
+    }
+
+    public CompletableFuture<List<List<String>>> hmgetMulti(List<String> keys, String... fields) {
+        List<CompletableFuture<List<String>>> futures = new ArrayList<CompletableFuture<List<String>>>(keys.size());
+        for (String key : keys) {
+            futures.add(hmget(key, fields));
+        }
+        return all(futures);
+    }
+
+    public CompletableFuture<List<Set<String>>> smembersMulti(String... keys) {
+        List<CompletableFuture<Set<String>>> futures = new ArrayList<CompletableFuture<Set<String>>>(keys.length);
+        for (String key : keys) {
+            futures.add(smembers(key));
+        }
+        return all(futures);
+    }
+
+    public CompletableFuture<List<Object>> multi(TransactionBlock transactionBlock) {
+        return CompletableFuture.supplyAsync(() -> exclusiveClient.multi(transactionBlock), exclusiveExecutor);
+    }
+
+    public CompletableFuture<Void> pipelined(PipelineBlock pipelineBlock) {
+        return CompletableFuture.runAsync(() -> exclusiveClient.pipelined(pipelineBlock), exclusiveExecutor);
+    }
+
+    public CompletableFuture<Void> pipelined(int batchSize, PipelineBlock pipelineBlock) {
+        return CompletableFuture.runAsync(() -> exclusiveClient.pipelined(batchSize, pipelineBlock), exclusiveExecutor);
+    }
+
+    public CompletableFuture<Long> lpush(String key, String... strings) {
+        return engine.execute(BuilderFactory.LONG, Command.LPUSH, join(key, strings));
+    }
+
+    public CompletableFuture<Long> rpush(String key, String... strings) {
+        return engine.execute(BuilderFactory.LONG, Command.RPUSH, join(key, strings));
+    }
+
+    public CompletableFuture<String> lpop(String key) {
+        return engine.execute(BuilderFactory.STRING, Command.LPOP, key);
+    }
+
+    public CompletableFuture<String> rpop(String key) {
+        return engine.execute(BuilderFactory.STRING, Command.RPOP, key);
+    }
+
+    public CompletableFuture<List<String>> lrange(String key, long start, long end) {
+        return engine.execute(BuilderFactory.STRING_LIST, Command.LRANGE, key, String.valueOf(start), String.valueOf(end));
+    }
+
+    public CompletableFuture<String> ltrim(String key, long start, long end) {
+        return engine.execute(BuilderFactory.STRING, Command.LTRIM, key, String.valueOf(start), String.valueOf(end));
+    }
+
+    public CompletableFuture<Long> llen(String key) {
+        return engine.execute(BuilderFactory.LONG, Command.LLEN, key);
+    }
+
+    public CompletableFuture<String> rpoplpush(String srckey, String dstkey) {
+        return engine.execute(BuilderFactory.STRING, Command.RPOPLPUSH, srckey, dstkey);
+    }
+
+    public CompletableFuture<Long> hincrby(String key, String field, int increment) {
+        return engine.execute(BuilderFactory.LONG, Command.HINCRBY, key, field, String.valueOf(increment));
+    }
+
+    /**
+     * @param key SCAN时为null
+     */
+    private static byte[][] scanArgs(Command command, String key, String cursor, ScanParams params) {
+        List<byte[]> args = new ArrayList<byte[]>();
+        args.add(command.getRaw());
+        if (key != null) {
+            args.add(SafeEncoder.encode(key));
+        }
+        args.add(SafeEncoder.encode(cursor));
+        args.addAll(params.getParams());
+        return args.toArray(new byte[args.size()][]);
+    }
+
+    /**
+     * @return 所有future完成后以与futures顺序一致的结果完成，任一个失败时以该失败结束
+     */
+    static <T> CompletableFuture<List<T>> all(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<T> results = new ArrayList<T>(futures.size());
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+            return results;
+        });
+    }
+
+    private static String[] join(String key, String... values) {
+        String[] args = new String[values.length + 1];
+        args[0] = key;
+        System.arraycopy(values, 0, args, 1, values.length);
+        return args;
+    }
+
+    private static String[] join(String key, Map<String, String> hash) {
+        String[] args = new String[hash.size() * 2 + 1];
+        args[0] = key;
+        int i = 1;
+        for (Map.Entry<String, String> entry : hash.entrySet()) {
+            args[i++] = entry.getKey();
+            args[i++] = entry.getValue();
+        }
+        return args;
+    }
+}
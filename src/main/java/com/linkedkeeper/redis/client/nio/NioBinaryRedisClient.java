@@ -0,0 +1,197 @@
+package com.linkedkeeper.redis.client.nio;
+
+import com.linkedkeeper.redis.client.BinaryRedisClient;
+import com.linkedkeeper.redis.client.ValueReader;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import redis.clients.jedis.BuilderFactory;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Protocol.Command;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于NioRedisEngine的同步BinaryRedisClient。ValueReader版本的get/hget直接读取接收缓冲区中的value切片，
+ * 只有value超过接收缓冲区大小时才退化为复制
+ *
+ * @Author: zhangsr
+ */
+public class NioBinaryRedisClient implements BinaryRedisClient {
+
+    private final NioRedisEngine engine;
+    private final long timeoutMillis;
+
+    /**
+     * @param engine
+     * @param timeoutMillis 等待回复的超时时间
+     */
+    public NioBinaryRedisClient(NioRedisEngine engine, long timeoutMillis) {
+        this.engine = engine;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public Set<byte[]> keys(byte[] pattern) throws RedisException {
+        return await(engine.execute(BuilderFactory.BYTE_ARRAY_ZSET, Command.KEYS.getRaw(), pattern));
+    }
+
+    public String setex(byte[] key, int expire, byte[] value) throws RedisException {
+        return await(engine.execute(BuilderFactory.STRING, Command.SETEX.getRaw(), key, Protocol.toByteArray(expire), value));
+    }
+
+    public String set(byte[] key, byte[] value) throws RedisException {
+        return await(engine.execute(BuilderFactory.STRING, Command.SET.getRaw(), key, value));
+    }
+
+    public Long decrBy(byte[] key, long integer) throws RedisException {
+        return await(engine.execute(BuilderFactory.LONG, Command.DECRBY.getRaw(), key, Protocol.toByteArray(integer)));
+    }
+
+    public Long incr(byte[] key) throws RedisException {
+        return await(engine.execute(BuilderFactory.LONG, Command.INCR.getRaw(), key));
+    }
+
+    public byte[] get(byte[] key) throws RedisException {
+        return await(engine.execute(BuilderFactory.BYTE_ARRAY, Command.GET.getRaw(), key));
+    }
+
+    public <T> T get(byte[] key, ValueReader<T> reader) throws RedisException {
+        return await(engine.executeView(reader, Command.GET.getRaw(), key));
+    }
+
+    public Long sadd(byte[] key, byte[]... members) throws RedisException {
+        return await(engine.execute(BuilderFactory.LONG, join(Command.SADD, key, members)));
+    }
+
+    public Long srem(byte[] key, byte[]... members) throws RedisException {
+        return await(engine.execute(BuilderFactory.LONG, join(Command.SREM, key, members)));
+    }
+
+    public Set<byte[]> smembers(byte[] key) throws RedisException {
+        return await(engine.execute(BuilderFactory.BYTE_ARRAY_ZSET, Command.SMEMBERS.getRaw(), key));
+    }
+
+    public Long expire(byte[] key, int expiredTime) throws RedisException {
+        return await(engine.execute(BuilderFactory.LONG, Command.EXPIRE.getRaw(), key, Protocol.toByteArray(expiredTime)));
+    }
+
+    public Boolean exists(byte[] key) throws RedisException {
+        return await(engine.execute(BuilderFactory.BOOLEAN, Command.EXISTS.getRaw(), key));
+    }
+
+    public Long del(byte[] key) throws RedisException {
+        return await(engine.execute(BuilderFactory.LONG, Command.DEL.getRaw(), key));
+    }
+
+    public Long del(byte[]... key) throws RedisException {
+        return await(engine.execute(BuilderFactory.LONG, join(Command.DEL, null, key)));
+    }
+
+    public Long hset(byte[] key, byte[] field, byte[] value) throws RedisException {
+        return await(engine.execute(BuilderFactory.LONG, Command.HSET.getRaw(), key, field, value));
+    }
+
+    public Long hsetnx(byte[] key, byte[] field, byte[] value) throws RedisException {
+        return await(engine.execute(BuilderFactory.LONG, Command.HSETNX.getRaw(), key, field, value));
+    }
+
+    public Long hdel(byte[] key, byte[]... fields) throws RedisException {
+        return await(engine.execute(BuilderFactory.LONG, join(Command.HDEL, key, fields)));
+    }
+
+    public byte[] hget(byte[] key, byte[] field) throws RedisException {
+        return await(engine.execute(BuilderFactory.BYTE_ARRAY, Command.HGET.getRaw(), key, field));
+    }
+
+    public <T> T hget(byte[] key, byte[] field, ValueReader<T> reader) throws RedisException {
+        return await(engine.executeView(reader, Command.HGET.getRaw(), key, field));
+    }
+
+    public String hmset(byte[] key, Map<byte[], byte[]> hash) throws RedisException {
+        byte[][] args = new byte[hash.size() * 2 + 2][];
+        args[0] = Command.HMSET.getRaw();
+        args[1] = key;
+        int i = 2;
+        for (Map.Entry<byte[], byte[]> entry : hash.entrySet()) {
+            args[i++] = entry.getKey();
+            args[i++] = entry.getValue();
+        }
+        return await(engine.execute(BuilderFactory.STRING, args));
+    }
+
+    public List<byte[]> hmget(byte[] key, byte[]... fields) throws RedisException {
+        return await(engine.execute(BuilderFactory.BYTE_ARRAY_LIST, join(Command.HMGET, key, fields)));
+    }
+
+    public Map<byte[], byte[]> hgetAll(byte[] key) throws RedisException {
+        return await(engine.execute(BuilderFactory.BYTE_ARRAY_MAP, Command.HGETALL.getRaw(), key));
+    }
+
+    public Long lpush(byte[] key, byte[]... values) throws RedisException {
+        return await(engine.execute(BuilderFactory.LONG, join(Command.LPUSH, key, values)));
+    }
+
+    public Long rpush(byte[] key, byte[]... values) throws RedisException {
+        return await(engine.execute(BuilderFactory.LONG, join(Command.RPUSH, key, values)));
+    }
+
+    public byte[] lpop(byte[] key) throws RedisException {
+        return await(engine.execute(BuilderFactory.BYTE_ARRAY, Command.LPOP.getRaw(), key));
+    }
+
+    public byte[] rpop(byte[] key) throws RedisException {
+        return await(engine.execute(BuilderFactory.BYTE_ARRAY, Command.RPOP.getRaw(), key));
+    }
+
+    public List<byte[]> lrange(byte[] key, long start, long end) throws RedisException {
+        return await(engine.execute(BuilderFactory.BYTE_ARRAY_LIST, Command.LRANGE.getRaw(), key,
+                Protocol.toByteArray(start), Protocol.toByteArray(end)));
+    }
+
+    public String ltrim(byte[] key, long start, long end) throws RedisException {
+        return await(engine.execute(BuilderFactory.STRING, Command.LTRIM.getRaw(), key,
+                Protocol.toByteArray(start), Protocol.toByteArray(end)));
+    }
+
+    public Long llen(byte[] key) throws RedisException {
+        return await(engine.execute(BuilderFactory.LONG, Command.LLEN.getRaw(), key));
+    }
+
+    public byte[] rpoplpush(byte[] srckey, byte[] dstkey) throws RedisException {
+        return await(engine.execute(BuilderFactory.BYTE_ARRAY, Command.RPOPLPUSH.getRaw(), srckey, dstkey));
+    }
+
+    public Long hincrby(byte[] key, byte[] field, int increment) throws RedisException {
+        return await(engine.execute(BuilderFactory.LONG, Command.HINCRBY.getRaw(), key, field, Protocol.toByteArray(increment)));
+    }
+
+    /**
+     * @param key 为null时只拼接命令和values
+     */
+    private static byte[][] join(Command command, byte[] key, byte[]... values) {
+        int offset = key == null ? 1 : 2;
+        byte[][] args = new byte[values.length + offset][];
+        args[0] = command.getRaw();
+        if (key != null) {
+            args[1] = key;
+        }
+        System.arraycopy(values, 0, args, offset, values.length);
+        return args;
+    }
+
+    private <T> T await(CompletableFuture<T> future) throws RedisException {
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RedisException) {
+                throw (RedisException) e.getCause();
+            }
+            throw new RedisException(e.getCause());
+        } catch (Exception e) {
+            throw new RedisException(e);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.linkedkeeper.redis.client.nio;
+
+import com.linkedkeeper.redis.client.ValueReader;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import com.linkedkeeper.redis.client.metrics.RedisMetrics;
+import redis.clients.jedis.Builder;
+import redis.clients.util.SafeEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 一条已编码参数的命令及其结果future，由事件循环按FIFO匹配回复
+ *
+ * @Author: zhangsr
+ */
+class NioCommand<T> {
+
+    final byte[][] args;
+    final Builder<T> builder;
+    final ValueReader<T> reader;
+    final CompletableFuture<T> future = new CompletableFuture<T>();
+    final int encodedLength;
+    /**
+     * 开启payload指标时创建命令的调用所attach的计量，收到回复时计入收发字节数
+     */
+    final RedisMetrics.Meter meter = RedisMetrics.Meter.attached();
+
+    long sentNanos;
+    long replyLength;
+
+    NioCommand(byte[][] args, Builder<T> builder) {
+        this.args = args;
+        this.builder = builder;
+        this.reader = null;
+        this.encodedLength = RespEncoder.encodedLength(args);
+    }
+
+    /**
+     * 回复为bulk时，value以只读ByteBuffer交给reader，不构造byte[]
+     */
+    NioCommand(byte[][] args, ValueReader<T> reader) {
+        this.args = args;
+        this.builder = null;
+        this.reader = reader;
+        this.encodedLength = RespEncoder.encodedLength(args);
+    }
+
+    @SuppressWarnings("unchecked")
+    void complete(Object reply) {
+        if (future.isDone()) {
+            // 已超时失败，迟到的回复只用来保持FIFO匹配
+            return;
+        }
+        if (meter != null) {
+            meter.payload(replyLength, encodedLength);
+        }
+        if (reply instanceof Exception) {
+            fail((Exception) reply);
+            return;
+        }
+        if (reader != null) {
+            // bulk没能在接收缓冲区中切片时（超过缓冲区大小）已被解码为byte[]
+            read(reply == null ? null : ByteBuffer.wrap((byte[]) reply).asReadOnlyBuffer());
+            return;
+        }
+        try {
+            future.complete(builder == null ? (T) reply : builder.build(reply));
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * 在事件循环线程中调用reader，value在返回后即失效
+     */
+    void completeView(ByteBuffer value) {
+        if (future.isDone()) {
+            return;
+        }
+        if (meter != null) {
+            meter.payload(replyLength, encodedLength);
+        }
+        read(value);
+    }
+
+    private void read(ByteBuffer value) {
+        try {
+            future.complete(reader.read(value));
+        } catch (Exception e) {
+            fail(e);
+        }
+    }
+
+    void fail(Throwable cause) {
+        if (cause instanceof RedisException) {
+            future.completeExceptionally(cause);
+        } else {
+            future.completeExceptionally(new RedisException("execute '" + describe() + "' fail!", cause));
+        }
+    }
+
+    private String describe() {
+        String command = SafeEncoder.encode(args[0]).toLowerCase();
+        return args.length > 1 ? command + " " + SafeEncoder.encode(args[1]) : command;
+    }
+}
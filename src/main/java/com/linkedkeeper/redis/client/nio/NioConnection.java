@@ -0,0 +1,275 @@
+package com.linkedkeeper.redis.client.nio;
+
+import com.linkedkeeper.redis.client.exception.RedisException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个非阻塞的RESP连接，多个线程的命令共享该连接：提交的命令进入outbound队列，
+ * 由事件循环编码写出并移入inflight队列，回复按FIFO顺序与inflight中的命令匹配。
+ * 服务端读得慢时命令留在outbound中，不再编码进发送缓冲区；outbound中的字节数超过maxQueuedBytes时新的命令直接失败。
+ * 除submit外的方法只在事件循环线程中调用
+ *
+ * @Author: zhangsr
+ */
+class NioConnection {
+
+    private final static int BUFFER_SIZE = 64 * 1024;
+
+    private final NioRedisEngine engine;
+    private final InetSocketAddress address;
+
+    private final Queue<NioCommand<?>> outbound = new ConcurrentLinkedQueue<NioCommand<?>>();
+    private final ArrayDeque<NioCommand<?>> inflight = new ArrayDeque<NioCommand<?>>();
+    final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    /**
+     * outbound中命令编码后的字节数
+     */
+    private final AtomicLong queuedBytes = new AtomicLong();
+
+    private final RespDecoder decoder = new RespDecoder();
+    private long replyBytes = 0;
+    private ByteBuffer readBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private final long createdNanos = System.nanoTime();
+
+    private SocketChannel channel;
+    private SelectionKey selectionKey;
+    private volatile boolean connected = false;
+    private volatile boolean closed = false;
+
+    NioConnection(NioRedisEngine engine, InetSocketAddress address) {
+        this.engine = engine;
+        this.address = address;
+    }
+
+    /**
+     * @param maxQueuedBytes 未写出的命令超过这一字节数时新的命令失败，单条命令超过时只要没有其它未写出的命令仍然发送
+     */
+    void submit(NioCommand<?> command, long maxQueuedBytes) {
+        if (closed) {
+            command.fail(new RedisException("connection to " + address + " is closed"));
+            return;
+        }
+        long queued = queuedBytes.get();
+        if (queued > 0 && queued + command.encodedLength > maxQueuedBytes) {
+            command.fail(new RedisException("connection to " + address + " has " + queued + " bytes waiting to be written"));
+            return;
+        }
+        queuedBytes.addAndGet(command.encodedLength);
+        outbound.add(command);
+        if (closed && outbound.remove(command)) {
+            command.fail(new RedisException("connection to " + address + " is closed"));
+            return;
+        }
+        if (flushScheduled.compareAndSet(false, true)) {
+            engine.scheduleFlush(this);
+        }
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 发起非阻塞连接
+     */
+    void connect(Selector selector) throws IOException {
+        channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.socket().setKeepAlive(true);
+        if (channel.connect(address)) {
+            selectionKey = channel.register(selector, SelectionKey.OP_READ, this);
+            connected = true;
+        } else {
+            selectionKey = channel.register(selector, SelectionKey.OP_CONNECT, this);
+        }
+    }
+
+    void finishConnect() throws IOException {
+        channel.finishConnect();
+        connected = true;
+        selectionKey.interestOps(SelectionKey.OP_READ);
+        flush();
+    }
+
+    /**
+     * 编码outbound中的命令并尽量写出，写不完时关注OP_WRITE，其余命令等发送缓冲区写空后再编码
+     */
+    void flush() throws IOException {
+        flushScheduled.set(false);
+        if (!connected || closed) {
+            return;
+        }
+        encode();
+        write();
+    }
+
+    void write() throws IOException {
+        while (true) {
+            if (drain()) {
+                selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+            // 大缓冲只在写大value时临时使用
+            if (writeBuffer.capacity() > BUFFER_SIZE) {
+                writeBuffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            }
+            if (outbound.isEmpty()) {
+                selectionKey.interestOps(SelectionKey.OP_READ);
+                return;
+            }
+            encode();
+        }
+    }
+
+    /**
+     * 把outbound中的命令编码进发送缓冲区，直到缓冲区放不下下一条命令
+     */
+    private void encode() throws IOException {
+        NioCommand<?> command;
+        while ((command = outbound.peek()) != null) {
+            int len = command.encodedLength;
+            if (writeBuffer.remaining() < len) {
+                drain();
+                if (writeBuffer.remaining() < len) {
+                    if (writeBuffer.position() > 0) {
+                        return;
+                    }
+                    // 只有超过缓冲区的单条命令才扩容
+                    writeBuffer = grow(writeBuffer, len);
+                }
+            }
+            outbound.poll();
+            queuedBytes.addAndGet(-len);
+            RespEncoder.encode(command.args, writeBuffer);
+            command.sentNanos = System.nanoTime();
+            inflight.add(command);
+        }
+    }
+
+    /**
+     * @return 发送缓冲区中是否还有没写出的数据
+     */
+    private boolean drain() throws IOException {
+        writeBuffer.flip();
+        channel.write(writeBuffer);
+        boolean remaining = writeBuffer.hasRemaining();
+        writeBuffer.compact();
+        return remaining;
+    }
+
+    void read() throws IOException {
+        int n = channel.read(readBuffer);
+        if (n < 0) {
+            throw new IOException("connection closed by server");
+        }
+        readBuffer.flip();
+        while (true) {
+            int start = readBuffer.position();
+            NioCommand<?> head = inflight.peek();
+            if (head != null && head.reader != null) {
+                ByteBuffer view = decoder.decodeView(readBuffer);
+                if (view == RespDecoder.WAIT) {
+                    break;
+                }
+                if (view != null) {
+                    inflight.poll();
+                    head.replyLength = replyBytes + readBuffer.position() - start;
+                    replyBytes = 0;
+                    head.completeView(view);
+                    continue;
+                }
+            }
+            Object reply = decoder.decode(readBuffer);
+            // 跨多次read的回复累计已消费的字节数
+            replyBytes += readBuffer.position() - start;
+            if (reply == RespDecoder.INCOMPLETE) {
+                break;
+            }
+            NioCommand<?> command = inflight.poll();
+            if (command == null) {
+                throw new IOException("unexpected reply without pending command");
+            }
+            command.replyLength = replyBytes;
+            replyBytes = 0;
+            command.complete(reply);
+        }
+        readBuffer.compact();
+        if (!readBuffer.hasRemaining()) {
+            // 一行状态或错误超过缓冲区时扩容，bulk会被解码器分段读走
+            readBuffer = grow(readBuffer, readBuffer.capacity() * 2);
+        }
+    }
+
+    /**
+     * @return 连接建立是否超时
+     */
+    boolean isConnectTimedOut(long now, long timeoutNanos) {
+        return !connected && now - createdNanos > timeoutNanos;
+    }
+
+    /**
+     * 让超时的命令失败，它们仍留在inflight中等待匹配迟到的回复，连接继续使用
+     */
+    void expire(long now, long timeoutNanos, RedisException cause) {
+        for (NioCommand<?> command : inflight) {
+            if (now - command.sentNanos <= timeoutNanos) {
+                break;
+            }
+            command.fail(cause);
+        }
+    }
+
+    void close(Throwable cause) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (selectionKey != null) {
+            selectionKey.cancel();
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+        RedisException e = new RedisException("connection to " + address + " is closed", cause);
+        List<NioCommand<?>> failed = new ArrayList<NioCommand<?>>(inflight);
+        inflight.clear();
+        NioCommand<?> command;
+        while ((command = outbound.poll()) != null) {
+            failed.add(command);
+        }
+        for (NioCommand<?> f : failed) {
+            f.fail(e);
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int capacity) {
+        ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(capacity, buffer.capacity() * 2));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+    @Override
+    public String toString() {
+        return "NioConnection{" + address + "}";
+    }
+}
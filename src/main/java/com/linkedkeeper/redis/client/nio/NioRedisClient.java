@@ -0,0 +1,271 @@
+package com.linkedkeeper.redis.client.nio;
+
+import com.linkedkeeper.redis.client.RedisClient;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import com.linkedkeeper.redis.client.pipeline.PipelineBlock;
+import com.linkedkeeper.redis.client.scan.ScanCallback;
+import com.linkedkeeper.redis.client.scan.ScanIterator;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.TransactionBlock;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于NioRedisEngine的同步RedisClient，调用线程等待NioAsyncRedisClient返回的future。
+ * multi和pipelined直接在调用线程中交给exclusiveClient执行
+ *
+ * @Author: zhangsr
+ */
+public class NioRedisClient implements RedisClient {
+
+    private final NioAsyncRedisClient asyncClient;
+    private final RedisClient exclusiveClient;
+    private final long timeoutMillis;
+
+    /**
+     * @param engine
+     * @param exclusiveClient 执行multi和pipelined的阻塞客户端
+     * @param timeoutMillis   等待回复的超时时间
+     */
+    public NioRedisClient(NioRedisEngine engine, RedisClient exclusiveClient, long timeoutMillis) {
+        this.asyncClient = new NioAsyncRedisClient(engine, exclusiveClient, Runnable::run);
+        this.exclusiveClient = exclusiveClient;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public Set<String> keys(String pattern) throws RedisException {
+        return await(asyncClient.keys(pattern));
+    }
+
+    public ScanResult<String> scan(String cursor, ScanParams params) throws RedisException {
+        return await(asyncClient.scan(cursor, params));
+    }
+
+    /**
+     * 下一页的SCAN在NIO连接上异步发出，不占用额外线程
+     */
+    public ScanIterator<String> scan(String pattern, int count) throws RedisException {
+        ScanParams params = new ScanParams().match(pattern).count(count);
+        return new ScanIterator<String>(cursor -> asyncClient.scan(cursor, params), true);
+    }
+
+    public void scan(String pattern, int count, ScanCallback<String> callback) throws RedisException {
+        scan(pattern, count).forEach(callback);
+    }
+
+    public String setex(String key, int expire, String value) throws RedisException {
+        return await(asyncClient.setex(key, expire, value));
+    }
+
+    public String set(String key, String value) throws RedisException {
+        return await(asyncClient.set(key, value));
+    }
+
+    public String set(String key, String value, String nxxx, String expx, long time) throws RedisException {
+        return await(asyncClient.set(key, value, nxxx, expx, time));
+    }
+
+    public Long decrBy(String key, long integer) throws RedisException {
+        return await(asyncClient.decrBy(key, integer));
+    }
+
+    public Long incr(String key) throws RedisException {
+        return await(asyncClient.incr(key));
+    }
+
+    public Long incrBy(String key, long integer) throws RedisException {
+        return await(asyncClient.incrBy(key, integer));
+    }
+
+    public String get(String key) throws RedisException {
+        return await(asyncClient.get(key));
+    }
+
+    public Long sadd(String key, String... members) throws RedisException {
+        return await(asyncClient.sadd(key, members));
+    }
+
+    public Long srem(String key, String... members) throws RedisException {
+        return await(asyncClient.srem(key, members));
+    }
+
+    public Set<String> smembers(String key) throws RedisException {
+        return await(asyncClient.smembers(key));
+    }
+
+    public ScanResult<String> sscan(String key, String cursor, ScanParams params) throws RedisException {
+        return await(asyncClient.sscan(key, cursor, params));
+    }
+
+    public ScanIterator<String> sscanAll(String key, int count) throws RedisException {
+        ScanParams params = new ScanParams().count(count);
+        return new ScanIterator<String>(cursor -> asyncClient.sscan(key, cursor, params), false);
+    }
+
+    public void sscanAll(String key, int count, ScanCallback<String> callback) throws RedisException {
+        sscanAll(key, count).forEach(callback);
+    }
+
+    public Long expire(String key, int expiredTime) throws RedisException {
+        return await(asyncClient.expire(key, expiredTime));
+    }
+
+    public Boolean exists(String key) throws RedisException {
+        return await(asyncClient.exists(key));
+    }
+
+    public Long pttl(String key) throws RedisException {
+        return await(asyncClient.pttl(key));
+    }
+
+    public Long del(String key) throws RedisException {
+        return await(asyncClient.del(key));
+    }
+
+    public Long del(String... key) throws RedisException {
+        return await(asyncClient.del(key));
+    }
+
+    public Long hset(String key, String field, String value) throws RedisException {
+        return await(asyncClient.hset(key, field, value));
+    }
+
+    public Long hsetnx(String key, String field, String value) throws RedisException {
+        return await(asyncClient.hsetnx(key, field, value));
+    }
+
+    public Long hdel(String key, String... fields) throws RedisException {
+        return await(asyncClient.hdel(key, fields));
+    }
+
+    public String hget(String key, String field) throws RedisException {
+        return await(asyncClient.hget(key, field));
+    }
+
+    public String hmset(String key, Map<String, String> hash) throws RedisException {
+        return await(asyncClient.hmset(key, hash));
+    }
+
+    public List<String> hmget(String key, String... fields) throws RedisException {
+        return await(asyncClient.hmget(key, fields));
+    }
+
+    public Map<String, String> hgetAll(String key) throws RedisException {
+        return await(asyncClient.hgetAll(key));
+    }
+
+    public ScanResult<Map.Entry<String, String>> hscan(String key, String cursor, ScanParams params) throws RedisException {
+        return await(asyncClient.hscan(key, cursor, params));
+    }
+
+    public ScanIterator<Map.Entry<String, String>> hscanAll(String key, int count) throws RedisException {
+        ScanParams params = new ScanParams().count(count);
+        return new ScanIterator<Map.Entry<String, String>>(cursor -> asyncClient.hscan(key, cursor, params), false);
+    }
+
+    public void hscanAll(String key, int count, ScanCallback<Map.Entry<String, String>> callback) throws RedisException {
+        hscanAll(key, count).forEach(callback);
+    }
+
+    public List<String> mget(String... keys) throws RedisException {
+        return await(asyncClient.mget(keys));
+    }
+
+    public String mset(String... keysvalues) throws RedisException {
+        return await(asyncClient.mset(keysvalues));
+    }
+
+    public String msetex(int expire, String... keysvalues) throws RedisException {
+        return await(asyncClient.msetex(expire, keysvalues));
+    }
+
+    public List<Map<String, String>> hgetAllMulti(String... keys) throws RedisException {
+        return await(asyncClient.hgetAllMulti(keys));
+    }
+
+    public List<List<String>> hmgetMulti(List<String> keys, String... fields) throws RedisException {
+        return await(asyncClient.hmgetMulti(keys, fields));
+    }
+
+    public List<Set<String>> smembersMulti(String... keys) throws RedisException {
+        return await(asyncClient.smembersMulti(keys));
+    }
+
+    public List<Object> multi(TransactionBlock transactionBlock) {
+        return exclusiveClient.multi(transactionBlock);
+    }
+
+    public void pipelined(PipelineBlock pipelineBlock) throws RedisException {
+        exclusiveClient.pipelined(pipelineBlock);
+    }
+
+    public void pipelined(int batchSize, PipelineBlock pipelineBlock) throws RedisException {
+        exclusiveClient.pipelined(batchSize, pipelineBlock);
+    }
+
+    public Long lpush(String key, String... strings) throws RedisException {
+        return await(asyncClient.lpush(key, strings));
+    }
+
+    public Long rpush(String key, String... strings) throws RedisException {
+        return await(asyncClient.rpush(key, strings));
+    }
+
+    public String lpop(String key) throws RedisException {
+        return await(asyncClient.lpop(key));
+    }
+
+    public String rpop(String key) throws RedisException {
+        return await(asyncClient.rpop(key));
+    }
+
+    public List<String> lrange(String key, long start, long end) throws RedisException {
+        return await(asyncClient.lrange(key, start, end));
+    }
+
+    public ScanIterator<String> lrangeChunked(String key, int pageSize) throws RedisException {
+        return new ScanIterator<String>(ScanIterator.ranges(pageSize, (start, end) -> asyncClient.lrange(key, start, end)), false);
+    }
+
+    public void lrangeChunked(String key, int pageSize, ScanCallback<String> callback) throws RedisException {
+        lrangeChunked(key, pageSize).forEach(callback);
+    }
+
+    public String ltrim(String key, long start, long end) throws RedisException {
+        return await(asyncClient.ltrim(key, start, end));
+    }
+
+    public Long llen(String key) throws RedisException {
+        return await(asyncClient.llen(key));
+    }
+
+    public String rpoplpush(String srckey, String dstkey) throws RedisException {
+        return await(asyncClient.rpoplpush(srckey, dstkey));
+    }
+
+    public Long hincrby(String key, String field, int increment) throws RedisException {
+        return await(asyncClient.hincrby(key, field, increment));
+    }
+
+    public void handleDataChange(String path, String data) {
+    }
+
+    private <T> T await(CompletableFuture<T> future) throws RedisException {
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RedisException) {
+                throw (RedisException) e.getCause();
+            }
+            throw new RedisException(e.getCause());
+        } catch (Exception e) {
+            throw new RedisException(e);
+        }
+    }
+}
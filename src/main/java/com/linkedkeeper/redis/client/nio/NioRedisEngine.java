@@ -0,0 +1,325 @@
+package com.linkedkeeper.redis.client.nio;
+
+import com.linkedkeeper.redis.client.ValueReader;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import org.apache.log4j.Logger;
+import redis.clients.jedis.Builder;
+import redis.clients.jedis.BuilderFactory;
+import redis.clients.jedis.Protocol;
+import redis.clients.util.SafeEncoder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 不依赖连接池的NIO连接引擎：少量SocketChannel由一个selector线程驱动，
+ * 任意线程提交的命令轮询分配到连接上，写出后按FIFO匹配回复，天然地把并发命令合并成pipeline。
+ * 断开的连接会让其上的命令立即失败，并按reconnectIntervalMillis重新连接；
+ * 回复超时只让超时的命令失败，连接只在I/O出错或连接建立超时时关闭
+ *
+ * @Author: zhangsr
+ */
+public class NioRedisEngine {
+
+    private final static Logger log = Logger.getLogger(NioRedisEngine.class);
+
+    private final static long TICK_MILLIS = 100;
+
+    private final InetSocketAddress address;
+    private final String password;
+    private final int database;
+    private final long timeoutNanos;
+
+    /**
+     * 事件循环重连时替换其中的连接，调用线程经由select读取
+     */
+    private final AtomicReferenceArray<NioConnection> connections;
+    private final long[] lastConnectNanos;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private final Queue<NioConnection> pendingFlushes = new ConcurrentLinkedQueue<NioConnection>();
+    private final Queue<NioConnection> pendingConnects = new ConcurrentLinkedQueue<NioConnection>();
+
+    private long reconnectIntervalMillis = 1000;
+    private long maxQueuedBytes = 64 * 1024 * 1024;
+
+    private Selector selector;
+    private Thread eventLoop;
+    private volatile boolean running = false;
+
+    /**
+     * @param host
+     * @param port
+     * @param password      为空表示不需要AUTH
+     * @param database      大于0时连接后执行SELECT
+     * @param connections   连接数
+     * @param timeoutMillis 连接建立和命令回复的超时时间，连接建立超时时关闭连接，回复超时时只有该命令失败
+     */
+    public NioRedisEngine(String host, int port, String password, int database, int connections, int timeoutMillis) {
+        if (connections <= 0 || timeoutMillis <= 0) {
+            throw new IllegalArgumentException("connections and timeoutMillis must be positive");
+        }
+        this.address = new InetSocketAddress(host, port);
+        this.password = password;
+        this.database = database;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.connections = new AtomicReferenceArray<NioConnection>(connections);
+        this.lastConnectNanos = new long[connections];
+    }
+
+    public synchronized void start() throws RedisException {
+        if (running) {
+            return;
+        }
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            throw new RedisException("open selector fail!", e);
+        }
+        running = true;
+        for (int i = 0; i < connections.length(); i++) {
+            connections.set(i, newConnection(i));
+        }
+        eventLoop = new Thread(new Runnable() {
+            public void run() {
+                loop();
+            }
+        }, "redis-nio-" + address.getPort());
+        eventLoop.setDaemon(true);
+        eventLoop.start();
+
+        // 确认每个连接都能完成认证
+        for (int i = 0; i < connections.length(); i++) {
+            try {
+                execute(connections.get(i), BuilderFactory.STRING, Protocol.Command.PING.getRaw()).get(timeoutNanos, TimeUnit.NANOSECONDS);
+            } catch (Exception e) {
+                shutdown();
+                throw new RedisException("connect to " + address + " fail!", e);
+            }
+        }
+        log.info("nio engine started, address = " + address + ", connections = " + connections.length());
+    }
+
+    public synchronized void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            eventLoop.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.info("nio engine shut down, address = " + address);
+    }
+
+    /**
+     * @param builder 把原始回复转换为结果，为null时返回原始回复
+     * @param command
+     * @param args
+     */
+    public <T> CompletableFuture<T> execute(Builder<T> builder, Protocol.Command command, String... args) {
+        byte[][] raw = new byte[args.length + 1][];
+        raw[0] = command.getRaw();
+        for (int i = 0; i < args.length; i++) {
+            raw[i + 1] = SafeEncoder.encode(args[i]);
+        }
+        return execute(builder, raw);
+    }
+
+    /**
+     * @param builder 把原始回复转换为结果，为null时返回原始回复
+     * @param args    第一个为命令名
+     */
+    public <T> CompletableFuture<T> execute(Builder<T> builder, byte[]... args) {
+        return execute(select(), builder, args);
+    }
+
+    /**
+     * bulk回复以接收缓冲区的只读切片交给reader，reader在事件循环线程中执行，应尽快返回
+     *
+     * @param reader
+     * @param args   第一个为命令名
+     */
+    public <T> CompletableFuture<T> executeView(ValueReader<T> reader, byte[]... args) {
+        return submit(select(), new NioCommand<T>(args, reader));
+    }
+
+    void scheduleFlush(NioConnection connection) {
+        pendingFlushes.add(connection);
+        selector.wakeup();
+    }
+
+    private <T> CompletableFuture<T> execute(NioConnection connection, Builder<T> builder, byte[]... args) {
+        return submit(connection, new NioCommand<T>(args, builder));
+    }
+
+    private <T> CompletableFuture<T> submit(NioConnection connection, NioCommand<T> command) {
+        if (!running) {
+            command.fail(new RedisException("nio engine is not running"));
+        } else {
+            connection.submit(command, maxQueuedBytes);
+        }
+        return command.future;
+    }
+
+    /**
+     * 轮询选择连接，尽量跳过已断开的连接
+     */
+    private NioConnection select() {
+        int start = next.getAndIncrement() & Integer.MAX_VALUE;
+        int size = connections.length();
+        for (int i = 0; i < size; i++) {
+            NioConnection connection = connections.get((start + i) % size);
+            if (!connection.isClosed()) {
+                return connection;
+            }
+        }
+        return connections.get(start % size);
+    }
+
+    private NioConnection newConnection(int slot) {
+        lastConnectNanos[slot] = System.nanoTime();
+        NioConnection connection = new NioConnection(this, address);
+        // 认证命令排在最前，之后的命令都在认证之后执行
+        if (password != null && password.length() > 0) {
+            logFailure(execute(connection, BuilderFactory.STRING, Protocol.Command.AUTH.getRaw(), SafeEncoder.encode(password)), "auth");
+        }
+        if (database > 0) {
+            logFailure(execute(connection, BuilderFactory.STRING, Protocol.Command.SELECT.getRaw(), Protocol.toByteArray(database)), "select");
+        }
+        pendingConnects.add(connection);
+        selector.wakeup();
+        return connection;
+    }
+
+    private void logFailure(CompletableFuture<?> future, final String command) {
+        future.whenComplete((result, e) -> {
+            if (e != null) {
+                log.error("nio engine '" + command + "' fail, address = " + address, e);
+            }
+        });
+    }
+
+    private void loop() {
+        long lastTick = System.nanoTime();
+        while (running) {
+            try {
+                selector.select(TICK_MILLIS);
+                NioConnection connection;
+                while ((connection = pendingConnects.poll()) != null) {
+                    try {
+                        connection.connect(selector);
+                    } catch (Exception e) {
+                        log.error("nio engine connect to " + address + " fail", e);
+                        connection.close(e);
+                    }
+                }
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    handle(key);
+                }
+
+                while ((connection = pendingFlushes.poll()) != null) {
+                    try {
+                        connection.flush();
+                    } catch (Exception e) {
+                        log.error("nio engine write to " + address + " fail", e);
+                        connection.close(e);
+                    }
+                }
+
+                long now = System.nanoTime();
+                if (now - lastTick >= TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS)) {
+                    lastTick = now;
+                    tick(now);
+                }
+            } catch (Exception e) {
+                log.error("nio engine event loop error", e);
+            }
+        }
+
+        for (int i = 0; i < connections.length(); i++) {
+            NioConnection connection = connections.get(i);
+            if (connection != null) {
+                connection.close(new RedisException("nio engine is shut down"));
+            }
+        }
+        NioConnection connection;
+        while ((connection = pendingConnects.poll()) != null) {
+            connection.close(new RedisException("nio engine is shut down"));
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        NioConnection connection = (NioConnection) key.attachment();
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isConnectable()) {
+                connection.finishConnect();
+            }
+            if (key.isValid() && key.isReadable()) {
+                connection.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.write();
+            }
+        } catch (Exception e) {
+            log.error("nio engine connection to " + address + " broken", e);
+            connection.close(e);
+        }
+    }
+
+    private void tick(long now) {
+        RedisException timeout = null;
+        for (int i = 0; i < connections.length(); i++) {
+            NioConnection connection = connections.get(i);
+            if (!connection.isClosed()) {
+                if (connection.isConnectTimedOut(now, timeoutNanos)) {
+                    log.error("nio engine connect to " + address + " timed out");
+                    connection.close(new RedisException("connect timed out after " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms"));
+                } else {
+                    if (timeout == null) {
+                        timeout = new RedisException("timed out after " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms");
+                    }
+                    connection.expire(now, timeoutNanos, timeout);
+                }
+            }
+            if (connection.isClosed() && now - lastConnectNanos[i] >= TimeUnit.MILLISECONDS.toNanos(reconnectIntervalMillis)) {
+                connections.set(i, newConnection(i));
+            }
+        }
+    }
+
+    //------------------------- setter ----------------------
+
+    public void setReconnectIntervalMillis(long reconnectIntervalMillis) {
+        this.reconnectIntervalMillis = reconnectIntervalMillis;
+    }
+
+    /**
+     * @param maxQueuedBytes 每个连接上等待写出的命令的字节数上限，超过时新的命令直接失败，默认为64MB
+     */
+    public void setMaxQueuedBytes(long maxQueuedBytes) {
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+}
@@ -0,0 +1,194 @@
+package com.linkedkeeper.redis.client.nio;
+
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * 可续读的RESP2解码器，数据不完整时保留已解析的部分，下次有数据后继续，不会重复扫描。
+ * 解码结果与Jedis的原始回复一致：bulk和status为byte[]，integer为Long，array为List，error为JedisDataException，
+ * 因此可以直接交给Jedis的BuilderFactory转换
+ *
+ * @Author: zhangsr
+ */
+class RespDecoder {
+
+    /**
+     * 数据不足以组成一个完整回复
+     */
+    static final Object INCOMPLETE = new Object();
+
+    /**
+     * decodeView的结果：bulk可以放进接收缓冲区，但还没有读全
+     */
+    static final ByteBuffer WAIT = ByteBuffer.allocate(0);
+
+    private final Deque<Frame> frames = new ArrayDeque<Frame>();
+
+    private byte[] bulk = null;
+    private int bulkFilled = 0;
+
+    /**
+     * 从in中解码下一个完整的回复，in的position前移到已消费的位置
+     *
+     * @param in
+     * @return 完整回复，或INCOMPLETE
+     */
+    Object decode(ByteBuffer in) {
+        while (true) {
+            Object value;
+            if (bulk != null) {
+                int n = Math.min(in.remaining(), bulk.length - bulkFilled);
+                in.get(bulk, bulkFilled, n);
+                bulkFilled += n;
+                if (bulkFilled < bulk.length || in.remaining() < 2) {
+                    return INCOMPLETE;
+                }
+                in.position(in.position() + 2);
+                value = bulk;
+                bulk = null;
+            } else {
+                int lineEnd = findLineEnd(in);
+                if (lineEnd < 0) {
+                    return INCOMPLETE;
+                }
+                byte type = in.get();
+                switch (type) {
+                    case '+':
+                        value = readLine(in, lineEnd);
+                        break;
+                    case '-':
+                        value = new JedisDataException(SafeEncoder.encode(readLine(in, lineEnd)));
+                        break;
+                    case ':':
+                        value = readLong(in, lineEnd);
+                        break;
+                    case '$': {
+                        long len = readLong(in, lineEnd);
+                        if (len < 0) {
+                            value = null;
+                            break;
+                        }
+                        bulk = new byte[(int) len];
+                        bulkFilled = 0;
+                        continue;
+                    }
+                    case '*': {
+                        long len = readLong(in, lineEnd);
+                        if (len < 0) {
+                            value = null;
+                        } else if (len == 0) {
+                            value = Collections.emptyList();
+                        } else {
+                            frames.push(new Frame((int) len));
+                            continue;
+                        }
+                        break;
+                    }
+                    default:
+                        throw new JedisDataException("unknown reply type: " + (char) type);
+                }
+            }
+
+            while (!frames.isEmpty()) {
+                Frame frame = frames.peek();
+                frame.values.add(value);
+                if (frame.values.size() < frame.expected) {
+                    value = INCOMPLETE;
+                    break;
+                }
+                frames.pop();
+                value = frame.values;
+            }
+            if (value != INCOMPLETE) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * 下一个回复是完整的bulk时，返回它在in中的只读切片并消费掉，不复制数据。
+     * bulk还没读全但能放进in的容量时返回WAIT，等待更多数据；
+     * 其他情况（非bulk、null bulk、超过缓冲区大小、正在解码中）返回null并且不消费，由decode处理
+     *
+     * @param in
+     */
+    ByteBuffer decodeView(ByteBuffer in) {
+        if (bulk != null || !frames.isEmpty()) {
+            return null;
+        }
+        int lineEnd = findLineEnd(in);
+        if (lineEnd < 0) {
+            return in.remaining() > 0 && in.get(in.position()) != '$' ? null : WAIT;
+        }
+        int start = in.position();
+        if (in.get(start) != '$') {
+            return null;
+        }
+        in.position(start + 1);
+        long len = readLong(in, lineEnd);
+        int end = lineEnd + 2 + (int) len;
+        if (len < 0 || end + 2 - start > in.capacity()) {
+            in.position(start);
+            return null;
+        }
+        if (end + 2 > in.limit()) {
+            in.position(start);
+            return WAIT;
+        }
+        ByteBuffer view = in.duplicate();
+        view.position(lineEnd + 2);
+        view.limit(end);
+        in.position(end + 2);
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return 当前行\r的位置，没有完整的行返回-1
+     */
+    private static int findLineEnd(ByteBuffer in) {
+        for (int i = in.position(); i < in.limit() - 1; i++) {
+            if (in.get(i) == '\r' && in.get(i + 1) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] readLine(ByteBuffer in, int lineEnd) {
+        byte[] line = new byte[lineEnd - in.position()];
+        in.get(line);
+        in.position(lineEnd + 2);
+        return line;
+    }
+
+    private static long readLong(ByteBuffer in, int lineEnd) {
+        boolean negative = false;
+        long value = 0;
+        if (in.get(in.position()) == '-') {
+            negative = true;
+            in.get();
+        }
+        while (in.position() < lineEnd) {
+            value = value * 10 + (in.get() - '0');
+        }
+        in.position(lineEnd + 2);
+        return negative ? -value : value;
+    }
+
+    private static class Frame {
+        final int expected;
+        final List<Object> values;
+
+        Frame(int expected) {
+            this.expected = expected;
+            this.values = new ArrayList<Object>(expected);
+        }
+    }
+}
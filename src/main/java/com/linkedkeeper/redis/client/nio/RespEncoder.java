@@ -0,0 +1,60 @@
+package com.linkedkeeper.redis.client.nio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 把命令参数编码为RESP数组
+ *
+ * @Author: zhangsr
+ */
+class RespEncoder {
+
+    private final static byte[] CRLF = {'\r', '\n'};
+
+    private RespEncoder() {
+    }
+
+    static int encodedLength(byte[][] args) {
+        int len = 1 + digits(args.length) + 2;
+        for (byte[] arg : args) {
+            len += 1 + digits(arg.length) + 2 + arg.length + 2;
+        }
+        return len;
+    }
+
+    static void encode(byte[][] args, ByteBuffer out) {
+        out.put((byte) '*');
+        putInt(args.length, out);
+        out.put(CRLF);
+        for (byte[] arg : args) {
+            out.put((byte) '$');
+            putInt(arg.length, out);
+            out.put(CRLF);
+            out.put(arg);
+            out.put(CRLF);
+        }
+    }
+
+    private static void putInt(int value, ByteBuffer out) {
+        if (value < 10) {
+            out.put((byte) ('0' + value));
+            return;
+        }
+        int start = out.position();
+        int len = digits(value);
+        for (int i = len - 1; i >= 0; i--) {
+            out.put(start + i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        out.position(start + len);
+    }
+
+    private static int digits(int value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+}
@@ -0,0 +1,256 @@
+package com.linkedkeeper.redis.client.pipeline;
+
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.driver.RedisTopology;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import org.apache.log4j.Logger;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自动合并并发的单条命令：调用线程把命令放入共享队列，每个连接一个写线程，
+ * 每次取出队列中积压的命令（不超过maxBatchSize，可等待flushWindow凑批）作为一个pipeline发出，
+ * 再按顺序完成各调用方的CompletableFuture，调用方不需要为等待中的命令占用线程。
+ * 每次发送时通过driver.acquire()取得当前的master连接池，重新配置后写线程换用新连接池的连接
+ *
+ * @Author: zhangsr
+ */
+public class AutoPipeline {
+
+    private final static Logger log = Logger.getLogger(AutoPipeline.class);
+
+    private final BlockingQueue<Pending<?>> queue = new LinkedBlockingQueue<Pending<?>>();
+
+    private final RedisDriver driver;
+    private final int connections;
+    private final int maxBatchSize;
+    private final long flushWindowNanos;
+
+    private final List<Thread> writers = new ArrayList<Thread>();
+
+    private volatile boolean running = false;
+
+    /**
+     * @param driver             写线程从当前master连接池各借用一个连接并持有到拓扑变更
+     * @param connections        写线程（连接）数
+     * @param maxBatchSize       单次pipeline最多合并的命令数
+     * @param flushWindowMicros  取到第一条命令后最多再等待多久凑批，0表示有积压就发
+     */
+    public AutoPipeline(RedisDriver driver, int connections, int maxBatchSize, long flushWindowMicros) {
+        if (connections <= 0 || maxBatchSize <= 0 || flushWindowMicros < 0) {
+            throw new IllegalArgumentException("connections and maxBatchSize must be positive, flushWindowMicros must not be negative");
+        }
+        this.driver = driver;
+        this.connections = connections;
+        this.maxBatchSize = maxBatchSize;
+        this.flushWindowNanos = TimeUnit.MICROSECONDS.toNanos(flushWindowMicros);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < connections; i++) {
+            Thread writer = new Thread(new Writer(), "redis-auto-pipeline-" + i);
+            writer.setDaemon(true);
+            writer.start();
+            writers.add(writer);
+        }
+        log.info("auto pipeline started, connections = " + connections + ", maxBatchSize = " + maxBatchSize);
+    }
+
+    public synchronized void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (Thread writer : writers) {
+            writer.interrupt();
+        }
+        for (Thread writer : writers) {
+            try {
+                writer.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        writers.clear();
+
+        List<Pending<?>> remaining = new ArrayList<Pending<?>>();
+        queue.drainTo(remaining);
+        failAll(remaining, new RedisException("auto pipeline is shut down"));
+        log.info("auto pipeline shut down");
+    }
+
+    /**
+     * @param command 命令名，用于失败信息
+     * @param key     命令的key，用于失败信息，可为null
+     * @param pipelineCommand
+     * @return 命令完成时完成的future，失败时以RedisException结束
+     */
+    public <T> CompletableFuture<T> submit(String command, String key, PipelineCommand<T> pipelineCommand) {
+        Pending<T> pending = new Pending<T>(command, key, pipelineCommand);
+        if (!running) {
+            pending.fail(new RedisException("auto pipeline is not running"));
+        } else {
+            queue.add(pending);
+            if (!running && queue.remove(pending)) {
+                pending.fail(new RedisException("auto pipeline is shut down"));
+            }
+        }
+        return pending.future;
+    }
+
+    private void collect(List<Pending<?>> batch) throws InterruptedException {
+        Pending<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+        if (flushWindowNanos > 0) {
+            long deadline = System.nanoTime() + flushWindowNanos;
+            while (batch.size() < maxBatchSize) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                Pending<?> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    break;
+                }
+                batch.add(next);
+            }
+        }
+        queue.drainTo(batch, maxBatchSize - batch.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void flush(Jedis jedis, List<Pending<?>> batch) {
+        RedisPipeline pipeline = new RedisPipeline(jedis.pipelined(), maxBatchSize);
+        List<Response<?>> responses = new ArrayList<Response<?>>(batch.size());
+        for (Pending<?> pending : batch) {
+            Response<?> response = null;
+            try {
+                response = pending.command.queue(pipeline);
+            } catch (JedisDataException e) {
+                pending.fail(e);
+            }
+            responses.add(response);
+        }
+        pipeline.sync();
+
+        for (int i = 0; i < batch.size(); i++) {
+            Response<?> response = responses.get(i);
+            if (response == null) {
+                continue;
+            }
+            Pending<Object> pending = (Pending<Object>) batch.get(i);
+            try {
+                pending.future.complete(response.get());
+            } catch (JedisDataException e) {
+                pending.fail(e);
+            }
+        }
+    }
+
+    private static void failAll(List<Pending<?>> batch, Throwable cause) {
+        for (Pending<?> pending : batch) {
+            pending.fail(cause);
+        }
+    }
+
+    private static class Pending<T> {
+
+        final String name;
+        final String key;
+        final PipelineCommand<T> command;
+        final CompletableFuture<T> future = new CompletableFuture<T>();
+
+        Pending(String name, String key, PipelineCommand<T> command) {
+            this.name = name;
+            this.key = key;
+            this.command = command;
+        }
+
+        void fail(Throwable cause) {
+            if (cause instanceof RedisException) {
+                future.completeExceptionally(cause);
+            } else {
+                future.completeExceptionally(new RedisException("execute '" + name + (key == null ? "" : " " + key) + "' fail!", cause));
+            }
+        }
+    }
+
+    private class Writer implements Runnable {
+
+        private JedisPool jedisPool = null;
+        private Jedis jedis = null;
+
+        public void run() {
+            List<Pending<?>> batch = new ArrayList<Pending<?>>(maxBatchSize);
+            while (running) {
+                RedisTopology topology = null;
+                try {
+                    collect(batch);
+                    if (batch.isEmpty()) {
+                        // 空闲的写线程也要及时归还已被替换的连接池的连接
+                        if (jedisPool != null && jedisPool != driver.getMasterJedisPool()) {
+                            release();
+                        }
+                        continue;
+                    }
+                    topology = driver.acquire();
+                    JedisPool current = topology.getMasterJedisPool();
+                    if (current == null) {
+                        throw new RedisException("auto pipeline is not supported with multiple masters");
+                    }
+                    if (current != jedisPool) {
+                        release();
+                        jedisPool = current;
+                    }
+                    if (jedis == null) {
+                        jedis = jedisPool.getResource();
+                    }
+                    flush(jedis, batch);
+                } catch (InterruptedException e) {
+                    failAll(batch, new RedisException("auto pipeline is shut down"));
+                    break;
+                } catch (Exception e) {
+                    log.error("auto pipeline flush fail, batch size = " + batch.size(), e);
+                    failAll(batch, e);
+                    if (jedis != null) {
+                        jedisPool.returnBrokenResource(jedis);
+                        jedis = null;
+                    }
+                } finally {
+                    batch.clear();
+                    if (topology != null) {
+                        topology.release();
+                    }
+                }
+            }
+            release();
+        }
+
+        /**
+         * 把持有的连接还给它所属的连接池
+         */
+        private void release() {
+            Jedis old = jedis;
+            jedis = null;
+            if (old != null) {
+                jedisPool.returnResource(old);
+            }
+        }
+    }
+}
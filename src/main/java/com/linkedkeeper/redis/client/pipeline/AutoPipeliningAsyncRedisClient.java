@@ -0,0 +1,354 @@
+package com.linkedkeeper.redis.client.pipeline;
+
+import com.linkedkeeper.redis.client.AsyncRedisClient;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.driver.RedisTopology;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import org.apache.log4j.Logger;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.TransactionBlock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 基于AutoPipeline的AsyncRedisClient，单条命令进入共享队列，由少量持有连接的写线程合并发送并完成future，
+ * 不会为每个等待中的命令占用一个线程。写线程在Jedis连接上阻塞地收发，每个写线程一直占用连接池中的一个连接，
+ * 非阻塞的传输见NioAsyncRedisClient。multi和pipelined需要独占连接，在独立的小线程池中执行
+ *
+ * @Author: zhangsr
+ */
+public class AutoPipeliningAsyncRedisClient implements AsyncRedisClient {
+
+    private final static Logger log = Logger.getLogger(AutoPipeliningAsyncRedisClient.class);
+
+    private RedisDriver driver;
+
+    private AutoPipeline autoPipeline = null;
+    private ExecutorService exclusiveExecutor = null;
+
+    private int connections = 4;
+    private int maxBatchSize = 512;
+    private long flushWindowMicros = 0;
+    private int exclusiveThreads = 4;
+    private int pipelineBatchSize = RedisPipeline.DEFAULT_BATCH_SIZE;
+
+    public void init() {
+        try {
+            autoPipeline = new AutoPipeline(driver, connections, maxBatchSize, flushWindowMicros);
+            autoPipeline.start();
+            final AtomicInteger seq = new AtomicInteger();
+            exclusiveExecutor = Executors.newFixedThreadPool(exclusiveThreads, r -> {
+                Thread thread = new Thread(r, "redis-async-exclusive-" + seq.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } catch (Exception e) {
+            log.error("AutoPipeliningAsyncRedisClient init failure.", e);
+        }
+    }
+
+    public void destroy() {
+        if (autoPipeline != null) {
+            autoPipeline.shutdown();
+        }
+        if (exclusiveExecutor != null) {
+            exclusiveExecutor.shutdown();
+            try {
+                exclusiveExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public CompletableFuture<Set<String>> keys(String pattern) {
+        return autoPipeline.submit("keys", pattern, pipeline -> pipeline.keys(pattern));
+    }
+
+    public CompletableFuture<ScanResult<String>> scan(String cursor, ScanParams params) {
+        return executeExclusive("scan", cursor, jedis -> jedis.scan(cursor, params));
+    }
+
+    public CompletableFuture<String> setex(String key, int expire, String value) {
+        return autoPipeline.submit("setex", key, pipeline -> pipeline.setex(key, expire, value));
+    }
+
+    public CompletableFuture<String> set(String key, String value) {
+        return autoPipeline.submit("set", key, pipeline -> pipeline.set(key, value));
+    }
+
+    /**
+     * Jedis的pipeline只接受int类型的过期时间，超出int范围的time直接以失败结束，不截断
+     */
+    public CompletableFuture<String> set(String key, String value, String nxxx, String expx, long time) {
+        if (time > Integer.MAX_VALUE || time < Integer.MIN_VALUE) {
+            CompletableFuture<String> future = new CompletableFuture<String>();
+            future.completeExceptionally(new RedisException("execute 'set " + key + "' fail! " + expx + " " + time + " is out of range"));
+            return future;
+        }
+        int expireTime = (int) time;
+        return autoPipeline.submit("set", key, pipeline -> pipeline.set(key, value, nxxx, expx, expireTime));
+    }
+
+    public CompletableFuture<Long> decrBy(String key, long integer) {
+        return autoPipeline.submit("decrBy", key, pipeline -> pipeline.decrBy(key, integer));
+    }
+
+    public CompletableFuture<Long> incr(String key) {
+        return autoPipeline.submit("incr", key, pipeline -> pipeline.incr(key));
+    }
+
+    public CompletableFuture<Long> incrBy(String key, long integer) {
+        return autoPipeline.submit("incrBy", key, pipeline -> pipeline.incrBy(key, integer));
+    }
+
+    public CompletableFuture<String> get(String key) {
+        return autoPipeline.submit("get", key, pipeline -> pipeline.get(key));
+    }
+
+    public CompletableFuture<Long> sadd(String key, String... members) {
+        return autoPipeline.submit("sadd", key, pipeline -> pipeline.sadd(key, members));
+    }
+
+    public CompletableFuture<Long> srem(String key, String... members) {
+        return autoPipeline.submit("srem", key, pipeline -> pipeline.srem(key, members));
+    }
+
+    public CompletableFuture<Set<String>> smembers(String key) {
+        return autoPipeline.submit("smembers", key, pipeline -> pipeline.smembers(key));
+    }
+
+    public CompletableFuture<ScanResult<String>> sscan(String key, String cursor, ScanParams params) {
+        return executeExclusive("sscan", key, jedis -> jedis.sscan(key, cursor, params));
+    }
+
+    public CompletableFuture<Long> expire(String key, int expiredTime) {
+        return autoPipeline.submit("expire", key, pipeline -> pipeline.expire(key, expiredTime));
+    }
+
+    public CompletableFuture<Boolean> exists(String key) {
+        return autoPipeline.submit("exists", key, pipeline -> pipeline.exists(key));
+    }
+
+    public CompletableFuture<Long> pttl(String key) {
+        return autoPipeline.submit("pttl", key, pipeline -> pipeline.pttl(key));
+    }
+
+    public CompletableFuture<Long> del(String key) {
+        return autoPipeline.submit("del", key, pipeline -> pipeline.del(key));
+    }
+
+    public CompletableFuture<Long> del(String... key) {
+        return autoPipeline.submit("del", null, pipeline -> pipeline.del(key));
+    }
+
+    public CompletableFuture<Long> hset(String key, String field, String value) {
+        return autoPipeline.submit("hset", key, pipeline -> pipeline.hset(key, field, value));
+    }
+
+    public CompletableFuture<Long> hsetnx(String key, String field, String value) {
+        return autoPipeline.submit("hsetnx", key, pipeline -> pipeline.hsetnx(key, field, value));
+    }
+
+    public CompletableFuture<Long> hdel(String key, String... fields) {
+        return autoPipeline.submit("hdel", key, pipeline -> pipeline.hdel(key, fields));
+    }
+
+    public CompletableFuture<String> hget(String key, String field) {
+        return autoPipeline.submit("hget", key, pipeline -> pipeline.hget(key, field));
+    }
+
+    public CompletableFuture<String> hmset(String key, Map<String, String> hash) {
+        return autoPipeline.submit("hmset", key, pipeline -> pipeline.hmset(key, hash));
+    }
+
+    public CompletableFuture<List<String>> hmget(String key, String... fields) {
+        return autoPipeline.submit("hmget", key, pipeline -> pipeline.hmget(key, fields));
+    }
+
+    public CompletableFuture<Map<String, String>> hgetAll(String key) {
+        return autoPipeline.submit("hgetAll", key, pipeline -> pipeline.hgetAll(key));
+    }
+
+    public CompletableFuture<ScanResult<Map.Entry<String, String>>> hscan(String key, String cursor, ScanParams params) {
+        return executeExclusive("hscan", key, jedis -> jedis.hscan(key, cursor, params));
+    }
+
+    public CompletableFuture<List<String>> mget(String... keys) {
+        return autoPipeline.submit("mget", keys.length == 0 ? null : keys[0], pipeline -> pipeline.mget(keys));
+    }
+
+    public CompletableFuture<String> mset(String... keysvalues) {
+        return autoPipeline.submit("mset", keysvalues.length == 0 ? null : keysvalues[0], pipeline -> pipeline.mset(keysvalues));
+    }
+
+    /**
+     * 多条SETEX进入同一个队列，由写线程合并发送
+     */
+    public CompletableFuture<String> msetex(int expire, String... keysvalues) {
+        List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>(keysvalues.length / 2);
+        for (int i = 0; i + 1 < keysvalues.length; i += 2) {
+            futures.add(setex(keysvalues[i], expire, keysvalues[i + 1]));
+        }
+        return all(futures).thenApply(results -> "OK");
+    }
+
+    public CompletableFuture<List<Map<String, String>>> hgetAllMulti(String... keys) {
+        List<CompletableFuture<Map<String, String>>> futures = new ArrayList<CompletableFuture<Map<String, String>>>(keys.length);
+        for (String key : keys) {
+            futures.add(hgetAll(key));
+        }
+        return all(futures);
+    }
+
+    public CompletableFuture<List<List<String>>> hmgetMulti(List<String> keys, String... fields) {
+        List<CompletableFuture<List<String>>> futures = new ArrayList<CompletableFuture<List<String>>>(keys.size());
+        for (String key : keys) {
+            futures.add(hmget(key, fields));
+        }
+        return all(futures);
+    }
+
+    public CompletableFuture<List<Set<String>>> smembersMulti(String... keys) {
+        List<CompletableFuture<Set<String>>> futures = new ArrayList<CompletableFuture<Set<String>>>(keys.length);
+        for (String key : keys) {
+            futures.add(smembers(key));
+        }
+        return all(futures);
+    }
+
+    public CompletableFuture<List<Object>> multi(TransactionBlock transactionBlock) {
+        return executeExclusive("multi", null, jedis -> jedis.multi(transactionBlock));
+    }
+
+    public CompletableFuture<Void> pipelined(PipelineBlock pipelineBlock) {
+        return pipelined(pipelineBatchSize, pipelineBlock);
+    }
+
+    public CompletableFuture<Void> pipelined(int batchSize, PipelineBlock pipelineBlock) {
+        return executeExclusive("pipelined", null, jedis -> {
+            RedisPipeline pipeline = new RedisPipeline(jedis.pipelined(), batchSize);
+            pipelineBlock.execute(pipeline);
+            pipeline.sync();
+            return null;
+        });
+    }
+
+    public CompletableFuture<Long> lpush(String key, String... strings) {
+        return autoPipeline.submit("lpush", key, pipeline -> pipeline.lpush(key, strings));
+    }
+
+    public CompletableFuture<Long> rpush(String key, String... strings) {
+        return autoPipeline.submit("rpush", key, pipeline -> pipeline.rpush(key, strings));
+    }
+
+    public CompletableFuture<String> lpop(String key) {
+        return autoPipeline.submit("lpop", key, pipeline -> pipeline.lpop(key));
+    }
+
+    public CompletableFuture<String> rpop(String key) {
+        return autoPipeline.submit("rpop", key, pipeline -> pipeline.rpop(key));
+    }
+
+    public CompletableFuture<List<String>> lrange(String key, long start, long end) {
+        return autoPipeline.submit("lrange", key, pipeline -> pipeline.lrange(key, start, end));
+    }
+
+    public CompletableFuture<String> ltrim(String key, long start, long end) {
+        return autoPipeline.submit("ltrim", key, pipeline -> pipeline.ltrim(key, start, end));
+    }
+
+    public CompletableFuture<Long> llen(String key) {
+        return autoPipeline.submit("llen", key, pipeline -> pipeline.llen(key));
+    }
+
+    public CompletableFuture<String> rpoplpush(String srckey, String dstkey) {
+        return autoPipeline.submit("rpoplpush", srckey, pipeline -> pipeline.rpoplpush(srckey, dstkey));
+    }
+
+    public CompletableFuture<Long> hincrby(String key, String field, int increment) {
+        return autoPipeline.submit("hincrby", key, pipeline -> pipeline.hincrby(key, field, increment));
+    }
+
+    /**
+     * @return 所有future完成后以与futures顺序一致的结果完成，任一个失败时以该失败结束
+     */
+    private static <T> CompletableFuture<List<T>> all(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<T> results = new ArrayList<T>(futures.size());
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Jedis的pipeline不支持SCAN类命令，与multi一样在独立线程池中借用连接执行
+     */
+    private <T> CompletableFuture<T> executeExclusive(String command, String key, Function<Jedis, T> callback) {
+        return CompletableFuture.supplyAsync(() -> {
+            String name = command + (key == null ? "" : " " + key);
+            RedisTopology topology = driver.acquire();
+            try {
+                JedisPool jedisPool = topology.getMasterJedisPool();
+                if (jedisPool == null)
+                    throw new RedisException("execute '" + name + "' fail! not supported with multiple masters");
+                Jedis jedis = null;
+                boolean borrowOrOprSuccess = true;
+                try {
+                    jedis = jedisPool.getResource();
+                    return callback.apply(jedis);
+                } catch (Exception e) {
+                    borrowOrOprSuccess = false;
+                    if (jedis != null)
+                        jedisPool.returnBrokenResource(jedis);
+                    throw new RedisException("execute '" + name + "' fail!", e);
+                } finally {
+                    if (borrowOrOprSuccess)
+                        jedisPool.returnResource(jedis);
+                }
+            } finally {
+                topology.release();
+            }
+        }, exclusiveExecutor);
+    }
+
+    //------------------------- setter ----------------------
+
+    public void setDriver(RedisDriver driver) {
+        this.driver = driver;
+    }
+
+    public void setConnections(int connections) {
+        this.connections = connections;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public void setFlushWindowMicros(long flushWindowMicros) {
+        this.flushWindowMicros = flushWindowMicros;
+    }
+
+    public void setExclusiveThreads(int exclusiveThreads) {
+        this.exclusiveThreads = exclusiveThreads;
+    }
+
+    public void setPipelineBatchSize(int pipelineBatchSize) {
+        this.pipelineBatchSize = pipelineBatchSize;
+    }
+}
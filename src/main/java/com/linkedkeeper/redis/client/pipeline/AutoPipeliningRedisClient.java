@@ -0,0 +1,370 @@
+package com.linkedkeeper.redis.client.pipeline;
+
+import com.linkedkeeper.redis.client.RedisClient;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.driver.RedisTopology;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import com.linkedkeeper.redis.client.scan.ScanCallback;
+import com.linkedkeeper.redis.client.scan.ScanIterator;
+import org.apache.log4j.Logger;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+import redis.clients.jedis.TransactionBlock;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 自动pipeline模式的RedisClient，并发的单条命令在少量连接上合并发送，接口与SimpleRedisClient一致。
+ * multi、pipelined和scan、sscan、hscan需要独占连接，在调用线程上每次通过driver.acquire()取得当前的master连接池借用，
+ * 不经过异步客户端的独占线程
+ *
+ * @Author: zhangsr
+ */
+public class AutoPipeliningRedisClient implements RedisClient {
+
+    private final static Logger log = Logger.getLogger(AutoPipeliningRedisClient.class);
+
+    private RedisDriver driver;
+
+    private AutoPipeliningAsyncRedisClient asyncClient = null;
+
+    private int connections = 4;
+    private int maxBatchSize = 512;
+    private long flushWindowMicros = 0;
+    private long timeoutMillis = 5000;
+    private int pipelineBatchSize = RedisPipeline.DEFAULT_BATCH_SIZE;
+
+    public void init() {
+        try {
+            asyncClient = new AutoPipeliningAsyncRedisClient();
+            asyncClient.setDriver(driver);
+            asyncClient.setConnections(connections);
+            asyncClient.setMaxBatchSize(maxBatchSize);
+            asyncClient.setFlushWindowMicros(flushWindowMicros);
+            // 需要独占连接的命令都在调用线程上执行，异步客户端的独占线程不会用到
+            asyncClient.setExclusiveThreads(1);
+            asyncClient.init();
+        } catch (Exception e) {
+            log.error("AutoPipeliningRedisClient init failure.", e);
+        }
+    }
+
+    public void destroy() {
+        if (asyncClient != null) {
+            asyncClient.destroy();
+        }
+    }
+
+    public Set<String> keys(String pattern) throws RedisException {
+        return await("keys", pattern, asyncClient.keys(pattern));
+    }
+
+    public ScanResult<String> scan(String cursor, ScanParams params) throws RedisException {
+        return executeExclusive("scan", jedis -> jedis.scan(cursor, params));
+    }
+
+    public ScanIterator<String> scan(String pattern, int count) throws RedisException {
+        ScanParams params = new ScanParams().match(pattern).count(count);
+        return new ScanIterator<String>(cursor -> page("scan", jedis -> jedis.scan(cursor, params)), false);
+    }
+
+    public void scan(String pattern, int count, ScanCallback<String> callback) throws RedisException {
+        scan(pattern, count).forEach(callback);
+    }
+
+    public String setex(String key, int expire, String value) throws RedisException {
+        return await("setex", key, asyncClient.setex(key, expire, value));
+    }
+
+    public String set(String key, String value) throws RedisException {
+        return await("set", key, asyncClient.set(key, value));
+    }
+
+    public String set(String key, String value, String nxxx, String expx, long time) throws RedisException {
+        return await("set", key, asyncClient.set(key, value, nxxx, expx, time));
+    }
+
+    public Long decrBy(String key, long integer) throws RedisException {
+        return await("decrBy", key, asyncClient.decrBy(key, integer));
+    }
+
+    public Long incr(String key) throws RedisException {
+        return await("incr", key, asyncClient.incr(key));
+    }
+
+    public Long incrBy(String key, long integer) throws RedisException {
+        return await("incrBy", key, asyncClient.incrBy(key, integer));
+    }
+
+    public String get(String key) throws RedisException {
+        return await("get", key, asyncClient.get(key));
+    }
+
+    public Long sadd(String key, String... members) throws RedisException {
+        return await("sadd", key, asyncClient.sadd(key, members));
+    }
+
+    public Long srem(String key, String... members) throws RedisException {
+        return await("srem", key, asyncClient.srem(key, members));
+    }
+
+    public Set<String> smembers(String key) throws RedisException {
+        return await("smembers", key, asyncClient.smembers(key));
+    }
+
+    public ScanResult<String> sscan(String key, String cursor, ScanParams params) throws RedisException {
+        return executeExclusive("sscan " + key, jedis -> jedis.sscan(key, cursor, params));
+    }
+
+    public ScanIterator<String> sscanAll(String key, int count) throws RedisException {
+        ScanParams params = new ScanParams().count(count);
+        return new ScanIterator<String>(cursor -> page("sscan " + key, jedis -> jedis.sscan(key, cursor, params)), false);
+    }
+
+    public void sscanAll(String key, int count, ScanCallback<String> callback) throws RedisException {
+        sscanAll(key, count).forEach(callback);
+    }
+
+    public Long expire(String key, int expiredTime) throws RedisException {
+        return await("expire", key, asyncClient.expire(key, expiredTime));
+    }
+
+    public Boolean exists(String key) throws RedisException {
+        return await("exists", key, asyncClient.exists(key));
+    }
+
+    public Long pttl(String key) throws RedisException {
+        return await("pttl", key, asyncClient.pttl(key));
+    }
+
+    public Long del(String key) throws RedisException {
+        return await("del", key, asyncClient.del(key));
+    }
+
+    public Long del(String... key) throws RedisException {
+        return await("del", null, asyncClient.del(key));
+    }
+
+    public Long hset(String key, String field, String value) throws RedisException {
+        return await("hset", key, asyncClient.hset(key, field, value));
+    }
+
+    public Long hsetnx(String key, String field, String value) throws RedisException {
+        return await("hsetnx", key, asyncClient.hsetnx(key, field, value));
+    }
+
+    public Long hdel(String key, String... fields) throws RedisException {
+        return await("hdel", key, asyncClient.hdel(key, fields));
+    }
+
+    public String hget(String key, String field) throws RedisException {
+        return await("hget", key, asyncClient.hget(key, field));
+    }
+
+    public String hmset(String key, Map<String, String> hash) throws RedisException {
+        return await("hmset", key, asyncClient.hmset(key, hash));
+    }
+
+    public List<String> hmget(String key, String... fields) throws RedisException {
+        return await("hmget", key, asyncClient.hmget(key, fields));
+    }
+
+    public Map<String, String> hgetAll(String key) throws RedisException {
+        return await("hgetAll", key, asyncClient.hgetAll(key));
+    }
+
+    public ScanResult<Map.Entry<String, String>> hscan(String key, String cursor, ScanParams params) throws RedisException {
+        return executeExclusive("hscan " + key, jedis -> jedis.hscan(key, cursor, params));
+    }
+
+    public ScanIterator<Map.Entry<String, String>> hscanAll(String key, int count) throws RedisException {
+        ScanParams params = new ScanParams().count(count);
+        return new ScanIterator<Map.Entry<String, String>>(cursor -> page("hscan " + key, jedis -> jedis.hscan(key, cursor, params)), false);
+    }
+
+    public void hscanAll(String key, int count, ScanCallback<Map.Entry<String, String>> callback) throws RedisException {
+        hscanAll(key, count).forEach(callback);
+    }
+
+    public List<String> mget(String... keys) throws RedisException {
+        return await("mget", keys.length == 0 ? null : keys[0], asyncClient.mget(keys));
+    }
+
+    public String mset(String... keysvalues) throws RedisException {
+        return await("mset", keysvalues.length == 0 ? null : keysvalues[0], asyncClient.mset(keysvalues));
+    }
+
+    public String msetex(int expire, String... keysvalues) throws RedisException {
+        return await("msetex", keysvalues.length == 0 ? null : keysvalues[0], asyncClient.msetex(expire, keysvalues));
+    }
+
+    public List<Map<String, String>> hgetAllMulti(String... keys) throws RedisException {
+        return await("hgetAllMulti", keys.length == 0 ? null : keys[0], asyncClient.hgetAllMulti(keys));
+    }
+
+    public List<List<String>> hmgetMulti(List<String> keys, String... fields) throws RedisException {
+        return await("hmgetMulti", keys.isEmpty() ? null : keys.get(0), asyncClient.hmgetMulti(keys, fields));
+    }
+
+    public List<Set<String>> smembersMulti(String... keys) throws RedisException {
+        return await("smembersMulti", keys.length == 0 ? null : keys[0], asyncClient.smembersMulti(keys));
+    }
+
+    public List<Object> multi(TransactionBlock transactionBlock) {
+        return executeExclusive("multi", jedis -> jedis.multi(transactionBlock));
+    }
+
+    public void pipelined(PipelineBlock pipelineBlock) throws RedisException {
+        pipelined(pipelineBatchSize, pipelineBlock);
+    }
+
+    public void pipelined(int batchSize, PipelineBlock pipelineBlock) throws RedisException {
+        executeExclusive("pipelined", jedis -> {
+            RedisPipeline pipeline = new RedisPipeline(jedis.pipelined(), batchSize);
+            pipelineBlock.execute(pipeline);
+            pipeline.sync();
+            return null;
+        });
+    }
+
+    public Long lpush(String key, String... strings) throws RedisException {
+        return await("lpush", key, asyncClient.lpush(key, strings));
+    }
+
+    public Long rpush(String key, String... strings) throws RedisException {
+        return await("rpush", key, asyncClient.rpush(key, strings));
+    }
+
+    public String lpop(String key) throws RedisException {
+        return await("lpop", key, asyncClient.lpop(key));
+    }
+
+    public String rpop(String key) throws RedisException {
+        return await("rpop", key, asyncClient.rpop(key));
+    }
+
+    public List<String> lrange(String key, long start, long end) throws RedisException {
+        return await("lrange", key, asyncClient.lrange(key, start, end));
+    }
+
+    public ScanIterator<String> lrangeChunked(String key, int pageSize) throws RedisException {
+        return new ScanIterator<String>(ScanIterator.ranges(pageSize, (start, end) -> asyncClient.lrange(key, start, end)), false);
+    }
+
+    public void lrangeChunked(String key, int pageSize, ScanCallback<String> callback) throws RedisException {
+        lrangeChunked(key, pageSize).forEach(callback);
+    }
+
+    public String ltrim(String key, long start, long end) throws RedisException {
+        return await("ltrim", key, asyncClient.ltrim(key, start, end));
+    }
+
+    public Long llen(String key) throws RedisException {
+        return await("llen", key, asyncClient.llen(key));
+    }
+
+    public String rpoplpush(String srckey, String dstkey) throws RedisException {
+        return await("rpoplpush", srckey, asyncClient.rpoplpush(srckey, dstkey));
+    }
+
+    public Long hincrby(String key, String field, int increment) throws RedisException {
+        return await("hincrby", key, asyncClient.hincrby(key, field, increment));
+    }
+
+    @Override
+    public void handleDataChange(String path, String data) {
+        log.info("redis conf of " + path + " changed to " + data);
+        driver.reload(data);
+    }
+
+    /**
+     * 在调用线程上从当前的master连接池借用连接执行
+     */
+    private <T> T executeExclusive(String command, Function<Jedis, T> callback) throws RedisException {
+        RedisTopology topology = driver.acquire();
+        try {
+            JedisPool jedisPool = topology.getMasterJedisPool();
+            if (jedisPool == null)
+                throw new RedisException("execute '" + command + "' fail! not supported with multiple masters");
+            Jedis jedis = null;
+            boolean borrowOrOprSuccess = true;
+            try {
+                jedis = jedisPool.getResource();
+                return callback.apply(jedis);
+            } catch (Exception e) {
+                borrowOrOprSuccess = false;
+                if (jedis != null)
+                    jedisPool.returnBrokenResource(jedis);
+                throw new RedisException("execute '" + command + "' fail!", e);
+            } finally {
+                if (borrowOrOprSuccess)
+                    jedisPool.returnResource(jedis);
+            }
+        } finally {
+            topology.release();
+        }
+    }
+
+    /**
+     * 在调用线程上读取一页，失败时返回失败的future，由ScanIterator抛出
+     */
+    private <T> CompletableFuture<T> page(String command, Function<Jedis, T> callback) {
+        try {
+            return CompletableFuture.completedFuture(executeExclusive(command, callback));
+        } catch (RedisException e) {
+            CompletableFuture<T> failed = new CompletableFuture<T>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    private <T> T await(String command, String key, CompletableFuture<T> future) throws RedisException {
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RedisException) {
+                throw (RedisException) e.getCause();
+            }
+            throw new RedisException("execute '" + command + (key == null ? "" : " " + key) + "' fail!", e.getCause());
+        } catch (Exception e) {
+            throw new RedisException("execute '" + command + (key == null ? "" : " " + key) + "' fail!", e);
+        }
+    }
+
+    //------------------------- setter ----------------------
+
+    public void setDriver(RedisDriver driver) {
+        this.driver = driver;
+    }
+
+    public void setConnections(int connections) {
+        this.connections = connections;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public void setFlushWindowMicros(long flushWindowMicros) {
+        this.flushWindowMicros = flushWindowMicros;
+    }
+
+    public void setTimeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @param pipelineBatchSize 只影响pipelined(PipelineBlock)每批同步的命令数，单条命令的合并由maxBatchSize控制
+     */
+    public void setPipelineBatchSize(int pipelineBatchSize) {
+        this.pipelineBatchSize = pipelineBatchSize;
+    }
+}
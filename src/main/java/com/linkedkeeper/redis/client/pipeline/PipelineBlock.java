@@ -0,0 +1,16 @@
+package com.linkedkeeper.redis.client.pipeline;
+
+/**
+ * 批量命令回调，在同一个连接上以pipeline方式发送
+ *
+ * @Author: zhangsr
+ */
+public interface PipelineBlock {
+
+    /**
+     * 在此方法内通过pipeline排队命令，返回的Response在pipelined调用结束后可取值
+     *
+     * @param pipeline
+     */
+    void execute(RedisPipeline pipeline);
+}
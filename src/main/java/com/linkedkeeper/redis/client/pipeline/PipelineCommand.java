@@ -0,0 +1,20 @@
+package com.linkedkeeper.redis.client.pipeline;
+
+import redis.clients.jedis.Response;
+
+/**
+ * 等待合并发送的单条命令，由AutoPipeline的写线程排入pipeline
+ *
+ * @Author: zhangsr
+ */
+@FunctionalInterface
+public interface PipelineCommand<T> {
+
+    /**
+     * 将命令排入pipeline
+     *
+     * @param pipeline
+     * @return 该命令的Response
+     */
+    Response<T> queue(RedisPipeline pipeline);
+}
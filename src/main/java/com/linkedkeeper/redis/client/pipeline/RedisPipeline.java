@@ -0,0 +1,198 @@
+package com.linkedkeeper.redis.client.pipeline;
+
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 对Jedis Pipeline的封装，命令排队后按batchSize分批写出并读取结果，
+ * 避免超大批量时客户端和服务端缓存全部回复
+ *
+ * @Author: zhangsr
+ */
+public class RedisPipeline {
+
+    public final static int DEFAULT_BATCH_SIZE = 1000;
+
+    private final Pipeline pipeline;
+    private final int batchSize;
+
+    private int pending = 0;
+    private int synced = 0;
+
+    public RedisPipeline(Pipeline pipeline, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.pipeline = pipeline;
+        this.batchSize = batchSize;
+    }
+
+    public Response<Set<String>> keys(String pattern) {
+        return queued(pipeline.keys(pattern));
+    }
+
+    public Response<String> setex(String key, int expire, String value) {
+        return queued(pipeline.setex(key, expire, value));
+    }
+
+    public Response<String> set(String key, String value) {
+        return queued(pipeline.set(key, value));
+    }
+
+    public Response<String> set(String key, String value, String nxxx, String expx, int time) {
+        return queued(pipeline.set(key, value, nxxx, expx, time));
+    }
+
+    public Response<Long> decrBy(String key, long integer) {
+        return queued(pipeline.decrBy(key, integer));
+    }
+
+    public Response<Long> incr(String key) {
+        return queued(pipeline.incr(key));
+    }
+
+    public Response<Long> incrBy(String key, long integer) {
+        return queued(pipeline.incrBy(key, integer));
+    }
+
+    public Response<String> get(String key) {
+        return queued(pipeline.get(key));
+    }
+
+    public Response<Long> sadd(String key, String... members) {
+        return queued(pipeline.sadd(key, members));
+    }
+
+    public Response<Long> srem(String key, String... members) {
+        return queued(pipeline.srem(key, members));
+    }
+
+    public Response<Set<String>> smembers(String key) {
+        return queued(pipeline.smembers(key));
+    }
+
+    public Response<Long> expire(String key, int expiredTime) {
+        return queued(pipeline.expire(key, expiredTime));
+    }
+
+    public Response<Boolean> exists(String key) {
+        return queued(pipeline.exists(key));
+    }
+
+    public Response<Long> del(String key) {
+        return queued(pipeline.del(key));
+    }
+
+    public Response<Long> del(String... keys) {
+        return queued(pipeline.del(keys));
+    }
+
+    public Response<List<String>> mget(String... keys) {
+        return queued(pipeline.mget(keys));
+    }
+
+    public Response<String> mset(String... keysvalues) {
+        return queued(pipeline.mset(keysvalues));
+    }
+
+    public Response<Long> hset(String key, String field, String value) {
+        return queued(pipeline.hset(key, field, value));
+    }
+
+    public Response<Long> hsetnx(String key, String field, String value) {
+        return queued(pipeline.hsetnx(key, field, value));
+    }
+
+    public Response<Long> hdel(String key, String... fields) {
+        return queued(pipeline.hdel(key, fields));
+    }
+
+    public Response<String> hget(String key, String field) {
+        return queued(pipeline.hget(key, field));
+    }
+
+    public Response<String> hmset(String key, Map<String, String> hash) {
+        return queued(pipeline.hmset(key, hash));
+    }
+
+    public Response<List<String>> hmget(String key, String... fields) {
+        return queued(pipeline.hmget(key, fields));
+    }
+
+    public Response<Map<String, String>> hgetAll(String key) {
+        return queued(pipeline.hgetAll(key));
+    }
+
+    public Response<Long> lpush(String key, String... strings) {
+        return queued(pipeline.lpush(key, strings));
+    }
+
+    public Response<Long> rpush(String key, String... strings) {
+        return queued(pipeline.rpush(key, strings));
+    }
+
+    public Response<String> lpop(String key) {
+        return queued(pipeline.lpop(key));
+    }
+
+    public Response<String> rpop(String key) {
+        return queued(pipeline.rpop(key));
+    }
+
+    public Response<List<String>> lrange(String key, long start, long end) {
+        return queued(pipeline.lrange(key, start, end));
+    }
+
+    public Response<String> ltrim(String key, long start, long end) {
+        return queued(pipeline.ltrim(key, start, end));
+    }
+
+    public Response<Long> llen(String key) {
+        return queued(pipeline.llen(key));
+    }
+
+    public Response<String> rpoplpush(String srckey, String dstkey) {
+        return queued(pipeline.rpoplpush(srckey, dstkey));
+    }
+
+    public Response<Long> hincrby(String key, String field, int increment) {
+        return queued(pipeline.hincrBy(key, field, increment));
+    }
+
+    public Response<Long> hincrby(String key, String field, long increment) {
+        return queued(pipeline.hincrBy(key, field, increment));
+    }
+
+    public Response<Long> pttl(String key) {
+        return queued(pipeline.pttl(key));
+    }
+
+    /**
+     * 读取所有未返回的结果
+     */
+    public void sync() {
+        if (pending > 0) {
+            pipeline.sync();
+            synced += pending;
+            pending = 0;
+        }
+    }
+
+    /**
+     * @return 已经读取到回复的命令数，即排在最前面的这些命令的Response可以取值；连接中途断开时之后的命令是否执行未知
+     */
+    public int getSynced() {
+        return synced;
+    }
+
+    private <T> Response<T> queued(Response<T> response) {
+        if (++pending >= batchSize) {
+            sync();
+        }
+        return response;
+    }
+}
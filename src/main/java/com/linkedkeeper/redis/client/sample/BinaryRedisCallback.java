@@ -0,0 +1,20 @@
+package com.linkedkeeper.redis.client.sample;
+
+import com.linkedkeeper.redis.client.BinaryRedisClient;
+
+import java.util.function.Function;
+
+/**
+ * 在一个具体的连接（Jedis连接或NIO引擎）上执行二进制命令，CommandExecutor经由Function.apply调用
+ *
+ * @Author: zhangsr
+ */
+@FunctionalInterface
+interface BinaryRedisCallback<T> extends Function<BinaryRedisClient, T> {
+
+    T doInRedis(BinaryRedisClient client);
+
+    default T apply(BinaryRedisClient client) {
+        return doInRedis(client);
+    }
+}
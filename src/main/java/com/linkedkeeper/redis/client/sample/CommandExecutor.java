@@ -0,0 +1,746 @@
+package com.linkedkeeper.redis.client.sample;
+
+import com.linkedkeeper.redis.client.driver.CircuitBreaker;
+import com.linkedkeeper.redis.client.driver.ClusterRedirect;
+import com.linkedkeeper.redis.client.driver.ClusterRouter;
+import com.linkedkeeper.redis.client.driver.CountingJedis;
+import com.linkedkeeper.redis.client.driver.HedgePolicy;
+import com.linkedkeeper.redis.client.driver.ReadRouter;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.driver.RedisNode;
+import com.linkedkeeper.redis.client.driver.RedisTopology;
+import com.linkedkeeper.redis.client.driver.ShardRouter;
+import com.linkedkeeper.redis.client.driver.TunableJedisPool;
+import com.linkedkeeper.redis.client.exception.RedisCircuitOpenException;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import com.linkedkeeper.redis.client.metrics.HotKeyDetector;
+import com.linkedkeeper.redis.client.metrics.RedisMetrics;
+import com.linkedkeeper.redis.client.nio.NioRedisEngine;
+import org.apache.log4j.Logger;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * SimpleRedisClient和SimpleBinaryRedisClient共用的执行模板：按key路由到master或副本、跟随cluster重定向、熔断、
+ * 对冲和合并读、选择NIO引擎或连接池执行，并记录指标和热点key。两个客户端只在连接上的客户端类型和key类型上不同，
+ * 由Adapter提供
+ *
+ * @param <C> 在连接上执行命令的客户端类型，RedisClient或BinaryRedisClient
+ * @param <K> key的类型，String或byte[]
+ * @Author: zhangsr
+ */
+class CommandExecutor<C, K> {
+
+    private final static Logger log = Logger.getLogger(CommandExecutor.class);
+
+    /**
+     * 两种客户端之间的差异
+     */
+    interface Adapter<C, K> {
+
+        C jedisClient(Jedis jedis);
+
+        C nioClient(NioRedisEngine engine, long timeoutMillis);
+
+        /**
+         * @return 用于错误信息、热点key和合并读的key名
+         */
+        String name(K key);
+
+        RedisNode route(ShardRouter shardRouter, K key);
+
+        RedisNode route(ClusterRouter clusterRouter, K key);
+
+        int slot(K key);
+    }
+
+    private final Adapter<C, K> adapter;
+    private final String threadPrefix;
+
+    private RedisDriver driver;
+
+    private ConcurrentMap<RedisNode, C> nioClients = new ConcurrentHashMap<RedisNode, C>();
+    private ExecutorService workerExecutor = null;
+    /**
+     * 对冲读的线程，最多hedgePolicy.maxThreads个，用尽时不对冲
+     */
+    private ThreadPoolExecutor hedgeExecutor = null;
+
+    private boolean metricsEnabled = true;
+    private String metricsName = "default";
+    private boolean payloadMetrics = false;
+    private RedisMetrics metrics = null;
+
+    private long borrowTimeoutMillis = -1;
+    private int commandTimeoutMillis = 0;
+    private boolean shared = false;
+    private HedgePolicy hedgePolicy = null;
+    private boolean collapseReads = false;
+    private ConcurrentMap<String, CompletableFuture<Object>> inFlightReads = new ConcurrentHashMap<String, CompletableFuture<Object>>();
+    private LongAdder collapsedReads = new LongAdder();
+    private HotKeyDetector hotKeyDetector = null;
+
+    CommandExecutor(Adapter<C, K> adapter, String threadPrefix) {
+        this.adapter = adapter;
+        this.threadPrefix = threadPrefix;
+    }
+
+    void init() {
+        if (metricsEnabled)
+            metrics = new RedisMetrics(metricsName, true, payloadMetrics);
+        final AtomicInteger seq = new AtomicInteger();
+        workerExecutor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, threadPrefix + seq.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        final AtomicInteger hedgeSeq = new AtomicInteger();
+        int hedgeThreads = hedgePolicy == null ? HedgePolicy.DEFAULT_MAX_THREADS : hedgePolicy.getMaxThreads();
+        hedgeExecutor = new ThreadPoolExecutor(0, hedgeThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), r -> {
+            Thread thread = new Thread(r, threadPrefix + "hedge-" + hedgeSeq.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    void destroy() {
+        if (shared) {
+            return;
+        }
+        if (workerExecutor != null) {
+            workerExecutor.shutdown();
+        }
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdown();
+        }
+        if (metrics != null) {
+            metrics.destroy();
+        }
+    }
+
+    /**
+     * @return 共用driver、线程、指标和合并读状态的执行模板，只有借连接和等待回复的超时不同，不需要destroy
+     */
+    CommandExecutor<C, K> withTimeouts(long borrowTimeoutMillis, int commandTimeoutMillis) {
+        CommandExecutor<C, K> executor = new CommandExecutor<C, K>(adapter, threadPrefix);
+        executor.shared = true;
+        executor.driver = driver;
+        executor.nioClients = nioClients;
+        executor.workerExecutor = workerExecutor;
+        executor.hedgeExecutor = hedgeExecutor;
+        executor.metricsEnabled = metricsEnabled;
+        executor.metricsName = metricsName;
+        executor.payloadMetrics = payloadMetrics;
+        executor.metrics = metrics;
+        executor.hedgePolicy = hedgePolicy;
+        executor.collapseReads = collapseReads;
+        executor.inFlightReads = inFlightReads;
+        executor.collapsedReads = collapsedReads;
+        executor.hotKeyDetector = hotKeyDetector;
+        executor.borrowTimeoutMillis = borrowTimeoutMillis;
+        executor.commandTimeoutMillis = commandTimeoutMillis;
+        return executor;
+    }
+
+    /**
+     * driver切换配置后丢弃已不存在的节点的NIO客户端
+     */
+    void retainNodes() {
+        nioClients.keySet().retainAll(driver.getNodes());
+    }
+
+    /**
+     * 写命令，以及不适合读副本的命令，在master上执行
+     */
+    <T> T execute(String command, K key, Function<C, T> callback) throws RedisException {
+        if (hotKeyDetector != null)
+            hotKeyDetector.record(command, name(key));
+        RedisTopology topology = driver.acquire();
+        try {
+            return executeOnMaster(topology, command, key, callback);
+        } finally {
+            if (topology.getReadRouter() != null)
+                topology.getReadRouter().markWrite();
+            topology.release();
+        }
+    }
+
+    /**
+     * 开启collapseReads时，同一时刻相同的读只有第一个调用执行，之后到达的调用等待它的结果，
+     * 最多等待本调用的借连接和回复超时之和。flight中保存的结果不交给任何调用，集合类型的结果每个调用（包括第一个）各复制一份。
+     * 没有并发的相同读时只多一次ConcurrentHashMap的插入和删除。
+     * 等待的调用得到的是先发出的读的结果，看不到自己在这之后的写入
+     *
+     * @param args 除key外区分读命令的参数，如field
+     */
+    @SuppressWarnings("unchecked")
+    <T> T executeCollapsed(String command, K key, Function<C, T> callback, String... args) throws RedisException {
+        if (hotKeyDetector != null)
+            hotKeyDetector.record(command, name(key));
+        if (!collapseReads) {
+            return executeRead(command, key, callback);
+        }
+        StringBuilder flightKey = new StringBuilder(command).append('\0').append(name(key));
+        for (String arg : args) {
+            flightKey.append('\0').append(arg);
+        }
+        CompletableFuture<Object> flight = new CompletableFuture<Object>();
+        CompletableFuture<Object> existing = inFlightReads.putIfAbsent(flightKey.toString(), flight);
+        if (existing != null) {
+            collapsedReads.increment();
+            return (T) copyOf(awaitCollapsed(command, key, existing));
+        }
+        try {
+            T result = executeRead(command, key, callback);
+            inFlightReads.remove(flightKey.toString(), flight);
+            flight.complete(result);
+            return (T) copyOf(result);
+        } catch (RuntimeException | Error e) {
+            inFlightReads.remove(flightKey.toString(), flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * 等待先发出的相同读，超时按本调用的commandTimeoutMillis（为0时为driver的timeout）加上borrowTimeoutMillis计算，
+     * 超时只结束本调用的等待，不影响先发出的读
+     */
+    private Object awaitCollapsed(String command, K key, CompletableFuture<Object> flight) throws RedisException {
+        long timeoutMillis = (commandTimeoutMillis > 0 ? commandTimeoutMillis : driver.getTimeout()) + Math.max(borrowTimeoutMillis, 0);
+        if (timeoutMillis <= 0) {
+            return await(flight);
+        }
+        try {
+            return flight.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new RedisException("execute '" + command + " " + name(key) + "' fail! collapsed read not finished in " + timeoutMillis + "ms", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object copyOf(Object value) {
+        if (value instanceof Map) {
+            return new HashMap<Object, Object>((Map<Object, Object>) value);
+        }
+        if (value instanceof Set) {
+            return new HashSet<Object>((Set<Object>) value);
+        }
+        if (value instanceof List) {
+            return new ArrayList<Object>((List<Object>) value);
+        }
+        return value;
+    }
+
+    /**
+     * 只读命令，配置了副本时由ReadRouter选择副本执行。副本连接失败时暂停使用该副本并回到master重试，
+     * 命令本身的错误（如WRONGTYPE）直接抛出
+     */
+    <T> T executeRead(String command, K key, Function<C, T> callback) throws RedisException {
+        RedisTopology topology = driver.acquire();
+        try {
+            return executeRead(topology, command, key, callback);
+        } finally {
+            topology.release();
+        }
+    }
+
+    <T> T executeRead(RedisTopology topology, String command, K key, Function<C, T> callback) throws RedisException {
+        ReadRouter readRouter = topology.getReadRouter();
+        RedisNode node = readRouter == null ? null : readRouter.select();
+        if (hedgePolicy != null) {
+            return executeHedged(topology, node, command, key, callback);
+        }
+        return executeRead(topology, node, command, key, callback);
+    }
+
+    /**
+     * @param node 执行的副本，为null时在master上执行
+     */
+    private <T> T executeRead(RedisTopology topology, RedisNode node, String command, K key, Function<C, T> callback) throws RedisException {
+        ReadRouter readRouter = topology.getReadRouter();
+        if (node == null) {
+            return executeOnMaster(topology, command, key, callback);
+        }
+        RedisException failure;
+        node.begin();
+        long start = System.nanoTime();
+        try {
+            return executeOnNode(command, key, node, callback);
+        } catch (RedisException e) {
+            if (isDataError(e)) {
+                throw e;
+            }
+            failure = e;
+        } finally {
+            node.end(System.nanoTime() - start);
+        }
+        log.warn("execute '" + command + " " + name(key) + "' on " + node + " fail, retry on master.", failure);
+        readRouter.markDown(node);
+        return executeOnMaster(topology, command, key, callback);
+    }
+
+    /**
+     * hedgePolicy还没有给出等待时间（样本不足）时读在调用线程中执行，只记录延迟；
+     * 否则读在hedgeExecutor中执行，调用线程最多等待这一时间，仍未返回且预算允许时，
+     * 在ReadRouter另选的副本上（没有其他副本时在master的另一个连接上）再执行一次，取先成功的结果。
+     * hedgeExecutor的线程用尽时读回到调用线程执行，或不再对冲
+     */
+    private <T> T executeHedged(RedisTopology topology, RedisNode node, String command, K key, Function<C, T> callback) throws RedisException {
+        long delayNanos = hedgePolicy.begin(command);
+        CompletableFuture<T> primary = null;
+        if (delayNanos > 0) {
+            try {
+                primary = submitRead(topology, node, command, key, callback);
+            } catch (RejectedExecutionException e) {
+                log.debug("no hedge thread for '" + command + " " + name(key) + "', execute it directly");
+            }
+        }
+        if (primary == null) {
+            long start = System.nanoTime();
+            try {
+                return executeRead(topology, node, command, key, callback);
+            } finally {
+                hedgePolicy.end(command, System.nanoTime() - start);
+            }
+        }
+        try {
+            return primary.get(delayNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (hedgePolicy.tryHedge(command)) {
+                ReadRouter readRouter = topology.getReadRouter();
+                RedisNode hedgeNode = readRouter == null ? null : readRouter.select();
+                if (hedgeNode == node) {
+                    hedgeNode = null;
+                }
+                log.debug("hedge '" + command + " " + name(key) + "' to " + (hedgeNode == null ? "master" : hedgeNode));
+                try {
+                    return await(firstSuccess(primary, submitRead(topology, hedgeNode, command, key, callback)));
+                } catch (RejectedExecutionException rejected) {
+                    log.debug("no hedge thread for '" + command + " " + name(key) + "', wait for the first read");
+                }
+            }
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisException(e);
+        }
+        return await(primary);
+    }
+
+    /**
+     * 先返回的读结束后调用线程就会release拓扑，另一个读仍在执行，因此每个读各自持有一次拓扑的引用
+     */
+    private <T> CompletableFuture<T> submitRead(RedisTopology topology, RedisNode node, String command, K key, Function<C, T> callback) {
+        topology.retain();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                long start = System.nanoTime();
+                try {
+                    return executeRead(topology, node, command, key, callback);
+                } finally {
+                    hedgePolicy.end(command, System.nanoTime() - start);
+                    topology.release();
+                }
+            }, hedgeExecutor);
+        } catch (RuntimeException e) {
+            topology.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return 任一个成功时以其结果完成，都失败时以后一个失败完成
+     */
+    private static <T> CompletableFuture<T> firstSuccess(CompletableFuture<T> a, CompletableFuture<T> b) {
+        CompletableFuture<T> first = new CompletableFuture<T>();
+        AtomicInteger failures = new AtomicInteger();
+        BiConsumer<T, Throwable> action = (result, e) -> {
+            if (e == null)
+                first.complete(result);
+            else if (failures.incrementAndGet() == 2)
+                first.completeExceptionally(e);
+        };
+        a.whenComplete(action);
+        b.whenComplete(action);
+        return first;
+    }
+
+    private static <T> T await(Future<T> future) throws RedisException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisException(e);
+        }
+    }
+
+    private static RedisException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof RedisException ? (RedisException) cause : new RedisException(cause);
+    }
+
+    <T> T executeOnMaster(String command, K key, Function<C, T> callback) throws RedisException {
+        if (hotKeyDetector != null)
+            hotKeyDetector.record(command, name(key));
+        RedisTopology topology = driver.acquire();
+        try {
+            return executeOnMaster(topology, command, key, callback);
+        } finally {
+            topology.release();
+        }
+    }
+
+    /**
+     * 在key所属的master上执行，sharded模式下由ShardRouter按key选择shard，cluster模式下按slot选择节点
+     */
+    <T> T executeOnMaster(RedisTopology topology, String command, K key, Function<C, T> callback) throws RedisException {
+        if (topology.getClusterRouter() != null) {
+            return executeOnCluster(topology.getClusterRouter(), command, key, callback);
+        }
+        ShardRouter shardRouter = topology.getShardRouter();
+        return executeOnNode(command, key, shardRouter == null ? topology.getMasterNode() : adapter.route(shardRouter, key), callback);
+    }
+
+    /**
+     * 跟随MOVED和ASK重定向：MOVED修正slot表后在新节点重试，ASK只对本次命令在目标节点上先发送ASKING
+     */
+    private <T> T executeOnCluster(ClusterRouter clusterRouter, String command, K key, Function<C, T> callback) throws RedisException {
+        RedisNode node = adapter.route(clusterRouter, key);
+        boolean asking = false;
+        for (int redirects = 0; ; redirects++) {
+            try {
+                return executeOnNode(command, key, node, asking, callback);
+            } catch (RedisException e) {
+                ClusterRedirect redirect = ClusterRedirect.of(e);
+                if (redirect == null || redirects >= clusterRouter.getMaxRedirects()) {
+                    throw e;
+                }
+                asking = redirect.isAsk();
+                if (!asking) {
+                    clusterRouter.moved(redirect.getSlot(), redirect.getTarget());
+                }
+                node = clusterRouter.node(redirect.getTarget());
+            }
+        }
+    }
+
+    <T> T executeOnNode(String command, K key, RedisNode node, Function<C, T> callback) throws RedisException {
+        return executeOnNode(command, key, node, false, callback);
+    }
+
+    /**
+     * 节点熔断时不借连接也不发出命令，直接抛出RedisCircuitOpenException。
+     * 连接失败和超时计入熔断器，命令本身的错误（包括cluster重定向）说明节点正常，按成功计入
+     *
+     * @param asking 先发送ASKING，用于跟随ASK重定向
+     */
+    private <T> T executeOnNode(String command, K key, RedisNode node, boolean asking, Function<C, T> callback) throws RedisException {
+        CircuitBreaker circuitBreaker = node.getCircuitBreaker();
+        if (circuitBreaker == null) {
+            return executeOnConnection(command, key, node, asking, callback);
+        }
+        CircuitBreaker.Permit permit = circuitBreaker.tryAcquire();
+        if (permit == CircuitBreaker.Permit.REJECTED) {
+            throw new RedisCircuitOpenException("execute '" + command + (key == null ? "" : " " + name(key)) + "' fail! circuit of " + node.getAddress() + " is open");
+        }
+        boolean failure = false;
+        long start = System.nanoTime();
+        try {
+            return executeOnConnection(command, key, node, asking, callback);
+        } catch (RedisException e) {
+            failure = !isDataError(e);
+            throw e;
+        } finally {
+            if (failure)
+                circuitBreaker.onFailure(permit, System.nanoTime() - start);
+            else
+                circuitBreaker.onSuccess(permit, System.nanoTime() - start);
+        }
+    }
+
+    private <T> T executeOnConnection(String command, K key, RedisNode node, boolean asking, Function<C, T> callback) throws RedisException {
+        if (asking || node.getNioEngine() == null) {
+            return executeOnPool(command, key, node.getJedisPool(), asking, callback);
+        }
+        if (commandTimeoutMillis > 0) {
+            return executeOnNio(command, key, adapter.nioClient(node.getNioEngine(), commandTimeoutMillis), callback);
+        }
+        C nioClient = nioClients.get(node);
+        if (nioClient == null) {
+            nioClient = adapter.nioClient(node.getNioEngine(), driver.getTimeout());
+            C existing = nioClients.putIfAbsent(node, nioClient);
+            nioClient = existing == null ? nioClient : existing;
+        }
+        return executeOnNio(command, key, nioClient, callback);
+    }
+
+    /**
+     * 批量命令：单个master时整批在一个节点上执行一次，只读的批量命令可以读副本；
+     * sharded模式下按key所属的shard、cluster模式下按slot把args分组，每组在所属节点上执行一次，各组并行，
+     * 结果按key在args中的顺序合并。写命令的各组分别成功或失败，整体不是原子的
+     *
+     * @param stride 每个key在args中占的个数，如mset的key和value为2
+     * @param batch  对一组args执行，返回与其中key顺序一致的结果；写命令可以只返回一个元素，此时不合并结果
+     */
+    <T> List<T> executeMulti(String command, boolean read, K[] args, int stride,
+                             Function<K[], ? extends Function<C, List<T>>> batch) throws RedisException {
+        int keyCount = args.length / stride;
+        if (keyCount == 0) {
+            return new ArrayList<T>();
+        }
+        if (hotKeyDetector != null) {
+            for (int i = 0; i < keyCount; i++) {
+                hotKeyDetector.record(command, name(args[i * stride]));
+            }
+        }
+        RedisTopology topology = driver.acquire();
+        try {
+            ShardRouter shardRouter = topology.getShardRouter();
+            ClusterRouter clusterRouter = topology.getClusterRouter();
+            if (shardRouter == null && clusterRouter == null) {
+                return read ? executeRead(topology, command, args[0], batch.apply(args))
+                        : executeOnMaster(topology, command, args[0], batch.apply(args));
+            }
+            // 同一节点（cluster模式下同一slot）的key在args中的位置
+            Map<Object, List<Integer>> groups = new LinkedHashMap<Object, List<Integer>>();
+            for (int i = 0; i < keyCount; i++) {
+                K key = args[i * stride];
+                Object owner = shardRouter != null ? adapter.route(shardRouter, key) : adapter.slot(key);
+                groups.computeIfAbsent(owner, o -> new ArrayList<Integer>()).add(i);
+            }
+            List<Callable<List<T>>> tasks = new ArrayList<Callable<List<T>>>(groups.size());
+            for (Map.Entry<Object, List<Integer>> entry : groups.entrySet()) {
+                List<Integer> positions = entry.getValue();
+                K[] group = Arrays.copyOf(args, positions.size() * stride);
+                for (int i = 0; i < positions.size(); i++) {
+                    System.arraycopy(args, positions.get(i) * stride, group, i * stride, stride);
+                }
+                Function<C, List<T>> callback = batch.apply(group);
+                if (shardRouter != null) {
+                    RedisNode node = (RedisNode) entry.getKey();
+                    tasks.add(() -> executeOnNode(command, group[0], node, callback));
+                } else {
+                    tasks.add(() -> executeOnCluster(clusterRouter, command, group[0], callback));
+                }
+            }
+            List<List<T>> groupResults = executeOnShards(tasks);
+            List<T> results = new ArrayList<T>(Collections.<T>nCopies(keyCount, null));
+            int g = 0;
+            for (List<Integer> positions : groups.values()) {
+                List<T> groupResult = groupResults.get(g++);
+                for (int i = 0; i < positions.size() && i < groupResult.size(); i++) {
+                    results.set(positions.get(i), groupResult.get(i));
+                }
+            }
+            return results;
+        } finally {
+            if (!read && topology.getReadRouter() != null)
+                topology.getReadRouter().markWrite();
+            topology.release();
+        }
+    }
+
+    /**
+     * 第一个任务在调用线程中执行，其余的并行提交到workerExecutor，结果与tasks顺序一致
+     */
+    <T> List<T> executeOnShards(List<Callable<T>> tasks) throws RedisException {
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        for (int i = 1; i < tasks.size(); i++) {
+            futures.add(workerExecutor.submit(tasks.get(i)));
+        }
+        List<T> results = new ArrayList<T>(tasks.size());
+        try {
+            results.add(tasks.get(0).call());
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RedisException ? (RedisException) e.getCause() : new RedisException(e.getCause());
+        } catch (RedisException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RedisException(e);
+        } catch (Exception e) {
+            throw new RedisException(e);
+        }
+        return results;
+    }
+
+    private <T> T executeOnNio(String command, K key, C client, Function<C, T> callback) throws RedisException {
+        RedisMetrics.Meter meter = metrics == null ? null : metrics.meter(command);
+        boolean payload = meter != null && meter.isPayload();
+        boolean success = false;
+        if (payload)
+            meter.attach();
+        try {
+            T result = callback.apply(client);
+            success = true;
+            return result;
+        } catch (Exception e) {
+            throw new RedisException("execute '" + command + (key == null ? "" : " " + name(key)) + "' fail!", e);
+        } finally {
+            if (payload)
+                meter.detach();
+            if (meter != null)
+                meter.done(success);
+        }
+    }
+
+    /**
+     * @param asking 先发送ASKING，用于跟随ASK重定向
+     */
+    <T> T executeOnPool(String command, K key, TunableJedisPool jedisPool, boolean asking, Function<C, T> callback) throws RedisException {
+        Jedis jedis = null;
+        boolean borrowOrOprSuccess = true;
+        RedisMetrics.Meter meter = metrics == null ? null : metrics.meter(command);
+        CountingJedis counting = null;
+        long bytesIn = 0;
+        long bytesOut = 0;
+        try {
+            jedis = borrowTimeoutMillis < 0 ? jedisPool.getResource() : jedisPool.getResource(borrowTimeoutMillis);
+            if (meter != null)
+                meter.borrowed();
+            if (meter != null && meter.isPayload() && jedis instanceof CountingJedis) {
+                counting = (CountingJedis) jedis;
+                bytesIn = counting.getBytesIn();
+                bytesOut = counting.getBytesOut();
+            }
+            if (commandTimeoutMillis > 0)
+                setSoTimeout(jedis, commandTimeoutMillis);
+            if (asking)
+                jedis.asking();
+            T result = callback.apply(adapter.jedisClient(jedis));
+            if (commandTimeoutMillis > 0)
+                setSoTimeout(jedis, driver.getTimeout());
+            return result;
+        } catch (Exception e) {
+            borrowOrOprSuccess = false;
+            if (jedis != null)
+                jedisPool.returnBrokenResource(jedis);
+            throw new RedisException("execute '" + command + (key == null ? "" : " " + name(key)) + "' fail!", e);
+        } finally {
+            if (counting != null)
+                meter.payload(counting.getBytesIn() - bytesIn, counting.getBytesOut() - bytesOut);
+            if (meter != null)
+                meter.done(borrowOrOprSuccess);
+            if (borrowOrOprSuccess)
+                jedisPool.returnResource(jedis);
+        }
+    }
+
+    private static void setSoTimeout(Jedis jedis, int timeoutMillis) {
+        jedis.getClient().setSoTimeout(timeoutMillis);
+        jedis.getClient().rollbackTimeout();
+    }
+
+    private static boolean isDataError(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof JedisDataException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String name(K key) {
+        return key == null ? null : adapter.name(key);
+    }
+
+    RedisDriver getDriver() {
+        return driver;
+    }
+
+    ExecutorService getWorkerExecutor() {
+        return workerExecutor;
+    }
+
+    RedisMetrics getMetrics() {
+        return metrics;
+    }
+
+    long getCollapsedReads() {
+        return collapsedReads.sum();
+    }
+
+    //------------------------- setter ----------------------
+
+    void setDriver(RedisDriver driver) {
+        this.driver = driver;
+    }
+
+    void setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    void setMetricsName(String metricsName) {
+        this.metricsName = metricsName;
+    }
+
+    void setPayloadMetrics(boolean payloadMetrics) {
+        this.payloadMetrics = payloadMetrics;
+    }
+
+    void setHedgePolicy(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+        if (hedgeExecutor != null && hedgePolicy != null) {
+            hedgeExecutor.setMaximumPoolSize(hedgePolicy.getMaxThreads());
+        }
+    }
+
+    void setCollapseReads(boolean collapseReads) {
+        this.collapseReads = collapseReads;
+    }
+
+    void setHotKeyDetector(HotKeyDetector hotKeyDetector) {
+        this.hotKeyDetector = hotKeyDetector;
+    }
+
+    void setBorrowTimeoutMillis(long borrowTimeoutMillis) {
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+    }
+
+    void setCommandTimeoutMillis(int commandTimeoutMillis) {
+        this.commandTimeoutMillis = commandTimeoutMillis;
+    }
+}
@@ -0,0 +1,20 @@
+package com.linkedkeeper.redis.client.sample;
+
+import com.linkedkeeper.redis.client.RedisClient;
+
+import java.util.function.Function;
+
+/**
+ * 在一个具体的连接（Jedis连接或NIO引擎）上执行命令，CommandExecutor经由Function.apply调用
+ *
+ * @Author: zhangsr
+ */
+@FunctionalInterface
+interface RedisCallback<T> extends Function<RedisClient, T> {
+
+    T doInRedis(RedisClient client);
+
+    default T apply(RedisClient client) {
+        return doInRedis(client);
+    }
+}
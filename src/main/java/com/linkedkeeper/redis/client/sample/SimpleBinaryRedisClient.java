@@ -0,0 +1,353 @@
+package com.linkedkeeper.redis.client.sample;
+
+import com.linkedkeeper.redis.client.BinaryRedisClient;
+import com.linkedkeeper.redis.client.ValueReader;
+import com.linkedkeeper.redis.client.driver.ClusterRouter;
+import com.linkedkeeper.redis.client.driver.HedgePolicy;
+import com.linkedkeeper.redis.client.driver.JedisBinaryRedisClient;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.driver.RedisNode;
+import com.linkedkeeper.redis.client.driver.RedisTopology;
+import com.linkedkeeper.redis.client.driver.ShardRouter;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import com.linkedkeeper.redis.client.metrics.HotKeyDetector;
+import com.linkedkeeper.redis.client.metrics.RedisMetrics;
+import com.linkedkeeper.redis.client.nio.NioBinaryRedisClient;
+import com.linkedkeeper.redis.client.nio.NioRedisEngine;
+import org.apache.log4j.Logger;
+import redis.clients.jedis.Jedis;
+import redis.clients.util.SafeEncoder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * BinaryRedisClient的默认实现，与SimpleRedisClient共用driver的连接池和nio引擎，经由同样的CommandExecutor执行：
+ * 写命令在key所属的master上执行，只读命令在配置了副本时读副本，节点熔断、指标、热点key和withTimeouts也与SimpleRedisClient相同。
+ * byte[]的key无法可靠地比较，不合并读；keys和del(byte[]...)按节点拆分后并行执行
+ *
+ * @Author: zhangsr
+ */
+public class SimpleBinaryRedisClient implements BinaryRedisClient {
+
+    private final static Logger log = Logger.getLogger(SimpleBinaryRedisClient.class);
+
+    private RedisDriver driver;
+    private CommandExecutor<BinaryRedisClient, byte[]> executor = new CommandExecutor<BinaryRedisClient, byte[]>(new Adapter(), "redis-binary-worker-");
+    private SimpleBinaryRedisClient parent = null;
+
+    public SimpleBinaryRedisClient() {
+        executor.setMetricsName("binary");
+    }
+
+    /**
+     * 连接和路由每次执行时从driver当前的RedisTopology获取，driver重新配置后自动使用新的连接
+     */
+    public void init() {
+        try {
+            executor.init();
+        } catch (Exception e) {
+            log.error("SimpleBinaryRedisClient init failure.", e);
+        }
+    }
+
+    public void destroy() {
+        if (parent != null) {
+            return;
+        }
+        executor.destroy();
+    }
+
+    /**
+     * 返回与本客户端共用driver、线程和指标的客户端，只有借连接和等待回复的超时不同，不需要destroy
+     *
+     * @param borrowTimeoutMillis  从连接池借连接最多等待的时间，小于0时使用连接池的maxWaitMillis
+     * @param commandTimeoutMillis 等待回复的超时时间，为0时使用driver的timeout
+     * @return
+     */
+    public SimpleBinaryRedisClient withTimeouts(long borrowTimeoutMillis, int commandTimeoutMillis) {
+        SimpleBinaryRedisClient client = new SimpleBinaryRedisClient();
+        client.parent = parent == null ? this : parent;
+        client.driver = driver;
+        client.executor = executor.withTimeouts(borrowTimeoutMillis, commandTimeoutMillis);
+        return client;
+    }
+
+    public Set<byte[]> keys(byte[] pattern) throws RedisException {
+        RedisTopology topology = driver.acquire();
+        try {
+            ShardRouter shardRouter = topology.getShardRouter();
+            ClusterRouter clusterRouter = topology.getClusterRouter();
+            if (shardRouter == null && clusterRouter == null) {
+                return executor.executeRead(topology, "keys", pattern, client -> client.keys(pattern));
+            }
+            List<Callable<Set<byte[]>>> tasks = new ArrayList<Callable<Set<byte[]>>>();
+            for (RedisNode node : shardRouter != null ? shardRouter.getNodes() : clusterRouter.getMasters()) {
+                tasks.add(() -> executor.executeOnNode("keys", pattern, node, client -> client.keys(pattern)));
+            }
+            Set<byte[]> keys = new HashSet<byte[]>();
+            for (Set<byte[]> shardKeys : executor.executeOnShards(tasks)) {
+                keys.addAll(shardKeys);
+            }
+            return keys;
+        } finally {
+            topology.release();
+        }
+    }
+
+    public String setex(byte[] key, int expire, byte[] value) throws RedisException {
+        return execute("setex", key, client -> client.setex(key, expire, value));
+    }
+
+    public String set(byte[] key, byte[] value) throws RedisException {
+        return execute("set", key, client -> client.set(key, value));
+    }
+
+    public Long decrBy(byte[] key, long integer) throws RedisException {
+        return execute("decrBy", key, client -> client.decrBy(key, integer));
+    }
+
+    public Long incr(byte[] key) throws RedisException {
+        return execute("incr", key, client -> client.incr(key));
+    }
+
+    public byte[] get(byte[] key) throws RedisException {
+        return executeRead("get", key, client -> client.get(key));
+    }
+
+    public <T> T get(byte[] key, ValueReader<T> reader) throws RedisException {
+        return executeRead("get", key, client -> client.get(key, reader));
+    }
+
+    public Long sadd(byte[] key, byte[]... members) throws RedisException {
+        return execute("sadd", key, client -> client.sadd(key, members));
+    }
+
+    public Long srem(byte[] key, byte[]... members) throws RedisException {
+        return execute("srem", key, client -> client.srem(key, members));
+    }
+
+    public Set<byte[]> smembers(byte[] key) throws RedisException {
+        return executeRead("smembers", key, client -> client.smembers(key));
+    }
+
+    public Long expire(byte[] key, int expiredTime) throws RedisException {
+        return execute("expire", key, client -> client.expire(key, expiredTime));
+    }
+
+    public Boolean exists(byte[] key) throws RedisException {
+        return executeRead("exists", key, client -> client.exists(key));
+    }
+
+    public Long del(byte[] key) throws RedisException {
+        return execute("del", key, client -> client.del(key));
+    }
+
+    public Long del(byte[]... key) throws RedisException {
+        RedisTopology topology = driver.acquire();
+        try {
+            ShardRouter shardRouter = topology.getShardRouter();
+            ClusterRouter clusterRouter = topology.getClusterRouter();
+            if (shardRouter == null && clusterRouter == null) {
+                return executor.executeOnMaster(topology, "del", null, client -> client.del(key));
+            }
+            Collection<List<byte[]>> groups = shardRouter != null ? shardRouter.group(key).values() : clusterRouter.groupBySlot(key).values();
+            List<Callable<Long>> tasks = new ArrayList<Callable<Long>>(groups.size());
+            for (List<byte[]> group : groups) {
+                byte[][] keys = group.toArray(new byte[group.size()][]);
+                tasks.add(() -> executor.executeOnMaster(topology, "del", keys[0], client -> client.del(keys)));
+            }
+            long deleted = 0;
+            for (Long groupDeleted : executor.executeOnShards(tasks)) {
+                deleted += groupDeleted;
+            }
+            return deleted;
+        } finally {
+            topology.release();
+        }
+    }
+
+    public Long hset(byte[] key, byte[] field, byte[] value) throws RedisException {
+        return execute("hset", key, client -> client.hset(key, field, value));
+    }
+
+    public Long hsetnx(byte[] key, byte[] field, byte[] value) throws RedisException {
+        return execute("hsetnx", key, client -> client.hsetnx(key, field, value));
+    }
+
+    public Long hdel(byte[] key, byte[]... fields) throws RedisException {
+        return execute("hdel", key, client -> client.hdel(key, fields));
+    }
+
+    public byte[] hget(byte[] key, byte[] field) throws RedisException {
+        return executeRead("hget", key, client -> client.hget(key, field));
+    }
+
+    public <T> T hget(byte[] key, byte[] field, ValueReader<T> reader) throws RedisException {
+        return executeRead("hget", key, client -> client.hget(key, field, reader));
+    }
+
+    public String hmset(byte[] key, Map<byte[], byte[]> hash) throws RedisException {
+        return execute("hmset", key, client -> client.hmset(key, hash));
+    }
+
+    public List<byte[]> hmget(byte[] key, byte[]... fields) throws RedisException {
+        return executeRead("hmget", key, client -> client.hmget(key, fields));
+    }
+
+    public Map<byte[], byte[]> hgetAll(byte[] key) throws RedisException {
+        return executeRead("hgetAll", key, client -> client.hgetAll(key));
+    }
+
+    public Long lpush(byte[] key, byte[]... values) throws RedisException {
+        return execute("lpush", key, client -> client.lpush(key, values));
+    }
+
+    public Long rpush(byte[] key, byte[]... values) throws RedisException {
+        return execute("rpush", key, client -> client.rpush(key, values));
+    }
+
+    public byte[] lpop(byte[] key) throws RedisException {
+        return execute("lpop", key, client -> client.lpop(key));
+    }
+
+    public byte[] rpop(byte[] key) throws RedisException {
+        return execute("rpop", key, client -> client.rpop(key));
+    }
+
+    public List<byte[]> lrange(byte[] key, long start, long end) throws RedisException {
+        return executeRead("lrange", key, client -> client.lrange(key, start, end));
+    }
+
+    public String ltrim(byte[] key, long start, long end) throws RedisException {
+        return execute("ltrim", key, client -> client.ltrim(key, start, end));
+    }
+
+    public Long llen(byte[] key) throws RedisException {
+        return executeRead("llen", key, client -> client.llen(key));
+    }
+
+    public byte[] rpoplpush(byte[] srckey, byte[] dstkey) throws RedisException {
+        RedisTopology topology = driver.acquire();
+        try {
+            ShardRouter shardRouter = topology.getShardRouter();
+            if (shardRouter != null && shardRouter.route(srckey) != shardRouter.route(dstkey))
+                throw new RedisException("execute 'rpoplpush " + SafeEncoder.encode(srckey) + "' fail! dstkey is in another shard, use a {hash tag}");
+            if (topology.getClusterRouter() != null && ClusterRouter.slot(srckey) != ClusterRouter.slot(dstkey))
+                throw new RedisException("execute 'rpoplpush " + SafeEncoder.encode(srckey) + "' fail! dstkey is in another slot, use a {hash tag}");
+            return executor.executeOnMaster(topology, "rpoplpush", srckey, client -> client.rpoplpush(srckey, dstkey));
+        } finally {
+            topology.release();
+        }
+    }
+
+    public Long hincrby(byte[] key, byte[] field, int increment) throws RedisException {
+        return execute("hincrby", key, client -> client.hincrby(key, field, increment));
+    }
+
+    private <T> T execute(String command, byte[] key, BinaryRedisCallback<T> callback) throws RedisException {
+        return executor.execute(command, key, callback);
+    }
+
+    private <T> T executeRead(String command, byte[] key, BinaryRedisCallback<T> callback) throws RedisException {
+        return executor.executeCollapsed(command, key, callback);
+    }
+
+    /**
+     * @return 按命令名统计的指标，关闭指标时为null
+     */
+    public RedisMetrics getMetrics() {
+        return executor.getMetrics();
+    }
+
+    /**
+     * 连接上执行命令的客户端为BinaryRedisClient，按key的原始字节路由
+     */
+    private static class Adapter implements CommandExecutor.Adapter<BinaryRedisClient, byte[]> {
+
+        public BinaryRedisClient jedisClient(Jedis jedis) {
+            return new JedisBinaryRedisClient(jedis);
+        }
+
+        public BinaryRedisClient nioClient(NioRedisEngine engine, long timeoutMillis) {
+            return new NioBinaryRedisClient(engine, timeoutMillis);
+        }
+
+        public String name(byte[] key) {
+            return SafeEncoder.encode(key);
+        }
+
+        public RedisNode route(ShardRouter shardRouter, byte[] key) {
+            return shardRouter.route(key);
+        }
+
+        public RedisNode route(ClusterRouter clusterRouter, byte[] key) {
+            return clusterRouter.route(key);
+        }
+
+        public int slot(byte[] key) {
+            return ClusterRouter.slot(key);
+        }
+    }
+
+    //------------------------- setter ----------------------
+
+    public void setDriver(RedisDriver driver) {
+        this.driver = driver;
+        executor.setDriver(driver);
+    }
+
+    /**
+     * @param metricsEnabled 是否统计每个命令的调用次数和延迟，默认为true
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        executor.setMetricsEnabled(metricsEnabled);
+    }
+
+    /**
+     * @param metricsName JMX中区分同一JVM里多个客户端的名字，默认为binary，已被使用时加上后缀，见RedisMetrics.getName
+     */
+    public void setMetricsName(String metricsName) {
+        executor.setMetricsName(metricsName);
+    }
+
+    /**
+     * @param payloadMetrics 是否统计每个命令收发的RESP编码字节数，默认为false
+     */
+    public void setPayloadMetrics(boolean payloadMetrics) {
+        executor.setPayloadMetrics(payloadMetrics);
+    }
+
+    /**
+     * @param hedgePolicy 只读命令的对冲策略，默认为null，不对冲
+     */
+    public void setHedgePolicy(HedgePolicy hedgePolicy) {
+        executor.setHedgePolicy(hedgePolicy);
+    }
+
+    /**
+     * @param hotKeyDetector 抽样统计热点key，默认为null，不统计；记录的key按UTF-8解码，由调用方init和destroy
+     */
+    public void setHotKeyDetector(HotKeyDetector hotKeyDetector) {
+        executor.setHotKeyDetector(hotKeyDetector);
+    }
+
+    /**
+     * @param borrowTimeoutMillis 从连接池借连接最多等待的时间，默认为-1，使用连接池的maxWaitMillis
+     */
+    public void setBorrowTimeoutMillis(long borrowTimeoutMillis) {
+        executor.setBorrowTimeoutMillis(borrowTimeoutMillis);
+    }
+
+    /**
+     * @param commandTimeoutMillis 等待回复的超时时间，默认为0，使用driver的timeout
+     */
+    public void setCommandTimeoutMillis(int commandTimeoutMillis) {
+        executor.setCommandTimeoutMillis(commandTimeoutMillis);
+    }
+}
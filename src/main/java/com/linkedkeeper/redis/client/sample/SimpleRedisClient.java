@@ -1,18 +1,52 @@
 package com.linkedkeeper.redis.client.sample;
 
 import com.linkedkeeper.redis.client.RedisClient;
+import com.linkedkeeper.redis.client.driver.ClusterRouter;
+import com.linkedkeeper.redis.client.driver.HedgePolicy;
+import com.linkedkeeper.redis.client.driver.JedisRedisClient;
 import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.driver.RedisNode;
+import com.linkedkeeper.redis.client.driver.RedisTopology;
+import com.linkedkeeper.redis.client.driver.ShardRouter;
 import com.linkedkeeper.redis.client.exception.RedisException;
+import com.linkedkeeper.redis.client.metrics.HotKeyDetector;
+import com.linkedkeeper.redis.client.metrics.RedisMetrics;
+import com.linkedkeeper.redis.client.nio.NioRedisClient;
+import com.linkedkeeper.redis.client.nio.NioRedisEngine;
+import com.linkedkeeper.redis.client.pipeline.PipelineBlock;
+import com.linkedkeeper.redis.client.pipeline.RedisPipeline;
+import com.linkedkeeper.redis.client.scan.ScanCallback;
+import com.linkedkeeper.redis.client.scan.ScanIterator;
 import org.apache.log4j.Logger;
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
 import redis.clients.jedis.TransactionBlock;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
+ * 所有命令经由CommandExecutor执行（与SimpleBinaryRedisClient共用）：driver配置了nio引擎时在共享的NIO连接上执行，否则从连接池借用Jedis连接。
+ * multi和pipelined需要独占连接，总是使用master的连接池。
+ * driver配置了副本时，只读命令经由executeRead按ReadRouter分配到副本；sharded和cluster模式下按key路由到所属的master，
+ * del(String...)、keys和mget等批量命令按shard（cluster模式下按slot）拆分后并行执行
+ * 每次执行按命令名记录调用次数、执行时间和借连接的等待时间，开启payloadMetrics时还记录数据量，见getMetrics。
+ * 每条命令执行期间持有driver当前的RedisTopology，handleDataChange切换配置时旧的连接等这些命令结束后关闭。
+ * 节点熔断时命令直接抛出RedisCircuitOpenException，借连接和等待回复的超时可以通过withTimeouts按调用指定。
+ * 设置了HedgePolicy时只读命令超过最近延迟的分位仍未返回时对冲到另一个副本或另一个连接，等待和对冲的读在最多maxThreads个线程中执行。
+ * 开启collapseReads后，并发的相同读命令（命令名、key和参数都相同）只执行一次，其余调用等待并共享结果。
+ * 设置了HotKeyDetector时按命令名和key抽样记录访问，找出热点key
+ *
  * @Author: zhangsr
  */
 public class SimpleRedisClient implements RedisClient {
@@ -20,34 +54,106 @@ public class SimpleRedisClient implements RedisClient {
     private final static Logger log = Logger.getLogger(SimpleRedisClient.class);
 
     private RedisDriver driver;
+    private CommandExecutor<RedisClient, String> executor = new CommandExecutor<RedisClient, String>(new Adapter(), "redis-worker-");
 
-    private JedisPool masterJedisPool = null;
+    private int pipelineBatchSize = RedisPipeline.DEFAULT_BATCH_SIZE;
+    private boolean parallelScan = true;
+    private SimpleRedisClient parent = null;
 
     public void init() {
         try {
-            masterJedisPool = driver.getMasterJedisPool();
+            executor.init();
         } catch (Exception e) {
             log.error("SimpleRedisClient init failure.", e);
         }
     }
 
+    public void destroy() {
+        if (parent != null) {
+            return;
+        }
+        executor.destroy();
+    }
+
+    /**
+     * 返回与本客户端共用driver、线程和指标的客户端，只有借连接和等待回复的超时不同，
+     * 用于个别调用需要更短期限的场景。返回的客户端不需要destroy
+     *
+     * @param borrowTimeoutMillis  从连接池借连接最多等待的时间，小于0时使用连接池的maxWaitMillis
+     * @param commandTimeoutMillis 等待回复的超时时间，为0时使用driver的timeout
+     * @return
+     */
+    public SimpleRedisClient withTimeouts(long borrowTimeoutMillis, int commandTimeoutMillis) {
+        SimpleRedisClient client = new SimpleRedisClient();
+        client.parent = parent == null ? this : parent;
+        client.driver = driver;
+        client.executor = executor.withTimeouts(borrowTimeoutMillis, commandTimeoutMillis);
+        client.pipelineBatchSize = pipelineBatchSize;
+        client.parallelScan = parallelScan;
+        return client;
+    }
+
     public Set<String> keys(String pattern) throws RedisException {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
+        RedisTopology topology = driver.acquire();
         try {
-            jedis = masterJedisPool.getResource();
-            return jedis.keys(pattern);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'keys " + pattern + "' fail!", e);
+            ShardRouter shardRouter = topology.getShardRouter();
+            ClusterRouter clusterRouter = topology.getClusterRouter();
+            if (shardRouter == null && clusterRouter == null) {
+                return executor.executeRead("keys", pattern, client -> client.keys(pattern));
+            }
+            List<Callable<Set<String>>> tasks = new ArrayList<Callable<Set<String>>>();
+            for (RedisNode node : shardRouter != null ? shardRouter.getNodes() : clusterRouter.getMasters()) {
+                tasks.add(() -> executor.executeOnNode("keys", pattern, node, client -> client.keys(pattern)));
+            }
+            Set<String> keys = new HashSet<String>();
+            for (Set<String> shardKeys : executor.executeOnShards(tasks)) {
+                keys.addAll(shardKeys);
+            }
+            return keys;
         } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
+            topology.release();
         }
     }
 
+    /**
+     * SCAN的cursor只在生成它的节点上有效，因此总是在master上执行，不经过副本
+     */
+    public ScanResult<String> scan(String cursor, ScanParams params) throws RedisException {
+        RedisTopology topology = driver.acquire();
+        try {
+            return executor.executeOnNode("scan", cursor, topology.getMasterNode(), client -> client.scan(cursor, params));
+        } finally {
+            topology.release();
+        }
+    }
+
+    /**
+     * 每个master一个游标，下一页在workerExecutor中预取；sharded和cluster模式下parallelScan时各节点的游标同时推进。
+     * 游标只在创建时的节点上有效，handleDataChange切换配置后未完成的遍历会失败
+     */
+    public ScanIterator<String> scan(String pattern, int count) throws RedisException {
+        ScanParams params = new ScanParams().match(pattern).count(count);
+        RedisTopology topology = driver.getTopology();
+        Collection<RedisNode> nodes;
+        if (topology.getShardRouter() != null) {
+            nodes = topology.getShardRouter().getNodes();
+        } else if (topology.getClusterRouter() != null) {
+            nodes = topology.getClusterRouter().getMasters();
+        } else {
+            nodes = Collections.singletonList(topology.getMasterNode());
+        }
+        List<Function<String, CompletableFuture<ScanResult<String>>>> pages = new ArrayList<Function<String, CompletableFuture<ScanResult<String>>>>();
+        for (RedisNode node : nodes) {
+            pages.add(cursor -> CompletableFuture.supplyAsync(
+                    () -> executor.executeOnNode("scan", cursor, node, client -> client.scan(cursor, params)), executor.getWorkerExecutor()));
+        }
+        return new ScanIterator<String>(pages, parallelScan, true);
+    }
+
+    public void scan(String pattern, int count, ScanCallback<String> callback) throws RedisException {
+        scan(pattern, count).forEach(callback);
+    }
+
     /**
      * 设置key对应的值为string类型的value，并指定此键值对应的有效期。
      *
@@ -56,54 +162,19 @@ public class SimpleRedisClient implements RedisClient {
      * @param value
      */
     public String setex(String key, int expire, String value) throws RedisException {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.setex(key, expire, value);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'setex " + key + "' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return execute("setex", key, client -> client.setex(key, expire, value));
     }
 
     public String set(String key, String value) throws RedisException {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.set(key, value);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'set " + key + "' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return execute("set", key, client -> client.set(key, value));
+    }
+
+    public String set(String key, String value, String nxxx, String expx, long time) throws RedisException {
+        return execute("set", key, client -> client.set(key, value, nxxx, expx, time));
     }
 
     public Long decrBy(String key, long integer) throws RedisException {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.decrBy(key, integer);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'decrBy " + key + "' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return execute("decrBy", key, client -> client.decrBy(key, integer));
     }
 
     /**
@@ -114,37 +185,15 @@ public class SimpleRedisClient implements RedisClient {
      * @throws RedisException
      */
     public Long incr(String key) throws RedisException {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.incr(key);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'incr " + key + "' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return execute("incr", key, client -> client.incr(key));
+    }
+
+    public Long incrBy(String key, long integer) throws RedisException {
+        return execute("incrBy", key, client -> client.incrBy(key, integer));
     }
 
     public String get(String key) throws RedisException {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.get(key);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'get " + key + "' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess) {
-                masterJedisPool.returnResource(jedis);
-            }
-        }
+        return executeCollapsed("get", key, client -> client.get(key));
     }
 
     /**
@@ -155,39 +204,11 @@ public class SimpleRedisClient implements RedisClient {
      * @return Long  返回成功标识，1为成功，0为失败
      */
     public Long sadd(String key, String... members) throws RedisException {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.sadd(key, members);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null) {
-                masterJedisPool.returnBrokenResource(jedis);
-            }
-            throw new RedisException("execute 'sadd " + key + "' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess) {
-                masterJedisPool.returnResource(jedis);
-            }
-        }
+        return execute("sadd", key, client -> client.sadd(key, members));
     }
 
     public Long srem(String key, String... members) throws RedisException {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.srem(key, members);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'srem " + key + "' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return execute("srem", key, client -> client.srem(key, members));
     }
 
     /**
@@ -197,20 +218,23 @@ public class SimpleRedisClient implements RedisClient {
      * @return Set<String>
      */
     public Set<String> smembers(String key) throws RedisException {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.smembers(key);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'smembers " + key + "' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess) {
-                masterJedisPool.returnResource(jedis);
-            }
-        }
+        return executeCollapsed("smembers", key, client -> client.smembers(key));
+    }
+
+    /**
+     * 与scan一样，cursor只在生成它的节点上有效，总是在key所属的master上执行
+     */
+    public ScanResult<String> sscan(String key, String cursor, ScanParams params) throws RedisException {
+        return executeOnMaster("sscan", key, client -> client.sscan(key, cursor, params));
+    }
+
+    public ScanIterator<String> sscanAll(String key, int count) throws RedisException {
+        ScanParams params = new ScanParams().count(count);
+        return new ScanIterator<String>(cursor -> CompletableFuture.completedFuture(sscan(key, cursor, params)), false);
+    }
+
+    public void sscanAll(String key, int count, ScanCallback<String> callback) throws RedisException {
+        sscanAll(key, count).forEach(callback);
     }
 
     /**
@@ -221,37 +245,15 @@ public class SimpleRedisClient implements RedisClient {
      * @return Long  返回成功标识，1为成功，0为失败
      */
     public Long expire(String key, int expiredTime) throws RedisException {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.expire(key, expiredTime);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'expire " + key + "' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return execute("expire", key, client -> client.expire(key, expiredTime));
     }
 
     public Boolean exists(String key) throws RedisException {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.exists(key);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'exists " + key + "' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return executeCollapsed("exists", key, client -> client.exists(key));
+    }
+
+    public Long pttl(String key) throws RedisException {
+        return executeCollapsed("pttl", key, client -> client.pttl(key));
     }
 
     /**
@@ -261,36 +263,37 @@ public class SimpleRedisClient implements RedisClient {
      * @return Long  返回成功标识
      */
     public Long del(String key) throws RedisException {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.del(key);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'del " + key + "' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return execute("del", key, client -> client.del(key));
     }
 
     public Long del(String... key) throws RedisException {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
+        RedisTopology topology = driver.acquire();
         try {
-            jedis = masterJedisPool.getResource();
-            return jedis.del(key);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'del " + key + "' fail!", e);
+            ShardRouter shardRouter = topology.getShardRouter();
+            ClusterRouter clusterRouter = topology.getClusterRouter();
+            if (shardRouter == null && clusterRouter == null) {
+                return execute("del", null, client -> client.del(key));
+            }
+            List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+            if (shardRouter != null) {
+                for (Map.Entry<RedisNode, List<String>> entry : shardRouter.group(key).entrySet()) {
+                    String[] keys = entry.getValue().toArray(new String[entry.getValue().size()]);
+                    tasks.add(() -> executor.executeOnNode("del", keys[0], entry.getKey(), client -> client.del(keys)));
+                }
+            } else {
+                // 同一slot的key可以在一条命令中删除
+                for (List<String> group : clusterRouter.groupBySlot(key).values()) {
+                    String[] keys = group.toArray(new String[group.size()]);
+                    tasks.add(() -> executor.executeOnMaster(topology, "del", keys[0], client -> client.del(keys)));
+                }
+            }
+            long deleted = 0;
+            for (Long n : executor.executeOnShards(tasks)) {
+                deleted += n;
+            }
+            return deleted;
         } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
+            topology.release();
         }
     }
 
@@ -304,20 +307,7 @@ public class SimpleRedisClient implements RedisClient {
      * @throws RedisException
      */
     public Long hset(String key, String field, String value) throws RedisException {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.hset(key, field, value);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'hset " + key + "' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return execute("hset", key, client -> client.hset(key, field, value));
     }
 
     /**
@@ -330,37 +320,11 @@ public class SimpleRedisClient implements RedisClient {
      * @throws RedisException
      */
     public Long hsetnx(String key, String field, String value) throws RedisException {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.hsetnx(key, field, value);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'hset " + key + "' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return execute("hsetnx", key, client -> client.hsetnx(key, field, value));
     }
 
     public Long hdel(String key, String... fields) throws RedisException {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.hdel(key, fields);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'hdel " + key + "' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return execute("hdel", key, client -> client.hdel(key, fields));
     }
 
     /**
@@ -372,20 +336,7 @@ public class SimpleRedisClient implements RedisClient {
      * @throws RedisException
      */
     public String hget(String key, String field) throws RedisException {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.hget(key, field);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'hget " + key + "' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess) {
-                masterJedisPool.returnResource(jedis);
-            }
-        }
+        return executeCollapsed("hget", key, client -> client.hget(key, field), field);
     }
 
     /**
@@ -397,20 +348,7 @@ public class SimpleRedisClient implements RedisClient {
      * @throws RedisException
      */
     public String hmset(String key, Map<String, String> hash) throws RedisException {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.hmset(key, hash);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'hmset " + key + "' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return execute("hmset", key, client -> client.hmset(key, hash));
     }
 
     /**
@@ -423,219 +361,284 @@ public class SimpleRedisClient implements RedisClient {
      * @throws RedisException
      */
     public List<String> hmget(String key, String... fields) throws RedisException {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.hmget(key, fields);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'hmget " + key + "' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return executeCollapsed("hmget", key, client -> client.hmget(key, fields), fields);
     }
 
     public Map<String, String> hgetAll(String key) throws RedisException {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.hgetAll(key);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'hgetAll " + key + "' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return executeCollapsed("hgetAll", key, client -> client.hgetAll(key));
+    }
+
+    /**
+     * 与scan一样，cursor只在生成它的节点上有效，总是在key所属的master上执行
+     */
+    public ScanResult<Map.Entry<String, String>> hscan(String key, String cursor, ScanParams params) throws RedisException {
+        return executeOnMaster("hscan", key, client -> client.hscan(key, cursor, params));
+    }
+
+    public ScanIterator<Map.Entry<String, String>> hscanAll(String key, int count) throws RedisException {
+        ScanParams params = new ScanParams().count(count);
+        return new ScanIterator<Map.Entry<String, String>>(cursor -> CompletableFuture.completedFuture(hscan(key, cursor, params)), false);
+    }
+
+    public void hscanAll(String key, int count, ScanCallback<Map.Entry<String, String>> callback) throws RedisException {
+        hscanAll(key, count).forEach(callback);
+    }
+
+    public List<String> mget(String... keys) throws RedisException {
+        return executeMulti("mget", true, keys, 1, group -> client -> client.mget(group));
+    }
+
+    public String mset(String... keysvalues) throws RedisException {
+        executeMulti("mset", false, keysvalues, 2, group -> client -> Collections.singletonList(client.mset(group)));
+        return "OK";
+    }
+
+    public String msetex(int expire, String... keysvalues) throws RedisException {
+        executeMulti("msetex", false, keysvalues, 2, group -> client -> Collections.singletonList(client.msetex(expire, group)));
+        return "OK";
+    }
+
+    public List<Map<String, String>> hgetAllMulti(String... keys) throws RedisException {
+        return executeMulti("hgetAllMulti", true, keys, 1, group -> client -> client.hgetAllMulti(group));
+    }
+
+    public List<List<String>> hmgetMulti(List<String> keys, String... fields) throws RedisException {
+        return executeMulti("hmgetMulti", true, keys.toArray(new String[keys.size()]), 1,
+                group -> client -> client.hmgetMulti(Arrays.asList(group), fields));
+    }
+
+    public List<Set<String>> smembersMulti(String... keys) throws RedisException {
+        return executeMulti("smembersMulti", true, keys, 1, group -> client -> client.smembersMulti(group));
     }
 
     public List<Object> multi(TransactionBlock transactionBlock) {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
+        RedisTopology topology = driver.acquire();
         try {
-            jedis = masterJedisPool.getResource();
-            return jedis.multi(transactionBlock);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'multi' fail!", e);
+            if (topology.getMasterJedisPool() == null)
+                throw new RedisException("execute 'multi' fail! not supported with multiple masters");
+            return executor.executeOnPool("multi", null, topology.getMasterNode().getJedisPool(), false, client -> client.multi(transactionBlock));
         } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
+            topology.release();
         }
     }
 
-    public Long lpush(String key, String... strings) {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
+    public void pipelined(PipelineBlock pipelineBlock) throws RedisException {
+        pipelined(pipelineBatchSize, pipelineBlock);
+    }
+
+    public void pipelined(int batchSize, PipelineBlock pipelineBlock) throws RedisException {
+        RedisTopology topology = driver.acquire();
         try {
-            jedis = masterJedisPool.getResource();
-            return jedis.lpush(key, strings);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'lpush' fail!", e);
+            if (topology.getMasterJedisPool() == null)
+                throw new RedisException("execute 'pipelined' fail! not supported with multiple masters");
+            executor.executeOnPool("pipelined", null, topology.getMasterNode().getJedisPool(), false, client -> {
+                client.pipelined(batchSize, pipelineBlock);
+                return null;
+            });
         } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
+            topology.release();
         }
     }
 
+    public Long lpush(String key, String... strings) {
+        return execute("lpush", key, client -> client.lpush(key, strings));
+    }
+
     public Long rpush(String key, String... strings) {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.rpush(key, strings);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'lpush' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return execute("rpush", key, client -> client.rpush(key, strings));
     }
 
     public String lpop(String key) {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.lpop(key);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'lpop' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return execute("lpop", key, client -> client.lpop(key));
     }
 
     public String rpop(String key) {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.rpop(key);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'rpop' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return execute("rpop", key, client -> client.rpop(key));
     }
 
     public List<String> lrange(String key, long start, long end) {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.lrange(key, start, end);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'multi' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return executeCollapsed("lrange", key, client -> client.lrange(key, start, end), String.valueOf(start), String.valueOf(end));
+    }
+
+    public ScanIterator<String> lrangeChunked(String key, int pageSize) throws RedisException {
+        return new ScanIterator<String>(ScanIterator.ranges(pageSize,
+                (start, end) -> CompletableFuture.completedFuture(lrange(key, start, end))), false);
+    }
+
+    public void lrangeChunked(String key, int pageSize, ScanCallback<String> callback) throws RedisException {
+        lrangeChunked(key, pageSize).forEach(callback);
     }
 
     public String ltrim(String key, long start, long end) {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.ltrim(key, start, end);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'multi' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return execute("ltrim", key, client -> client.ltrim(key, start, end));
     }
 
     @Override
     public Long llen(String key) {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.llen(key);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'llen' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return executeCollapsed("llen", key, client -> client.llen(key));
     }
 
     @Override
     public String rpoplpush(String srckey, String dstkey) {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.rpoplpush(srckey, dstkey);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'rpoplpush' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        RedisTopology topology = driver.getTopology();
+        ShardRouter shardRouter = topology.getShardRouter();
+        if (shardRouter != null && shardRouter.route(srckey) != shardRouter.route(dstkey))
+            throw new RedisException("execute 'rpoplpush " + srckey + "' fail! " + dstkey + " is in another shard, use a {hash tag}");
+        if (topology.getClusterRouter() != null && ClusterRouter.slot(srckey) != ClusterRouter.slot(dstkey))
+            throw new RedisException("execute 'rpoplpush " + srckey + "' fail! " + dstkey + " is in another slot, use a {hash tag}");
+        return execute("rpoplpush", srckey, client -> client.rpoplpush(srckey, dstkey));
     }
 
     @Override
     public Long hincrby(String key, String field, int increment) {
-        Jedis jedis = null;
-        boolean borrowOrOprSuccess = true;
-        try {
-            jedis = masterJedisPool.getResource();
-            return jedis.hincrBy(key, field, increment);
-        } catch (Exception e) {
-            borrowOrOprSuccess = false;
-            if (jedis != null)
-                masterJedisPool.returnBrokenResource(jedis);
-            throw new RedisException("execute 'hincrby' fail!", e);
-        } finally {
-            if (borrowOrOprSuccess)
-                masterJedisPool.returnResource(jedis);
-        }
+        return execute("hincrby", key, client -> client.hincrby(key, field, increment));
     }
 
+    /**
+     * 配置中心的redis地址变化时，driver建立并预热新的连接后切换，旧的连接等执行中的命令结束后关闭
+     *
+     * @param path 配置路径，只用于日志
+     * @param data 新的redisConf
+     */
     @Override
     public void handleDataChange(String path, String data) {
+        log.info("redis conf of " + path + " changed to " + data);
+        driver.reload(data);
+        executor.retainNodes();
+    }
+
+    private <T> T execute(String command, String key, RedisCallback<T> callback) throws RedisException {
+        return executor.execute(command, key, callback);
+    }
+
+    private <T> T executeCollapsed(String command, String key, RedisCallback<T> callback, String... args) throws RedisException {
+        return executor.executeCollapsed(command, key, callback, args);
+    }
+
+    private <T> T executeOnMaster(String command, String key, RedisCallback<T> callback) throws RedisException {
+        return executor.executeOnMaster(command, key, callback);
+    }
+
+    private <T> List<T> executeMulti(String command, boolean read, String[] args, int stride,
+                                     Function<String[], RedisCallback<List<T>>> batch) throws RedisException {
+        return executor.executeMulti(command, read, args, stride, batch);
+    }
+
+    /**
+     * 连接上执行命令的客户端为RedisClient，NIO引擎上的multi和pipelined回到本客户端借用独占连接
+     */
+    private class Adapter implements CommandExecutor.Adapter<RedisClient, String> {
+
+        public RedisClient jedisClient(Jedis jedis) {
+            return new JedisRedisClient(jedis);
+        }
+
+        public RedisClient nioClient(NioRedisEngine engine, long timeoutMillis) {
+            return new NioRedisClient(engine, SimpleRedisClient.this, timeoutMillis);
+        }
+
+        public String name(String key) {
+            return key;
+        }
+
+        public RedisNode route(ShardRouter shardRouter, String key) {
+            return shardRouter.route(key);
+        }
+
+        public RedisNode route(ClusterRouter clusterRouter, String key) {
+            return clusterRouter.route(key);
+        }
+
+        public int slot(String key) {
+            return ClusterRouter.slot(key);
+        }
+    }
+
+    /**
+     * @return 按命令名统计的指标，关闭指标时为null
+     */
+    public RedisMetrics getMetrics() {
+        return executor.getMetrics();
+    }
+
+    /**
+     * @return 因collapseReads而没有单独执行的读次数
+     */
+    public long getCollapsedReads() {
+        return executor.getCollapsedReads();
     }
 
     //------------------------- setter ----------------------
 
     public void setDriver(RedisDriver driver) {
         this.driver = driver;
+        executor.setDriver(driver);
+    }
+
+    public void setPipelineBatchSize(int pipelineBatchSize) {
+        this.pipelineBatchSize = pipelineBatchSize;
+    }
+
+    /**
+     * @param parallelScan 多个master时scan是否同时推进各节点的游标，默认为true
+     */
+    public void setParallelScan(boolean parallelScan) {
+        this.parallelScan = parallelScan;
+    }
+
+    /**
+     * @param metricsEnabled 是否统计每个命令的调用次数和延迟，默认为true
+     */
+    public void setMetricsEnabled(boolean metricsEnabled) {
+        executor.setMetricsEnabled(metricsEnabled);
+    }
+
+    /**
+     * @param metricsName JMX中区分同一JVM里多个客户端的名字，默认为default，已被使用时加上后缀，见RedisMetrics.getName
+     */
+    public void setMetricsName(String metricsName) {
+        executor.setMetricsName(metricsName);
+    }
+
+    /**
+     * @param payloadMetrics 是否统计每个命令收发的RESP编码字节数，默认为false
+     */
+    public void setPayloadMetrics(boolean payloadMetrics) {
+        executor.setPayloadMetrics(payloadMetrics);
+    }
+
+    /**
+     * @param hedgePolicy 只读命令的对冲策略，默认为null，不对冲
+     */
+    public void setHedgePolicy(HedgePolicy hedgePolicy) {
+        executor.setHedgePolicy(hedgePolicy);
+    }
+
+    /**
+     * @param collapseReads 是否合并并发的相同读命令，默认为false
+     */
+    public void setCollapseReads(boolean collapseReads) {
+        executor.setCollapseReads(collapseReads);
+    }
+
+    /**
+     * @param hotKeyDetector 抽样统计热点key，默认为null，不统计；由调用方init和destroy
+     */
+    public void setHotKeyDetector(HotKeyDetector hotKeyDetector) {
+        executor.setHotKeyDetector(hotKeyDetector);
+    }
+
+    /**
+     * @param borrowTimeoutMillis 从连接池借连接最多等待的时间，默认为-1，使用连接池的maxWaitMillis
+     */
+    public void setBorrowTimeoutMillis(long borrowTimeoutMillis) {
+        executor.setBorrowTimeoutMillis(borrowTimeoutMillis);
+    }
+
+    /**
+     * @param commandTimeoutMillis 等待回复的超时时间，默认为0，使用driver的timeout
+     */
+    public void setCommandTimeoutMillis(int commandTimeoutMillis) {
+        executor.setCommandTimeoutMillis(commandTimeoutMillis);
     }
 }
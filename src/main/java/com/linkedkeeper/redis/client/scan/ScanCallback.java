@@ -0,0 +1,17 @@
+package com.linkedkeeper.redis.client.scan;
+
+/**
+ * 逐个处理SCAN遍历到的元素
+ *
+ * @Author: zhangsr
+ */
+@FunctionalInterface
+public interface ScanCallback<T> {
+
+    /**
+     * @param element
+     * @return false时停止遍历
+     * @throws Exception 停止遍历，以RedisException抛给调用方
+     */
+    boolean doInScan(T element) throws Exception;
+}
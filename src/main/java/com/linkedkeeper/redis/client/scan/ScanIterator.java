@@ -0,0 +1,199 @@
+package com.linkedkeeper.redis.client.scan;
+
+import com.linkedkeeper.redis.client.exception.RedisException;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 基于SCAN游标的惰性迭代器，每个游标（节点）在调用方消费当前页时预取下一页，
+ * 内存中最多保留当前页和每个游标的一页预取结果。
+ * 多个游标时可以并行预取，页按到达顺序交给调用方；串行时逐个游标遍历。
+ * 不预取时当前页消费完并释放后才读取下一页，读取的节奏完全由调用方决定。
+ * 与SCAN命令一致，遍历期间被修改的元素可能重复或遗漏
+ *
+ * @Author: zhangsr
+ */
+public class ScanIterator<T> implements Iterator<T>, AutoCloseable {
+
+    private final List<Cursor<T>> cursors = new ArrayList<Cursor<T>>();
+    private final boolean parallel;
+    private final boolean prefetch;
+
+    private Iterator<T> page = Collections.<T>emptyList().iterator();
+
+    /**
+     * @param page     单个游标，按cursor取下一页
+     * @param prefetch 为false时只在当前页消费完后才读取下一页
+     */
+    public ScanIterator(Function<String, CompletableFuture<ScanResult<T>>> page, boolean prefetch) {
+        this(Collections.singletonList(page), false, prefetch);
+    }
+
+    /**
+     * @param pages    每个游标一个，按cursor取下一页，返回的future可以在其他线程或NIO引擎上完成
+     * @param parallel 多个游标时是否同时预取
+     * @param prefetch 为false时只在当前页消费完后才读取下一页
+     */
+    public ScanIterator(List<Function<String, CompletableFuture<ScanResult<T>>>> pages, boolean parallel, boolean prefetch) {
+        for (Function<String, CompletableFuture<ScanResult<T>>> fetch : pages) {
+            cursors.add(new Cursor<T>(fetch));
+        }
+        this.parallel = parallel;
+        this.prefetch = prefetch;
+        if (prefetch) {
+            request();
+        }
+    }
+
+    /**
+     * 把按下标分页的读取（如LRANGE）包装为游标，cursor为下一页的起始下标，返回不足一页时结束
+     *
+     * @param pageSize
+     * @param range    按闭区间[start, end]读取
+     */
+    public static <T> Function<String, CompletableFuture<ScanResult<T>>> ranges(int pageSize, BiFunction<Long, Long, CompletableFuture<List<T>>> range) {
+        return cursor -> {
+            long start = Long.parseLong(cursor);
+            return range.apply(start, start + pageSize - 1).thenApply(elements -> new ScanResult<T>(
+                    elements.size() < pageSize ? ScanParams.SCAN_POINTER_START : String.valueOf(start + elements.size()), elements));
+        };
+    }
+
+    public boolean hasNext() throws RedisException {
+        while (!page.hasNext()) {
+            // 先丢掉已消费的页，不预取时内存中只有一页
+            page = Collections.<T>emptyList().iterator();
+            if (!prefetch) {
+                request();
+            }
+            Cursor<T> cursor = nextCursor();
+            if (cursor == null) {
+                return false;
+            }
+            page = cursor.take().iterator();
+            if (prefetch) {
+                request();
+            }
+        }
+        return true;
+    }
+
+    public T next() throws RedisException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+    /**
+     * 逐个交给callback直到遍历结束或callback返回false，结束后关闭迭代器
+     *
+     * @param callback
+     * @throws RedisException
+     */
+    public void forEach(ScanCallback<? super T> callback) throws RedisException {
+        try {
+            while (hasNext()) {
+                if (!callback.doInScan(next())) {
+                    break;
+                }
+            }
+        } catch (RedisException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RedisException("execute 'scan' fail!", e);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * 放弃未消费的页，已发出的预取请求完成后直接丢弃
+     */
+    public void close() {
+        for (Cursor<T> cursor : cursors) {
+            cursor.finished = true;
+            cursor.pending = null;
+        }
+        page = Collections.<T>emptyList().iterator();
+    }
+
+    private void request() {
+        for (Cursor<T> cursor : cursors) {
+            if (!cursor.finished) {
+                cursor.request();
+                if (!parallel) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 优先取已经到达的页
+     */
+    private Cursor<T> nextCursor() {
+        Cursor<T> first = null;
+        for (Cursor<T> cursor : cursors) {
+            if (!cursor.finished) {
+                if (cursor.pending != null && cursor.pending.isDone()) {
+                    return cursor;
+                }
+                if (first == null) {
+                    first = cursor;
+                }
+            }
+        }
+        return first;
+    }
+
+    private static class Cursor<T> {
+
+        private final Function<String, CompletableFuture<ScanResult<T>>> fetch;
+        private String position = ScanParams.SCAN_POINTER_START;
+        private CompletableFuture<ScanResult<T>> pending = null;
+        private boolean finished = false;
+
+        Cursor(Function<String, CompletableFuture<ScanResult<T>>> fetch) {
+            this.fetch = fetch;
+        }
+
+        void request() {
+            if (pending == null) {
+                try {
+                    pending = fetch.apply(position);
+                } catch (Exception e) {
+                    pending = new CompletableFuture<ScanResult<T>>();
+                    pending.completeExceptionally(e);
+                }
+            }
+        }
+
+        List<T> take() throws RedisException {
+            ScanResult<T> result;
+            try {
+                result = pending.join();
+            } catch (CompletionException e) {
+                finished = true;
+                if (e.getCause() instanceof RedisException) {
+                    throw (RedisException) e.getCause();
+                }
+                throw new RedisException("execute 'scan " + position + "' fail!", e.getCause());
+            }
+            pending = null;
+            position = result.getStringCursor();
+            finished = ScanParams.SCAN_POINTER_START.equals(position);
+            return result.getResult();
+        }
+    }
+}
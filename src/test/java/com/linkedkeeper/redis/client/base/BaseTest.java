@@ -1,23 +1,35 @@
 package com.linkedkeeper.redis.client.base;
 
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.springframework.beans.factory.support.DefaultListableBeanFactory;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
 
 /**
+ * 没有指定-Dredis.conf时，每个测试类启动一个StandInRedisServer，spring-test.xml连接到它
+ *
  * @Author: zhangsr
  */
 public abstract class BaseTest {
 
+    public final static String REDIS_CONF = "redis.conf";
+
     private static ApplicationContext appContext;
+    private static StandInRedisServer server;
 
     @BeforeClass
     public static void setUp() throws Exception {
         try {
             long start = System.currentTimeMillis();
+            if (System.getProperty(REDIS_CONF) == null) {
+                server = new StandInRedisServer().start();
+                System.setProperty(REDIS_CONF, server.getAddress());
+            }
             System.out.println("loading config file...");
 
             appContext = new ClassPathXmlApplicationContext(new String[]{"spring-test.xml"});
@@ -28,6 +40,26 @@ public abstract class BaseTest {
         }
     }
 
+    @AfterClass
+    public static void tearDown() {
+        if (appContext != null) {
+            ((ConfigurableApplicationContext) appContext).close();
+            appContext = null;
+        }
+        if (server != null) {
+            server.stop();
+            server = null;
+            System.clearProperty(REDIS_CONF);
+        }
+    }
+
+    /**
+     * @return 没有指定-Dredis.conf时的StandInRedisServer，用于注入故障或查看命令日志
+     */
+    protected static StandInRedisServer getServer() {
+        return server;
+    }
+
     @Before
     public void autoSetBean() throws Exception {
         if (appContext != null)
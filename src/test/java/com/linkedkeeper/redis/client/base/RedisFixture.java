@@ -0,0 +1,143 @@
+package com.linkedkeeper.redis.client.base;
+
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.sample.SimpleBinaryRedisClient;
+import com.linkedkeeper.redis.client.sample.SimpleRedisClient;
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.junit.rules.ExternalResource;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 每个测试方法启动StandInRedisServer，经由newDriver、newClient创建或manage登记的对象在测试结束后按逆序关闭，
+ * 最后停止所有服务端。用法：@Rule public RedisFixture redis = new RedisFixture(2);
+ *
+ * @Author: zhangsr
+ */
+public class RedisFixture extends ExternalResource {
+
+    private final int initialServers;
+    private final List<StandInRedisServer> servers = new ArrayList<StandInRedisServer>();
+    private final Deque<Runnable> closers = new ArrayDeque<Runnable>();
+
+    public RedisFixture() {
+        this(1);
+    }
+
+    /**
+     * @param initialServers 测试开始前启动的服务端个数，测试中可以用startServer再启动
+     */
+    public RedisFixture(int initialServers) {
+        this.initialServers = initialServers;
+    }
+
+    @Override
+    protected void before() throws Throwable {
+        for (int i = 0; i < initialServers; i++) {
+            startServer();
+        }
+    }
+
+    @Override
+    protected void after() {
+        RuntimeException failure = null;
+        while (!closers.isEmpty()) {
+            try {
+                closers.pop().run();
+            } catch (RuntimeException e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+        for (StandInRedisServer server : servers) {
+            server.stop();
+        }
+        servers.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public StandInRedisServer startServer() throws IOException {
+        StandInRedisServer server = new StandInRedisServer().start();
+        servers.add(server);
+        return server;
+    }
+
+    public StandInRedisServer getServer() {
+        return getServer(0);
+    }
+
+    public StandInRedisServer getServer(int i) {
+        return servers.get(i);
+    }
+
+    /**
+     * @return 下标从from到to（不含）的服务端地址，逗号分隔，用作redisConf或replicaConf
+     */
+    public String getAddresses(int from, int to) {
+        StringBuilder addresses = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            addresses.append(i == from ? "" : ",").append(servers.get(i).getAddress());
+        }
+        return addresses.toString();
+    }
+
+    /**
+     * 连接到已启动的全部服务端
+     */
+    public RedisDriver newDriver() {
+        return newDriver(driver -> {
+        });
+    }
+
+    public RedisDriver newDriver(Consumer<RedisDriver> configure) {
+        return newDriver(getAddresses(0, servers.size()), configure);
+    }
+
+    /**
+     * @param configure 在init之前设置mode、engine等
+     */
+    public RedisDriver newDriver(String redisConf, Consumer<RedisDriver> configure) {
+        RedisDriver driver = new RedisDriver();
+        driver.setRedisConf(redisConf);
+        configure.accept(driver);
+        driver.init();
+        return manage(driver, RedisDriver::destroy);
+    }
+
+    public SimpleRedisClient newClient(RedisDriver driver) {
+        return newClient(driver, client -> {
+        });
+    }
+
+    /**
+     * @param configure 在init之前设置hedgePolicy、collapseReads等
+     */
+    public SimpleRedisClient newClient(RedisDriver driver, Consumer<SimpleRedisClient> configure) {
+        SimpleRedisClient client = new SimpleRedisClient();
+        client.setDriver(driver);
+        configure.accept(client);
+        client.init();
+        return manage(client, SimpleRedisClient::destroy);
+    }
+
+    public SimpleBinaryRedisClient newBinaryClient(RedisDriver driver) {
+        SimpleBinaryRedisClient client = new SimpleBinaryRedisClient();
+        client.setDriver(driver);
+        client.init();
+        return manage(client, SimpleBinaryRedisClient::destroy);
+    }
+
+    /**
+     * 登记测试结束时需要关闭的对象，先于它依赖的driver和客户端关闭
+     */
+    public <T> T manage(T resource, Consumer<T> close) {
+        closers.push(() -> close.accept(resource));
+        return resource;
+    }
+}
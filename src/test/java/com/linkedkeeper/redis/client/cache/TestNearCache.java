@@ -0,0 +1,106 @@
+package com.linkedkeeper.redis.client.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @Author: zhangsr
+ */
+public class TestNearCache {
+
+    @Test
+    public void testHitAndMiss() {
+        NearCache cache = new NearCache(1000, 1024 * 1024);
+        Assert.assertNull(cache.get("a"));
+        Assert.assertTrue(cache.put("a", "1", 10000, cache.stamp("a")));
+        Assert.assertEquals("1", cache.get("a"));
+
+        NearCacheStats stats = cache.stats();
+        Assert.assertEquals(1, stats.getHitCount());
+        Assert.assertEquals(1, stats.getMissCount());
+        Assert.assertEquals(1, stats.getSize());
+    }
+
+    @Test
+    public void testUnusableValueCountedAsMiss() {
+        NearCache cache = new NearCache(1000, 1024 * 1024);
+        cache.put("a", "1", 10000, cache.stamp("a"));
+        // 值仍然返回，但不算命中
+        Assert.assertEquals("1", cache.get("a", value -> value instanceof Map));
+        Assert.assertEquals("1", cache.get("a", value -> value instanceof String));
+
+        NearCacheStats stats = cache.stats();
+        Assert.assertEquals(1, stats.getHitCount());
+        Assert.assertEquals(1, stats.getMissCount());
+    }
+
+    @Test
+    public void testStalePutAfterInvalidate() {
+        NearCache cache = new NearCache(1000, 1024 * 1024);
+        long stamp = cache.stamp("a");
+        cache.invalidate("a");
+        Assert.assertFalse(cache.put("a", "old", 10000, stamp));
+        Assert.assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void testExpire() throws Exception {
+        NearCache cache = new NearCache(1000, 1024 * 1024);
+        cache.put("a", "1", 20, cache.stamp("a"));
+        Thread.sleep(50);
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(1, cache.stats().getExpirationCount());
+    }
+
+    @Test
+    public void testEvictKeepsProtectedEntries() {
+        // 16个分段，每段容量为2
+        NearCache cache = new NearCache(32, 1024 * 1024);
+        for (int i = 0; i < 1000; i++) {
+            String key = "k" + i;
+            cache.put(key, "v", 10000, cache.stamp(key));
+            if (i == 0) {
+                cache.get(key);
+            }
+        }
+        Assert.assertTrue(cache.size() <= 32);
+        Assert.assertTrue(cache.stats().getEvictionCount() > 0);
+        Assert.assertEquals("v", cache.get("k0"));
+    }
+
+    @Test
+    public void testFewerEntriesThanSegments() {
+        for (int maxEntries = 1; maxEntries < 20; maxEntries++) {
+            NearCache cache = new NearCache(maxEntries, 1024 * 1024);
+            for (int i = 0; i < 100; i++) {
+                String key = "k" + i;
+                cache.put(key, "v", 10000, cache.stamp(key));
+            }
+            Assert.assertEquals(maxEntries, cache.size());
+        }
+    }
+
+    @Test
+    public void testWeighHashFields() {
+        Map<String, String> fields = new HashMap<String, String>();
+        fields.put("f", "v");
+        Assert.assertEquals(NearCache.weigh("key", fields), NearCache.weigh("key", new HashFields(fields)));
+    }
+
+    @Test
+    public void testMaxBytes() {
+        NearCache cache = new NearCache(1000, 16 * 1024);
+        StringBuilder big = new StringBuilder();
+        for (int i = 0; i < 1024; i++) {
+            big.append('x');
+        }
+        for (int i = 0; i < 100; i++) {
+            String key = "k" + i;
+            cache.put(key, big.toString(), 10000, cache.stamp(key));
+        }
+        Assert.assertTrue(cache.stats().getWeight() <= 16 * 1024);
+    }
+}
@@ -0,0 +1,127 @@
+package com.linkedkeeper.redis.client.cache;
+
+import com.linkedkeeper.redis.client.base.RedisFixture;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.sample.SimpleRedisClient;
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+/**
+ * keyspace模式下其它客户端的写入使本地缓存失效
+ *
+ * @Author: zhangsr
+ */
+public class TestNearCacheInvalidator {
+
+    @Rule
+    public RedisFixture redis = new RedisFixture(0);
+
+    private StandInRedisServer[] servers;
+    private RedisDriver driver;
+    private SimpleRedisClient redisClient;
+    private NearCache nearCache;
+    private NearCacheInvalidator invalidator;
+
+    @Test
+    public void testMergeEvents() {
+        Assert.assertEquals("Kg$hsxe", NearCacheInvalidator.mergeEvents("", "Kg$hsxe"));
+        Assert.assertEquals("ExKg$hse", NearCacheInvalidator.mergeEvents("Ex", "Kg$hsxe"));
+        Assert.assertEquals("AK", NearCacheInvalidator.mergeEvents("A", "Kg$hsxe"));
+        Assert.assertEquals("KEA", NearCacheInvalidator.mergeEvents("KEA", "Kg$hsxe"));
+    }
+
+    @Test
+    public void testKeyspaceKeepsExistingEvents() throws Exception {
+        start(1, null);
+        try (Jedis jedis = new Jedis("127.0.0.1", servers[0].getPort(), 1000)) {
+            jedis.configSet("notify-keyspace-events", "Ex");
+        }
+        startInvalidator(1);
+        try (Jedis jedis = new Jedis("127.0.0.1", servers[0].getPort(), 1000)) {
+            Assert.assertEquals("ExKg$hse", jedis.configGet("notify-keyspace-events").get(1));
+        }
+
+        cache("k", "other");
+        redisClient.set("k", "new");
+        awaitInvalidated("k");
+        Assert.assertEquals("cached", nearCache.get("other"));
+    }
+
+    @Test
+    public void testSubscribesToEveryShard() throws Exception {
+        start(2, RedisDriver.MODE_SHARDED);
+        startInvalidator(2);
+
+        String[] keys = new String[20];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "k" + i;
+        }
+        cache(keys);
+        cache("other");
+        for (String key : keys) {
+            redisClient.set(key, "new");
+        }
+        for (String key : keys) {
+            awaitInvalidated(key);
+        }
+        Assert.assertEquals("cached", nearCache.get("other"));
+    }
+
+    @Test
+    public void testPrefixes() throws Exception {
+        start(1, null);
+        startInvalidator(1, "a:", "b:");
+
+        cache("a:1", "b:1", "c:1");
+        redisClient.set("c:1", "new");
+        redisClient.set("a:1", "new");
+        redisClient.set("b:1", "new");
+        awaitInvalidated("a:1");
+        awaitInvalidated("b:1");
+        // 通知按顺序到达，c:1在它们之前写入，没有被失效
+        Assert.assertEquals("cached", nearCache.get("c:1"));
+    }
+
+    private void start(int shards, String mode) throws Exception {
+        servers = new StandInRedisServer[shards];
+        for (int i = 0; i < shards; i++) {
+            servers[i] = redis.startServer();
+        }
+        driver = redis.newDriver(driver -> {
+            if (mode != null) {
+                driver.setMode(mode);
+            }
+        });
+        redisClient = redis.newClient(driver);
+    }
+
+    private void startInvalidator(int masters, String... prefixes) throws Exception {
+        nearCache = new NearCache(1000, 1024 * 1024);
+        invalidator = new NearCacheInvalidator(driver, nearCache, NearCacheInvalidator.MODE_KEYSPACE, prefixes);
+        invalidator.setConfigureNotifications(true);
+        invalidator.start();
+        redis.manage(invalidator, NearCacheInvalidator::stop);
+        long deadline = System.currentTimeMillis() + 2000;
+        while (invalidator.getSubscribedMasters() < masters && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(masters, invalidator.getSubscribedMasters());
+    }
+
+    private void cache(String... keys) {
+        for (String key : keys) {
+            Assert.assertTrue(nearCache.put(key, "cached", 60000, nearCache.stamp(key)));
+        }
+    }
+
+    private void awaitInvalidated(String key) throws Exception {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (nearCache.get(key) != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertNull(key + " not invalidated", nearCache.get(key));
+    }
+}
@@ -0,0 +1,139 @@
+package com.linkedkeeper.redis.client.cache;
+
+import com.linkedkeeper.redis.client.base.RedisFixture;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.sample.SimpleRedisClient;
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * sharded模式下未命中经由delegate的读命令加载，单个master时值和PTTL在一次pipeline中加载
+ *
+ * @Author: zhangsr
+ */
+public class TestNearCacheRedisClient {
+
+    @Rule
+    public RedisFixture redis = new RedisFixture(2);
+
+    private StandInRedisServer server1;
+    private StandInRedisServer server2;
+    private RedisDriver driver;
+    private SimpleRedisClient redisClient;
+    private NearCacheRedisClient nearCacheClient;
+
+    @Before
+    public void setUp() throws Exception {
+        server1 = redis.getServer(0);
+        server2 = redis.getServer(1);
+        driver = redis.newDriver(driver -> driver.setMode(RedisDriver.MODE_SHARDED));
+        redisClient = redis.newClient(driver);
+        nearCacheClient = new NearCacheRedisClient();
+        nearCacheClient.setDelegate(redisClient);
+        nearCacheClient.setDriver(driver);
+        nearCacheClient.init();
+        redis.manage(nearCacheClient, NearCacheRedisClient::destroy);
+    }
+
+    @Test
+    public void testLoadAcrossShards() {
+        for (int i = 0; i < 20; i++) {
+            redisClient.set("k" + i, "v" + i);
+        }
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 20; i++) {
+                Assert.assertEquals("v" + i, nearCacheClient.get("k" + i));
+            }
+        }
+        NearCacheStats stats = nearCacheClient.getStats();
+        Assert.assertEquals(20, stats.getHitCount());
+        Assert.assertEquals(20, stats.getSize());
+        Assert.assertTrue(server1.getRequestLog().size() > 0);
+        Assert.assertTrue(server2.getRequestLog().size() > 0);
+    }
+
+    @Test
+    public void testHashAndSet() {
+        Map<String, String> hash = new HashMap<String, String>();
+        hash.put("f1", "a");
+        hash.put("f2", "b");
+        redisClient.hmset("h", hash);
+        redisClient.sadd("s", "m");
+
+        Assert.assertEquals("a", nearCacheClient.hget("h", "f1"));
+        Assert.assertNull(nearCacheClient.hget("h", "none"));
+        Assert.assertEquals(hash, nearCacheClient.hgetAll("h"));
+        Assert.assertEquals(Collections.singleton("m"), nearCacheClient.smembers("s"));
+
+        // 再次读取不访问服务端
+        server1.clearRequestLog();
+        server2.clearRequestLog();
+        Assert.assertEquals("a", nearCacheClient.hget("h", "f1"));
+        Assert.assertEquals(hash, nearCacheClient.hgetAll("h"));
+        Assert.assertEquals(Collections.singleton("m"), nearCacheClient.smembers("s"));
+        Assert.assertTrue(server1.getRequestLog().isEmpty());
+        Assert.assertTrue(server2.getRequestLog().isEmpty());
+    }
+
+    @Test
+    public void testSingleMasterLoadsInOneRoundTrip() {
+        RedisDriver single = redis.newDriver(server1.getAddress(), driver -> {
+        });
+        SimpleRedisClient client = redis.newClient(single);
+        NearCacheRedisClient cached = new NearCacheRedisClient();
+        cached.setDelegate(client);
+        cached.setDriver(single);
+        cached.init();
+        redis.manage(cached, NearCacheRedisClient::destroy);
+        client.set("k", "v");
+        client.hset("h", "f", "a");
+
+        Assert.assertEquals("v", cached.get("k"));
+        Assert.assertEquals("a", cached.hget("h", "f"));
+        Assert.assertNull(cached.hget("h", "none"));
+        // 值和PTTL在同一个pipeline中读取
+        Assert.assertEquals(3, client.getMetrics().snapshot("pipelined").getCalls());
+        Assert.assertNull(client.getMetrics().snapshot("get"));
+        Assert.assertNull(client.getMetrics().snapshot("pttl"));
+        Assert.assertEquals("v", cached.get("k"));
+        Assert.assertNull(cached.hget("h", "none"));
+        Assert.assertEquals(3, client.getMetrics().snapshot("pipelined").getCalls());
+        Assert.assertEquals(2, cached.getStats().getHitCount());
+    }
+
+    @Test
+    public void testWrongTypeAndMissingFieldCountedAsMiss() {
+        redisClient.hset("h", "f1", "a");
+        redisClient.hset("h", "f2", "b");
+        Assert.assertEquals("a", nearCacheClient.hget("h", "f1"));
+        // 缓存中有h但没有f2
+        Assert.assertEquals("b", nearCacheClient.hget("h", "f2"));
+        // 缓存的是hash的部分field，读hgetAll类型不符
+        Assert.assertEquals(2, nearCacheClient.hgetAll("h").size());
+        NearCacheStats stats = nearCacheClient.getStats();
+        Assert.assertEquals(0, stats.getHitCount());
+        Assert.assertEquals(3, stats.getMissCount());
+    }
+
+    @Test
+    public void testMissingKeyNotCached() {
+        Assert.assertNull(nearCacheClient.get("none"));
+        Assert.assertTrue(nearCacheClient.hgetAll("none").isEmpty());
+        Assert.assertEquals(0, nearCacheClient.getStats().getSize());
+    }
+
+    @Test
+    public void testLocalTtlBoundedByRedis() throws Exception {
+        redisClient.set("k", "v", "NX", "PX", 100);
+        Assert.assertEquals("v", nearCacheClient.get("k"));
+        Thread.sleep(200);
+        Assert.assertNull(nearCacheClient.get("k"));
+    }
+}
@@ -0,0 +1,255 @@
+package com.linkedkeeper.redis.client.cache;
+
+import com.linkedkeeper.redis.client.base.RedisFixture;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.sample.SimpleRedisClient;
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Author: zhangsr
+ */
+public class TestRedisCacheLoader {
+
+    @Rule
+    public RedisFixture redis = new RedisFixture();
+
+    private StandInRedisServer server;
+    private RedisDriver driver;
+    private SimpleRedisClient redisClient;
+    private RedisCacheLoader cacheLoader;
+
+    @Before
+    public void setUp() throws Exception {
+        server = redis.getServer();
+        driver = redis.newDriver();
+        redisClient = redis.newClient(driver);
+        cacheLoader = new RedisCacheLoader();
+        cacheLoader.setRedisClient(redisClient);
+        cacheLoader.init();
+        redis.manage(cacheLoader, RedisCacheLoader::destroy);
+    }
+
+    @Test
+    public void testLoadOnce() {
+        AtomicInteger loads = new AtomicInteger();
+        Assert.assertEquals("db", cacheLoader.getOrLoad("k", 60, () -> "db" + (loads.getAndIncrement() == 0 ? "" : "again")));
+        Assert.assertEquals("db", cacheLoader.getOrLoad("k", 60, () -> "db" + (loads.getAndIncrement() == 0 ? "" : "again")));
+        Assert.assertEquals(1, loads.get());
+        // 软过期后再保留60秒
+        Assert.assertTrue(ttl("k") > 60);
+        Assert.assertNull(redisClient.get("k:load-lock"));
+
+        // loader返回null时写入短期的空值标记
+        Assert.assertNull(cacheLoader.getOrLoad("none", 60, () -> null));
+        long ttl = ttl("none");
+        Assert.assertTrue(ttl > 0 && ttl <= 5);
+    }
+
+    @Test
+    public void testNegativeResult() {
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 5; i++) {
+            Assert.assertNull(cacheLoader.getOrLoad("none", 60, () -> {
+                loads.incrementAndGet();
+                return null;
+            }));
+        }
+        Assert.assertEquals(1, loads.get());
+
+        // negativeSeconds为0时不写入
+        cacheLoader.setNegativeSeconds(0);
+        Assert.assertNull(cacheLoader.getOrLoad("other", 60, () -> null));
+        Assert.assertNull(redisClient.get("other"));
+    }
+
+    @Test
+    public void testTtlJitter() {
+        cacheLoader.setTtlJitter(0.5);
+        cacheLoader.setStaleSeconds(0);
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int i = 0; i < 50; i++) {
+            cacheLoader.getOrLoad("k" + i, 100, () -> "v");
+            long ttl = ttl("k" + i);
+            Assert.assertTrue(ttl <= 100 && ttl >= 49);
+            min = Math.min(min, ttl);
+            max = Math.max(max, ttl);
+        }
+        Assert.assertTrue(max - min > 10);
+    }
+
+    @Test
+    public void testRefreshAhead() throws Exception {
+        cacheLoader.setTtlJitter(0);
+        cacheLoader.getOrLoad("k", 1, () -> "old");
+        Thread.sleep(1100);
+
+        // 软过期后仍立即返回旧值，后台只刷新一次
+        AtomicInteger loads = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("old", cacheLoader.getOrLoad("k", 1, () -> {
+                loads.incrementAndGet();
+                Thread.sleep(200);
+                return "new";
+            }));
+        }
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!"new".equals(cacheLoader.getOrLoad("k", 60, () -> "unexpected")) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals("new", cacheLoader.getOrLoad("k", 60, () -> "unexpected"));
+        Assert.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testOnlyOneLoaderOnMiss() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        RedisCacheLoader other = new RedisCacheLoader();
+        other.setRedisClient(redisClient);
+        other.init();
+        try {
+            CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> cacheLoader.getOrLoad("k", 60, () -> {
+                loads.incrementAndGet();
+                Thread.sleep(300);
+                return "v";
+            }));
+            Thread.sleep(50);
+            Assert.assertEquals("v", other.getOrLoad("k", 60, () -> {
+                loads.incrementAndGet();
+                return "v";
+            }));
+            Assert.assertEquals("v", first.get(1, TimeUnit.SECONDS));
+            Assert.assertEquals(1, loads.get());
+        } finally {
+            other.destroy();
+        }
+    }
+
+    @Test
+    public void testWaitForSlowLoader() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        RedisCacheLoader other = new RedisCacheLoader();
+        other.setRedisClient(redisClient);
+        other.init();
+        try {
+            // 加载超过1秒，但仍在锁的有效期内，等待者不自己加载
+            CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> cacheLoader.getOrLoad("k", 60, () -> {
+                loads.incrementAndGet();
+                Thread.sleep(1500);
+                return "v";
+            }));
+            Thread.sleep(50);
+            Assert.assertEquals("v", other.getOrLoad("k", 60, () -> {
+                loads.incrementAndGet();
+                return "direct";
+            }));
+            Assert.assertEquals("v", first.get(1, TimeUnit.SECONDS));
+            Assert.assertEquals(1, loads.get());
+        } finally {
+            other.destroy();
+        }
+    }
+
+    @Test
+    public void testTakeOverReleasedLock() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        RedisCacheLoader other = new RedisCacheLoader();
+        other.setRedisClient(redisClient);
+        other.init();
+        try {
+            // 持锁的实例加载失败、没有写回，等待者取得锁后加载
+            CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> cacheLoader.getOrLoad("k", 60, () -> {
+                Thread.sleep(200);
+                throw new IllegalStateException("db down");
+            }));
+            Thread.sleep(50);
+            Assert.assertEquals("v", other.getOrLoad("k", 60, () -> {
+                loads.incrementAndGet();
+                return "v";
+            }));
+            Assert.assertEquals(1, loads.get());
+            try {
+                first.get(1, TimeUnit.SECONDS);
+                Assert.fail("first load should fail");
+            } catch (ExecutionException expected) {
+            }
+        } finally {
+            other.destroy();
+        }
+    }
+
+    @Test
+    public void testWaitBacksOff() {
+        // 其它实例一直持有锁，等待1秒后自己加载
+        redisClient.set("k:load-lock", "other", "NX", "PX", 3000);
+        cacheLoader.setLockWaitMillis(1000);
+        server.clearRequestLog();
+        Assert.assertEquals("direct", cacheLoader.getOrLoad("k", 60, () -> "direct"));
+        int gets = 0;
+        for (List<String> request : server.getRequestLog()) {
+            if ("GET".equals(request.get(0)) && "k".equals(request.get(1))) {
+                gets++;
+            }
+        }
+        // 固定10ms轮询约100次，指数退避后不超过20次
+        Assert.assertTrue("polled " + gets + " times", gets > 1 && gets <= 20);
+    }
+
+    @Test
+    public void testRefreshWithoutInit() throws Exception {
+        RedisCacheLoader other = new RedisCacheLoader();
+        other.setRedisClient(redisClient);
+        other.setTtlJitter(0);
+        try {
+            other.getOrLoad("k", 1, () -> "old");
+            Thread.sleep(1100);
+            Assert.assertEquals("old", other.getOrLoad("k", 60, () -> {
+                Thread.sleep(200);
+                return "new";
+            }));
+            long deadline = System.currentTimeMillis() + 2000;
+            while (!"new".equals(other.getOrLoad("k", 60, () -> "unexpected")) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            Assert.assertEquals("new", other.getOrLoad("k", 60, () -> "unexpected"));
+        } finally {
+            other.destroy();
+        }
+    }
+
+    @Test
+    public void testRefreshAfterDestroyReleasesLock() throws Exception {
+        cacheLoader.setTtlJitter(0);
+        cacheLoader.getOrLoad("k", 1, () -> "old");
+        Thread.sleep(1100);
+        cacheLoader.destroy();
+        // 线程池拒绝刷新任务，返回旧值并释放锁
+        Assert.assertEquals("old", cacheLoader.getOrLoad("k", 1, () -> "new"));
+        Assert.assertNull(redisClient.get("k:load-lock"));
+        Assert.assertEquals("old", cacheLoader.getOrLoad("k", 1, () -> "new"));
+        Assert.assertNull(redisClient.get("k:load-lock"));
+    }
+
+    @Test
+    public void testLegacyValue() {
+        redisClient.set("k", "plain");
+        Assert.assertEquals("plain", cacheLoader.getOrLoad("k", 60, () -> "unexpected"));
+    }
+
+    private long ttl(String key) {
+        try (Jedis jedis = new Jedis("127.0.0.1", server.getPort(), 200)) {
+            return jedis.ttl(key);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.linkedkeeper.redis.client.codec;
+
+import com.linkedkeeper.redis.client.base.RedisFixture;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.sample.SimpleRedisClient;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @Author: zhangsr
+ */
+public class TestCodec {
+
+    @Rule
+    public RedisFixture redis = new RedisFixture();
+
+    private RedisDriver driver;
+    private SimpleRedisClient redisClient;
+    private CodecRedisClient codecClient;
+
+    @Before
+    public void setUp() throws Exception {
+        driver = redis.newDriver(driver -> driver.setEngine(RedisDriver.ENGINE_NIO));
+        redisClient = redis.newClient(driver);
+        codecClient = new CodecRedisClient();
+        codecClient.setDelegate(redis.newBinaryClient(driver));
+    }
+
+    @Test
+    public void testBinaryCodec() throws Exception {
+        UserCodec codec = new UserCodec();
+        User user = new User(-42L, "张三", 3.5, null);
+        byte[] bytes = codec.encode(user);
+        // 不带字段名，比JSON小得多
+        Assert.assertTrue(bytes.length < 20);
+        Assert.assertEquals(user, codec.decode(ByteBuffer.wrap(bytes)));
+
+        User max = new User(Long.MIN_VALUE, "", -0.0, new byte[]{0, -1});
+        Assert.assertEquals(max, codec.decode(ByteBuffer.wrap(codec.encode(max))));
+    }
+
+    @Test
+    public void testCompression() throws Exception {
+        CompressingCodec<String> codec = new CompressingCodec<String>(new StringCodec(), 64, new StringCodec());
+        byte[] small = codec.encode("small");
+        Assert.assertEquals(CompressingCodec.RAW, small[0]);
+        Assert.assertEquals(6, small.length);
+        Assert.assertEquals("small", codec.decode(ByteBuffer.wrap(small)));
+
+        char[] chars = new char[10000];
+        Arrays.fill(chars, 'a');
+        String large = new String(chars);
+        byte[] compressed = codec.encode(large);
+        Assert.assertEquals(CompressingCodec.DEFLATE, compressed[0]);
+        Assert.assertTrue(compressed.length < 200);
+        Assert.assertEquals(large, codec.decode(ByteBuffer.wrap(compressed).asReadOnlyBuffer()));
+
+        // 压缩后不会更小时原样保存
+        byte[] random = new byte[1000];
+        new java.util.Random(1).nextBytes(random);
+        CompressingCodec<byte[]> bytesCodec = new CompressingCodec<byte[]>(new BytesCodec(), 64, new BytesCodec());
+        byte[] encoded = bytesCodec.encode(random);
+        Assert.assertEquals(CompressingCodec.RAW, encoded[0]);
+        Assert.assertArrayEquals(random, bytesCodec.decode(ByteBuffer.wrap(encoded)));
+    }
+
+    @Test
+    public void testInflateLimit() throws Exception {
+        char[] chars = new char[10000];
+        Arrays.fill(chars, 'a');
+        String large = new String(chars);
+        byte[] compressed = new CompressingCodec<String>(new StringCodec(), 64, new StringCodec()).encode(large);
+        CompressingCodec<String> limited = new CompressingCodec<String>(new StringCodec(), 64, new StringCodec(), Deflater.BEST_SPEED, 5000);
+        try {
+            limited.decode(ByteBuffer.wrap(compressed));
+            Assert.fail("inflated length over maxLength should be rejected");
+        } catch (DataFormatException expected) {
+        }
+
+        // 损坏的长度不会触发分配
+        BinaryOutput corrupt = new BinaryOutput(16);
+        corrupt.writeByte(CompressingCodec.DEFLATE);
+        corrupt.writeVarLong(Long.MAX_VALUE);
+        try {
+            new CompressingCodec<String>(new StringCodec()).decode(ByteBuffer.wrap(corrupt.toByteArray()));
+            Assert.fail("corrupt length should be rejected");
+        } catch (DataFormatException expected) {
+        }
+
+        // destroy后仍可使用
+        CompressingCodec<String> codec = new CompressingCodec<String>(new StringCodec(), 64, new StringCodec());
+        Assert.assertEquals(large, codec.decode(ByteBuffer.wrap(codec.encode(large))));
+        codec.destroy();
+        Assert.assertEquals(large, codec.decode(ByteBuffer.wrap(codec.encode(large))));
+    }
+
+    @Test
+    public void testTypedClient() {
+        CompressingCodec<User> codec = new CompressingCodec<User>(new UserCodec());
+        User user = new User(7, "user", 1.25, new byte[600]);
+        codecClient.set("user", user, codec);
+        Assert.assertEquals(user, codecClient.get("user", codec));
+        Assert.assertNull(codecClient.get("missing", codec));
+
+        Map<String, User> hash = new LinkedHashMap<String, User>();
+        hash.put("a", new User(1, "a", 0, null));
+        hash.put("b", new User(2, "b", 0, null));
+        codecClient.hmset("h", hash, codec);
+        codecClient.hset("h", "c", new User(3, "c", 0, null), codec);
+        Assert.assertEquals(hash.get("b"), codecClient.hget("h", "b", codec));
+        Assert.assertEquals(Arrays.asList(hash.get("a"), null), codecClient.hmget("h", codec, "a", "x"));
+        Assert.assertEquals(3, codecClient.hgetAll("h", codec).size());
+    }
+
+    @Test
+    public void testLegacyValues() {
+        // 引入codec之前以JSON字符串写入的value
+        redisClient.set("user", "{\"id\":7,\"name\":\"legacy\"}");
+        Codec<User> legacy = new Codec<User>() {
+            public byte[] encode(User value) {
+                throw new UnsupportedOperationException();
+            }
+
+            public User decode(ByteBuffer bytes) {
+                String json = new StringCodec().decode(bytes);
+                return new User(7, json.substring(json.lastIndexOf(':') + 2, json.length() - 2), 0, null);
+            }
+        };
+        CompressingCodec<User> codec = new CompressingCodec<User>(new UserCodec(), CompressingCodec.DEFAULT_THRESHOLD, legacy);
+        Assert.assertEquals(new User(7, "legacy", 0, null), codecClient.get("user", codec));
+
+        codecClient.set("user", new User(7, "new", 0, null), codec);
+        Assert.assertEquals(new User(7, "new", 0, null), codecClient.get("user", codec));
+    }
+
+    static class User {
+
+        final long id;
+        final String name;
+        final double score;
+        final byte[] avatar;
+
+        User(long id, String name, double score, byte[] avatar) {
+            this.id = id;
+            this.name = name;
+            this.score = score;
+            this.avatar = avatar;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof User)) {
+                return false;
+            }
+            User user = (User) o;
+            return id == user.id && name.equals(user.name) && Double.compare(score, user.score) == 0
+                    && Arrays.equals(avatar, user.avatar);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) id;
+        }
+
+        @Override
+        public String toString() {
+            return "User{" + id + ", " + name + "}";
+        }
+    }
+
+    static class UserCodec extends BinaryCodec<User> {
+
+        protected void write(User value, BinaryOutput out) {
+            out.writeLong(value.id);
+            out.writeString(value.name);
+            out.writeDouble(value.score);
+            out.writeBytes(value.avatar);
+        }
+
+        protected User read(BinaryInput in) {
+            return new User(in.readLong(), in.readString(), in.readDouble(), in.readBytes());
+        }
+    }
+
+    static class BytesCodec implements Codec<byte[]> {
+
+        public byte[] encode(byte[] value) {
+            return value;
+        }
+
+        public byte[] decode(ByteBuffer bytes) {
+            byte[] value = new byte[bytes.remaining()];
+            bytes.get(value);
+            return value;
+        }
+    }
+}
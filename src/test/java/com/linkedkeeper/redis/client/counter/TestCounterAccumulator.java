@@ -0,0 +1,161 @@
+package com.linkedkeeper.redis.client.counter;
+
+import com.linkedkeeper.redis.client.base.RedisFixture;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.sample.SimpleRedisClient;
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * @Author: zhangsr
+ */
+public class TestCounterAccumulator {
+
+    @Rule
+    public RedisFixture redis = new RedisFixture();
+
+    private StandInRedisServer server;
+    private RedisDriver driver;
+    private SimpleRedisClient redisClient;
+    private CounterAccumulator counters;
+
+    @Before
+    public void setUp() throws Exception {
+        server = redis.getServer();
+        driver = redis.newDriver();
+        redisClient = redis.newClient(driver);
+        counters = new CounterAccumulator();
+        counters.setRedisClient(redisClient);
+        counters.setDriver(driver);
+        counters.setFlushIntervalMillis(60 * 1000);
+        counters.init();
+        redis.manage(counters, CounterAccumulator::destroy);
+    }
+
+    @Test
+    public void testConcurrentIncrements() throws Exception {
+        CountDownLatch done = new CountDownLatch(8);
+        for (int t = 0; t < 8; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    counters.incr("hits");
+                    counters.hincrby("stats", "bytes", 3);
+                }
+                done.countDown();
+            }).start();
+        }
+        done.await();
+        counters.decrBy("hits", 80);
+        server.clearRequestLog();
+        counters.flush();
+
+        Assert.assertEquals("79920", redisClient.get("hits"));
+        Assert.assertEquals("240000", redisClient.hget("stats", "bytes"));
+        // 16万次累加只写出两条命令
+        Assert.assertEquals(2, count("INCRBY") + count("HINCRBY"));
+
+        // 没有变化的计数器在下一次flush时回收
+        counters.flush();
+        Assert.assertEquals(0, counters.getPendingKeys());
+        counters.incr("hits");
+        counters.flush();
+        Assert.assertEquals("79921", redisClient.get("hits"));
+    }
+
+    @Test
+    public void testRetryAfterFailure() {
+        counters.incrBy("k", 5);
+        server.dropNext("INCRBY", 1);
+        counters.flush();
+        Assert.assertNull(redisClient.get("k"));
+        counters.incrBy("k", 2);
+        counters.flush();
+        Assert.assertEquals("7", redisClient.get("k"));
+    }
+
+    @Test
+    public void testPartialPipelineFailure() {
+        SimpleRedisClient batched = redis.newClient(driver, client -> client.setPipelineBatchSize(1));
+        counters.setRedisClient(batched);
+        for (int i = 0; i < 10; i++) {
+            counters.incr("k" + i);
+        }
+        counters.hincrby("h", "f", 1);
+        server.dropNext("HINCRBY", 1);
+        counters.flush();
+        counters.flush();
+        // 断开之前已经读到回复的命令不会被重复写出
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("1", redisClient.get("k" + i));
+        }
+        Assert.assertEquals("1", redisClient.hget("h", "f"));
+    }
+
+    @Test
+    public void testWriteEachWithoutOverflow() {
+        RedisDriver sharded = redis.newDriver(driver -> driver.setMode(RedisDriver.MODE_SHARDED));
+        CounterAccumulator each = new CounterAccumulator();
+        each.setRedisClient(redis.newClient(sharded));
+        each.setDriver(sharded);
+        each.setFlushIntervalMillis(60 * 1000);
+        each.init();
+        redis.manage(each, CounterAccumulator::destroy);
+        each.incrBy("min", Long.MIN_VALUE);
+        each.flush();
+        each.flush();
+        // 增量没有因为取反溢出而失败并加回本地
+        Assert.assertEquals(String.valueOf(Long.MIN_VALUE), redisClient.get("min"));
+        Assert.assertEquals(0, each.getPendingKeys());
+    }
+
+    @Test
+    public void testDataErrorIsDropped() {
+        redisClient.set("str", "v");
+        counters.hincrby("str", "f", 1);
+        counters.incr("ok");
+        counters.flush();
+        Assert.assertEquals("1", redisClient.get("ok"));
+        counters.flush();
+        Assert.assertEquals(0, counters.getPendingKeys());
+    }
+
+    @Test
+    public void testFlushOnMaxPendingKeys() throws Exception {
+        counters.setMaxPendingKeys(10);
+        for (int i = 0; i < 10; i++) {
+            counters.incr("k" + i);
+        }
+        long deadline = System.currentTimeMillis() + 2000;
+        while (redisClient.get("k9") == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals("1", redisClient.get("k0"));
+        Assert.assertEquals("1", redisClient.get("k9"));
+    }
+
+    @Test
+    public void testFlushOnDriverDestroy() {
+        counters.incrBy("k", 3);
+        driver.destroy();
+        try (Jedis jedis = new Jedis("127.0.0.1", server.getPort(), 200)) {
+            Assert.assertEquals("3", jedis.get("k"));
+        }
+    }
+
+    private int count(String command) {
+        int count = 0;
+        for (List<String> request : server.getRequestLog()) {
+            if (command.equalsIgnoreCase(request.get(0))) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
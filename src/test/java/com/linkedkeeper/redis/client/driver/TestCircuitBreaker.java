@@ -0,0 +1,150 @@
+package com.linkedkeeper.redis.client.driver;
+
+import com.linkedkeeper.redis.client.config.CircuitBreakerConfig;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @Author: zhangsr
+ */
+public class TestCircuitBreaker {
+
+    private final static long FAST = 1000000L;
+    private final static long SLOW = 200 * 1000000L;
+
+    private CircuitBreakerConfig config;
+
+    @Before
+    public void setUp() {
+        config = new CircuitBreakerConfig();
+        config.setWindowSize(10);
+        config.setMinimumCalls(4);
+        config.setFailureRateThreshold(0.5);
+        config.setSlowCallMillis(100);
+        config.setSlowCallRateThreshold(0.75);
+        config.setOpenMillis(50);
+        config.setHalfOpenProbes(2);
+    }
+
+    @Test
+    public void testFailureRate() {
+        CircuitBreaker breaker = new CircuitBreaker("test", config);
+        // 不足minimumCalls时不熔断
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(CircuitBreaker.Permit.CALL, breaker.tryAcquire());
+            breaker.onFailure(CircuitBreaker.Permit.CALL, FAST);
+        }
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onFailure(CircuitBreaker.Permit.CALL, FAST);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assert.assertEquals(CircuitBreaker.Permit.REJECTED, breaker.tryAcquire());
+    }
+
+    @Test
+    public void testSlidingWindow() {
+        CircuitBreaker breaker = new CircuitBreaker("test", config);
+        for (int i = 0; i < 10; i++) {
+            breaker.onSuccess(CircuitBreaker.Permit.CALL, FAST);
+        }
+        // 窗口内10次中4次失败，之前的成功被移出窗口后达到阈值
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(CircuitBreaker.Permit.CALL, FAST);
+        }
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onFailure(CircuitBreaker.Permit.CALL, FAST);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testSlowCallRate() {
+        CircuitBreaker breaker = new CircuitBreaker("test", config);
+        breaker.onSuccess(CircuitBreaker.Permit.CALL, FAST);
+        breaker.onSuccess(CircuitBreaker.Permit.CALL, SLOW);
+        breaker.onSuccess(CircuitBreaker.Permit.CALL, SLOW);
+        breaker.onSuccess(CircuitBreaker.Permit.CALL, SLOW);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testHalfOpen() throws Exception {
+        CircuitBreaker breaker = open();
+        Thread.sleep(60);
+        // 只放行halfOpenProbes个探测请求
+        Assert.assertEquals(CircuitBreaker.Permit.PROBE, breaker.tryAcquire());
+        Assert.assertEquals(CircuitBreaker.Permit.PROBE, breaker.tryAcquire());
+        Assert.assertEquals(CircuitBreaker.Permit.REJECTED, breaker.tryAcquire());
+        Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(CircuitBreaker.Permit.PROBE, FAST);
+        breaker.onSuccess(CircuitBreaker.Permit.PROBE, FAST);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        Assert.assertEquals(CircuitBreaker.Permit.CALL, breaker.tryAcquire());
+
+        breaker = open();
+        Thread.sleep(60);
+        Assert.assertEquals(CircuitBreaker.Permit.PROBE, breaker.tryAcquire());
+        breaker.onSuccess(CircuitBreaker.Permit.PROBE, SLOW);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assert.assertEquals(CircuitBreaker.Permit.REJECTED, breaker.tryAcquire());
+    }
+
+    @Test
+    public void testStaleCallsNotCountedAsProbes() throws Exception {
+        CircuitBreaker breaker = open();
+        Thread.sleep(60);
+        Assert.assertEquals(CircuitBreaker.Permit.PROBE, breaker.tryAcquire());
+        // CLOSED时放行、HALF_OPEN期间才结束的调用不影响探测结果
+        breaker.onFailure(CircuitBreaker.Permit.CALL, FAST);
+        breaker.onSuccess(CircuitBreaker.Permit.CALL, FAST);
+        breaker.onSuccess(CircuitBreaker.Permit.CALL, FAST);
+        Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        Assert.assertEquals(CircuitBreaker.Permit.PROBE, breaker.tryAcquire());
+        breaker.onSuccess(CircuitBreaker.Permit.PROBE, FAST);
+        Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(CircuitBreaker.Permit.PROBE, FAST);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testConcurrentRecords() throws Exception {
+        config.setWindowSize(100);
+        config.setMinimumCalls(10);
+        CircuitBreaker breaker = new CircuitBreaker("test", config);
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final boolean failing = t == 0;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    if (failing && i % 10 == 0)
+                        breaker.onFailure(CircuitBreaker.Permit.CALL, FAST);
+                    else
+                        breaker.onSuccess(CircuitBreaker.Permit.CALL, FAST);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        // 窗口中的失败计数与其中的结果一致
+        for (int i = 0; i < 100; i++) {
+            breaker.onSuccess(CircuitBreaker.Permit.CALL, FAST);
+        }
+        for (int i = 0; i < 49; i++) {
+            breaker.onFailure(CircuitBreaker.Permit.CALL, FAST);
+        }
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onFailure(CircuitBreaker.Permit.CALL, FAST);
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private CircuitBreaker open() {
+        CircuitBreaker breaker = new CircuitBreaker("test", config);
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(CircuitBreaker.Permit.CALL, FAST);
+        }
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+}
@@ -0,0 +1,115 @@
+package com.linkedkeeper.redis.client.driver;
+
+import com.linkedkeeper.redis.client.base.RedisFixture;
+import com.linkedkeeper.redis.client.config.RedisPoolConfig;
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @Author: zhangsr
+ */
+public class TestPoolSizing {
+
+    @Rule
+    public RedisFixture redis = new RedisFixture();
+
+    private StandInRedisServer server;
+    private RedisDriver driver;
+
+    @Before
+    public void setUp() throws Exception {
+        server = redis.getServer();
+        driver = new RedisDriver();
+        driver.setRedisConf(server.getAddress());
+        redis.manage(driver, RedisDriver::destroy);
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        RedisPoolConfig config = new RedisPoolConfig();
+        config.setMinIdle(4);
+        driver.setRedisPoolConfig(config);
+        driver.init();
+
+        TunableJedisPool pool = driver.getMasterNode().getJedisPool();
+        Assert.assertEquals(4, pool.getNumIdle());
+        // 服务端的accept可能晚于客户端的connect返回
+        long deadline = System.currentTimeMillis() + 1000;
+        while (server.getConnectionCount() < 4 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(4, server.getConnectionCount());
+    }
+
+    @Test
+    public void testWarmUpDisabled() throws Exception {
+        RedisPoolConfig config = new RedisPoolConfig();
+        config.setMinIdle(4);
+        config.setWarmUp(false);
+        driver.setRedisPoolConfig(config);
+        driver.init();
+
+        Assert.assertEquals(0, driver.getMasterNode().getJedisPool().getNumIdle());
+    }
+
+    @Test
+    public void testResize() {
+        RedisPoolConfig config = new RedisPoolConfig();
+        config.setAdaptiveMinTotal(4);
+        config.setAdaptiveMaxTotal(100);
+        // 有等待的线程
+        Assert.assertEquals(15, PoolSizer.resize(config, 10, 10, 3, 0));
+        // 平均等待时间超过目标且使用率高
+        Assert.assertEquals(15, PoolSizer.resize(config, 10, 9, 0, 20));
+        // 等待时间长但使用率不高，不扩大
+        Assert.assertEquals(10, PoolSizer.resize(config, 10, 5, 0, 20));
+        // 使用率低时缩小，不低于下限
+        Assert.assertEquals(30, PoolSizer.resize(config, 40, 2, 0, 0));
+        Assert.assertEquals(4, PoolSizer.resize(config, 4, 0, 0, 0));
+        // 不超过上限
+        Assert.assertEquals(100, PoolSizer.resize(config, 90, 90, 1, 0));
+    }
+
+    @Test
+    public void testAdaptive() throws Exception {
+        RedisPoolConfig config = new RedisPoolConfig();
+        config.setMaxTotal(2);
+        config.setMaxIdle(2);
+        config.setAdaptive(true);
+        config.setAdaptiveIntervalMillis(20);
+        config.setAdaptiveMinTotal(2);
+        config.setAdaptiveMaxTotal(6);
+        driver.setRedisPoolConfig(config);
+        driver.init();
+
+        TunableJedisPool pool = driver.getMasterNode().getJedisPool();
+        List<Jedis> borrowed = new ArrayList<Jedis>();
+        borrowed.add(pool.getResource());
+        borrowed.add(pool.getResource());
+        // 第三个线程等待连接，连接池扩大后借到
+        Thread waiter = new Thread(() -> {
+            Jedis jedis = pool.getResource();
+            jedis.close();
+        });
+        waiter.start();
+        waiter.join(2000);
+        Assert.assertFalse(waiter.isAlive());
+        Assert.assertTrue(pool.getMaxTotal() > 2);
+
+        for (Jedis jedis : borrowed) {
+            jedis.close();
+        }
+        long deadline = System.currentTimeMillis() + 2000;
+        while (pool.getMaxTotal() > 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(2, pool.getMaxTotal());
+    }
+}
@@ -0,0 +1,71 @@
+package com.linkedkeeper.redis.client.driver;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @Author: zhangsr
+ */
+public class TestShardRing {
+
+    private final ShardRing ring = new ShardRing(Arrays.asList("a:1", "b:1", "c:1", "d:1"), ShardRing.DEFAULT_VIRTUAL_NODES, true);
+
+    @Test
+    public void testDistribution() {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        int keys = 40000;
+        for (int i = 0; i < keys; i++) {
+            String shard = ring.locate("user:" + i);
+            counts.put(shard, counts.containsKey(shard) ? counts.get(shard) + 1 : 1);
+        }
+        Assert.assertEquals(4, counts.size());
+        for (int count : counts.values()) {
+            Assert.assertTrue("count = " + count, Math.abs(count - keys / 4) < keys / 4 * 0.3);
+        }
+    }
+
+    @Test
+    public void testHashTags() {
+        String shard = ring.locate("{user42}:profile");
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(shard, ring.locate("{user42}:field" + i));
+        }
+        Assert.assertEquals(ring.locate("user42"), shard);
+        // 空tag按整个key计算
+        Assert.assertEquals(ring.locate(new byte[]{'{', '}', 'x'}), ring.locate("{}x"));
+
+        ShardRing noTags = new ShardRing(ring.getShards(), ShardRing.DEFAULT_VIRTUAL_NODES, false);
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (int i = 0; i < 100; i++) {
+            counts.put(noTags.locate("{user42}:field" + i), 1);
+        }
+        Assert.assertTrue(counts.size() > 1);
+    }
+
+    @Test
+    public void testMovementWhenAddingShard() {
+        ShardRing target = ring.withShards(Arrays.asList("a:1", "b:1", "c:1", "d:1", "e:1"));
+        Map<String, Double> movement = ring.movement(target);
+        double moved = 0;
+        for (Map.Entry<String, Double> entry : movement.entrySet()) {
+            Assert.assertTrue(entry.getKey(), entry.getKey().endsWith("->e:1"));
+            moved += entry.getValue();
+        }
+        Assert.assertTrue("moved = " + moved, moved > 0.15 && moved < 0.25);
+
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < 20000; i++) {
+            keys.add("user:" + i);
+        }
+        Map<String, List<String>> movedKeys = ring.movedKeys(keys, target);
+        Assert.assertEquals(1, movedKeys.size());
+        Assert.assertEquals(moved, movedKeys.get("e:1").size() / 20000.0, 0.02);
+        Assert.assertTrue(ring.movement(ring).isEmpty());
+    }
+}
@@ -0,0 +1,188 @@
+package com.linkedkeeper.redis.client.metrics;
+
+import com.linkedkeeper.redis.client.base.RedisFixture;
+import com.linkedkeeper.redis.client.cache.NearCacheRedisClient;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.sample.SimpleRedisClient;
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @Author: zhangsr
+ */
+public class TestHotKeyDetector {
+
+    @Rule
+    public RedisFixture redis = new RedisFixture(0);
+
+    @Test
+    public void testTopKeysUnderSkew() {
+        HotKeyDetector detector = newDetector(1);
+        try {
+            for (int i = 0; i < 100000; i++) {
+                // 约一半的访问落在hot0~hot2上，其余分散在2万个key上
+                if (i % 2 == 0) {
+                    detector.record("get", "hot" + (i / 2) % 3);
+                } else {
+                    detector.record("get", "cold" + i % 20000);
+                }
+            }
+            detector.record("get", null);
+            List<HotKey> hotKeys = detector.report();
+            Assert.assertEquals(10, hotKeys.size());
+            List<String> top = new ArrayList<String>();
+            for (HotKey hotKey : hotKeys.subList(0, 3)) {
+                top.add(hotKey.getKey());
+                Assert.assertTrue(hotKey.getCount() >= 16666);
+            }
+            Assert.assertTrue(top.contains("hot0") && top.contains("hot1") && top.contains("hot2"));
+            Assert.assertEquals(100000, detector.getSampledAccesses());
+            Assert.assertEquals(hotKeys, detector.getHotKeys());
+            // 报告后开始新的统计周期
+            Assert.assertTrue(detector.getCurrentHotKeys(10).isEmpty());
+        } finally {
+            detector.destroy();
+        }
+    }
+
+    @Test
+    public void testSamplingScalesCount() {
+        HotKeyDetector detector = newDetector(10);
+        try {
+            for (int i = 0; i < 100000; i++) {
+                detector.record("hget", "hot");
+            }
+            HotKey hotKey = detector.report().get(0);
+            Assert.assertEquals("hget", hotKey.getCommand());
+            Assert.assertTrue(String.valueOf(hotKey.getCount()), Math.abs(hotKey.getCount() - 100000) < 10000);
+            Assert.assertTrue(detector.getSampledAccesses() < 20000);
+        } finally {
+            detector.destroy();
+        }
+    }
+
+    @Test
+    public void testConcurrentRecord() throws Exception {
+        HotKeyDetector detector = newDetector(1);
+        try {
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int t = 0; t < 8; t++) {
+                final int seed = t;
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < 20000; i++) {
+                        detector.record("get", i % 2 == 0 ? "hot" + i % 3 : "cold" + (seed * 20000 + i) % 50000);
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            List<HotKey> hotKeys = detector.report();
+            Assert.assertEquals(10, hotKeys.size());
+            List<String> top = new ArrayList<String>();
+            for (HotKey hotKey : hotKeys.subList(0, 3)) {
+                top.add(hotKey.getKey());
+                Assert.assertTrue(String.valueOf(hotKey.getCount()), hotKey.getCount() >= 26666);
+            }
+            Assert.assertTrue(top.contains("hot0") && top.contains("hot1") && top.contains("hot2"));
+            for (int i = 1; i < hotKeys.size(); i++) {
+                Assert.assertTrue(hotKeys.get(i - 1).getCount() >= hotKeys.get(i).getCount());
+            }
+            Assert.assertEquals(160000, detector.getSampledAccesses());
+        } finally {
+            detector.destroy();
+        }
+    }
+
+    @Test
+    public void testListenerAndJmx() throws Exception {
+        HotKeyDetector detector = new HotKeyDetector();
+        detector.setName("testListenerAndJmx");
+        detector.setSampleRate(1);
+        detector.setHotThreshold(100);
+        final List<HotKey> notified = new ArrayList<HotKey>();
+        detector.addListener(notified::add);
+        detector.init();
+        try {
+            for (int i = 0; i < 100; i++) {
+                detector.record("get", "a");
+            }
+            detector.record("get", "b");
+            detector.report();
+            Assert.assertEquals(1, notified.size());
+            Assert.assertEquals("a", notified.get(0).getKey());
+
+            ObjectName name = new ObjectName(RedisMetrics.JMX_DOMAIN + ":type=HotKeys,name=" + ObjectName.quote("testListenerAndJmx"));
+            Assert.assertEquals(1, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "SampleRate"));
+        } finally {
+            detector.destroy();
+        }
+        Assert.assertTrue(ManagementFactory.getPlatformMBeanServer().queryNames(
+                new ObjectName(RedisMetrics.JMX_DOMAIN + ":type=HotKeys,*"), null).isEmpty());
+    }
+
+    @Test
+    public void testPromoteToNearCache() throws Exception {
+        StandInRedisServer server = redis.startServer();
+        RedisDriver driver = redis.newDriver();
+        HotKeyDetector detector = redis.manage(newDetector(1), HotKeyDetector::destroy);
+        detector.setHotThreshold(50);
+        SimpleRedisClient redisClient = redis.newClient(driver, client -> {
+            client.setMetricsEnabled(false);
+            client.setHotKeyDetector(detector);
+        });
+        NearCacheRedisClient nearCacheClient = new NearCacheRedisClient();
+        nearCacheClient.setDelegate(redisClient);
+        nearCacheClient.setHotKeysOnly(true);
+        nearCacheClient.init();
+        redis.manage(nearCacheClient, NearCacheRedisClient::destroy);
+        detector.addListener(nearCacheClient);
+
+        redisClient.set("hot", "1");
+        redisClient.set("cold", "2");
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals("1", nearCacheClient.get("hot"));
+        }
+        Assert.assertEquals("2", nearCacheClient.get("cold"));
+        Assert.assertEquals(0, nearCacheClient.getNearCache().size());
+
+        detector.report();
+        Assert.assertTrue(nearCacheClient.getPromotedKeys().contains("hot"));
+        Assert.assertFalse(nearCacheClient.getPromotedKeys().contains("cold"));
+
+        server.clearRequestLog();
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("1", nearCacheClient.get("hot"));
+            Assert.assertEquals("2", nearCacheClient.get("cold"));
+        }
+        int hotReads = 0;
+        for (List<String> request : server.getRequestLog()) {
+            if ("GET".equalsIgnoreCase(request.get(0)) && "hot".equals(request.get(1))) {
+                hotReads++;
+            }
+        }
+        // 提升后只有第一次读到达Redis
+        Assert.assertEquals(1, hotReads);
+        Assert.assertEquals(1, nearCacheClient.getNearCache().size());
+    }
+
+    private HotKeyDetector newDetector(int sampleRate) {
+        HotKeyDetector detector = new HotKeyDetector();
+        detector.setJmx(false);
+        detector.setSampleRate(sampleRate);
+        detector.setTopK(10);
+        detector.setReportIntervalMillis(60 * 1000);
+        detector.init();
+        return detector;
+    }
+}
@@ -0,0 +1,81 @@
+package com.linkedkeeper.redis.client.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * @Author: zhangsr
+ */
+public class TestLatencyHistogram {
+
+    @Test
+    public void testBuckets() {
+        Assert.assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.index(Long.MAX_VALUE));
+        Assert.assertEquals(Long.MAX_VALUE, LatencyHistogram.highestEquivalent(LatencyHistogram.BUCKETS - 1));
+        Random random = new Random(7);
+        for (int i = 0; i < 100000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            int index = LatencyHistogram.index(value);
+            long highest = LatencyHistogram.highestEquivalent(index);
+            Assert.assertTrue(value <= highest);
+            Assert.assertTrue(index == 0 || LatencyHistogram.highestEquivalent(index - 1) < value);
+            // 相对误差不超过1/32
+            Assert.assertTrue(highest - value <= value / 32);
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(1000, snapshot.getCount());
+        Assert.assertEquals(500500.0, snapshot.getMean(), 0.001);
+        assertClose(500000, snapshot.percentile(50));
+        assertClose(990000, snapshot.percentile(99));
+        assertClose(999000, snapshot.percentile(99.9));
+        Assert.assertEquals(1000000, snapshot.percentile(100));
+        Assert.assertEquals(0, new LatencyHistogram().snapshot().percentile(99));
+    }
+
+    @Test
+    public void testConcurrentRecords() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    histogram.record(1000);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(80000, snapshot.getCount());
+        assertClose(1000, snapshot.percentile(99));
+    }
+
+    @Test
+    public void testReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5000000);
+        histogram.reset();
+        Assert.assertEquals(0, histogram.snapshot().getCount());
+        Assert.assertEquals(0, histogram.snapshot().getMax());
+        histogram.record(1000);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(1, snapshot.getCount());
+        assertClose(1000, snapshot.percentile(100));
+    }
+
+    private static void assertClose(long expected, long actual) {
+        Assert.assertTrue("actual = " + actual, actual >= expected && actual - expected <= expected / 32);
+    }
+}
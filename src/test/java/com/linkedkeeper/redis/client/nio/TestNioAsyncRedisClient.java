@@ -0,0 +1,109 @@
+package com.linkedkeeper.redis.client.nio;
+
+import com.linkedkeeper.redis.client.base.RedisFixture;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import redis.clients.jedis.TransactionBlock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: zhangsr
+ */
+public class TestNioAsyncRedisClient {
+
+    @Rule
+    public RedisFixture redis = new RedisFixture();
+
+    private StandInRedisServer server;
+    private NioRedisEngine engine;
+    private NioAsyncRedisClient asyncClient;
+
+    @Before
+    public void setUp() throws Exception {
+        server = redis.getServer();
+        engine = new NioRedisEngine("127.0.0.1", server.getPort(), null, 0, 1, 3000);
+        engine.start();
+        redis.manage(engine, NioRedisEngine::shutdown);
+        RedisDriver driver = redis.newDriver();
+        ExecutorService exclusiveExecutor = redis.manage(Executors.newSingleThreadExecutor(), ExecutorService::shutdown);
+        asyncClient = new NioAsyncRedisClient(engine, redis.newClient(driver), exclusiveExecutor);
+    }
+
+    @Test
+    public void testOrdering() throws Exception {
+        List<CompletableFuture<Long>> futures = new ArrayList<CompletableFuture<Long>>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(asyncClient.rpush("list", String.valueOf(i)));
+        }
+        // 每个调用拿到的是自己那条命令的回复
+        for (int i = 0; i < futures.size(); i++) {
+            Assert.assertEquals(Long.valueOf(i + 1), futures.get(i).get(1, TimeUnit.SECONDS));
+        }
+        List<String> values = asyncClient.lrange("list", 0, -1).get(1, TimeUnit.SECONDS);
+        for (int i = 0; i < 200; i++) {
+            Assert.assertEquals(String.valueOf(i), values.get(i));
+        }
+        Assert.assertEquals(2, asyncClient.mget("a", "b").get(1, TimeUnit.SECONDS).size());
+    }
+
+    @Test
+    public void testErrorOnlyFailsItsCommand() throws Exception {
+        Assert.assertEquals("OK", asyncClient.set("str", "x").get(1, TimeUnit.SECONDS));
+        CompletableFuture<Long> wrong = asyncClient.incr("str");
+        CompletableFuture<Long> incr = asyncClient.incr("n");
+        Assert.assertEquals(Long.valueOf(1), incr.get(1, TimeUnit.SECONDS));
+        try {
+            wrong.get(1, TimeUnit.SECONDS);
+            Assert.fail("incr on a string should fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RedisException);
+            Assert.assertTrue(e.getCause().getMessage().contains("incr str"));
+        }
+        Assert.assertEquals("x", asyncClient.get("str").get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testMultiAndPipelined() throws Exception {
+        asyncClient.pipelined(pipeline -> {
+            pipeline.set("a", "1");
+            pipeline.set("b", "2");
+        }).get(1, TimeUnit.SECONDS);
+        List<Object> results = asyncClient.multi(new TransactionBlock() {
+            @Override
+            public void execute() {
+                get("a");
+                get("b");
+            }
+        }).get(1, TimeUnit.SECONDS);
+        Assert.assertEquals("1", results.get(0));
+        Assert.assertEquals("2", results.get(1));
+    }
+
+    @Test
+    public void testShutdownFailsPending() throws Exception {
+        asyncClient.set("k", "v").get(1, TimeUnit.SECONDS);
+        server.setLatency("GET", 1000);
+        CompletableFuture<String> pending = asyncClient.get("k");
+        engine.shutdown();
+        try {
+            pending.get(1, TimeUnit.SECONDS);
+            Assert.fail("pending command should fail on shutdown");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RedisException);
+        }
+        // 停止后的命令立即失败
+        Assert.assertTrue(asyncClient.get("k").isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,195 @@
+package com.linkedkeeper.redis.client.nio;
+
+import com.linkedkeeper.redis.client.base.RedisFixture;
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import redis.clients.jedis.BuilderFactory;
+import redis.clients.jedis.Protocol.Command;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: zhangsr
+ */
+public class TestNioRedisEngine {
+
+    @Rule
+    public RedisFixture redis = new RedisFixture();
+
+    private StandInRedisServer server;
+    private NioRedisEngine engine;
+
+    @Before
+    public void setUp() throws Exception {
+        server = redis.getServer();
+        engine = new NioRedisEngine("127.0.0.1", server.getPort(), null, 0, 2, 3000);
+        engine.setReconnectIntervalMillis(100);
+        engine.start();
+        redis.manage(engine, NioRedisEngine::shutdown);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDecodeFragmented() {
+        byte[] raw = "*3\r\n$5\r\nhello\r\n:42\r\n*2\r\n+OK\r\n$-1\r\n-ERR boom\r\n".getBytes(Charset.forName("UTF-8"));
+        RespDecoder decoder = new RespDecoder();
+        ByteBuffer buffer = ByteBuffer.allocate(raw.length);
+        List<Object> replies = new ArrayList<Object>();
+        for (byte b : raw) {
+            buffer.put(b);
+            buffer.flip();
+            Object reply;
+            while ((reply = decoder.decode(buffer)) != RespDecoder.INCOMPLETE) {
+                replies.add(reply);
+            }
+            buffer.compact();
+        }
+        Assert.assertEquals(2, replies.size());
+        List<Object> array = (List<Object>) replies.get(0);
+        Assert.assertEquals("hello", new String((byte[]) array.get(0)));
+        Assert.assertEquals(42L, array.get(1));
+        List<Object> nested = (List<Object>) array.get(2);
+        Assert.assertEquals("OK", new String((byte[]) nested.get(0)));
+        Assert.assertNull(nested.get(1));
+        Assert.assertTrue(replies.get(1) instanceof JedisDataException);
+    }
+
+    @Test
+    public void testDecodeView() {
+        byte[] raw = "$5\r\nhello\r\n:1\r\n".getBytes(Charset.forName("UTF-8"));
+        RespDecoder decoder = new RespDecoder();
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.put(raw, 0, 7);
+        buffer.flip();
+        Assert.assertSame(RespDecoder.WAIT, decoder.decodeView(buffer));
+        Assert.assertEquals(0, buffer.position());
+
+        buffer.compact();
+        buffer.put(raw, 7, raw.length - 7);
+        buffer.flip();
+        ByteBuffer view = decoder.decodeView(buffer);
+        Assert.assertTrue(view.isReadOnly());
+        Assert.assertEquals(5, view.remaining());
+        Assert.assertEquals('h', view.get(0));
+        // 非bulk回复交给decode
+        Assert.assertNull(decoder.decodeView(buffer));
+        Assert.assertEquals(1L, decoder.decode(buffer));
+
+        // 超过缓冲区容量的bulk交给decode复制
+        ByteBuffer small = ByteBuffer.wrap("$100\r\nabc".getBytes(Charset.forName("UTF-8")));
+        Assert.assertNull(decoder.decodeView(small));
+        Assert.assertSame(RespDecoder.INCOMPLETE, decoder.decode(small));
+    }
+
+    @Test
+    public void testConcurrentCommandsShareConnections() throws Exception {
+        final int threads = 32;
+        final int perThread = 500;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    List<CompletableFuture<Long>> futures = new ArrayList<CompletableFuture<Long>>();
+                    for (int i = 0; i < perThread; i++) {
+                        futures.add(engine.execute(BuilderFactory.LONG, Command.INCR, "counter"));
+                    }
+                    for (CompletableFuture<Long> future : futures) {
+                        future.get(5, TimeUnit.SECONDS);
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+        Assert.assertEquals(String.valueOf(threads * perThread),
+                engine.execute(BuilderFactory.STRING, Command.GET, "counter").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLargeValue() throws Exception {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 300 * 1024; i++) {
+            value.append((char) ('a' + i % 26));
+        }
+        engine.execute(BuilderFactory.STRING, Command.SET, "big", value.toString()).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(value.toString(), engine.execute(BuilderFactory.STRING, Command.GET, "big").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTimeoutFailsOnlyItsCommand() throws Exception {
+        NioRedisEngine single = redis.manage(new NioRedisEngine("127.0.0.1", server.getPort(), null, 0, 1, 300), NioRedisEngine::shutdown);
+        single.start();
+        single.execute(BuilderFactory.STRING, Command.SET, "k", "v").get(5, TimeUnit.SECONDS);
+        server.delayNext("GET", 1, 600);
+        CompletableFuture<String> slow = single.execute(BuilderFactory.STRING, Command.GET, "k");
+        Thread.sleep(450);
+        // 排在超时命令之后的命令在同一连接上正常完成
+        CompletableFuture<Long> next = single.execute(BuilderFactory.LONG, Command.INCR, "n");
+        try {
+            slow.get(5, TimeUnit.SECONDS);
+            Assert.fail("get should time out");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause().getMessage().contains("timed out"));
+        }
+        Assert.assertEquals(Long.valueOf(1), next.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals("v", single.execute(BuilderFactory.STRING, Command.GET, "k").get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(3, server.getConnectionCount());
+    }
+
+    @Test
+    public void testMaxQueuedBytes() throws Exception {
+        // 未连接的连接不写出，命令都留在outbound中
+        NioConnection connection = new NioConnection(engine, new InetSocketAddress("127.0.0.1", server.getPort()));
+        byte[][] args = {Command.SET.getRaw(), "k".getBytes(), new byte[1000]};
+        NioCommand<String> first = new NioCommand<String>(args, BuilderFactory.STRING);
+        NioCommand<String> second = new NioCommand<String>(args, BuilderFactory.STRING);
+        NioCommand<String> third = new NioCommand<String>(args, BuilderFactory.STRING);
+        connection.submit(first, 2100);
+        connection.submit(second, 2100);
+        connection.submit(third, 2100);
+        Assert.assertFalse(first.future.isDone());
+        Assert.assertFalse(second.future.isDone());
+        Assert.assertTrue(third.future.isCompletedExceptionally());
+
+        // 没有其它等待写出的命令时，超过上限的单条命令仍然接受
+        NioConnection empty = new NioConnection(engine, new InetSocketAddress("127.0.0.1", server.getPort()));
+        NioCommand<String> large = new NioCommand<String>(args, BuilderFactory.STRING);
+        empty.submit(large, 100);
+        Assert.assertFalse(large.future.isDone());
+        connection.close(new IllegalStateException("test"));
+        empty.close(new IllegalStateException("test"));
+        Assert.assertTrue(first.future.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testReconnect() throws Exception {
+        engine.execute(BuilderFactory.STRING, Command.SET, "k", "v").get(5, TimeUnit.SECONDS);
+        server.dropConnections();
+        // 断开后的命令失败，重连后恢复
+        long deadline = System.currentTimeMillis() + 5000;
+        String value = null;
+        while (value == null && System.currentTimeMillis() < deadline) {
+            try {
+                value = engine.execute(BuilderFactory.STRING, Command.GET, "k").get(5, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                Thread.sleep(50);
+            }
+        }
+        Assert.assertEquals("v", value);
+    }
+}
@@ -0,0 +1,214 @@
+package com.linkedkeeper.redis.client.pipeline;
+
+import com.linkedkeeper.redis.client.base.RedisFixture;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.TransactionBlock;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @Author: zhangsr
+ */
+public class TestAutoPipelining {
+
+    @Rule
+    public RedisFixture redis = new RedisFixture();
+
+    private StandInRedisServer server;
+    private RedisDriver driver;
+    private AutoPipeliningAsyncRedisClient asyncClient;
+
+    @Before
+    public void setUp() throws Exception {
+        server = redis.getServer();
+        driver = redis.newDriver();
+    }
+
+    @Test
+    public void testOrdering() throws Exception {
+        asyncClient = newAsyncClient(1, 16, 0);
+        List<CompletableFuture<Long>> futures = new ArrayList<CompletableFuture<Long>>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(asyncClient.rpush("list", String.valueOf(i)));
+        }
+        // 每个调用拿到的是自己那条命令的回复
+        for (int i = 0; i < futures.size(); i++) {
+            Assert.assertEquals(Long.valueOf(i + 1), futures.get(i).get(1, TimeUnit.SECONDS));
+        }
+        List<String> values = asyncClient.lrange("list", 0, -1).get(1, TimeUnit.SECONDS);
+        for (int i = 0; i < 200; i++) {
+            Assert.assertEquals(String.valueOf(i), values.get(i));
+        }
+    }
+
+    @Test
+    public void testFlushWhenBatchIsFull() throws Exception {
+        asyncClient = newAsyncClient(1, 5, TimeUnit.SECONDS.toMicros(10));
+        List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(asyncClient.set("k" + i, "v"));
+        }
+        Thread.sleep(100);
+        // 不足maxBatchSize时等待flushWindow
+        for (CompletableFuture<String> future : futures) {
+            Assert.assertFalse(future.isDone());
+        }
+        Assert.assertTrue(server.getRequestLog().isEmpty());
+
+        futures.add(asyncClient.set("k4", "v"));
+        for (CompletableFuture<String> future : futures) {
+            Assert.assertEquals("OK", future.get(1, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(5, server.getRequestLog().size());
+    }
+
+    @Test
+    public void testShutdownFailsPending() throws Exception {
+        asyncClient = newAsyncClient(1, 5, TimeUnit.SECONDS.toMicros(10));
+        CompletableFuture<String> pending = asyncClient.set("k", "v");
+        asyncClient.destroy();
+        try {
+            pending.get(1, TimeUnit.SECONDS);
+            Assert.fail("pending command should fail on shutdown");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RedisException);
+        }
+    }
+
+    @Test
+    public void testErrorOnlyFailsItsCommand() throws Exception {
+        asyncClient = newAsyncClient(1, 3, TimeUnit.SECONDS.toMicros(10));
+        CompletableFuture<String> set = asyncClient.set("str", "x");
+        CompletableFuture<Long> wrong = asyncClient.incr("str");
+        CompletableFuture<Long> incr = asyncClient.incr("n");
+
+        Assert.assertEquals("OK", set.get(1, TimeUnit.SECONDS));
+        Assert.assertEquals(Long.valueOf(1), incr.get(1, TimeUnit.SECONDS));
+        try {
+            wrong.get(1, TimeUnit.SECONDS);
+            Assert.fail("incr on a string should fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RedisException);
+            Assert.assertTrue(e.getCause().getMessage().contains("incr str"));
+        }
+    }
+
+    @Test
+    public void testSetExpireOutOfIntRange() throws Exception {
+        asyncClient = newAsyncClient(1, 16, 0);
+        Assert.assertEquals("OK", asyncClient.set("k", "v", "NX", "PX", 60000L).get(1, TimeUnit.SECONDS));
+        try {
+            asyncClient.set("big", "v", "NX", "PX", Integer.MAX_VALUE + 1L).get(1, TimeUnit.SECONDS);
+            Assert.fail("expire time out of int range should be rejected");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RedisException);
+        }
+        Assert.assertNull(asyncClient.get("big").get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        AutoPipeliningRedisClient redisClient = newClient(200);
+        redisClient.set("k", "v");
+        server.delayNext("GET", 1, 500);
+        try {
+            redisClient.get("k");
+            Assert.fail("get should time out");
+        } catch (RedisException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        // 超时的回复到达后连接仍然可用，后续回复不错位
+        redisClient.setTimeoutMillis(2000);
+        Assert.assertEquals("v", redisClient.get("k"));
+        Assert.assertEquals(Long.valueOf(1), redisClient.incr("n"));
+    }
+
+    @Test
+    public void testScansRunOnCallerThreads() throws Exception {
+        AutoPipeliningRedisClient redisClient = newClient(5000);
+        for (int i = 0; i < 30; i++) {
+            redisClient.sadd("s", "m" + i);
+        }
+        List<String> members = new ArrayList<String>();
+        redisClient.sscanAll("s", 7).forEachRemaining(members::add);
+        Assert.assertEquals(30, new HashSet<String>(members).size());
+
+        // 并发的sscan各自借用连接，不排队等待同一个线程
+        server.setLatency("SSCAN", 300);
+        server.clearRequestLog();
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            List<CompletableFuture<Integer>> scans = new ArrayList<CompletableFuture<Integer>>();
+            for (int i = 0; i < 4; i++) {
+                scans.add(CompletableFuture.supplyAsync(() -> redisClient.sscan("s", "0", new ScanParams().count(100)).getResult().size(), callers));
+            }
+            Thread.sleep(150);
+            Assert.assertEquals(4, server.getRequestLog().size());
+            for (CompletableFuture<Integer> scan : scans) {
+                Assert.assertEquals(Integer.valueOf(30), scan.get(2, TimeUnit.SECONDS));
+            }
+        } finally {
+            callers.shutdown();
+        }
+    }
+
+    @Test
+    public void testSwitchMaster() throws Exception {
+        StandInRedisServer newMaster = redis.startServer();
+        AutoPipeliningRedisClient redisClient = newClient(1000);
+        redisClient.set("k", "old");
+        redisClient.handleDataChange("/redis/master", newMaster.getAddress());
+
+        Assert.assertNull(redisClient.get("k"));
+        redisClient.set("k", "new");
+        redisClient.pipelined(pipeline -> pipeline.set("p", "1"));
+        List<Object> results = redisClient.multi(new TransactionBlock() {
+            @Override
+            public void execute() {
+                get("k");
+            }
+        });
+        Assert.assertEquals("new", results.get(0));
+        Assert.assertEquals("1", redisClient.get("p"));
+
+        // 空闲的写线程也归还了旧master的连接
+        long deadline = System.currentTimeMillis() + 2000;
+        while (server.getConnectionCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, server.getConnectionCount());
+    }
+
+    private AutoPipeliningAsyncRedisClient newAsyncClient(int connections, int maxBatchSize, long flushWindowMicros) {
+        AutoPipeliningAsyncRedisClient client = new AutoPipeliningAsyncRedisClient();
+        client.setDriver(driver);
+        client.setConnections(connections);
+        client.setMaxBatchSize(maxBatchSize);
+        client.setFlushWindowMicros(flushWindowMicros);
+        client.init();
+        return redis.manage(client, AutoPipeliningAsyncRedisClient::destroy);
+    }
+
+    private AutoPipeliningRedisClient newClient(long timeoutMillis) {
+        AutoPipeliningRedisClient client = new AutoPipeliningRedisClient();
+        client.setDriver(driver);
+        client.setTimeoutMillis(timeoutMillis);
+        client.init();
+        return redis.manage(client, AutoPipeliningRedisClient::destroy);
+    }
+}
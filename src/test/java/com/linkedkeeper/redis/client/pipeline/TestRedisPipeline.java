@@ -0,0 +1,135 @@
+package com.linkedkeeper.redis.client.pipeline;
+
+import com.linkedkeeper.redis.client.base.RedisFixture;
+import com.linkedkeeper.redis.client.sample.SimpleRedisClient;
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @Author: zhangsr
+ */
+public class TestRedisPipeline {
+
+    @Rule
+    public RedisFixture redis = new RedisFixture();
+
+    private StandInRedisServer server;
+    private Jedis jedis;
+
+    @Before
+    public void setUp() throws Exception {
+        server = redis.getServer();
+        jedis = redis.manage(new Jedis("127.0.0.1", server.getPort(), 1000), Jedis::close);
+    }
+
+    @Test
+    public void testSyncEveryBatch() {
+        RedisPipeline pipeline = new RedisPipeline(jedis.pipelined(), 3);
+        server.clearRequestLog();
+        Response<String> first = pipeline.set("a", "1");
+        pipeline.set("b", "2");
+        Assert.assertTrue(server.getRequestLog().isEmpty());
+        pipeline.set("c", "3");
+        // 第batchSize条命令排队后写出并读取这一批的回复
+        Assert.assertEquals(3, server.getRequestLog().size());
+        Assert.assertEquals("OK", first.get());
+
+        Response<String> fourth = pipeline.get("a");
+        try {
+            fourth.get();
+            Assert.fail("response of an unsynced command should not be available");
+        } catch (JedisDataException expected) {
+        }
+        pipeline.sync();
+        Assert.assertEquals("1", fourth.get());
+        Assert.assertEquals(4, server.getRequestLog().size());
+
+        // 没有未返回的命令时sync不再访问服务端
+        pipeline.sync();
+        Assert.assertEquals(4, server.getRequestLog().size());
+    }
+
+    @Test
+    public void testResponseOrdering() {
+        RedisPipeline pipeline = new RedisPipeline(jedis.pipelined(), 7);
+        List<Response<Long>> pushes = new ArrayList<Response<Long>>();
+        for (int i = 0; i < 20; i++) {
+            pushes.add(pipeline.rpush("list", String.valueOf(i)));
+        }
+        Response<Long> incr = pipeline.incrBy("n", 5);
+        Response<String> set = pipeline.set("k", "v");
+        Response<String> get = pipeline.get("k");
+        Response<List<String>> range = pipeline.lrange("list", 0, 2);
+        Response<Long> pttl = pipeline.pttl("k");
+        pipeline.sync();
+
+        // 跨多个批次，每个Response对应自己那条命令的回复
+        for (int i = 0; i < pushes.size(); i++) {
+            Assert.assertEquals(Long.valueOf(i + 1), pushes.get(i).get());
+        }
+        Assert.assertEquals(Long.valueOf(5), incr.get());
+        Assert.assertEquals("OK", set.get());
+        Assert.assertEquals("v", get.get());
+        Assert.assertEquals(Arrays.asList("0", "1", "2"), range.get());
+        Assert.assertEquals(Long.valueOf(-1), pttl.get());
+    }
+
+    @Test
+    public void testErrorOnlyFailsItsResponse() {
+        jedis.set("str", "x");
+        RedisPipeline pipeline = new RedisPipeline(jedis.pipelined(), 2);
+        Response<Long> before = pipeline.incr("n");
+        Response<Long> wrong = pipeline.incr("str");
+        Response<Long> after = pipeline.incr("n");
+        pipeline.sync();
+
+        Assert.assertEquals(Long.valueOf(1), before.get());
+        Assert.assertEquals(Long.valueOf(2), after.get());
+        try {
+            wrong.get();
+            Assert.fail("incr on a string should fail");
+        } catch (JedisDataException expected) {
+        }
+        // 出错后连接仍然可用
+        Assert.assertEquals("x", jedis.get("str"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBatchSize() {
+        new RedisPipeline(jedis.pipelined(), 0);
+    }
+
+    @Test
+    public void testClientPipelined() {
+        SimpleRedisClient redisClient = redis.newClient(redis.newDriver());
+        final List<Response<String>> gets = new ArrayList<Response<String>>();
+        server.clearRequestLog();
+        redisClient.pipelined(4, pipeline -> {
+            for (int i = 0; i < 10; i++) {
+                pipeline.set("k" + i, "v" + i);
+                gets.add(pipeline.get("k" + i));
+            }
+        });
+        // 结束时读取最后一批不足batchSize的回复
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals("v" + i, gets.get(i).get());
+        }
+        int commands = 0;
+        for (List<String> request : server.getRequestLog()) {
+            if ("SET".equals(request.get(0)) || "GET".equals(request.get(0))) {
+                commands++;
+            }
+        }
+        Assert.assertEquals(20, commands);
+    }
+}
@@ -0,0 +1,137 @@
+package com.linkedkeeper.redis.client.sample;
+
+import com.linkedkeeper.redis.client.base.RedisFixture;
+import com.linkedkeeper.redis.client.config.CircuitBreakerConfig;
+import com.linkedkeeper.redis.client.config.RedisPoolConfig;
+import com.linkedkeeper.redis.client.driver.CircuitBreaker;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.exception.RedisCircuitOpenException;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import redis.clients.jedis.Jedis;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * master变慢时命令超时并熔断，恢复后经过探测重新放行，分别在连接池和NIO引擎上运行
+ *
+ * @Author: zhangsr
+ */
+@RunWith(Parameterized.class)
+public class TestCircuitBreakerRedisClient {
+
+    @Rule
+    public RedisFixture redis = new RedisFixture();
+
+    private final String engine;
+
+    private StandInRedisServer server;
+    private RedisDriver driver;
+    private SimpleRedisClient redisClient;
+
+    public TestCircuitBreakerRedisClient(String engine) {
+        this.engine = engine;
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> engines() {
+        return Arrays.asList(new Object[][]{{RedisDriver.ENGINE_JEDIS}, {RedisDriver.ENGINE_NIO}});
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = redis.getServer();
+        CircuitBreakerConfig config = new CircuitBreakerConfig();
+        config.setEnabled(true);
+        config.setMinimumCalls(4);
+        config.setOpenMillis(100);
+        config.setHalfOpenProbes(2);
+        RedisPoolConfig poolConfig = new RedisPoolConfig();
+        poolConfig.setMaxTotal(1);
+        driver = redis.newDriver(driver -> {
+            driver.setEngine(engine);
+            driver.setCircuitBreakerConfig(config);
+            driver.setRedisPoolConfig(poolConfig);
+        });
+        redisClient = redis.newClient(driver);
+    }
+
+    @Test
+    public void testOpenAndRecover() throws Exception {
+        redisClient.set("k", "v");
+        server.setLatency("GET", 300);
+        SimpleRedisClient fast = redisClient.withTimeouts(-1, 50);
+        // 加上之前的set共4次调用，其中3次超时
+        for (int i = 0; i < 3; i++) {
+            try {
+                fast.get("k");
+                Assert.fail("get should time out");
+            } catch (RedisCircuitOpenException e) {
+                Assert.fail("circuit should not open before minimumCalls");
+            } catch (RedisException expected) {
+            }
+        }
+        CircuitBreaker circuitBreaker = driver.getMasterNode().getCircuitBreaker();
+        Assert.assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        // 熔断期间不发出命令，直接失败
+        server.clearRequestLog();
+        long start = System.currentTimeMillis();
+        try {
+            redisClient.set("k", "v2");
+            Assert.fail("set should fail fast");
+        } catch (RedisCircuitOpenException expected) {
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 50);
+        Assert.assertTrue(server.getRequestLog().isEmpty());
+
+        server.setLatency("GET", 0);
+        Thread.sleep(150);
+        Assert.assertEquals("v", redisClient.get("k"));
+        Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        Assert.assertEquals("v", redisClient.get("k"));
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void testDataErrorIsNotFailure() {
+        redisClient.lpush("list", "a");
+        for (int i = 0; i < 10; i++) {
+            try {
+                redisClient.get("list");
+                Assert.fail("get on a list should fail");
+            } catch (RedisCircuitOpenException e) {
+                Assert.fail("WRONGTYPE should not open the circuit");
+            } catch (RedisException expected) {
+            }
+        }
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, driver.getMasterNode().getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void testBorrowTimeout() {
+        if (!RedisDriver.ENGINE_JEDIS.equals(engine)) {
+            return;
+        }
+        Jedis jedis = driver.getMasterNode().getJedisPool().getResource();
+        try {
+            long start = System.currentTimeMillis();
+            try {
+                redisClient.withTimeouts(20, 0).get("k");
+                Assert.fail("borrow should time out");
+            } catch (RedisException expected) {
+            }
+            Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+        } finally {
+            jedis.close();
+        }
+        Assert.assertNull(redisClient.get("k"));
+    }
+}
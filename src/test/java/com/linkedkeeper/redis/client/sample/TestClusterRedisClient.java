@@ -0,0 +1,153 @@
+package com.linkedkeeper.redis.client.sample;
+
+import com.linkedkeeper.redis.client.base.RedisFixture;
+import com.linkedkeeper.redis.client.driver.ClusterRedirect;
+import com.linkedkeeper.redis.client.driver.ClusterRouter;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import com.linkedkeeper.redis.client.server.StandInRedisCluster;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 三个节点的StandInRedisCluster，分别在连接池和NIO引擎上运行
+ *
+ * @Author: zhangsr
+ */
+@RunWith(Parameterized.class)
+public class TestClusterRedisClient {
+
+    @Rule
+    public RedisFixture redis = new RedisFixture(0);
+
+    private final String engine;
+
+    private StandInRedisCluster cluster;
+    private RedisDriver driver;
+    private SimpleRedisClient redisClient;
+
+    public TestClusterRedisClient(String engine) {
+        this.engine = engine;
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> engines() {
+        return Arrays.asList(new Object[][]{{RedisDriver.ENGINE_JEDIS}, {RedisDriver.ENGINE_NIO}});
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        cluster = redis.manage(new StandInRedisCluster(3).start(), StandInRedisCluster::stop);
+        driver = redis.newDriver(cluster.getSeeds(), driver -> {
+            driver.setMode(RedisDriver.MODE_CLUSTER);
+            driver.setEngine(engine);
+        });
+        redisClient = redis.newClient(driver);
+    }
+
+    @Test
+    public void testKeysAreRoutedBySlot() {
+        String[] keys = new String[60];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key" + i;
+            redisClient.set(keys[i], "v" + i);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            Assert.assertEquals("v" + i, redisClient.get(keys[i]));
+            Assert.assertEquals("v" + i, read(cluster.ownerOf(keys[i]), keys[i]));
+        }
+        Assert.assertEquals(3, driver.getClusterRouter().getMasters().size());
+        Assert.assertEquals(60, redisClient.keys("key*").size());
+        Set<String> scanned = new HashSet<String>();
+        redisClient.scan("key*", 7, scanned::add);
+        Assert.assertEquals(60, scanned.size());
+        Assert.assertEquals(Long.valueOf(60), redisClient.del(keys));
+        Assert.assertTrue(redisClient.keys("*").isEmpty());
+    }
+
+    @Test
+    public void testBatchCommandsBySlot() {
+        Assert.assertEquals("OK", redisClient.msetex(60, "{user}:1", "a", "{user}:2", "b", "k1", "c", "k2", "d"));
+        Assert.assertEquals(Arrays.asList("d", "a", null, "c", "b"),
+                redisClient.mget("k2", "{user}:1", "missing", "k1", "{user}:2"));
+        redisClient.sadd("s1", "x");
+        redisClient.sadd("s2", "y");
+        Assert.assertEquals(Arrays.asList(new HashSet<String>(Arrays.asList("y")), new HashSet<String>(Arrays.asList("x"))),
+                redisClient.smembersMulti("s2", "s1"));
+    }
+
+    @Test
+    public void testMovedUpdatesSlotTable() {
+        redisClient.set("user:1", "a");
+        int slot = ClusterRouter.slot("user:1");
+        int to = (cluster.ownerOf("user:1") + 1) % 3;
+        cluster.moveSlot(slot, to);
+
+        Assert.assertEquals("a", redisClient.get("user:1"));
+        Assert.assertEquals(cluster.getServer(to).getAddress(),
+                driver.getClusterRouter().route("user:1").getAddress().toString());
+        redisClient.set("user:1", "b");
+        Assert.assertEquals("b", read(to, "user:1"));
+    }
+
+    @Test
+    public void testAskDuringMigration() {
+        redisClient.set("user:1", "a");
+        int slot = ClusterRouter.slot("user:1");
+        int from = cluster.ownerOf("user:1");
+        int to = (from + 1) % 3;
+        cluster.beginMigration(slot, to);
+
+        // 已有的key仍在源节点，新key按ASK写到目标节点
+        Assert.assertEquals("a", redisClient.get("user:1"));
+        redisClient.set("{user:1}:new", "b");
+        Assert.assertEquals("b", redisClient.get("{user:1}:new"));
+        Assert.assertEquals("b", read(to, "{user:1}:new"));
+        // ASK不更新slot表
+        Assert.assertEquals(cluster.getServer(from).getAddress(),
+                driver.getClusterRouter().route("user:1").getAddress().toString());
+    }
+
+    @Test
+    public void testHashTagsKeepKeysInOneSlot() {
+        redisClient.rpush("{q}:src", "a", "b");
+        Assert.assertEquals("b", redisClient.rpoplpush("{q}:src", "{q}:dst"));
+        Assert.assertEquals(Long.valueOf(1), redisClient.llen("{q}:dst"));
+        try {
+            redisClient.rpoplpush("{q}:src", "other");
+            Assert.fail();
+        } catch (RedisException expected) {
+        }
+    }
+
+    @Test
+    public void testParseRedirect() {
+        ClusterRedirect redirect = ClusterRedirect.of(new RedisException("execute 'get k' fail!",
+                new JedisDataException("ASK 3999 127.0.0.1:6381")));
+        Assert.assertTrue(redirect.isAsk());
+        Assert.assertEquals(3999, redirect.getSlot());
+        Assert.assertEquals(6381, redirect.getTarget().getPort());
+        Assert.assertNull(ClusterRedirect.of(new JedisDataException("ERR wrong number of arguments")));
+    }
+
+    private String read(int index, String key) {
+        Jedis jedis = new Jedis("127.0.0.1", cluster.getServer(index).getPort());
+        try {
+            jedis.asking();
+            return jedis.get(key);
+        } finally {
+            jedis.close();
+        }
+    }
+}
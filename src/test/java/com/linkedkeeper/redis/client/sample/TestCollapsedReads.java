@@ -0,0 +1,163 @@
+package com.linkedkeeper.redis.client.sample;
+
+import com.linkedkeeper.redis.client.base.RedisFixture;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 慢回复期间并发的相同读只发出一次
+ *
+ * @Author: zhangsr
+ */
+public class TestCollapsedReads {
+
+    @Rule
+    public RedisFixture redis = new RedisFixture();
+
+    private final static int THREADS = 16;
+
+    private StandInRedisServer server;
+    private RedisDriver driver;
+    private SimpleRedisClient redisClient;
+
+    @Before
+    public void setUp() throws Exception {
+        server = redis.getServer();
+        driver = redis.newDriver();
+        redisClient = redis.newClient(driver, client -> client.setCollapseReads(true));
+    }
+
+    @Test
+    public void testConcurrentGets() throws Exception {
+        redisClient.set("hot", "v");
+        server.setLatency("GET", 200);
+        server.clearRequestLog();
+
+        for (String value : join(concurrently(() -> redisClient.get("hot")))) {
+            Assert.assertEquals("v", value);
+        }
+        Assert.assertEquals(1, count("GET"));
+        Assert.assertEquals(THREADS - 1, redisClient.getCollapsedReads());
+
+        // 之后的读重新执行
+        server.setLatency("GET", 0);
+        Assert.assertEquals("v", redisClient.get("hot"));
+        Assert.assertEquals(2, count("GET"));
+    }
+
+    @Test
+    public void testDifferentFieldsAreNotCollapsed() throws Exception {
+        redisClient.hset("h", "a", "1");
+        redisClient.hset("h", "b", "2");
+        server.setLatency("HGET", 100);
+        CompletableFuture<String> a = CompletableFuture.supplyAsync(() -> redisClient.hget("h", "a"));
+        CompletableFuture<String> b = CompletableFuture.supplyAsync(() -> redisClient.hget("h", "b"));
+        Assert.assertEquals("1", a.get(1, TimeUnit.SECONDS));
+        Assert.assertEquals("2", b.get(1, TimeUnit.SECONDS));
+        Assert.assertEquals(0, redisClient.getCollapsedReads());
+    }
+
+    @Test
+    public void testSharedResultsAreCopied() throws Exception {
+        redisClient.hset("h", "a", "1");
+        server.setLatency("HGETALL", 200);
+        List<Map<String, String>> results = join(concurrently(() -> redisClient.hgetAll("h")));
+        for (Map<String, String> result : results) {
+            result.put("mine", "x");
+            Assert.assertEquals(2, result.size());
+        }
+    }
+
+    @Test
+    public void testSharedFailure() throws Exception {
+        server.setLatency("GET", 300);
+        SimpleRedisClient fast = redisClient.withTimeouts(-1, 100);
+        for (CompletableFuture<String> future : concurrently(() -> fast.get("k"))) {
+            try {
+                future.get(2, TimeUnit.SECONDS);
+                Assert.fail("get should time out");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof RedisException);
+            }
+        }
+        Assert.assertEquals(THREADS - 1, redisClient.getCollapsedReads());
+        server.setLatency("GET", 0);
+        Assert.assertNull(redisClient.get("k"));
+    }
+
+    @Test
+    public void testFollowerWaitIsBoundedByItsTimeout() throws Exception {
+        redisClient.set("k", "v");
+        server.setLatency("GET", 500);
+        server.clearRequestLog();
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> redisClient.get("k"));
+        while (count("GET") == 0) {
+            Thread.sleep(5);
+        }
+        try {
+            redisClient.withTimeouts(-1, 100).get("k");
+            Assert.fail("follower should time out");
+        } catch (RedisException e) {
+            Assert.assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        Assert.assertEquals(1, redisClient.getCollapsedReads());
+        Assert.assertEquals("v", leader.get(2, TimeUnit.SECONDS));
+        Assert.assertEquals(1, count("GET"));
+    }
+
+    /**
+     * THREADS个线程同时开始执行read
+     */
+    private <T> List<CompletableFuture<T>> concurrently(Supplier<T> read) {
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<T>> futures = new ArrayList<CompletableFuture<T>>();
+        for (int i = 0; i < THREADS; i++) {
+            CompletableFuture<T> future = new CompletableFuture<T>();
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    future.complete(read.get());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+            thread.start();
+            futures.add(future);
+        }
+        start.countDown();
+        return futures;
+    }
+
+    private static <T> List<T> join(List<CompletableFuture<T>> futures) throws Exception {
+        List<T> results = new ArrayList<T>();
+        for (CompletableFuture<T> future : futures) {
+            results.add(future.get(2, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+
+    private int count(String command) {
+        int count = 0;
+        for (List<String> request : server.getRequestLog()) {
+            if (command.equalsIgnoreCase(request.get(0))) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,139 @@
+package com.linkedkeeper.redis.client.sample;
+
+import com.linkedkeeper.redis.client.base.RedisFixture;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 两个StandInRedisServer模拟master切换，分别在连接池和NIO引擎上运行
+ *
+ * @Author: zhangsr
+ */
+@RunWith(Parameterized.class)
+public class TestHandleDataChange {
+
+    @Rule
+    public RedisFixture redis = new RedisFixture(2);
+
+    private final String engine;
+
+    private StandInRedisServer oldMaster;
+    private StandInRedisServer newMaster;
+    private RedisDriver driver;
+    private SimpleRedisClient redisClient;
+
+    public TestHandleDataChange(String engine) {
+        this.engine = engine;
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> engines() {
+        return Arrays.asList(new Object[][]{{RedisDriver.ENGINE_JEDIS}, {RedisDriver.ENGINE_NIO}});
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        oldMaster = redis.getServer(0);
+        newMaster = redis.getServer(1);
+        driver = redis.newDriver(oldMaster.getAddress(), driver -> driver.setEngine(engine));
+        redisClient = redis.newClient(driver);
+    }
+
+    @Test
+    public void testSwitchUnderLoad() throws Exception {
+        redisClient.set("k", "old");
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        Thread[] workers = new Thread[8];
+        for (int i = 0; i < workers.length; i++) {
+            final String key = "w" + i;
+            workers[i] = new Thread(() -> {
+                while (running.get()) {
+                    try {
+                        redisClient.incr(key);
+                        redisClient.get(key);
+                        calls.incrementAndGet();
+                    } catch (RedisException e) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        Thread.sleep(100);
+        redisClient.handleDataChange("/redis/master", newMaster.getAddress());
+        int callsAtSwitch = calls.get();
+        Thread.sleep(100);
+        running.set(false);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        Assert.assertEquals(0, failures.get());
+        Assert.assertTrue(calls.get() > callsAtSwitch);
+        // 切换后的命令都在新master上执行，旧master的连接已经关闭
+        Assert.assertNull(redisClient.get("k"));
+        Assert.assertNotNull(redisClient.get("w0"));
+        Assert.assertEquals(newMaster.getAddress(), driver.getMasterAddress().toString());
+        long deadline = System.currentTimeMillis() + 1000;
+        while (oldMaster.getConnectionCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, oldMaster.getConnectionCount());
+    }
+
+    @Test
+    public void testDrainInFlight() throws Exception {
+        redisClient.set("k", "old");
+        oldMaster.setLatency("GET", 300);
+        CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> redisClient.get("k"));
+        Thread.sleep(50);
+
+        long start = System.currentTimeMillis();
+        redisClient.handleDataChange("/redis/master", newMaster.getAddress());
+        // 切换不等待旧master上执行中的命令，新的命令立即使用新master
+        Assert.assertTrue(System.currentTimeMillis() - start < 200);
+        Assert.assertNull(redisClient.get("k"));
+        Assert.assertFalse(slow.isDone());
+        // 执行中的get在旧master上完成后才关闭旧的连接
+        Assert.assertEquals("old", slow.get(1, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 1000;
+        while (oldMaster.getConnectionCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, oldMaster.getConnectionCount());
+    }
+
+    @Test
+    public void testUnreachableKeepsOldConnections() throws Exception {
+        redisClient.set("k", "old");
+        int port = newMaster.getPort();
+        newMaster.stop();
+        try {
+            redisClient.handleDataChange("/redis/master", "127.0.0.1:" + port);
+            Assert.fail("reload to unreachable address should fail");
+        } catch (RedisException expected) {
+        }
+        Assert.assertEquals("old", redisClient.get("k"));
+        Assert.assertEquals(oldMaster.getAddress(), driver.getMasterAddress().toString());
+
+        // 相同的配置不重建连接
+        driver.reload(oldMaster.getAddress());
+        Assert.assertEquals("old", redisClient.get("k"));
+    }
+}
@@ -0,0 +1,179 @@
+package com.linkedkeeper.redis.client.sample;
+
+import com.linkedkeeper.redis.client.base.RedisFixture;
+import com.linkedkeeper.redis.client.driver.HedgePolicy;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 副本变慢时读对冲到master，master和副本预置不同的值以区分结果来自哪个节点
+ *
+ * @Author: zhangsr
+ */
+public class TestHedgedReads {
+
+    @Rule
+    public RedisFixture redis = new RedisFixture(2);
+
+    private StandInRedisServer master;
+    private StandInRedisServer replica;
+    private RedisDriver driver;
+    private SimpleRedisClient redisClient;
+
+    @Before
+    public void setUp() throws Exception {
+        master = redis.getServer(0);
+        replica = redis.getServer(1);
+        seed(master, "master");
+        seed(replica, "replica");
+        driver = redis.newDriver(master.getAddress(), driver -> driver.setReplicaConf(replica.getAddress()));
+    }
+
+    @Test
+    public void testSlowReplicaIsHedged() throws Exception {
+        HedgePolicy hedgePolicy = startHedging(0.5);
+        replica.delayNext("GET", 1, 300);
+
+        Assert.assertEquals("master", redisClient.get("node"));
+        Assert.assertEquals(1, hedgePolicy.getHedges());
+        Assert.assertEquals(1, gets(master));
+        Assert.assertEquals(1, gets(replica));
+        // 没有变慢的读不对冲
+        Assert.assertEquals("replica", redisClient.get("node"));
+        Assert.assertEquals(1, hedgePolicy.getHedges());
+        Assert.assertEquals(1, gets(master));
+    }
+
+    @Test
+    public void testBudget() throws Exception {
+        HedgePolicy hedgePolicy = startHedging(0);
+        replica.delayNext("GET", 1, 300);
+
+        Assert.assertEquals("replica", redisClient.get("node"));
+        Assert.assertEquals(0, hedgePolicy.getHedges());
+        Assert.assertEquals(0, gets(master));
+    }
+
+    @Test
+    public void testReadOnCallerThreadUntilDelayIsKnown() throws Exception {
+        HedgePolicy hedgePolicy = new HedgePolicy();
+        hedgePolicy.setMinSamples(1000);
+        int before = hedgeThreads();
+        redisClient = redis.newClient(driver, client -> client.setHedgePolicy(hedgePolicy));
+        for (int i = 0; i < 40; i++) {
+            Assert.assertEquals("replica", redisClient.get("node"));
+        }
+        // 样本不足，没有切换到对冲线程
+        Assert.assertEquals(before, hedgeThreads());
+    }
+
+    @Test
+    public void testHedgeThreadsBounded() throws Exception {
+        HedgePolicy hedgePolicy = startHedging(1, 1);
+        replica.delayNext("GET", 1, 300);
+
+        // 唯一的线程在等待副本，对冲的读没有线程可用，不再发出
+        Assert.assertEquals("replica", redisClient.get("node"));
+        Assert.assertEquals(0, gets(master));
+        Assert.assertEquals(1, gets(replica));
+    }
+
+    @Test
+    public void testBudgetUnderConcurrentHedges() throws Exception {
+        HedgePolicy hedgePolicy = new HedgePolicy();
+        hedgePolicy.setBudget(0.1);
+        hedgePolicy.begin("get");
+        for (int i = 0; i < 9; i++) {
+            hedgePolicy.begin("get");
+        }
+        Thread[] threads = new Thread[8];
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (hedgePolicy.tryHedge("get")) {
+                    allowed.incrementAndGet();
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // 10次读的10%
+        Assert.assertEquals(1, allowed.get());
+        Assert.assertEquals(1, hedgePolicy.getHedges());
+    }
+
+    /**
+     * 创建带HedgePolicy的redisClient，先读若干次建立延迟分布，等待窗口结束后生效，之后清空两个节点的请求记录
+     */
+    private HedgePolicy startHedging(double budget) throws Exception {
+        return startHedging(budget, HedgePolicy.DEFAULT_MAX_THREADS);
+    }
+
+    private HedgePolicy startHedging(double budget, int maxThreads) throws Exception {
+        HedgePolicy hedgePolicy = new HedgePolicy();
+        hedgePolicy.setBudget(budget);
+        hedgePolicy.setMaxThreads(maxThreads);
+        hedgePolicy.setWindowMillis(50);
+        hedgePolicy.setMinSamples(10);
+        hedgePolicy.setMinDelayMillis(20);
+        redisClient = redis.newClient(driver, client -> client.setHedgePolicy(hedgePolicy));
+        for (int i = 0; i < 40; i++) {
+            Assert.assertEquals("replica", redisClient.get("node"));
+        }
+        Thread.sleep(60);
+        Assert.assertEquals(0, hedgePolicy.getHedges());
+        master.clearRequestLog();
+        replica.clearRequestLog();
+        return hedgePolicy;
+    }
+
+    private static int hedgeThreads() {
+        int threads = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("redis-worker-hedge-")) {
+                threads++;
+            }
+        }
+        return threads;
+    }
+
+    /**
+     * @return 节点收到的GET次数
+     */
+    private static int gets(StandInRedisServer server) {
+        int gets = 0;
+        for (List<String> request : server.getRequestLog()) {
+            if ("GET".equalsIgnoreCase(request.get(0))) {
+                gets++;
+            }
+        }
+        return gets;
+    }
+
+    private static void seed(StandInRedisServer server, String name) {
+        Jedis jedis = new Jedis("127.0.0.1", server.getPort());
+        try {
+            jedis.set("node", name);
+        } finally {
+            jedis.close();
+        }
+    }
+}
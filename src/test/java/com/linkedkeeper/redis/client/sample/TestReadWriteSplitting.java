@@ -0,0 +1,101 @@
+package com.linkedkeeper.redis.client.sample;
+
+import com.linkedkeeper.redis.client.base.RedisFixture;
+import com.linkedkeeper.redis.client.driver.ReadPolicy;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * master和两个副本是互相独立的StandInRedisServer，预置不同的值以区分读命令落在哪个节点
+ *
+ * @Author: zhangsr
+ */
+public class TestReadWriteSplitting {
+
+    @Rule
+    public RedisFixture redis = new RedisFixture(3);
+
+    private StandInRedisServer master;
+    private StandInRedisServer replica1;
+    private StandInRedisServer replica2;
+
+    @Before
+    public void setUp() throws Exception {
+        master = redis.getServer(0);
+        replica1 = redis.getServer(1);
+        replica2 = redis.getServer(2);
+        seed(master, "master");
+        seed(replica1, "replica1");
+        seed(replica2, "replica2");
+    }
+
+    @Test
+    public void testReadsGoToReplicas() {
+        SimpleRedisClient redisClient = newClient(ReadPolicy.ROUND_ROBIN, false);
+        Set<String> readFrom = new HashSet<String>();
+        for (int i = 0; i < 4; i++) {
+            readFrom.add(redisClient.get("node"));
+        }
+        Assert.assertEquals(2, readFrom.size());
+        Assert.assertFalse(readFrom.contains("master"));
+
+        redisClient.set("node", "written");
+        Assert.assertEquals("written", read(master, "node"));
+        Assert.assertEquals("replica1", read(replica1, "node"));
+    }
+
+    @Test
+    public void testReadYourWrites() {
+        SimpleRedisClient redisClient = newClient(ReadPolicy.LEAST_OUTSTANDING, true);
+        Assert.assertFalse("master".equals(redisClient.get("node")));
+        redisClient.hset("h", "f", "v");
+        Assert.assertEquals("master", redisClient.get("node"));
+        Assert.assertEquals("v", redisClient.hget("h", "f"));
+    }
+
+    @Test
+    public void testReplicaDownFallsBackToMaster() {
+        SimpleRedisClient redisClient = newClient(ReadPolicy.LATENCY_WEIGHTED, false);
+        replica1.stop();
+        replica2.stop();
+        for (int i = 0; i < 4; i++) {
+            Assert.assertEquals("master", redisClient.get("node"));
+        }
+    }
+
+    private SimpleRedisClient newClient(String readPolicy, boolean readYourWrites) {
+        RedisDriver driver = redis.newDriver(master.getAddress(), d -> {
+            d.setReplicaConf(replica1.getAddress() + ", " + replica2.getAddress());
+            d.setReadPolicy(readPolicy);
+            d.setReadYourWrites(readYourWrites);
+            d.setReplicaDownMillis(60000);
+        });
+        return redis.newClient(driver);
+    }
+
+    private static void seed(StandInRedisServer server, String name) {
+        Jedis jedis = new Jedis("127.0.0.1", server.getPort());
+        try {
+            jedis.set("node", name);
+        } finally {
+            jedis.close();
+        }
+    }
+
+    private static String read(StandInRedisServer server, String key) {
+        Jedis jedis = new Jedis("127.0.0.1", server.getPort());
+        try {
+            return jedis.get(key);
+        } finally {
+            jedis.close();
+        }
+    }
+}
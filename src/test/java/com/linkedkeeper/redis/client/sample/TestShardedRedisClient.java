@@ -0,0 +1,196 @@
+package com.linkedkeeper.redis.client.sample;
+
+import com.linkedkeeper.redis.client.base.RedisFixture;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.TransactionBlock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 三个StandInRedisServer作为shard，分别在连接池和NIO引擎上运行
+ *
+ * @Author: zhangsr
+ */
+@RunWith(Parameterized.class)
+public class TestShardedRedisClient {
+
+    @Rule
+    public RedisFixture redis = new RedisFixture(3);
+
+    private final String engine;
+
+    private StandInRedisServer[] shards = new StandInRedisServer[3];
+    private RedisDriver driver;
+    private SimpleRedisClient redisClient;
+
+    public TestShardedRedisClient(String engine) {
+        this.engine = engine;
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> engines() {
+        return Arrays.asList(new Object[][]{{RedisDriver.ENGINE_JEDIS}, {RedisDriver.ENGINE_NIO}});
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = redis.getServer(i);
+        }
+        driver = redis.newDriver(driver -> {
+            driver.setMode(RedisDriver.MODE_SHARDED);
+            driver.setEngine(engine);
+        });
+        redisClient = redis.newClient(driver);
+    }
+
+    @Test
+    public void testKeysAreSpreadAcrossShards() {
+        String[] keys = new String[60];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key" + i;
+            redisClient.set(keys[i], "v" + i);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            Assert.assertEquals("v" + i, redisClient.get(keys[i]));
+        }
+        for (StandInRedisServer shard : shards) {
+            Assert.assertTrue(size(shard) > 0);
+        }
+        Assert.assertEquals(60, redisClient.keys("key*").size());
+        Assert.assertEquals(Long.valueOf(60), redisClient.del(keys));
+        Assert.assertTrue(redisClient.keys("*").isEmpty());
+    }
+
+    @Test
+    public void testBatchCommandsAcrossShards() {
+        String[] keysvalues = new String[120];
+        String[] keys = new String[60];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = "key" + i;
+            keysvalues[i * 2] = keys[i];
+            keysvalues[i * 2 + 1] = "v" + i;
+        }
+        Assert.assertEquals("OK", redisClient.mset(keysvalues));
+        for (StandInRedisServer shard : shards) {
+            Assert.assertTrue(size(shard) > 0);
+        }
+        String[] reversed = new String[keys.length + 1];
+        for (int i = 0; i < keys.length; i++) {
+            reversed[i] = keys[keys.length - 1 - i];
+        }
+        reversed[keys.length] = "missing";
+        for (StandInRedisServer shard : shards) {
+            shard.clearRequestLog();
+        }
+        List<String> values = redisClient.mget(reversed);
+        for (int i = 0; i < keys.length; i++) {
+            Assert.assertEquals("v" + (keys.length - 1 - i), values.get(i));
+        }
+        Assert.assertNull(values.get(keys.length));
+        // 每个shard一条MGET
+        for (StandInRedisServer shard : shards) {
+            Assert.assertEquals(1, shard.getRequestLog().size());
+        }
+
+        for (int i = 0; i < keys.length; i++) {
+            redisClient.hset("h" + i, "f", "v" + i);
+        }
+        List<String> hashKeys = new ArrayList<String>();
+        for (int i = 0; i < keys.length; i++) {
+            hashKeys.add("h" + i);
+        }
+        List<List<String>> fields = redisClient.hmgetMulti(hashKeys, "f");
+        List<Map<String, String>> hashes = redisClient.hgetAllMulti(hashKeys.toArray(new String[hashKeys.size()]));
+        for (int i = 0; i < keys.length; i++) {
+            Assert.assertEquals("v" + i, fields.get(i).get(0));
+            Assert.assertEquals("v" + i, hashes.get(i).get("f"));
+        }
+    }
+
+    @Test
+    public void testBinaryBatchCommandsAcrossShards() {
+        SimpleBinaryRedisClient binaryClient = redis.newBinaryClient(driver);
+        byte[][] keys = new byte[30][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = ("bin" + i).getBytes();
+            binaryClient.set(keys[i], new byte[]{(byte) i});
+        }
+        for (StandInRedisServer shard : shards) {
+            Assert.assertFalse(shard.getRequestLog().isEmpty());
+        }
+        Assert.assertEquals(keys.length, binaryClient.keys("bin*".getBytes()).size());
+        Assert.assertEquals(Long.valueOf(keys.length), binaryClient.del(keys));
+        Assert.assertTrue(binaryClient.keys("bin*".getBytes()).isEmpty());
+    }
+
+    @Test
+    public void testScanAcrossShards() {
+        for (int i = 0; i < 60; i++) {
+            redisClient.set("key" + i, "v" + i);
+        }
+        for (boolean parallel : new boolean[]{true, false}) {
+            redisClient.setParallelScan(parallel);
+            Set<String> keys = new HashSet<String>();
+            redisClient.scan("key*", 7, keys::add);
+            Assert.assertEquals(60, keys.size());
+        }
+    }
+
+    @Test
+    public void testHashTagsKeepKeysTogether() {
+        redisClient.rpush("{q}:src", "a", "b");
+        Assert.assertEquals("b", redisClient.rpoplpush("{q}:src", "{q}:dst"));
+        Assert.assertEquals(Long.valueOf(1), redisClient.llen("{q}:dst"));
+        int owners = 0;
+        for (StandInRedisServer shard : shards) {
+            owners += size(shard) > 0 ? 1 : 0;
+        }
+        Assert.assertEquals(1, owners);
+    }
+
+    @Test(expected = RedisException.class)
+    public void testMultiIsNotSupported() {
+        redisClient.multi(new TransactionBlock() {
+            @Override
+            public void execute() {
+                incr("n");
+            }
+        });
+    }
+
+    @Test
+    public void testEstimateShardMovement() {
+        Map<String, Double> movement = driver.estimateShardMovement(shards[0].getAddress() + "," + shards[1].getAddress());
+        double moved = 0;
+        for (Map.Entry<String, Double> entry : movement.entrySet()) {
+            Assert.assertTrue(entry.getKey().startsWith(shards[2].getAddress() + "->"));
+            moved += entry.getValue();
+        }
+        Assert.assertTrue("moved = " + moved, moved > 0.2 && moved < 0.45);
+    }
+
+    private static int size(StandInRedisServer server) {
+        Jedis jedis = new Jedis("127.0.0.1", server.getPort());
+        try {
+            return jedis.keys("*").size();
+        } finally {
+            jedis.close();
+        }
+    }
+}
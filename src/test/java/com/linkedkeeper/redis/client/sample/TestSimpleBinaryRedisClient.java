@@ -0,0 +1,139 @@
+package com.linkedkeeper.redis.client.sample;
+
+import com.linkedkeeper.redis.client.base.RedisFixture;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 分别在连接池和NIO引擎上运行SimpleBinaryRedisClient
+ *
+ * @Author: zhangsr
+ */
+@RunWith(Parameterized.class)
+public class TestSimpleBinaryRedisClient {
+
+    @Rule
+    public RedisFixture redis = new RedisFixture();
+
+    private final String engine;
+
+    private StandInRedisServer server;
+    private RedisDriver driver;
+    private SimpleBinaryRedisClient redisClient;
+
+    public TestSimpleBinaryRedisClient(String engine) {
+        this.engine = engine;
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> engines() {
+        return Arrays.asList(new Object[][]{{RedisDriver.ENGINE_JEDIS}, {RedisDriver.ENGINE_NIO}});
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = redis.getServer();
+        driver = redis.newDriver(driver -> driver.setEngine(engine));
+        redisClient = redis.newBinaryClient(driver);
+    }
+
+    @Test
+    public void testBinaryValues() {
+        byte[] key = {0, (byte) 0xff, '\r', '\n'};
+        byte[] value = allBytes(1);
+        Assert.assertEquals("OK", redisClient.set(key, value));
+        Assert.assertArrayEquals(value, redisClient.get(key));
+        Assert.assertNull(redisClient.get(new byte[]{1}));
+
+        byte[] field = {(byte) 0x80};
+        redisClient.hset(key(2), field, value);
+        Assert.assertArrayEquals(value, redisClient.hget(key(2), field));
+        List<byte[]> values = redisClient.hmget(key(2), field, new byte[]{2});
+        Assert.assertArrayEquals(value, values.get(0));
+        Assert.assertNull(values.get(1));
+
+        redisClient.rpush(key(3), value, field);
+        Assert.assertEquals(2, redisClient.lrange(key(3), 0, -1).size());
+        Assert.assertArrayEquals(value, redisClient.lpop(key(3)));
+        Assert.assertEquals(Long.valueOf(2), redisClient.del(key, key(2)));
+    }
+
+    @Test
+    public void testValueReader() {
+        byte[] small = allBytes(4);
+        // 超过NIO接收缓冲区大小，走复制后再包装的路径
+        byte[] large = allBytes(1200);
+        redisClient.set(key(1), small);
+        redisClient.set(key(2), large);
+        redisClient.hset(key(3), key(4), small);
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(redisClient.get(key(1), value -> sameBytes(value, small)));
+            Assert.assertTrue(redisClient.get(key(2), value -> sameBytes(value, large)));
+            Assert.assertTrue(redisClient.hget(key(3), key(4), value -> sameBytes(value, small)));
+        }
+        Assert.assertEquals("missing", redisClient.get(key(5), value -> value == null ? "missing" : "found"));
+        Assert.assertTrue(redisClient.get(key(1), ByteBuffer::isReadOnly));
+    }
+
+    @Test
+    public void testReaderFailure() {
+        redisClient.set(key(1), allBytes(1));
+        try {
+            redisClient.get(key(1), value -> {
+                throw new IllegalStateException("bad payload");
+            });
+            Assert.fail();
+        } catch (RedisException expected) {
+        }
+        // 回调失败不影响后续命令
+        Assert.assertArrayEquals(allBytes(1), redisClient.get(key(1)));
+    }
+
+    @Test
+    public void testMetricsAndTimeouts() throws Exception {
+        redisClient.set(key(1), allBytes(1));
+        Assert.assertArrayEquals(allBytes(1), redisClient.get(key(1)));
+        Assert.assertEquals(1, redisClient.getMetrics().snapshot("get").getCalls());
+
+        server.delayNext("GET", 1, 300);
+        try {
+            redisClient.withTimeouts(-1, 50).get(key(1));
+            Assert.fail("get should time out");
+        } catch (RedisException expected) {
+        }
+        Assert.assertEquals(1, redisClient.getMetrics().snapshot("get").getErrors());
+        Thread.sleep(300);
+        Assert.assertArrayEquals(allBytes(1), redisClient.get(key(1)));
+    }
+
+    private static boolean sameBytes(ByteBuffer value, byte[] expected) {
+        byte[] bytes = new byte[value.remaining()];
+        value.get(bytes);
+        return Arrays.equals(bytes, expected);
+    }
+
+    private static byte[] allBytes(int repeat) {
+        byte[] bytes = new byte[256 * repeat];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    private static byte[] key(int i) {
+        return new byte[]{'k', (byte) i};
+    }
+}
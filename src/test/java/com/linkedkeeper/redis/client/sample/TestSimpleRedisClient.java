@@ -0,0 +1,271 @@
+package com.linkedkeeper.redis.client.sample;
+
+import com.linkedkeeper.redis.client.base.RedisFixture;
+import com.linkedkeeper.redis.client.driver.RedisDriver;
+import com.linkedkeeper.redis.client.exception.RedisException;
+import com.linkedkeeper.redis.client.metrics.CommandStats;
+import com.linkedkeeper.redis.client.metrics.RedisMetrics;
+import com.linkedkeeper.redis.client.scan.ScanIterator;
+import com.linkedkeeper.redis.client.server.StandInRedisServer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.ScanParams;
+import redis.clients.jedis.ScanResult;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 分别在连接池和NIO引擎上运行SimpleRedisClient
+ *
+ * @Author: zhangsr
+ */
+@RunWith(Parameterized.class)
+public class TestSimpleRedisClient {
+
+    @Rule
+    public RedisFixture redis = new RedisFixture();
+
+    private final String engine;
+
+    private StandInRedisServer server;
+    private RedisDriver driver;
+    private SimpleRedisClient redisClient;
+
+    public TestSimpleRedisClient(String engine) {
+        this.engine = engine;
+    }
+
+    @Parameterized.Parameters
+    public static Collection<Object[]> engines() {
+        return Arrays.asList(new Object[][]{{RedisDriver.ENGINE_JEDIS}, {RedisDriver.ENGINE_NIO}});
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = redis.getServer();
+        driver = redis.newDriver(driver -> driver.setEngine(engine));
+        redisClient = redis.newClient(driver);
+    }
+
+    @Test
+    public void testStrings() {
+        Assert.assertEquals("OK", redisClient.set("s", "v"));
+        Assert.assertEquals("v", redisClient.get("s"));
+        Assert.assertNull(redisClient.get("missing"));
+        Assert.assertEquals(Long.valueOf(1), redisClient.incr("n"));
+        Assert.assertEquals(Long.valueOf(-4), redisClient.decrBy("n", 5));
+        Assert.assertTrue(redisClient.exists("s"));
+        Assert.assertEquals(Long.valueOf(2), redisClient.del("s", "n"));
+        Assert.assertFalse(redisClient.exists("s"));
+    }
+
+    @Test
+    public void testScan() {
+        for (int i = 0; i < 250; i++) {
+            redisClient.set("scan:" + i, "v");
+        }
+        redisClient.set("other", "v");
+        Set<String> keys = new HashSet<String>();
+        try (ScanIterator<String> iterator = redisClient.scan("scan:*", 20)) {
+            while (iterator.hasNext()) {
+                keys.add(iterator.next());
+            }
+        }
+        Assert.assertEquals(250, keys.size());
+
+        ScanResult<String> page = redisClient.scan(ScanParams.SCAN_POINTER_START, new ScanParams().match("scan:*").count(20));
+        Assert.assertTrue(page.getResult().size() <= 20);
+        Assert.assertFalse(ScanParams.SCAN_POINTER_START.equals(page.getStringCursor()));
+
+        // callback返回false时提前结束
+        List<String> visited = new ArrayList<String>();
+        redisClient.scan("scan:*", 20, key -> {
+            visited.add(key);
+            return visited.size() < 5;
+        });
+        Assert.assertEquals(5, visited.size());
+
+        try {
+            redisClient.scan("scan:*", 20, key -> {
+                throw new IllegalStateException("stop");
+            });
+            Assert.fail();
+        } catch (RedisException expected) {
+        }
+    }
+
+    @Test
+    public void testHashes() {
+        Map<String, String> hash = new HashMap<String, String>();
+        hash.put("a", "1");
+        hash.put("b", "2");
+        Assert.assertEquals("OK", redisClient.hmset("h", hash));
+        Assert.assertEquals(Long.valueOf(1), redisClient.hset("h", "c", "3"));
+        Assert.assertEquals(Long.valueOf(0), redisClient.hsetnx("h", "c", "4"));
+        Assert.assertEquals("3", redisClient.hget("h", "c"));
+        Assert.assertEquals(Arrays.asList("1", null), redisClient.hmget("h", "a", "x"));
+        Assert.assertEquals(Long.valueOf(12), redisClient.hincrby("h", "b", 10));
+        Assert.assertEquals(3, redisClient.hgetAll("h").size());
+        Assert.assertEquals(Long.valueOf(1), redisClient.hdel("h", "a"));
+    }
+
+    @Test
+    public void testSetsAndLists() {
+        Assert.assertEquals(Long.valueOf(2), redisClient.sadd("set", "a", "b"));
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("a", "b")), redisClient.smembers("set"));
+        Assert.assertEquals(Long.valueOf(1), redisClient.srem("set", "a"));
+
+        Assert.assertEquals(Long.valueOf(3), redisClient.rpush("list", "a", "b", "c"));
+        Assert.assertEquals(Long.valueOf(4), redisClient.lpush("list", "z"));
+        Assert.assertEquals(Arrays.asList("z", "a", "b", "c"), redisClient.lrange("list", 0, -1));
+        Assert.assertEquals("c", redisClient.rpoplpush("list", "other"));
+        Assert.assertEquals("z", redisClient.lpop("list"));
+        Assert.assertEquals("b", redisClient.rpop("list"));
+        Assert.assertEquals("OK", redisClient.ltrim("list", 0, 0));
+        Assert.assertEquals(Long.valueOf(1), redisClient.llen("list"));
+    }
+
+    @Test
+    public void testCollectionsInPages() {
+        Map<String, String> hash = new HashMap<String, String>();
+        List<String> list = new ArrayList<String>();
+        for (int i = 0; i < 95; i++) {
+            hash.put("f" + i, "v" + i);
+            redisClient.sadd("set", "m" + i);
+            list.add("e" + i);
+        }
+        redisClient.hmset("h", hash);
+        redisClient.rpush("list", list.toArray(new String[list.size()]));
+
+        Map<String, String> scanned = new HashMap<String, String>();
+        try (ScanIterator<Map.Entry<String, String>> iterator = redisClient.hscanAll("h", 10)) {
+            while (iterator.hasNext()) {
+                Map.Entry<String, String> entry = iterator.next();
+                scanned.put(entry.getKey(), entry.getValue());
+            }
+        }
+        Assert.assertEquals(hash, scanned);
+
+        Set<String> members = new HashSet<String>();
+        redisClient.sscanAll("set", 10, members::add);
+        Assert.assertEquals(redisClient.smembers("set"), members);
+
+        for (int pageSize : new int[]{10, 19, 95, 200}) {
+            List<String> elements = new ArrayList<String>();
+            redisClient.lrangeChunked("list", pageSize, elements::add);
+            Assert.assertEquals(list, elements);
+        }
+        Assert.assertFalse(redisClient.lrangeChunked("missing", 10).hasNext());
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            redisClient.set("m" + i, "0123456789");
+            redisClient.get("m" + i);
+        }
+        try {
+            redisClient.hget("m0", "f");
+        } catch (RedisException expected) {
+        }
+        Map<String, CommandStats> snapshot = redisClient.getMetrics().snapshot();
+        CommandStats get = snapshot.get("get");
+        Assert.assertEquals(100, get.getCalls());
+        Assert.assertEquals(0, get.getErrors());
+        // 默认不统计数据量
+        Assert.assertEquals(0, get.getBytesIn());
+        Assert.assertEquals(1, snapshot.get("hget").getErrors());
+        Assert.assertTrue(get.getLatencyMicros(50) > 0);
+        Assert.assertTrue(get.getLatencyMicros(50) <= get.getLatencyMicros(99.9));
+        Assert.assertEquals(RedisDriver.ENGINE_NIO.equals(engine) ? 0 : 100, get.getBorrows());
+
+        ObjectName objectName = new ObjectName(RedisMetrics.JMX_DOMAIN + ":type=CommandMetrics,name=\"default\",command=\"get\"");
+        Assert.assertEquals(100L, ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "Calls"));
+    }
+
+    @Test
+    public void testPayloadMetrics() {
+        SimpleRedisClient payloadClient = redis.newClient(driver, client -> client.setPayloadMetrics(true));
+        // 与redisClient同名，JMX中加上后缀
+        Assert.assertEquals("default-2", payloadClient.getMetrics().getName());
+        for (int i = 0; i < 100; i++) {
+            payloadClient.set("m" + i, "0123456789");
+            payloadClient.get("m" + i);
+        }
+        Map<String, CommandStats> snapshot = payloadClient.getMetrics().snapshot();
+        // 按RESP编码计算：回复$10\r\n0123456789\r\n为17字节，GET m0到m99共2190字节
+        Assert.assertEquals(1700, snapshot.get("get").getBytesIn());
+        Assert.assertEquals(2190, snapshot.get("get").getBytesOut());
+        Assert.assertEquals(3890, snapshot.get("set").getBytesOut());
+
+        // 按UTF-8字节而不是字符计算
+        payloadClient.set("u", "中文");
+        Assert.assertEquals("中文", payloadClient.get("u"));
+        Assert.assertEquals(1700 + 12, payloadClient.getMetrics().snapshot("get").getBytesIn());
+    }
+
+    @Test(expected = RedisException.class)
+    public void testWrongType() {
+        redisClient.set("s", "v");
+        redisClient.hget("s", "f");
+    }
+
+    @Test
+    public void testPipelined() {
+        final List<Response<Long>> responses = new ArrayList<Response<Long>>();
+        redisClient.pipelined(7, pipeline -> {
+            for (int i = 0; i < 100; i++) {
+                responses.add(pipeline.incr("counter"));
+            }
+        });
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(Long.valueOf(i + 1), responses.get(i).get());
+        }
+    }
+
+    @Test
+    public void testBatchCommands() {
+        Assert.assertEquals("OK", redisClient.mset("a", "1", "b", "2"));
+        server.clearRequestLog();
+        Assert.assertEquals(Arrays.asList("1", null, "2", "1"), redisClient.mget("a", "x", "b", "a"));
+        Assert.assertEquals(1, server.getRequestLog().size());
+        Assert.assertTrue(redisClient.mget().isEmpty());
+
+        Assert.assertEquals("OK", redisClient.msetex(60, "c", "3", "d", "4"));
+        Assert.assertEquals(Arrays.asList("3", "4"), redisClient.mget("c", "d"));
+        try (Jedis jedis = new Jedis("127.0.0.1", server.getPort(), 200)) {
+            Assert.assertTrue(jedis.ttl("d") > 0);
+        }
+
+        redisClient.hset("h1", "f", "1");
+        redisClient.hset("h2", "f", "2");
+        redisClient.hset("h2", "g", "3");
+        List<Map<String, String>> hashes = redisClient.hgetAllMulti("h2", "none", "h1");
+        Assert.assertEquals(3, hashes.size());
+        Assert.assertEquals(2, hashes.get(0).size());
+        Assert.assertTrue(hashes.get(1).isEmpty());
+        Assert.assertEquals("1", hashes.get(2).get("f"));
+        Assert.assertEquals(Arrays.asList(Arrays.asList("1", null), Arrays.asList("2", "3")),
+                redisClient.hmgetMulti(Arrays.asList("h1", "h2"), "f", "g"));
+
+        redisClient.sadd("s1", "a", "b");
+        List<Set<String>> sets = redisClient.smembersMulti("s1", "none");
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("a", "b")), sets.get(0));
+        Assert.assertTrue(sets.get(1).isEmpty());
+    }
+}
@@ -0,0 +1,116 @@
+package com.linkedkeeper.redis.client.scan;
+
+import com.linkedkeeper.redis.client.exception.RedisException;
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.ScanResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 用内存中的分页代替Redis，检查预取和并行游标的行为
+ *
+ * @Author: zhangsr
+ */
+public class TestScanIterator {
+
+    @Test
+    public void testPrefetchOnePage() {
+        AtomicInteger fetched = new AtomicInteger();
+        ScanIterator<String> iterator = new ScanIterator<String>(pages("a", 3, 10, fetched), true);
+        // 创建时已经发出第一页
+        Assert.assertEquals(1, fetched.get());
+        Assert.assertEquals("a0", iterator.next());
+        // 消费第一页时第二页已在路上，但不会再多取
+        Assert.assertEquals(2, fetched.get());
+        iterator.next();
+        iterator.next();
+        Assert.assertEquals(2, fetched.get());
+        Assert.assertEquals(10, drain(iterator).size() + 3);
+    }
+
+    @Test
+    public void testNoPrefetch() {
+        AtomicInteger fetched = new AtomicInteger();
+        ScanIterator<String> iterator = new ScanIterator<String>(pages("a", 3, 10, fetched), false);
+        Assert.assertEquals(0, fetched.get());
+        for (int i = 0; i < 3; i++) {
+            iterator.next();
+        }
+        Assert.assertEquals(1, fetched.get());
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertEquals(2, fetched.get());
+    }
+
+    @Test
+    public void testParallelCursors() {
+        AtomicInteger fetched = new AtomicInteger();
+        List<Function<String, CompletableFuture<ScanResult<String>>>> cursors = new ArrayList<Function<String, CompletableFuture<ScanResult<String>>>>();
+        cursors.add(pages("a", 2, 5, fetched));
+        cursors.add(pages("b", 2, 3, fetched));
+        cursors.add(pages("c", 2, 0, fetched));
+        ScanIterator<String> iterator = new ScanIterator<String>(cursors, true, true);
+        Assert.assertEquals(3, fetched.get());
+        List<String> all = drain(iterator);
+        Assert.assertEquals(8, all.size());
+        Assert.assertTrue(all.containsAll(Arrays.asList("a4", "b2")));
+    }
+
+    @Test
+    public void testRanges() {
+        List<Integer> list = new ArrayList<Integer>();
+        for (int i = 0; i < 20; i++) {
+            list.add(i);
+        }
+        ScanIterator<Integer> iterator = new ScanIterator<Integer>(ScanIterator.<Integer>ranges(7, (start, end) ->
+                CompletableFuture.completedFuture(list.subList((int) Math.min(start, 20), (int) Math.min(end + 1, 20)))), false);
+        Assert.assertEquals(list, drain(iterator));
+    }
+
+    @Test
+    public void testFailureAndCallback() {
+        ScanIterator<String> failing = new ScanIterator<String>(cursor -> {
+            throw new IllegalStateException("down");
+        }, true);
+        try {
+            failing.hasNext();
+            Assert.fail();
+        } catch (RedisException expected) {
+        }
+
+        List<String> visited = new ArrayList<String>();
+        ScanIterator<String> iterator = new ScanIterator<String>(pages("a", 3, 10, new AtomicInteger()), true);
+        iterator.forEach(element -> visited.add(element) && visited.size() < 4);
+        Assert.assertEquals(4, visited.size());
+        Assert.assertFalse(iterator.hasNext());
+    }
+
+    /**
+     * @return 以下标为cursor的分页，共total个元素
+     */
+    private static Function<String, CompletableFuture<ScanResult<String>>> pages(String prefix, int pageSize, int total, AtomicInteger fetched) {
+        return cursor -> {
+            fetched.incrementAndGet();
+            int start = Integer.parseInt(cursor);
+            List<String> page = new ArrayList<String>();
+            for (int i = start; i < Math.min(total, start + pageSize); i++) {
+                page.add(prefix + i);
+            }
+            int next = start + pageSize >= total ? 0 : start + pageSize;
+            return CompletableFuture.completedFuture(new ScanResult<String>(String.valueOf(next), page));
+        };
+    }
+
+    private static <T> List<T> drain(ScanIterator<T> iterator) {
+        List<T> elements = new ArrayList<T>();
+        while (iterator.hasNext()) {
+            elements.add(iterator.next());
+        }
+        return elements;
+    }
+}
@@ -0,0 +1,162 @@
+package com.linkedkeeper.redis.client.server;
+
+import redis.clients.util.JedisClusterCRC16;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 由多个StandInRedisServer组成的测试集群：slot平均分配到各节点，非本节点的key返回MOVED，
+ * 迁移中的slot在源节点找不到key时返回ASK，目标节点在ASKING之后接受该slot的命令
+ *
+ * @Author: zhangsr
+ */
+public class StandInRedisCluster {
+
+    public final static int SLOTS = 16384;
+
+    private final StandInRedisServer[] servers;
+    private final AtomicIntegerArray owners = new AtomicIntegerArray(SLOTS);
+    private final Map<Integer, Integer> migrating = new ConcurrentHashMap<Integer, Integer>();
+
+    public StandInRedisCluster(int size) {
+        this.servers = new StandInRedisServer[size];
+    }
+
+    public StandInRedisCluster start() throws IOException {
+        for (int i = 0; i < servers.length; i++) {
+            servers[i] = new StandInRedisServer().start();
+            servers[i].setCluster(this);
+        }
+        for (int slot = 0; slot < SLOTS; slot++) {
+            owners.set(slot, slot * servers.length / SLOTS);
+        }
+        return this;
+    }
+
+    public void stop() {
+        for (StandInRedisServer server : servers) {
+            server.stop();
+        }
+    }
+
+    /**
+     * @return 以逗号分隔的所有节点地址
+     */
+    public String getSeeds() {
+        StringBuilder seeds = new StringBuilder();
+        for (StandInRedisServer server : servers) {
+            seeds.append(seeds.length() == 0 ? "" : ",").append(server.getAddress());
+        }
+        return seeds.toString();
+    }
+
+    public StandInRedisServer getServer(int index) {
+        return servers[index];
+    }
+
+    public int ownerOf(String key) {
+        return owners.get(JedisClusterCRC16.getSlot(key));
+    }
+
+    /**
+     * 立即把slot及其数据迁到目标节点，客户端下次访问时收到MOVED
+     */
+    public void moveSlot(int slot, int to) {
+        int from = owners.get(slot);
+        if (from != to) {
+            servers[to].putAll(servers[from].removeSlot(slot));
+            owners.set(slot, to);
+        }
+        migrating.remove(slot);
+    }
+
+    /**
+     * 开始迁移slot，数据仍在源节点，源节点上不存在的key返回ASK
+     */
+    public void beginMigration(int slot, int to) {
+        migrating.put(slot, to);
+    }
+
+    /**
+     * @return 重定向错误，可以在本节点执行时返回null
+     */
+    String check(StandInRedisServer server, String name, List<String> command, boolean asking) {
+        List<String> keys = keys(name, command);
+        if (keys.isEmpty()) {
+            return null;
+        }
+        int slot = JedisClusterCRC16.getSlot(keys.get(0));
+        for (String key : keys) {
+            if (JedisClusterCRC16.getSlot(key) != slot) {
+                return "CROSSSLOT Keys in request don't hash to the same slot";
+            }
+        }
+        Integer target = migrating.get(slot);
+        if (servers[owners.get(slot)] != server) {
+            if (asking && target != null && servers[target] == server) {
+                return null;
+            }
+            return "MOVED " + slot + " " + servers[owners.get(slot)].getAddress();
+        }
+        if (target != null) {
+            for (String key : keys) {
+                if (!server.exists(key)) {
+                    return "ASK " + slot + " " + servers[target].getAddress();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * CLUSTER SLOTS的回复，连续属于同一节点的slot合并为一段
+     */
+    List<Object> slots() {
+        List<Object> ranges = new ArrayList<Object>();
+        int start = 0;
+        for (int slot = 1; slot <= SLOTS; slot++) {
+            if (slot == SLOTS || owners.get(slot) != owners.get(start)) {
+                StandInRedisServer owner = servers[owners.get(start)];
+                List<Object> node = Arrays.<Object>asList("127.0.0.1", (long) owner.getPort());
+                ranges.add(Arrays.<Object>asList((long) start, (long) slot - 1, node));
+                start = slot;
+            }
+        }
+        return ranges;
+    }
+
+    private static List<String> keys(String name, List<String> command) {
+        switch (name) {
+            case "PING":
+            case "ECHO":
+            case "SELECT":
+            case "FLUSHALL":
+            case "FLUSHDB":
+            case "KEYS":
+            case "SCAN":
+            case "CLUSTER":
+                return Collections.emptyList();
+            case "DEL":
+            case "MGET":
+                return command.subList(1, command.size());
+            case "MSET": {
+                List<String> keys = new ArrayList<String>();
+                for (int i = 1; i < command.size(); i += 2) {
+                    keys.add(command.get(i));
+                }
+                return keys;
+            }
+            case "RPOPLPUSH":
+                return command.subList(1, 3);
+            default:
+                return command.size() > 1 ? command.subList(1, 2) : Collections.<String>emptyList();
+        }
+    }
+}
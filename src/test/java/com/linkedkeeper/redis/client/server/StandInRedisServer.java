@@ -0,0 +1,1313 @@
+package com.linkedkeeper.redis.client.server;
+
+import redis.clients.util.JedisClusterCRC16;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * 测试用的进程内RESP2/RESP3服务端，实现RedisClient用到的字符串、hash、set、list、过期、
+ * MULTI/EXEC、SCAN和发布订阅命令，数据保存在内存中。
+ * CONFIG SET notify-keyspace-events包含K时，写命令向__keyspace@0__:key发布以小写命令名为事件的通知，不区分事件类型。
+ * <p>
+ * 所有连接由一个selector线程处理，命令按连接顺序执行；
+ * 可以按命令注入延迟、断开连接和MOVED重定向，并记录收到的命令，用于验证超时、pipeline和故障转移
+ *
+ * @Author: zhangsr
+ */
+public class StandInRedisServer {
+
+    /**
+     * ISO-8859-1与字节一一对应，二进制的key和value可以原样保存和返回
+     */
+    private final static Charset BYTES = Charset.forName("ISO-8859-1");
+
+    /**
+     * 命令日志最多保留的条数，压测时丢弃最早的记录
+     */
+    private final static int REQUEST_LOG_SIZE = 100000;
+
+    /**
+     * 不回复，订阅类命令的回复已经直接写出
+     */
+    private final static Object NO_REPLY = new Object();
+
+    private final static AtomicInteger CONNECTION_IDS = new AtomicInteger();
+
+    /**
+     * 发送keyspace通知的写命令，DEL、MSET和RPOPLPUSH涉及多个key
+     */
+    private final static Set<String> WRITES = new HashSet<String>(Arrays.asList(
+            "SET", "MSET", "SETEX", "INCR", "INCRBY", "DECRBY", "DEL", "EXPIRE", "SADD", "SREM",
+            "HSET", "HSETNX", "HMSET", "HDEL", "HINCRBY", "LPUSH", "RPUSH", "LPOP", "RPOP", "RPOPLPUSH", "LTRIM"));
+
+    private final Map<String, Object> data = new HashMap<String, Object>();
+    private final Map<String, Long> expires = new HashMap<String, Long>();
+    private final List<Connection> clients = new CopyOnWriteArrayList<Connection>();
+
+    // 只在selector线程访问
+    private final Map<String, Set<Connection>> subscriptions = new HashMap<String, Set<Connection>>();
+    private final Map<String, Set<Connection>> patternSubscriptions = new HashMap<String, Set<Connection>>();
+
+    private final Map<String, Long> latencies = new ConcurrentHashMap<String, Long>();
+    private final List<Fault> faults = new CopyOnWriteArrayList<Fault>();
+    private final ArrayDeque<List<String>> requestLog = new ArrayDeque<List<String>>();
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private int port;
+    private String password = null;
+    private String notifyKeyspaceEvents = "";
+    private volatile StandInRedisCluster cluster = null;
+    private volatile boolean running = false;
+
+    public StandInRedisServer start() throws IOException {
+        return start(0);
+    }
+
+    public StandInRedisServer start(int port) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress("127.0.0.1", port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.port = serverChannel.socket().getLocalPort();
+        running = true;
+        selectorThread = new Thread(this::loop, "stand-in-redis-" + this.port);
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        return this;
+    }
+
+    public void stop() {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getAddress() {
+        return "127.0.0.1:" + getPort();
+    }
+
+    /**
+     * @return 当前的客户端连接数
+     */
+    public int getConnectionCount() {
+        return clients.size();
+    }
+
+    /**
+     * 断开所有客户端连接，数据保留
+     */
+    public void dropConnections() {
+        runOnSelector(() -> {
+            for (Connection connection : clients) {
+                connection.close();
+            }
+        });
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public synchronized void flushAll() {
+        data.clear();
+        expires.clear();
+    }
+
+    //------------------------- fault injection -------------------------
+
+    /**
+     * 每次执行command都延迟回复，millis小于等于0时取消
+     *
+     * @param command 命令名，null表示所有命令
+     * @param millis
+     */
+    public void setLatency(String command, long millis) {
+        String name = command == null ? "*" : command.toUpperCase();
+        if (millis > 0) {
+            latencies.put(name, millis);
+        } else {
+            latencies.remove(name);
+        }
+    }
+
+    /**
+     * 接下来的times次command不回复并断开连接
+     *
+     * @param command 命令名，null表示所有命令
+     * @param times
+     */
+    public void dropNext(String command, int times) {
+        faults.add(new Fault(FaultType.DROP, command, times, 0, null));
+    }
+
+    /**
+     * 接下来的times次command延迟millis毫秒回复
+     */
+    public void delayNext(String command, int times, long millis) {
+        faults.add(new Fault(FaultType.DELAY, command, times, millis, null));
+    }
+
+    /**
+     * 接下来的times次command不执行，返回指向address的MOVED
+     */
+    public void redirectNext(String command, int times, String address) {
+        faults.add(new Fault(FaultType.MOVED, command, times, 0, address));
+    }
+
+    /**
+     * 取消所有延迟和故障
+     */
+    public void clearFaults() {
+        latencies.clear();
+        faults.clear();
+    }
+
+    /**
+     * @return 收到的命令，包括参数，按到达顺序
+     */
+    public List<List<String>> getRequestLog() {
+        synchronized (requestLog) {
+            return new ArrayList<List<String>>(requestLog);
+        }
+    }
+
+    public void clearRequestLog() {
+        synchronized (requestLog) {
+            requestLog.clear();
+        }
+    }
+
+    //------------------------- cluster -------------------------
+
+    void setCluster(StandInRedisCluster cluster) {
+        this.cluster = cluster;
+    }
+
+    synchronized boolean exists(String key) {
+        return lookup(key) != null;
+    }
+
+    /**
+     * 取出并删除slot中的数据，用于迁移
+     */
+    synchronized Map<String, Object> removeSlot(int slot) {
+        Map<String, Object> removed = new HashMap<String, Object>();
+        for (String key : new ArrayList<String>(data.keySet())) {
+            if (JedisClusterCRC16.getSlot(key) == slot && lookup(key) != null) {
+                removed.put(key, data.remove(key));
+                expires.remove(key);
+            }
+        }
+        return removed;
+    }
+
+    synchronized void putAll(Map<String, Object> entries) {
+        data.putAll(entries);
+    }
+
+    //------------------------- selector -------------------------
+
+    private void loop() {
+        try {
+            while (running) {
+                selector.select(nextDeadline());
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        connection.read();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        connection.flush();
+                    }
+                }
+                // 到期的延迟回复
+                for (Connection connection : clients) {
+                    if (!connection.delayed.isEmpty()) {
+                        connection.flush();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // selector关闭
+        } finally {
+            for (Connection connection : clients) {
+                connection.close();
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * @return 最近一个延迟回复的剩余时间，没有时返回0表示一直等待
+     */
+    private long nextDeadline() {
+        long deadline = Long.MAX_VALUE;
+        for (Connection connection : clients) {
+            Delayed first = connection.delayed.peek();
+            if (first != null) {
+                deadline = Math.min(deadline, first.readyAt);
+            }
+        }
+        return deadline == Long.MAX_VALUE ? 0 : Math.max(1, deadline - System.currentTimeMillis());
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        clients.add(connection);
+    }
+
+    private void runOnSelector(Runnable task) {
+        if (!running || Thread.currentThread() == selectorThread) {
+            task.run();
+            return;
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        tasks.add(() -> {
+            try {
+                task.run();
+            } finally {
+                done.countDown();
+            }
+        });
+        selector.wakeup();
+        try {
+            done.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //------------------------- commands -------------------------
+
+    private void handle(Connection connection, List<String> command) {
+        if (command.isEmpty()) {
+            return;
+        }
+        synchronized (requestLog) {
+            if (requestLog.size() == REQUEST_LOG_SIZE) {
+                requestLog.poll();
+            }
+            requestLog.add(command);
+        }
+        String name = command.get(0).toUpperCase();
+        Fault fault = takeFault(name);
+        if (fault != null && fault.type == FaultType.DROP) {
+            connection.close();
+            return;
+        }
+        long delay = latency(name) + (fault != null && fault.type == FaultType.DELAY ? fault.millis : 0);
+        Object reply;
+        if (fault != null && fault.type == FaultType.MOVED) {
+            String key = command.size() > 1 ? command.get(1) : "";
+            reply = new ServerError("MOVED " + JedisClusterCRC16.getSlot(key) + " " + fault.address);
+        } else {
+            reply = dispatch(connection, name, command);
+        }
+        if (reply != NO_REPLY) {
+            connection.send(reply, delay);
+        }
+    }
+
+    private Fault takeFault(String name) {
+        for (Fault fault : faults) {
+            if (fault.command == null || fault.command.equalsIgnoreCase(name)) {
+                if (fault.remaining.getAndDecrement() > 0) {
+                    return fault;
+                }
+                faults.remove(fault);
+            }
+        }
+        return null;
+    }
+
+    private long latency(String name) {
+        Long all = latencies.get("*");
+        Long one = latencies.get(name);
+        return (all == null ? 0 : all) + (one == null ? 0 : one);
+    }
+
+    /**
+     * 连接级别的命令：认证、协议版本、事务和订阅，其余命令交给execute
+     */
+    private Object dispatch(Connection connection, String name, List<String> command) {
+        if (!connection.authenticated && !"AUTH".equals(name) && !"HELLO".equals(name)) {
+            return new ServerError("NOAUTH Authentication required.");
+        }
+        if (connection.subscribed() && connection.protocol == 2 && !name.endsWith("SUBSCRIBE")
+                && !"PING".equals(name) && !"QUIT".equals(name)) {
+            return new ServerError("ERR only (P)SUBSCRIBE / (P)UNSUBSCRIBE / PING / QUIT allowed in this context");
+        }
+        if (connection.transaction != null
+                && !"EXEC".equals(name) && !"DISCARD".equals(name) && !"MULTI".equals(name)) {
+            connection.transaction.add(command);
+            return new Status("QUEUED");
+        }
+        switch (name) {
+            case "AUTH":
+                return auth(connection, command.get(command.size() - 1));
+            case "HELLO":
+                return hello(connection, command);
+            case "QUIT":
+                connection.closeAfterFlush = true;
+                return Status.OK;
+            case "ASKING":
+                connection.asking = true;
+                return Status.OK;
+            case "PING":
+                if (connection.subscribed() && connection.protocol == 2) {
+                    return Arrays.<Object>asList("pong", command.size() > 1 ? command.get(1) : "");
+                }
+                return command.size() > 1 ? command.get(1) : new Status("PONG");
+            case "MULTI":
+                if (connection.transaction != null) {
+                    return new ServerError("ERR MULTI calls can not be nested");
+                }
+                connection.transaction = new ArrayList<List<String>>();
+                return Status.OK;
+            case "DISCARD":
+                if (connection.transaction == null) {
+                    return new ServerError("ERR DISCARD without MULTI");
+                }
+                connection.transaction = null;
+                return Status.OK;
+            case "EXEC": {
+                if (connection.transaction == null) {
+                    return new ServerError("ERR EXEC without MULTI");
+                }
+                List<Object> replies = new ArrayList<Object>();
+                synchronized (this) {
+                    for (List<String> queued : connection.transaction) {
+                        replies.add(executeLocked(connection, queued.get(0).toUpperCase(), queued));
+                    }
+                }
+                connection.transaction = null;
+                return replies;
+            }
+            case "SUBSCRIBE":
+            case "PSUBSCRIBE":
+                for (int i = 1; i < command.size(); i++) {
+                    subscribe(connection, "PSUBSCRIBE".equals(name), command.get(i));
+                }
+                return NO_REPLY;
+            case "UNSUBSCRIBE":
+            case "PUNSUBSCRIBE": {
+                boolean pattern = "PUNSUBSCRIBE".equals(name);
+                List<String> targets = command.size() > 1 ? command.subList(1, command.size())
+                        : new ArrayList<String>(pattern ? connection.patterns : connection.channels);
+                if (targets.isEmpty()) {
+                    connection.send(new Push(name.toLowerCase(), null, (long) connection.subscriptionCount()), 0);
+                }
+                for (String target : targets) {
+                    unsubscribe(connection, pattern, target);
+                }
+                return NO_REPLY;
+            }
+            case "PUBLISH":
+                return publish(command.get(1), command.get(2));
+            default:
+                synchronized (this) {
+                    return executeLocked(connection, name, command);
+                }
+        }
+    }
+
+    private Object auth(Connection connection, String password) {
+        if (this.password == null) {
+            return new ServerError("ERR Client sent AUTH, but no password is set");
+        }
+        connection.authenticated = this.password.equals(password);
+        return connection.authenticated ? Status.OK : new ServerError("ERR invalid password");
+    }
+
+    /**
+     * HELLO [protover [AUTH username password]]，切换到RESP3后map、set和null使用RESP3的类型
+     */
+    private Object hello(Connection connection, List<String> command) {
+        int protocol = connection.protocol;
+        if (command.size() > 1) {
+            try {
+                protocol = Integer.parseInt(command.get(1));
+            } catch (NumberFormatException e) {
+                return new ServerError("ERR Protocol version is not an integer or out of range");
+            }
+            if (protocol != 2 && protocol != 3) {
+                return new ServerError("NOPROTO unsupported protocol version");
+            }
+        }
+        for (int i = 2; i + 2 < command.size(); i++) {
+            if ("AUTH".equalsIgnoreCase(command.get(i))) {
+                Object reply = auth(connection, command.get(i + 2));
+                if (reply instanceof ServerError) {
+                    return reply;
+                }
+            }
+        }
+        if (!connection.authenticated) {
+            return new ServerError("NOAUTH HELLO must be called with the client already authenticated");
+        }
+        connection.protocol = protocol;
+        Map<String, Object> info = new LinkedHashMap<String, Object>();
+        info.put("server", "redis");
+        info.put("version", "6.0.0");
+        info.put("proto", (long) protocol);
+        info.put("id", (long) connection.id);
+        info.put("mode", cluster == null ? "standalone" : "cluster");
+        info.put("role", "master");
+        info.put("modules", new ArrayList<Object>());
+        return info;
+    }
+
+    private void subscribe(Connection connection, boolean pattern, String target) {
+        Map<String, Set<Connection>> registry = pattern ? patternSubscriptions : subscriptions;
+        Set<Connection> subscribers = registry.get(target);
+        if (subscribers == null) {
+            subscribers = new LinkedHashSet<Connection>();
+            registry.put(target, subscribers);
+        }
+        subscribers.add(connection);
+        (pattern ? connection.patterns : connection.channels).add(target);
+        connection.send(new Push(pattern ? "psubscribe" : "subscribe", target, (long) connection.subscriptionCount()), 0);
+    }
+
+    private void unsubscribe(Connection connection, boolean pattern, String target) {
+        Map<String, Set<Connection>> registry = pattern ? patternSubscriptions : subscriptions;
+        Set<Connection> subscribers = registry.get(target);
+        if (subscribers != null) {
+            subscribers.remove(connection);
+            if (subscribers.isEmpty()) {
+                registry.remove(target);
+            }
+        }
+        (pattern ? connection.patterns : connection.channels).remove(target);
+        if (connection.open) {
+            connection.send(new Push(pattern ? "punsubscribe" : "unsubscribe", target, (long) connection.subscriptionCount()), 0);
+        }
+    }
+
+    private long publish(String channel, String message) {
+        long receivers = 0;
+        Set<Connection> subscribers = subscriptions.get(channel);
+        if (subscribers != null) {
+            for (Connection subscriber : subscribers) {
+                subscriber.send(new Push("message", channel, message), 0);
+                subscriber.flush();
+                receivers++;
+            }
+        }
+        for (Map.Entry<String, Set<Connection>> entry : patternSubscriptions.entrySet()) {
+            if (globToRegex(entry.getKey()).matcher(channel).matches()) {
+                for (Connection subscriber : entry.getValue()) {
+                    subscriber.send(new Push("pmessage", entry.getKey(), channel, message), 0);
+                    subscriber.flush();
+                    receivers++;
+                }
+            }
+        }
+        return receivers;
+    }
+
+    /**
+     * 调用方持有this的锁
+     */
+    private Object executeLocked(Connection connection, String name, List<String> command) {
+        boolean asking = connection.asking;
+        connection.asking = false;
+        try {
+            String redirect = cluster == null ? null : cluster.check(this, name, command, asking);
+            if (redirect != null) {
+                return new ServerError(redirect);
+            }
+            Object reply = execute(name, command);
+            if (WRITES.contains(name) && notifyKeyspaceEvents.indexOf('K') >= 0) {
+                notifyKeyspace(name, command);
+            }
+            return reply;
+        } catch (ServerError e) {
+            return e;
+        } catch (ClassCastException e) {
+            return new ServerError("WRONGTYPE Operation against a key holding the wrong kind of value");
+        } catch (IndexOutOfBoundsException e) {
+            return new ServerError("ERR wrong number of arguments for '" + name.toLowerCase() + "' command");
+        }
+    }
+
+    private void notifyKeyspace(String name, List<String> c) {
+        List<String> keys = new ArrayList<String>();
+        if ("DEL".equals(name)) {
+            keys.addAll(c.subList(1, c.size()));
+        } else if ("MSET".equals(name)) {
+            for (int i = 1; i < c.size(); i += 2) {
+                keys.add(c.get(i));
+            }
+        } else if ("RPOPLPUSH".equals(name)) {
+            keys.add(c.get(1));
+            keys.add(c.get(2));
+        } else {
+            keys.add(c.get(1));
+        }
+        for (String key : keys) {
+            publish("__keyspace@0__:" + key, name.toLowerCase());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object execute(String name, List<String> c) throws ServerError {
+        switch (name) {
+            case "PING":
+                return new Status("PONG");
+            case "ECHO":
+                return c.get(1);
+            case "SELECT":
+                return Status.OK;
+            case "FLUSHALL":
+            case "FLUSHDB":
+                flushAll();
+                return Status.OK;
+            case "CONFIG": {
+                String subcommand = c.get(1).toUpperCase();
+                boolean notify = "notify-keyspace-events".equalsIgnoreCase(c.get(2));
+                if ("GET".equals(subcommand)) {
+                    return notify ? Arrays.<Object>asList("notify-keyspace-events", notifyKeyspaceEvents) : new ArrayList<Object>();
+                } else if ("SET".equals(subcommand) && notify) {
+                    notifyKeyspaceEvents = c.get(3);
+                    return Status.OK;
+                }
+                throw new ServerError("ERR Unsupported CONFIG parameter: " + c.get(2));
+            }
+            case "CLUSTER":
+                if (cluster == null) {
+                    throw new ServerError("ERR This instance has cluster support disabled");
+                }
+                return cluster.slots();
+            case "GET":
+                return (String) lookup(c.get(1));
+            case "SET": {
+                Long expireAt = null;
+                boolean exists = lookup(c.get(1)) != null;
+                for (int i = 3; i < c.size(); i++) {
+                    String option = c.get(i).toUpperCase();
+                    if ("NX".equals(option) && exists || "XX".equals(option) && !exists) {
+                        return null;
+                    } else if ("EX".equals(option)) {
+                        expireAt = System.currentTimeMillis() + Long.parseLong(c.get(++i)) * 1000;
+                    } else if ("PX".equals(option)) {
+                        expireAt = System.currentTimeMillis() + Long.parseLong(c.get(++i));
+                    }
+                }
+                data.put(c.get(1), c.get(2));
+                if (expireAt == null) {
+                    expires.remove(c.get(1));
+                } else {
+                    expires.put(c.get(1), expireAt);
+                }
+                return Status.OK;
+            }
+            case "MGET": {
+                List<Object> values = new ArrayList<Object>();
+                for (int i = 1; i < c.size(); i++) {
+                    Object value = lookup(c.get(i));
+                    values.add(value instanceof String ? value : null);
+                }
+                return values;
+            }
+            case "MSET":
+                for (int i = 1; i + 1 < c.size(); i += 2) {
+                    data.put(c.get(i), c.get(i + 1));
+                    expires.remove(c.get(i));
+                }
+                return Status.OK;
+            case "SETEX":
+                data.put(c.get(1), c.get(3));
+                expires.put(c.get(1), System.currentTimeMillis() + Long.parseLong(c.get(2)) * 1000);
+                return Status.OK;
+            case "INCR":
+                return incrBy(c.get(1), 1);
+            case "INCRBY":
+                return incrBy(c.get(1), Long.parseLong(c.get(2)));
+            case "DECRBY": {
+                long decrement = Long.parseLong(c.get(2));
+                if (decrement == Long.MIN_VALUE) {
+                    throw new ServerError("ERR decrement would overflow");
+                }
+                return incrBy(c.get(1), -decrement);
+            }
+            case "DEL": {
+                long n = 0;
+                for (int i = 1; i < c.size(); i++) {
+                    if (lookup(c.get(i)) != null) {
+                        data.remove(c.get(i));
+                        expires.remove(c.get(i));
+                        n++;
+                    }
+                }
+                return n;
+            }
+            case "EXISTS":
+                return lookup(c.get(1)) == null ? 0L : 1L;
+            case "EXPIRE":
+                if (lookup(c.get(1)) == null) {
+                    return 0L;
+                }
+                expires.put(c.get(1), System.currentTimeMillis() + Long.parseLong(c.get(2)) * 1000);
+                return 1L;
+            case "PTTL":
+            case "TTL": {
+                if (lookup(c.get(1)) == null) {
+                    return -2L;
+                }
+                Long expireAt = expires.get(c.get(1));
+                if (expireAt == null) {
+                    return -1L;
+                }
+                long ttl = expireAt - System.currentTimeMillis();
+                return "PTTL".equals(name) ? ttl : ttl / 1000;
+            }
+            case "KEYS": {
+                Pattern pattern = globToRegex(c.get(1));
+                List<String> keys = new ArrayList<String>();
+                for (String key : new ArrayList<String>(data.keySet())) {
+                    if (lookup(key) != null && pattern.matcher(key).matches()) {
+                        keys.add(key);
+                    }
+                }
+                return keys;
+            }
+            case "SCAN": {
+                List<String> keys = new ArrayList<String>();
+                for (String key : new ArrayList<String>(data.keySet())) {
+                    if (lookup(key) != null) {
+                        keys.add(key);
+                    }
+                }
+                return scan(keys, c, 1);
+            }
+            case "SSCAN": {
+                Set<String> set = (Set<String>) lookup(c.get(1));
+                return scan(set == null ? new ArrayList<String>() : new ArrayList<String>(set), c, 2);
+            }
+            case "HSCAN": {
+                Map<String, String> hash = (Map<String, String>) lookup(c.get(1));
+                List<Object> reply = scan(hash == null ? new ArrayList<String>() : new ArrayList<String>(hash.keySet()), c, 2);
+                List<String> fields = new ArrayList<String>();
+                for (String field : (List<String>) reply.get(1)) {
+                    fields.add(field);
+                    fields.add(hash.get(field));
+                }
+                return Arrays.<Object>asList(reply.get(0), fields);
+            }
+            case "SADD": {
+                Set<String> set = (Set<String>) create(c.get(1), LinkedHashSet.class);
+                long n = 0;
+                for (int i = 2; i < c.size(); i++) {
+                    n += set.add(c.get(i)) ? 1 : 0;
+                }
+                return n;
+            }
+            case "SREM": {
+                Set<String> set = (Set<String>) lookup(c.get(1));
+                long n = 0;
+                for (int i = 2; set != null && i < c.size(); i++) {
+                    n += set.remove(c.get(i)) ? 1 : 0;
+                }
+                removeIfEmpty(c.get(1), set);
+                return n;
+            }
+            case "SMEMBERS": {
+                Set<String> set = (Set<String>) lookup(c.get(1));
+                return set == null ? new LinkedHashSet<String>() : new LinkedHashSet<String>(set);
+            }
+            case "HSET":
+            case "HSETNX": {
+                Map<String, String> hash = (Map<String, String>) create(c.get(1), LinkedHashMap.class);
+                if ("HSETNX".equals(name) && hash.containsKey(c.get(2))) {
+                    return 0L;
+                }
+                return hash.put(c.get(2), c.get(3)) == null ? 1L : 0L;
+            }
+            case "HMSET": {
+                Map<String, String> hash = (Map<String, String>) create(c.get(1), LinkedHashMap.class);
+                for (int i = 2; i + 1 < c.size(); i += 2) {
+                    hash.put(c.get(i), c.get(i + 1));
+                }
+                return Status.OK;
+            }
+            case "HGET": {
+                Map<String, String> hash = (Map<String, String>) lookup(c.get(1));
+                return hash == null ? null : hash.get(c.get(2));
+            }
+            case "HMGET": {
+                Map<String, String> hash = (Map<String, String>) lookup(c.get(1));
+                List<String> values = new ArrayList<String>();
+                for (int i = 2; i < c.size(); i++) {
+                    values.add(hash == null ? null : hash.get(c.get(i)));
+                }
+                return values;
+            }
+            case "HGETALL": {
+                Map<String, String> hash = (Map<String, String>) lookup(c.get(1));
+                return hash == null ? new LinkedHashMap<String, String>() : new LinkedHashMap<String, String>(hash);
+            }
+            case "HDEL": {
+                Map<String, String> hash = (Map<String, String>) lookup(c.get(1));
+                long n = 0;
+                for (int i = 2; hash != null && i < c.size(); i++) {
+                    n += hash.remove(c.get(i)) != null ? 1 : 0;
+                }
+                removeIfEmpty(c.get(1), hash == null ? null : hash.values());
+                return n;
+            }
+            case "HINCRBY": {
+                Map<String, String> hash = (Map<String, String>) create(c.get(1), LinkedHashMap.class);
+                String old = hash.get(c.get(2));
+                long value = (old == null ? 0 : parseLong(old)) + Long.parseLong(c.get(3));
+                hash.put(c.get(2), String.valueOf(value));
+                return value;
+            }
+            case "LPUSH":
+            case "RPUSH": {
+                LinkedList<String> list = (LinkedList<String>) create(c.get(1), LinkedList.class);
+                for (int i = 2; i < c.size(); i++) {
+                    if ("LPUSH".equals(name)) {
+                        list.addFirst(c.get(i));
+                    } else {
+                        list.addLast(c.get(i));
+                    }
+                }
+                return (long) list.size();
+            }
+            case "LPOP":
+            case "RPOP": {
+                LinkedList<String> list = (LinkedList<String>) lookup(c.get(1));
+                if (list == null) {
+                    return null;
+                }
+                String value = "LPOP".equals(name) ? list.removeFirst() : list.removeLast();
+                removeIfEmpty(c.get(1), list);
+                return value;
+            }
+            case "RPOPLPUSH": {
+                LinkedList<String> src = (LinkedList<String>) lookup(c.get(1));
+                if (src == null) {
+                    return null;
+                }
+                String value = src.removeLast();
+                removeIfEmpty(c.get(1), src);
+                ((LinkedList<String>) create(c.get(2), LinkedList.class)).addFirst(value);
+                return value;
+            }
+            case "LLEN": {
+                LinkedList<String> list = (LinkedList<String>) lookup(c.get(1));
+                return list == null ? 0L : (long) list.size();
+            }
+            case "LRANGE": {
+                LinkedList<String> list = (LinkedList<String>) lookup(c.get(1));
+                if (list == null) {
+                    return new ArrayList<String>();
+                }
+                int[] range = range(list.size(), Long.parseLong(c.get(2)), Long.parseLong(c.get(3)));
+                return new ArrayList<String>(list.subList(range[0], range[1]));
+            }
+            case "LTRIM": {
+                LinkedList<String> list = (LinkedList<String>) lookup(c.get(1));
+                if (list != null) {
+                    int[] range = range(list.size(), Long.parseLong(c.get(2)), Long.parseLong(c.get(3)));
+                    LinkedList<String> trimmed = new LinkedList<String>(list.subList(range[0], range[1]));
+                    data.put(c.get(1), trimmed);
+                    removeIfEmpty(c.get(1), trimmed);
+                }
+                return Status.OK;
+            }
+            default:
+                throw new ServerError("ERR unknown command '" + name + "'");
+        }
+    }
+
+    private Object lookup(String key) {
+        Long expireAt = expires.get(key);
+        if (expireAt != null && expireAt <= System.currentTimeMillis()) {
+            data.remove(key);
+            expires.remove(key);
+            return null;
+        }
+        return data.get(key);
+    }
+
+    private Object create(String key, Class<?> type) throws ServerError {
+        Object value = lookup(key);
+        if (value == null) {
+            try {
+                value = type.newInstance();
+            } catch (Exception e) {
+                throw new ServerError("ERR " + e);
+            }
+            data.put(key, value);
+        } else if (!type.isInstance(value)) {
+            throw new ServerError("WRONGTYPE Operation against a key holding the wrong kind of value");
+        }
+        return value;
+    }
+
+    private void removeIfEmpty(String key, Collection<?> values) {
+        if (values != null && values.isEmpty()) {
+            data.remove(key);
+            expires.remove(key);
+        }
+    }
+
+    private long incrBy(String key, long delta) throws ServerError {
+        Object old = lookup(key);
+        long value;
+        try {
+            value = Math.addExact(old == null ? 0 : parseLong((String) old), delta);
+        } catch (ArithmeticException e) {
+            throw new ServerError("ERR increment or decrement would overflow");
+        }
+        data.put(key, String.valueOf(value));
+        return value;
+    }
+
+    private static long parseLong(String value) throws ServerError {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new ServerError("ERR value is not an integer or out of range");
+        }
+    }
+
+    private static int[] range(int size, long start, long end) {
+        if (start < 0) {
+            start = Math.max(0, size + start);
+        }
+        if (end < 0) {
+            end = size + end;
+        }
+        end = Math.min(end, size - 1);
+        if (start > end) {
+            return new int[]{0, 0};
+        }
+        return new int[]{(int) start, (int) end + 1};
+    }
+
+    /**
+     * cursor是排好序的元素中的下标，每页检查COUNT个元素后再按MATCH过滤，与Redis一样页可能为空
+     *
+     * @param elements
+     * @param c
+     * @param cursorIndex cursor参数在命令中的位置
+     */
+    private static List<Object> scan(List<String> elements, List<String> c, int cursorIndex) throws ServerError {
+        Collections.sort(elements);
+        int from = (int) parseLong(c.get(cursorIndex));
+        Pattern pattern = null;
+        int count = 10;
+        for (int i = cursorIndex + 1; i + 1 < c.size(); i += 2) {
+            if ("MATCH".equalsIgnoreCase(c.get(i))) {
+                pattern = globToRegex(c.get(i + 1));
+            } else if ("COUNT".equalsIgnoreCase(c.get(i))) {
+                count = (int) parseLong(c.get(i + 1));
+            }
+        }
+        int to = Math.min(elements.size(), from + count);
+        List<String> page = new ArrayList<String>();
+        for (int i = from; i < to; i++) {
+            if (pattern == null || pattern.matcher(elements.get(i)).matches()) {
+                page.add(elements.get(i));
+            }
+        }
+        return Arrays.<Object>asList(String.valueOf(to >= elements.size() ? 0 : to), page);
+    }
+
+    private static Pattern globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (char ch : glob.toCharArray()) {
+            switch (ch) {
+                case '*':
+                    regex.append(".*");
+                    break;
+                case '?':
+                    regex.append('.');
+                    break;
+                default:
+                    regex.append(Pattern.quote(String.valueOf(ch)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+    //------------------------- RESP -------------------------
+
+    /**
+     * 从buf[start, end)中解析一条命令，不完整时返回null，支持inline命令
+     *
+     * @return 命令和参数，以及命令结束的位置
+     */
+    private static Parsed parse(byte[] buf, int start, int end) throws IOException {
+        if (start >= end) {
+            return null;
+        }
+        if (buf[start] != '*') {
+            int lineEnd = indexOf(buf, start, end, (byte) '\n');
+            if (lineEnd < 0) {
+                return null;
+            }
+            String line = new String(buf, start, lineEnd - start, BYTES).trim();
+            List<String> args = line.isEmpty() ? new ArrayList<String>() : Arrays.asList(line.split("\\s+"));
+            return new Parsed(args, lineEnd + 1);
+        }
+        int lineEnd = indexOf(buf, start, end, (byte) '\r');
+        if (lineEnd < 0 || lineEnd + 1 >= end) {
+            return null;
+        }
+        int count = parseInt(buf, start + 1, lineEnd);
+        int pos = lineEnd + 2;
+        List<String> args = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            if (pos >= end) {
+                return null;
+            }
+            if (buf[pos] != '$') {
+                throw new IOException("bulk string expected");
+            }
+            lineEnd = indexOf(buf, pos, end, (byte) '\r');
+            if (lineEnd < 0 || lineEnd + 1 >= end) {
+                return null;
+            }
+            int len = parseInt(buf, pos + 1, lineEnd);
+            pos = lineEnd + 2;
+            if (pos + len + 2 > end) {
+                return null;
+            }
+            args.add(new String(buf, pos, len, BYTES));
+            pos += len + 2;
+        }
+        return new Parsed(args, pos);
+    }
+
+    private static int indexOf(byte[] buf, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int parseInt(byte[] buf, int from, int to) throws IOException {
+        try {
+            return Integer.parseInt(new String(buf, from, to - from, BYTES));
+        } catch (NumberFormatException e) {
+            throw new IOException("invalid length");
+        }
+    }
+
+    /**
+     * RESP2中map和set写成数组，null写成空的bulk string；RESP3使用对应的类型
+     */
+    private static void write(OutputStream out, Object reply, int protocol) throws IOException {
+        if (reply == null) {
+            out.write((protocol == 3 ? "_\r\n" : "$-1\r\n").getBytes(BYTES));
+        } else if (reply instanceof Status) {
+            out.write(("+" + ((Status) reply).message + "\r\n").getBytes(BYTES));
+        } else if (reply instanceof ServerError) {
+            out.write(("-" + ((ServerError) reply).getMessage() + "\r\n").getBytes(BYTES));
+        } else if (reply instanceof Long) {
+            out.write((":" + reply + "\r\n").getBytes(BYTES));
+        } else if (reply instanceof String) {
+            byte[] bytes = ((String) reply).getBytes(BYTES);
+            out.write(("$" + bytes.length + "\r\n").getBytes(BYTES));
+            out.write(bytes);
+            out.write("\r\n".getBytes(BYTES));
+        } else if (reply instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) reply;
+            out.write((protocol == 3 ? "%" + map.size() : "*" + map.size() * 2).getBytes(BYTES));
+            out.write("\r\n".getBytes(BYTES));
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                write(out, entry.getKey(), protocol);
+                write(out, entry.getValue(), protocol);
+            }
+        } else if (reply instanceof Collection || reply instanceof Push) {
+            Collection<?> items = reply instanceof Push ? ((Push) reply).items : (Collection<?>) reply;
+            String type = protocol != 3 ? "*" : reply instanceof Push ? ">" : reply instanceof Set ? "~" : "*";
+            out.write((type + items.size() + "\r\n").getBytes(BYTES));
+            for (Object item : items) {
+                write(out, item, protocol);
+            }
+        } else {
+            throw new IOException("unsupported reply: " + reply);
+        }
+    }
+
+    /**
+     * 一个客户端连接的读写缓冲和状态，只在selector线程访问
+     */
+    private class Connection {
+        final int id = CONNECTION_IDS.incrementAndGet();
+        final SocketChannel channel;
+        SelectionKey key;
+
+        byte[] in = new byte[8192];
+        int start = 0;
+        int end = 0;
+        final ArrayDeque<ByteBuffer> out = new ArrayDeque<ByteBuffer>();
+        final ArrayDeque<Delayed> delayed = new ArrayDeque<Delayed>();
+        long lastReadyAt = 0;
+
+        boolean open = true;
+        boolean closeAfterFlush = false;
+        boolean authenticated = password == null;
+        boolean asking = false;
+        int protocol = 2;
+        List<List<String>> transaction = null;
+        final Set<String> channels = new LinkedHashSet<String>();
+        final Set<String> patterns = new LinkedHashSet<String>();
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        boolean subscribed() {
+            return subscriptionCount() > 0;
+        }
+
+        int subscriptionCount() {
+            return channels.size() + patterns.size();
+        }
+
+        void read() {
+            try {
+                if (end == in.length) {
+                    if (start > 0) {
+                        System.arraycopy(in, start, in, 0, end - start);
+                        end -= start;
+                        start = 0;
+                    } else {
+                        in = Arrays.copyOf(in, in.length * 2);
+                    }
+                }
+                int n = channel.read(ByteBuffer.wrap(in, end, in.length - end));
+                if (n < 0) {
+                    close();
+                    return;
+                }
+                end += n;
+                Parsed parsed;
+                // 客户端pipeline时处理完所有完整的命令后合并写出
+                while (open && !closeAfterFlush && (parsed = parse(in, start, end)) != null) {
+                    start = parsed.next;
+                    handle(this, parsed.command);
+                }
+                if (start == end) {
+                    start = end = 0;
+                }
+                flush();
+            } catch (IOException e) {
+                if (open) {
+                    send(new ServerError("ERR Protocol error: " + e.getMessage()), 0);
+                    closeAfterFlush = true;
+                    flush();
+                }
+            }
+        }
+
+        void send(Object reply, long delay) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                write(bytes, reply, protocol);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            if (delay <= 0 && delayed.isEmpty()) {
+                out.add(buffer);
+            } else {
+                // 延迟的回复之后的回复也要排在它后面，保持pipeline的顺序
+                lastReadyAt = Math.max(lastReadyAt, System.currentTimeMillis() + delay);
+                delayed.add(new Delayed(lastReadyAt, buffer));
+            }
+        }
+
+        void flush() {
+            if (!open) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            while (!delayed.isEmpty() && delayed.peek().readyAt <= now) {
+                out.add(delayed.poll().buffer);
+            }
+            try {
+                while (!out.isEmpty()) {
+                    ByteBuffer head = out.peek();
+                    channel.write(head);
+                    if (head.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    out.poll();
+                }
+                key.interestOps(SelectionKey.OP_READ);
+                if (closeAfterFlush && delayed.isEmpty()) {
+                    close();
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            if (!open) {
+                return;
+            }
+            open = false;
+            clients.remove(this);
+            for (String channel : new ArrayList<String>(channels)) {
+                unsubscribe(this, false, channel);
+            }
+            for (String pattern : new ArrayList<String>(patterns)) {
+                unsubscribe(this, true, pattern);
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static class Parsed {
+        final List<String> command;
+        final int next;
+
+        Parsed(List<String> command, int next) {
+            this.command = command;
+            this.next = next;
+        }
+    }
+
+    private static class Delayed {
+        final long readyAt;
+        final ByteBuffer buffer;
+
+        Delayed(long readyAt, ByteBuffer buffer) {
+            this.readyAt = readyAt;
+            this.buffer = buffer;
+        }
+    }
+
+    private enum FaultType {
+        DROP, DELAY, MOVED
+    }
+
+    private static class Fault {
+        final FaultType type;
+        final String command;
+        final AtomicInteger remaining;
+        final long millis;
+        final String address;
+
+        Fault(FaultType type, String command, int times, long millis, String address) {
+            this.type = type;
+            this.command = command;
+            this.remaining = new AtomicInteger(times);
+            this.millis = millis;
+            this.address = address;
+        }
+    }
+
+    /**
+     * 订阅消息，RESP3中写成push类型
+     */
+    private static class Push {
+        final List<Object> items;
+
+        Push(Object... items) {
+            this.items = Arrays.asList(items);
+        }
+    }
+
+    private static class Status {
+        final static Status OK = new Status("OK");
+
+        final String message;
+
+        Status(String message) {
+            this.message = message;
+        }
+    }
+
+    private static class ServerError extends Exception {
+        ServerError(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.linkedkeeper.redis.client.server;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Transaction;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Author: zhangsr
+ */
+public class TestStandInRedisServer {
+
+    private final static Charset UTF8 = Charset.forName("UTF-8");
+
+    private StandInRedisServer server;
+    private Jedis jedis;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StandInRedisServer().start();
+        jedis = new Jedis("127.0.0.1", server.getPort(), 200);
+    }
+
+    @After
+    public void tearDown() {
+        jedis.close();
+        server.stop();
+    }
+
+    @Test
+    public void testResp3() throws Exception {
+        jedis.hset("h", "f", "v");
+        jedis.sadd("s", "a");
+        try (Socket socket = new Socket("127.0.0.1", server.getPort())) {
+            socket.setSoTimeout(1000);
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            out.write("HELLO 3\r\nPING\r\n".getBytes(UTF8));
+            String hello = readUntil(in, "+PONG\r\n");
+            Assert.assertTrue(hello, hello.startsWith("%7\r\n$6\r\nserver\r\n"));
+            Assert.assertTrue(hello, hello.contains("$5\r\nproto\r\n:3\r\n"));
+
+            out.write("HGETALL h\r\n".getBytes(UTF8));
+            Assert.assertEquals("%1\r\n$1\r\nf\r\n$1\r\nv\r\n", read(in, 18));
+            out.write("SMEMBERS s\r\n".getBytes(UTF8));
+            Assert.assertEquals("~1\r\n$1\r\na\r\n", read(in, 11));
+            out.write("GET missing\r\n".getBytes(UTF8));
+            Assert.assertEquals("_\r\n", read(in, 3));
+        }
+        // 其他连接仍然是RESP2
+        Assert.assertEquals("v", jedis.hgetAll("h").get("f"));
+        Assert.assertNull(jedis.get("missing"));
+    }
+
+    @Test
+    public void testMulti() {
+        Transaction transaction = jedis.multi();
+        transaction.set("a", "1");
+        transaction.incr("a");
+        transaction.get("a");
+        List<Object> replies = transaction.exec();
+        Assert.assertEquals(3, replies.size());
+        Assert.assertEquals(2L, replies.get(1));
+        Assert.assertEquals("2", jedis.get("a"));
+
+        transaction = jedis.multi();
+        transaction.set("a", "3");
+        transaction.discard();
+        Assert.assertEquals("2", jedis.get("a"));
+    }
+
+    @Test
+    public void testPubSub() throws Exception {
+        final CountDownLatch subscribed = new CountDownLatch(2);
+        final CountDownLatch received = new CountDownLatch(2);
+        final StringBuffer messages = new StringBuffer();
+        final JedisPubSub pubSub = new JedisPubSub() {
+            @Override
+            public void onMessage(String channel, String message) {
+                messages.append(channel).append('=').append(message).append(';');
+                received.countDown();
+            }
+
+            @Override
+            public void onPMessage(String pattern, String channel, String message) {
+                messages.append(pattern).append('=').append(message).append(';');
+                received.countDown();
+            }
+
+            @Override
+            public void onSubscribe(String channel, int subscribedChannels) {
+                subscribed.countDown();
+            }
+
+            @Override
+            public void onPSubscribe(String pattern, int subscribedChannels) {
+                subscribed.countDown();
+            }
+        };
+        final Jedis subscriber = new Jedis("127.0.0.1", server.getPort(), 0);
+        Thread thread = new Thread(() -> subscriber.subscribe(pubSub, "news"));
+        thread.start();
+        try {
+            Assert.assertTrue(awaitCount(subscribed, 1));
+            pubSub.psubscribe("n*");
+            Assert.assertTrue(subscribed.await(1, TimeUnit.SECONDS));
+
+            Assert.assertEquals(Long.valueOf(2), jedis.publish("news", "hello"));
+            Assert.assertEquals(Long.valueOf(0), jedis.publish("other", "hello"));
+            Assert.assertTrue(received.await(1, TimeUnit.SECONDS));
+            Assert.assertEquals("news=hello;n*=hello;", messages.toString());
+
+            pubSub.unsubscribe();
+            pubSub.punsubscribe();
+            thread.join(1000);
+            Assert.assertFalse(thread.isAlive());
+            Assert.assertEquals(Long.valueOf(0), jedis.publish("news", "bye"));
+        } finally {
+            subscriber.close();
+        }
+    }
+
+    @Test
+    public void testLatencyAndDelayedPipeline() {
+        server.setLatency("GET", 500);
+        jedis.set("a", "1");
+        try {
+            jedis.get("a");
+            Assert.fail("read timeout expected");
+        } catch (JedisConnectionException expected) {
+        }
+        server.clearFaults();
+
+        Jedis other = new Jedis("127.0.0.1", server.getPort(), 1000);
+        try {
+            other.set("b", "2");
+            server.delayNext("GET", 1, 100);
+            Pipeline pipeline = other.pipelined();
+            pipeline.get("a");
+            pipeline.get("b");
+            long start = System.currentTimeMillis();
+            Assert.assertEquals(Arrays.<Object>asList("1", "2"), pipeline.syncAndReturnAll());
+            Assert.assertTrue(System.currentTimeMillis() - start >= 90);
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void testDropAndRedirect() {
+        server.dropNext("SET", 1);
+        try {
+            jedis.set("a", "1");
+            Assert.fail("connection drop expected");
+        } catch (JedisConnectionException expected) {
+        }
+        jedis.close();
+        jedis = new Jedis("127.0.0.1", server.getPort(), 200);
+        Assert.assertEquals("OK", jedis.set("a", "1"));
+
+        server.redirectNext("GET", 1, "127.0.0.1:7001");
+        try {
+            jedis.get("a");
+            Assert.fail("MOVED expected");
+        } catch (JedisMovedDataException e) {
+            Assert.assertEquals(7001, e.getTargetNode().getPort());
+        }
+        Assert.assertEquals("1", jedis.get("a"));
+    }
+
+    @Test
+    public void testRequestLog() {
+        server.clearRequestLog();
+        jedis.set("a", "1");
+        jedis.get("a");
+        List<List<String>> log = server.getRequestLog();
+        Assert.assertEquals(Arrays.asList("SET", "a", "1"), log.get(0));
+        Assert.assertEquals(Arrays.asList("GET", "a"), log.get(1));
+    }
+
+    private static String read(InputStream in, int length) throws Exception {
+        byte[] buf = new byte[length];
+        int read = 0;
+        while (read < length) {
+            read += in.read(buf, read, length - read);
+        }
+        return new String(buf, UTF8);
+    }
+
+    private static String readUntil(InputStream in, String terminator) throws Exception {
+        StringBuilder read = new StringBuilder();
+        while (!read.toString().endsWith(terminator)) {
+            int ch = in.read();
+            Assert.assertTrue(ch >= 0);
+            read.append((char) ch);
+        }
+        return read.toString();
+    }
+
+    private static boolean awaitCount(CountDownLatch latch, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (latch.getCount() > count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return latch.getCount() <= count;
+    }
+}